@@ -51,6 +51,11 @@ android {
     aaptOptions {
         noCompress("tflite", "task")
     }
+
+    // JVM unit tests: android.util.Log and friends return defaults instead of throwing
+    testOptions {
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 flutter {
@@ -94,4 +99,8 @@ dependencies {
     
     // AndroidX Work Manager for background tasks
     implementation("androidx.work:work-runtime:2.8.1")
+
+    // JVM unit tests for the Face ID kernels and network layer
+    testImplementation("junit:junit:4.13.2")
+    testImplementation("com.squareup.okhttp3:mockwebserver:4.12.0")
 }
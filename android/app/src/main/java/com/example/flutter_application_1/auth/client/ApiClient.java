@@ -1,56 +1,246 @@
 package com.example.flutter_application_1.auth.client;
 
 import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.flutter_application_1.BuildConfig;
 import com.example.flutter_application_1.auth.AuthManager;
+import com.example.flutter_application_1.faceid.data.api.EmbeddingRequestBody;
+import com.example.flutter_application_1.faceid.util.CircuitBreaker;
+import com.example.flutter_application_1.faceid.util.StageLatencyRecorder;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
 import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
 /**
  * API Client for making HTTP requests
+ *
+ * One shared OkHttpClient / Retrofit for the app, built once under a lock. Connections are pooled and
+ * kept alive between polls and uploads; HTTP/2 is negotiated on TLS endpoints. Logging is limited to
+ * request/response lines in debug builds and off in release, so bodies (multipart embeddings, status
+ * polls, event streams) are never buffered for logging. Request bodies are sent uncompressed: the backend
+ * does not advertise gzip request decoding.
+ * All calls share one {@link CircuitBreakerInterceptor}: when the host keeps failing or answering
+ * slowly, calls fail fast until a probe succeeds; see {@link #getBackendHealth()}.
  */
 public class ApiClient {
+    private static final String TAG = "ApiClient";
+
     // Face ID API Base URL
     private static final String BASE_URL = "http://3.27.15.166:32527/";
-    private static Retrofit retrofit = null;
+
+    // Timeouts: read must outlast the status long-poll wait (25s). Event streams have no read timeout:
+    // an idle stream is normal, and the status channel cancels the call when its session closes
+    private static final int CONNECT_TIMEOUT_SECONDS = 15;
+    private static final int READ_TIMEOUT_SECONDS = 40;
+    private static final int STREAM_READ_TIMEOUT_SECONDS = 0;
+    private static final int WRITE_TIMEOUT_SECONDS = 30;
+
+    // Connection reuse and concurrency: everything goes to one host
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final int KEEP_ALIVE_MINUTES = 5;
+    private static final int MAX_REQUESTS = 32;
+    private static final int MAX_REQUESTS_PER_HOST = 8;
+
+    // Circuit breaker: open after 5 failures in a row, probe again after 30s; a 10s answer is a failure
+    private static final int BREAKER_FAILURE_THRESHOLD = 5;
+    private static final long BREAKER_OPEN_MS = 30000;
+    private static final long SLOW_CALL_MS = 10000;
+
+    private static final CircuitBreakerInterceptor backendBreaker = new CircuitBreakerInterceptor(
+            new CircuitBreaker(BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MS), SystemClock::elapsedRealtime, SLOW_CALL_MS);
+
+    private static volatile Retrofit retrofit = null;
+    private static volatile Retrofit streamingRetrofit = null;
+    private static volatile OkHttpClient httpClient = null;
 
     public static Retrofit getClient(Context context) {
-        if (retrofit == null) {
-            HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
-            logging.setLevel(HttpLoggingInterceptor.Level.BODY);
-
-            OkHttpClient.Builder httpClient = new OkHttpClient.Builder();
-            httpClient.connectTimeout(60, TimeUnit.SECONDS);
-            httpClient.readTimeout(60, TimeUnit.SECONDS);
-            httpClient.writeTimeout(60, TimeUnit.SECONDS);
-            httpClient.addInterceptor(logging);
-            
-            // Add auth token interceptor
-            httpClient.addInterceptor(chain -> {
-                Request original = chain.request();
-                String token = AuthManager.getInstance(context).getAuthToken();
-                
-                if (token != null && !token.isEmpty()) {
-                    Request request = original.newBuilder()
-                            .header("Authorization", "Bearer " + token)
-                            .method(original.method(), original.body())
+        Retrofit client = retrofit;
+        if (client == null) {
+            synchronized (ApiClient.class) {
+                client = retrofit;
+                if (client == null) {
+                    client = new Retrofit.Builder()
+                            .baseUrl(BASE_URL)
+                            .addConverterFactory(GsonConverterFactory.create())
+                            .client(getHttpClient(context))
+                            .build();
+                    retrofit = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Retrofit for long-lived event streams: the shared client (same pool, breaker and auth) without
+     * the read timeout
+     */
+    public static Retrofit getStreamingClient(Context context) {
+        Retrofit client = streamingRetrofit;
+        if (client == null) {
+            synchronized (ApiClient.class) {
+                client = streamingRetrofit;
+                if (client == null) {
+                    OkHttpClient streamingHttpClient = getHttpClient(context).newBuilder()
+                            .readTimeout(STREAM_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
                             .build();
-                    return chain.proceed(request);
+                    client = new Retrofit.Builder()
+                            .baseUrl(BASE_URL)
+                            .addConverterFactory(GsonConverterFactory.create())
+                            .client(streamingHttpClient)
+                            .build();
+                    streamingRetrofit = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Shared OkHttpClient behind {@link #getClient(Context)}
+     */
+    public static OkHttpClient getHttpClient(Context context) {
+        OkHttpClient client = httpClient;
+        if (client == null) {
+            synchronized (ApiClient.class) {
+                client = httpClient;
+                if (client == null) {
+                    client = buildHttpClient(context.getApplicationContext());
+                    httpClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Open a pooled connection to the API host in the background, so the first real request
+     * (status poll, embedding upload) does not pay for DNS and the TCP/TLS handshake
+     */
+    public static void prewarm(Context context) {
+        Request request = new Request.Builder()
+                .url(BASE_URL)
+                .head()
+                .build();
+        getHttpClient(context).newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                response.close();
+                Log.d(TAG, "Connection pre-warmed (HTTP " + response.code() + ")");
+            }
+
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                Log.w(TAG, "Connection pre-warm failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Health of the API host as seen by the shared client: circuit state, failures, fast-fails, latency
+     */
+    public static CircuitBreakerInterceptor.Health getBackendHealth() {
+        return backendBreaker.getHealth();
+    }
+
+    /**
+     * False while the circuit is open, i.e. a call now would fail fast
+     */
+    public static boolean isBackendAvailable() {
+        return backendBreaker.isAvailable();
+    }
+
+    private static OkHttpClient buildHttpClient(Context appContext) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .dispatcher(dispatcher)
+                .retryOnConnectionFailure(true);
+
+        // First, so an open circuit rejects the call before any other work
+        builder.addInterceptor(backendBreaker);
+
+        // Add auth token interceptor
+        builder.addInterceptor(chain -> {
+            Request original = chain.request();
+            String token = AuthManager.getInstance(appContext).getAuthToken();
+
+            if (token != null && !token.isEmpty()) {
+                Request request = original.newBuilder()
+                        .header("Authorization", "Bearer " + token)
+                        .method(original.method(), original.body())
+                        .build();
+                return chain.proceed(request);
+            }
+
+            return chain.proceed(original);
+        });
+
+        if (BuildConfig.DEBUG) {
+            // Request/response lines only; BODY would buffer every upload and stream
+            HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
+            logging.setLevel(HttpLoggingInterceptor.Level.BASIC);
+            builder.addInterceptor(logging);
+        }
+
+        // Per attempt on the wire, so retries and redirects are separate samples
+        builder.addNetworkInterceptor(new EmbeddingUploadTimingInterceptor());
+
+        return builder.build();
+    }
+
+    /**
+     * Records the Face ID pipeline's network stage: for requests carrying an embedding, the time from
+     * sending until the response headers arrive.
+     */
+    private static class EmbeddingUploadTimingInterceptor implements Interceptor {
+        @NonNull
+        @Override
+        public Response intercept(@NonNull Chain chain) throws IOException {
+            Request request = chain.request();
+            if (!carriesEmbedding(request.body())) {
+                return chain.proceed(request);
+            }
+            long startNanos = System.nanoTime();
+            Response response = chain.proceed(request);
+            StageLatencyRecorder.getInstance().record(StageLatencyRecorder.Stage.NETWORK, startNanos, System.nanoTime());
+            return response;
+        }
+
+        private static boolean carriesEmbedding(RequestBody body) {
+            if (!(body instanceof MultipartBody)) {
+                return false;
+            }
+            MultipartBody multipart = (MultipartBody) body;
+            for (int i = 0; i < multipart.size(); i++) {
+                if (multipart.part(i).body() instanceof EmbeddingRequestBody) {
+                    return true;
                 }
-                
-                return chain.proceed(original);
-            });
-
-            retrofit = new Retrofit.Builder()
-                    .baseUrl(BASE_URL)
-                    .addConverterFactory(GsonConverterFactory.create())
-                    .client(httpClient.build())
-                    .build();
+            }
+            return false;
         }
-        return retrofit;
     }
 }
@@ -0,0 +1,196 @@
+package com.example.flutter_application_1.auth.client;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.flutter_application_1.faceid.util.CircuitBreaker;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Client-side circuit breaker for the API host, shared by every call of one OkHttpClient.
+ *
+ * A call counts as failed when it throws an IOException (timeout, refused connection), gets a 5xx or
+ * 429, or takes longer than slowCallMs to answer; long-polls and event streams are exempt from the
+ * slow rule since the server holds them on purpose. After enough failures in a row the circuit opens
+ * and calls fail at once with {@link CircuitOpenException}, without touching the network, until a
+ * single half-open probe gets through. Cancelled calls count neither way.
+ *
+ * Time comes from the given clock, so state transitions can be driven against a MockWebServer that
+ * injects latency and errors.
+ */
+public class CircuitBreakerInterceptor implements Interceptor {
+    private static final String TAG = "CircuitBreakerInterceptor";
+
+    // Latency smoothing: weight of the newest sample
+    private static final float LATENCY_ALPHA = 0.2f;
+
+    /**
+     * Thrown instead of making the call while the circuit is open
+     */
+    public static class CircuitOpenException extends IOException {
+        private final long retryAfterMs;
+
+        public CircuitOpenException(String message, long retryAfterMs) {
+            super(message);
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        /**
+         * Time until the circuit lets a probe through; 0 if a probe is already out
+         */
+        public long getRetryAfterMs() {
+            return retryAfterMs;
+        }
+    }
+
+    /**
+     * Snapshot of the backend's health as seen by this client
+     */
+    public static final class Health {
+        public final CircuitBreaker.State state;
+        public final int consecutiveFailures;
+        public final int timesOpened;
+        public final long retryAfterMs;     // Until the next probe, while open
+        public final long calls;            // Calls that went out
+        public final long failures;         // Of which failed: I/O error, 5xx/429 or slow
+        public final long slowCalls;
+        public final long rejected;         // Failed fast while open
+        public final float meanLatencyMs;   // Smoothed, over calls that got a response; -1 before the first
+
+        Health(CircuitBreaker.State state, int consecutiveFailures, int timesOpened, long retryAfterMs,
+               long calls, long failures, long slowCalls, long rejected, float meanLatencyMs) {
+            this.state = state;
+            this.consecutiveFailures = consecutiveFailures;
+            this.timesOpened = timesOpened;
+            this.retryAfterMs = retryAfterMs;
+            this.calls = calls;
+            this.failures = failures;
+            this.slowCalls = slowCalls;
+            this.rejected = rejected;
+            this.meanLatencyMs = meanLatencyMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "state=%s failuresInRow=%d opened=%d retryAfter=%dms calls=%d failed=%d slow=%d rejected=%d latency=%.0fms",
+                    state, consecutiveFailures, timesOpened, retryAfterMs, calls, failures, slowCalls, rejected, meanLatencyMs);
+        }
+    }
+
+    private final CircuitBreaker breaker;
+    private final LongSupplier clock;
+    private final long slowCallMs;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong slowCalls = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private float meanLatencyMs = -1; // Guarded by this
+
+    /**
+     * @param clock      Monotonic time in ms
+     * @param slowCallMs A response slower than this counts as a failure
+     */
+    public CircuitBreakerInterceptor(CircuitBreaker breaker, LongSupplier clock, long slowCallMs) {
+        this.breaker = breaker;
+        this.clock = clock;
+        this.slowCallMs = slowCallMs;
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        long startMs = clock.getAsLong();
+        if (!breaker.tryAcquire(startMs)) {
+            rejected.incrementAndGet();
+            long retryAfterMs = breaker.getRemainingOpenMs(startMs);
+            throw new CircuitOpenException("Server unavailable (circuit open, retry in " + retryAfterMs + "ms)", retryAfterMs);
+        }
+        calls.incrementAndGet();
+
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            if (chain.call().isCanceled()) {
+                breaker.release();
+            } else {
+                recordFailure(e.getClass().getSimpleName() + ": " + e.getMessage());
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            breaker.release();
+            throw e;
+        }
+
+        long latencyMs = clock.getAsLong() - startMs;
+        recordLatency(latencyMs);
+        int code = response.code();
+        if (code >= 500 || code == 429) {
+            recordFailure("HTTP " + code);
+        } else if (latencyMs > slowCallMs && !isHeldByServer(request)) {
+            slowCalls.incrementAndGet();
+            recordFailure("slow response (" + latencyMs + "ms)");
+        } else {
+            recordSuccess();
+        }
+        return response;
+    }
+
+    /**
+     * Whether a call may go out now, without taking a probe
+     */
+    public boolean isAvailable() {
+        return breaker.getState(clock.getAsLong()) != CircuitBreaker.State.OPEN;
+    }
+
+    public Health getHealth() {
+        long now = clock.getAsLong();
+        float latency;
+        synchronized (this) {
+            latency = meanLatencyMs;
+        }
+        return new Health(breaker.getState(now), breaker.getConsecutiveFailures(), breaker.getTimesOpened(),
+                breaker.getRemainingOpenMs(now), calls.get(), failures.get(), slowCalls.get(), rejected.get(), latency);
+    }
+
+    private void recordSuccess() {
+        boolean wasClosed = breaker.getState(clock.getAsLong()) == CircuitBreaker.State.CLOSED;
+        breaker.onSuccess();
+        if (!wasClosed) {
+            Log.i(TAG, "🟢 Backend circuit closed, probe succeeded");
+        }
+    }
+
+    private void recordFailure(String reason) {
+        failures.incrementAndGet();
+        int openedBefore = breaker.getTimesOpened();
+        breaker.onFailure(clock.getAsLong());
+        if (breaker.getTimesOpened() != openedBefore) {
+            Log.w(TAG, "🔴 Backend circuit opened after " + breaker.getConsecutiveFailures()
+                    + " failures in a row, last: " + reason);
+        }
+    }
+
+    private synchronized void recordLatency(long latencyMs) {
+        meanLatencyMs = meanLatencyMs < 0 ? latencyMs : meanLatencyMs + LATENCY_ALPHA * (latencyMs - meanLatencyMs);
+    }
+
+    /**
+     * Long-polls and event streams are slow by design
+     */
+    private static boolean isHeldByServer(Request request) {
+        return request.url().queryParameter("waitSeconds") != null
+                || "text/event-stream".equals(request.header("Accept"));
+    }
+}
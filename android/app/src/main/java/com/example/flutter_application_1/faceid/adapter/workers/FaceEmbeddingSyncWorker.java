@@ -1,196 +1,225 @@
 package com.example.flutter_application_1.faceid.adapter.workers;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
 import java.io.File;
-import java.util.concurrent.CountDownLatch;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
-import com.example.flutter_application_1.faceid.data.service.FaceIdService;
-import com.example.flutter_application_1.faceid.data.service.FaceIdServiceManager;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+
+import com.example.flutter_application_1.auth.AuthManager;
+import com.example.flutter_application_1.auth.client.ApiClient;
+import com.example.flutter_application_1.faceid.data.api.EmbeddingRequestBody;
+import com.example.flutter_application_1.faceid.data.api.FaceIdApiController;
+import com.example.flutter_application_1.faceid.data.model.response.FaceIdResponse;
+import com.example.flutter_application_1.faceid.data.model.response.FaceIdVerifyResponse;
+import com.example.flutter_application_1.faceid.data.service.EmbeddingOutbox;
 
 /**
  * Background Worker để sync Face Embedding với server
  * Chạy riêng biệt với UI flow để tránh blocking user
+ *
+ * Drains the {@link EmbeddingOutbox} in batches: each entry already holds the computed embedding, so
+ * nothing here decodes images or loads models. Every attempt carries the entry's idempotency key.
+ * Delivered and permanently rejected entries are acked; on a transient failure (network, 408, 429,
+ * 5xx, 401) the rest stays queued and WorkManager retries with exponential backoff.
  */
 public class FaceEmbeddingSyncWorker extends Worker {
     private static final String TAG = "FaceEmbeddingSyncWorker";
-    
-    public static final String KEY_USER_ID = "user_id";
+
+    // Kept so work enqueued by older versions still deserializes; only used to clean up its image
     public static final String KEY_BITMAP_PATH = "bitmap_path";
-    public static final String KEY_ACTION = "action"; // "register" | "update"
-    public static final String ACTION_REGISTER = "register";
-    public static final String ACTION_UPDATE = "update";
-    public static final String ACTION_VERIFY = "verify";
-    
+
+    private static final String UNIQUE_WORK_NAME = "face_embedding_outbox_drain";
+    private static final int BATCH_SIZE = 8;
+    private static final long INITIAL_BACKOFF_SECONDS = 30;
+
+    private enum Outcome {
+        DELIVERED,  // Server accepted it
+        REJECTED,   // Server answered with a final error; sending it again would not help
+        RETRY       // Transient failure; keep it queued
+    }
+
     public FaceEmbeddingSyncWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
         super(context, workerParams);
     }
-    
+
+    /**
+     * Schedule a drain of the outbox once the network is up. A drain already running is followed by
+     * a new one, so entries appended while it runs are not left behind.
+     */
+    public static void enqueue(Context context) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(FaceEmbeddingSyncWorker.class)
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build())
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, INITIAL_BACKOFF_SECONDS, TimeUnit.SECONDS)
+                .build();
+        WorkManager.getInstance(context.getApplicationContext())
+                .enqueueUniqueWork(UNIQUE_WORK_NAME, ExistingWorkPolicy.APPEND_OR_REPLACE, request);
+    }
+
     @NonNull
     @Override
     public Result doWork() {
-        
-        String userId = getInputData().getString(KEY_USER_ID);
-        String bitmapPath = getInputData().getString(KEY_BITMAP_PATH);
-        String action = getInputData().getString(KEY_ACTION);
-        
-        if (userId == null || bitmapPath == null) {
-            Log.e(TAG, "Missing required input data");
-            return Result.failure();
+        cleanupLegacyBitmap(getInputData().getString(KEY_BITMAP_PATH));
+
+        if (!ApiClient.isBackendAvailable()) {
+            // Every send would fail fast; leave the outbox alone until the circuit lets a probe through
+            Log.i(TAG, "📦 Backend circuit open, outbox sync postponed");
+            return Result.retry();
         }
-        
+
+        EmbeddingOutbox outbox = EmbeddingOutbox.getInstance(getApplicationContext());
+        FaceIdApiController api = ApiClient.getClient(getApplicationContext()).create(FaceIdApiController.class);
+        int delivered = 0;
+        int rejected = 0;
+
         try {
-            // Load bitmap from file
-            Bitmap bitmap = loadBitmapFromPath(bitmapPath);
-            if (bitmap == null) {
-                Log.e(TAG, "Failed to load bitmap from path: " + bitmapPath);
-                return Result.failure();
-            }
-            
-            // Initialize FaceIdService if needed
-            FaceIdService faceIdService = getFaceIdService();
-            if (faceIdService == null) {
-                Log.e(TAG, "Failed to initialize FaceIdService");
-                return Result.failure();
-            }
-            
-            // Sync embedding with server
-            boolean syncResult = syncEmbeddingWithServer(faceIdService, bitmap, userId, action);
-            
-            // Cleanup bitmap file
-            cleanupBitmapFile(bitmapPath);
-            
-            if (syncResult) {
-                Log.d(TAG, "Face embedding sync completed successfully");
-                return Result.success();
-            } else {
-                Log.w(TAG, "Face embedding sync failed, will retry");
-                return Result.retry();
+            List<EmbeddingOutbox.Entry> batch;
+            while (!(batch = outbox.claimPending(BATCH_SIZE)).isEmpty()) {
+                for (int i = 0; i < batch.size(); i++) {
+                    EmbeddingOutbox.Entry entry = batch.get(i);
+                    Outcome outcome = isStopped() ? Outcome.RETRY : send(api, entry);
+                    if (outcome == Outcome.RETRY) {
+                        // Keep order: this entry and the rest of the batch wait for the next attempt
+                        for (int j = i; j < batch.size(); j++) {
+                            outbox.release(batch.get(j).key);
+                        }
+                        Log.w(TAG, "📦 Outbox sync paused after " + delivered + " delivered, will retry");
+                        return Result.retry();
+                    }
+                    outbox.ack(entry.key);
+                    if (outcome == Outcome.DELIVERED) {
+                        delivered++;
+                    } else {
+                        rejected++;
+                    }
+                }
             }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Exception during face embedding sync", e);
-            return Result.failure();
+        } catch (IOException e) {
+            Log.e(TAG, "Outbox read/write failed", e);
+            return Result.retry();
         }
+
+        Log.d(TAG, "✅ Outbox drained: " + delivered + " delivered, " + rejected + " rejected");
+        return Result.success();
     }
-    
-    private Bitmap loadBitmapFromPath(String bitmapPath) {
+
+    private Outcome send(FaceIdApiController api, EmbeddingOutbox.Entry entry) {
+        // Same wire format as the live upload
+        MultipartBody.Part embeddingPart = EmbeddingRequestBody.part("embedding", entry.embedding);
+        RequestBody userIdPart = RequestBody.create(MediaType.parse("text/plain"), entry.userId);
         try {
-            File file = new File(bitmapPath);
-            if (!file.exists()) {
-                Log.e(TAG, "Bitmap file does not exist: " + bitmapPath);
-                return null;
+            switch (entry.action) {
+                case REGISTER: {
+                    Response<FaceIdResponse> response =
+                            api.registerFaceId(entry.key, embeddingPart, userIdPart).execute();
+                    String error = readError(response);
+                    if (response.code() == 400 && error != null
+                            && (error.toLowerCase(Locale.ROOT).contains("already has")
+                            || error.toLowerCase(Locale.ROOT).contains("already registered"))) {
+                        // Same fallback as the live flow: the user is registered, so update instead
+                        Log.w(TAG, "Register " + entry.key + ": already registered, sending as update");
+                        response = api.updateFaceId(entry.key + "-update", embeddingPart, userIdPart).execute();
+                        error = readError(response);
+                    }
+                    return enrollOutcome(entry, response, error);
+                }
+                case UPDATE: {
+                    Response<FaceIdResponse> response =
+                            api.updateFaceId(entry.key, embeddingPart, userIdPart).execute();
+                    return enrollOutcome(entry, response, readError(response));
+                }
+                case VERIFY: {
+                    RequestBody thresholdPart = entry.threshold != null
+                            ? RequestBody.create(MediaType.parse("text/plain"), String.valueOf(entry.threshold))
+                            : null;
+                    Response<FaceIdVerifyResponse> response = api.verifyFaceId(
+                            entry.key, entry.requestId, userIdPart, embeddingPart, thresholdPart).execute();
+                    String error = readError(response);
+                    if (response.isSuccessful()) {
+                        // Verified or not, the server has decided this request
+                        Log.d(TAG, "Verify " + entry.key + " delivered for request " + entry.requestId);
+                        return Outcome.DELIVERED;
+                    }
+                    return failureOutcome(entry, response.code(), error);
+                }
+                default:
+                    return Outcome.REJECTED;
             }
-            
-            return BitmapFactory.decodeFile(bitmapPath);
-        } catch (Exception e) {
-            Log.e(TAG, "Error loading bitmap from path: " + bitmapPath, e);
-            return null;
+        } catch (IOException e) {
+            Log.w(TAG, entry.action + " " + entry.key + ": network error: " + e.getMessage());
+            return Outcome.RETRY;
         }
     }
-    
-    private FaceIdService getFaceIdService() {
-        final FaceIdService[] serviceRef = new FaceIdService[1];
-        final CountDownLatch latch = new CountDownLatch(1);
-        final AtomicBoolean initSuccess = new AtomicBoolean(false);
-        
-        // Initialize service synchronously in worker thread
-        FaceIdServiceManager.getInstance().initialize(getApplicationContext(), new FaceIdServiceManager.InitCallback() {
-            @Override
-            public void onInitialized(FaceIdService service) {
-                serviceRef[0] = service;
-                initSuccess.set(true);
-                latch.countDown();
-            }
-            
-            @Override
-            public void onError(String message) {
-                Log.e(TAG, "FaceIdService initialization error: " + message);
-                latch.countDown();
-            }
-        });
-        
-        try {
-            // Wait up to 10 seconds for initialization
-            boolean completed = latch.await(10, TimeUnit.SECONDS);
-            if (completed && initSuccess.get()) {
-                return serviceRef[0];
-            }
-        } catch (InterruptedException e) {
-            Log.e(TAG, "Interrupted while waiting for FaceIdService initialization", e);
+
+    private Outcome enrollOutcome(EmbeddingOutbox.Entry entry, Response<FaceIdResponse> response, String error) {
+        if (response.isSuccessful() && response.body() != null && response.body().isSuccess()) {
+            AuthManager.getInstance(getApplicationContext()).setFaceIdRegistered(true);
+            Log.d(TAG, entry.action + " " + entry.key + " delivered for user " + entry.userId);
+            return Outcome.DELIVERED;
+        }
+        if (response.isSuccessful()) {
+            Log.e(TAG, entry.action + " " + entry.key + " refused: "
+                    + (response.body() != null ? response.body().getMessage() : "empty body"));
+            return Outcome.REJECTED;
         }
-        
-        return null;
+        return failureOutcome(entry, response.code(), error);
     }
-    
-    private boolean syncEmbeddingWithServer(FaceIdService faceIdService, Bitmap bitmap, String userId, String action) {
-        final AtomicBoolean syncSuccess = new AtomicBoolean(false);
-        final CountDownLatch latch = new CountDownLatch(1);
-        
-        // Branch by action: after register -> verify; after update -> update
-        boolean isUpdate = ACTION_UPDATE.equalsIgnoreCase(action);
-        boolean isVerify = ACTION_VERIFY.equalsIgnoreCase(action);
-        boolean isRegister = ACTION_REGISTER.equalsIgnoreCase(action);
-        if (isUpdate) {
-            faceIdService.updateFaceId(bitmap, userId, new FaceIdService.FaceIdCallback() {
-                @Override
-                public void onSuccess(String message) {
-                    Log.d(TAG, "Face embedding sync successful: " + message);
-                    syncSuccess.set(true);
-                    latch.countDown();
-                }
-                
-                @Override
-                public void onFailure(String errorMessage) {
-                    Log.e(TAG, "Face embedding sync failed: " + errorMessage);
-                    latch.countDown();
-                }
-            });
-        } else if (isVerify) {
-            // For verify flow, we have already verified in UI; avoid duplicate network call
-            Log.d(TAG, "Verify flow: no background sync needed, marking success");
-            syncSuccess.set(true);
-            latch.countDown();
-        } else if (isRegister) {
-            // After register, do not auto-verify in background. Defer to explicit verify flow/notification.
-            Log.d(TAG, "Register flow: skip background calls, marking success");
-            syncSuccess.set(true);
-            latch.countDown();
-        } else {
-            // Unknown action: no-op but succeed to avoid retries
-            Log.w(TAG, "Unknown action in FaceEmbeddingSyncWorker: " + action + ". Skipping network call.");
-            syncSuccess.set(true);
-            latch.countDown();
+
+    private static Outcome failureOutcome(EmbeddingOutbox.Entry entry, int code, String error) {
+        // 401: the token may be refreshed by the time the next attempt runs
+        if (code == 401 || code == 408 || code == 429 || code >= 500) {
+            Log.w(TAG, entry.action + " " + entry.key + ": HTTP " + code + ", will retry");
+            return Outcome.RETRY;
+        }
+        Log.e(TAG, entry.action + " " + entry.key + ": HTTP " + code + ", dropping: " + error);
+        return Outcome.REJECTED;
+    }
+
+    /**
+     * Read and close the error body, if any
+     */
+    private static String readError(Response<?> response) {
+        ResponseBody errorBody = response.errorBody();
+        if (errorBody == null) {
+            return null;
         }
-        
         try {
-            // Wait up to 30 seconds for sync completion
-            boolean completed = latch.await(30, TimeUnit.SECONDS);
-            return completed && syncSuccess.get();
-        } catch (InterruptedException e) {
-            Log.e(TAG, "Interrupted while waiting for embedding sync", e);
-            return false;
+            return errorBody.string();
+        } catch (IOException e) {
+            return null;
+        } finally {
+            errorBody.close();
         }
     }
-    
-    private void cleanupBitmapFile(String bitmapPath) {
-        try {
-            File file = new File(bitmapPath);
-            if (file.exists()) {
-                boolean deleted = file.delete();
-                Log.d(TAG, "Bitmap file cleanup: " + (deleted ? "success" : "failed"));
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error cleaning up bitmap file: " + bitmapPath, e);
+
+    private void cleanupLegacyBitmap(String bitmapPath) {
+        if (bitmapPath == null) {
+            return;
+        }
+        File file = new File(bitmapPath);
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete legacy sync image: " + bitmapPath);
         }
     }
 }
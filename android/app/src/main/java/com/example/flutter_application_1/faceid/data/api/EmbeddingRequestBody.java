@@ -0,0 +1,50 @@
+package com.example.flutter_application_1.faceid.data.api;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * Face embedding upload body: writes the float array straight to the sink as float32 little-endian,
+ * the format every embedding endpoint expects. No intermediate byte array; the sink's own segment
+ * buffer is the only one. The body can be written more than once (OkHttp retries), so the array
+ * must not change while a call is using it.
+ */
+public class EmbeddingRequestBody extends RequestBody {
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    private final float[] embedding;
+
+    public EmbeddingRequestBody(float[] embedding) {
+        this.embedding = embedding;
+    }
+
+    /**
+     * Multipart file part named name, with file name name + ".bin"
+     */
+    public static MultipartBody.Part part(String name, float[] embedding) {
+        return MultipartBody.Part.createFormData(name, name + ".bin", new EmbeddingRequestBody(embedding));
+    }
+
+    @Override
+    public MediaType contentType() {
+        return OCTET_STREAM;
+    }
+
+    @Override
+    public long contentLength() {
+        return embedding.length * 4L;
+    }
+
+    @Override
+    public void writeTo(@NonNull BufferedSink sink) throws IOException {
+        for (float value : embedding) {
+            sink.writeIntLe(Float.floatToRawIntBits(value));
+        }
+    }
+}
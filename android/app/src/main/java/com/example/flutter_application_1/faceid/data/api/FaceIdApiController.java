@@ -1,15 +1,23 @@
 package com.example.flutter_application_1.faceid.data.api;
 
+import java.util.List;
+
 import okhttp3.MultipartBody;
 import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
+import retrofit2.http.Headers;
 import retrofit2.http.PATCH;
 import retrofit2.http.Multipart;
 import retrofit2.http.POST;
 import retrofit2.http.Part;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.Streaming;
+import com.example.flutter_application_1.faceid.data.model.response.FaceIdBatchVerifyResponse;
 import com.example.flutter_application_1.faceid.data.model.response.FaceIdRequestStatusResponse;
 import com.example.flutter_application_1.faceid.data.model.response.FaceIdResponse;
 import com.example.flutter_application_1.faceid.data.model.response.FaceIdVerifyResponse;
@@ -60,9 +68,87 @@ public interface FaceIdApiController {
             @Part("threshold") RequestBody threshold // optional; pass null to omit
     );
 
+    /**
+     * Register with an idempotency key; a retry carrying the same key is not applied twice
+     * @param idempotencyKey Key of the upload, the same on every attempt
+     */
+    @Multipart
+    @POST("api/v1/face/faceid/register")
+    Call<FaceIdResponse> registerFaceId(
+            @Header("Idempotency-Key") String idempotencyKey,
+            @Part MultipartBody.Part embedding,
+            @Part("userId") RequestBody userId
+    );
+
+    /**
+     * Update with an idempotency key; a retry carrying the same key is not applied twice
+     * @param idempotencyKey Key of the upload, the same on every attempt
+     */
+    @Multipart
+    @POST("api/faceid/update")
+    Call<FaceIdResponse> updateFaceId(
+            @Header("Idempotency-Key") String idempotencyKey,
+            @Part MultipartBody.Part embedding,
+            @Part("userId") RequestBody userId
+    );
+
+    /**
+     * Verify with an idempotency key; a retry carrying the same key is not applied twice
+     * @param idempotencyKey Key of the upload, the same on every attempt
+     */
+    @Multipart
+    @POST("api/faceid/requests/{requestId}/verify")
+    Call<FaceIdVerifyResponse> verifyFaceId(
+            @Header("Idempotency-Key") String idempotencyKey,
+            @Path("requestId") String requestId,
+            @Part("userId") RequestBody userId,
+            @Part MultipartBody.Part embedding,
+            @Part("threshold") RequestBody threshold // optional; pass null to omit
+    );
+
+    /**
+     * Verify several users against one request in a single upload (kiosk mode)
+     * @param idempotencyKey Key of the batch, the same on every attempt
+     * @param manifest JSON: {"Threshold": float or null, "Items": [{"ItemId", "UserId", "Embedding"}]},
+     *                 where Embedding names the file part holding that item's embedding
+     * @param embeddings One float32 little-endian file part per item
+     * @return One result per item, matched by ItemId
+     */
+    @Multipart
+    @POST("api/faceid/requests/{requestId}/verify-batch")
+    Call<FaceIdBatchVerifyResponse> verifyFaceIdBatch(
+            @Header("Idempotency-Key") String idempotencyKey,
+            @Path("requestId") String requestId,
+            @Part("manifest") RequestBody manifest,
+            @Part List<MultipartBody.Part> embeddings
+    );
+
     @PATCH("api/faceid/requests/{requestId}/cancel")
     Call<Void> cancelFaceIdRequest(@Path("requestId") String requestId);
 
     @GET("api/faceid/requests/{requestId}/status")
     Call<FaceIdRequestStatusResponse> getFaceIdRequestStatus(@Path("requestId") String requestId);
+
+    /**
+     * Request status with a long-poll hint
+     * @param waitSeconds Longest time the server may hold the request waiting for a change
+     * @param knownStatus Status the client already has; null on the first poll
+     * @return Status response; servers without long polling ignore the hints and answer at once
+     */
+    @GET("api/faceid/requests/{requestId}/status")
+    Call<FaceIdRequestStatusResponse> getFaceIdRequestStatus(
+            @Path("requestId") String requestId,
+            @Query("waitSeconds") Integer waitSeconds,
+            @Query("knownStatus") String knownStatus
+    );
+
+    /**
+     * Server-Sent Events stream of status changes for a request
+     * @param requestId Request ID
+     * @return Event stream; each event's data is a status response in JSON
+     */
+    @Streaming
+    @Headers("Accept: text/event-stream")
+    @GET("api/faceid/requests/{requestId}/events")
+    Call<ResponseBody> streamFaceIdRequestEvents(@Path("requestId") String requestId);
 } 
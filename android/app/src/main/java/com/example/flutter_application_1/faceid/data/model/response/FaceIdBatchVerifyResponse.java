@@ -0,0 +1,56 @@
+package com.example.flutter_application_1.faceid.data.model.response;
+
+import com.google.gson.annotations.SerializedName;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * Response of the batch verify endpoint: one result per submitted item, matched by ItemId
+ */
+@Getter
+public class FaceIdBatchVerifyResponse {
+    @SerializedName("Success")
+    private boolean success;
+
+    @SerializedName("Message")
+    private String message;
+
+    @SerializedName("Results")
+    private List<Item> results;
+
+    @Getter
+    public static class Item {
+        @SerializedName("ItemId")
+        private String itemId;
+
+        @SerializedName("UserId")
+        private String userId;
+
+        @SerializedName("Success")
+        private boolean success;
+
+        @SerializedName("Message")
+        private String message;
+
+        @SerializedName("Similarity")
+        private Float similarity;
+
+        @SerializedName("VerifiedAt")
+        private String verifiedAt;
+
+        /**
+         * Result of a single-endpoint verify, for backends without the batch endpoint
+         */
+        public static Item of(String itemId, String userId, FaceIdVerifyResponse response) {
+            Item item = new Item();
+            item.itemId = itemId;
+            item.userId = userId;
+            item.success = response.isSuccess();
+            item.message = response.getMessage();
+            item.similarity = response.getSimilarity();
+            item.verifiedAt = response.getVerifiedAt();
+            return item;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import com.example.flutter_application_1.faceid.util.FloatRingBuffer;
+
+/**
+ * Pure-Java blink state machine driven by per-frame Eye Aspect Ratios.
+ *
+ * Holds the calibration, EAR history and blink/intentional-blink state that used to live
+ * inside {@link EyeBlinkDetector}. It has no Android dependencies and performs no allocation
+ * per frame, so recorded EAR traces can be replayed on the JVM for threshold tuning.
+ *
+ * Eye landmarks are passed as packed coordinate arrays: {@code [x0, y0, x1, y1, ..., x5, y5]}
+ * in the order p1..p6 of the EAR formula.
+ */
+public final class BlinkStateMachine {
+
+    // Event flags returned by update()
+    public static final int EVENT_NONE = 0;
+    public static final int EVENT_BLINK = 1;
+    public static final int EVENT_INTENTIONAL_BLINK = 1 << 1;
+
+    /** Number of floats in a packed 6-point eye array */
+    public static final int EYE_COORDS_LENGTH = 12;
+
+    // Constants for blink detection - OPTIMIZED FOR REAL DATA
+    public static final float EAR_THRESHOLD = 0.25f;       // Standard threshold for real data
+    private static final float STRONG_EAR_FACTOR = 0.8f;   // avg EAR below 80% of threshold is a blink
+    private static final float OPEN_PROBABILITY_THRESHOLD = 0.4f;
+    private static final float CALIBRATION_MIN_EAR = 0.15f; // Only calibrate on open eyes
+    private static final int BLINK_FRAME_THRESHOLD = 1;     // Fast detection for real data
+    private static final int MAX_BLINK_DURATION = 15;       // Maximum blink duration
+    private static final int CALIBRATION_FRAMES_NEEDED = 15;
+    private static final int HISTORY_SIZE = 10;
+    private static final long INTENTIONAL_BLINK_INTERVAL_MS = 1000; // Maximum time between intentional blinks
+    private static final int INTENTIONAL_BLINK_COUNT = 2;   // Number of blinks to consider intentional
+    private static final float DEFAULT_NORMAL_EAR = 0.3f;
+
+    // EAR history
+    private final FloatRingBuffer leftEARHistory = new FloatRingBuffer(HISTORY_SIZE);
+    private final FloatRingBuffer rightEARHistory = new FloatRingBuffer(HISTORY_SIZE);
+
+    // Calibration (running sum over open-eye frames)
+    private double calibrationSum = 0.0;
+    private int calibrationFrames = 0;
+    private boolean calibrated = false;
+
+    // Blink state
+    private boolean blinking = false;
+    private int blinkFrameCount = 0;
+    private int totalBlinks = 0;
+    private long lastBlinkTimestampMs = 0;
+    private boolean hasPreviousBlink = false;
+    private int consecutiveBlinkCount = 0;
+    private int lastIntentionalBlinkCount = 0;
+
+    // Per-frame observations, kept for callers that report them
+    private float lastLeftEAR = 1.0f;
+    private float lastRightEAR = 1.0f;
+    private boolean lastLeftClosed = false;
+    private boolean lastRightClosed = false;
+
+    /**
+     * Calculate the Eye Aspect Ratio from a packed 6-point eye array.
+     * EAR = (||p2-p6|| + ||p3-p5||) / (2 * ||p1-p4||), clamped to [0, 1].
+     *
+     * @param eye    packed coordinates {@code [x0, y0, ..., x5, y5]}
+     * @param offset index of x0 within {@code eye}
+     * @return EAR, or 1.0 (open eye) when the eye width is zero
+     */
+    public static float computeEAR(float[] eye, int offset) {
+        float vertical1 = distance(eye, offset, 1, 5);   // Top left to bottom left
+        float vertical2 = distance(eye, offset, 2, 4);   // Top right to bottom right
+        float horizontal = distance(eye, offset, 0, 3);  // Left corner to right corner
+
+        // Avoid division by zero
+        if (horizontal == 0) {
+            return 1.0f;
+        }
+
+        float ear = (vertical1 + vertical2) / (2 * horizontal);
+        if (ear < 0.0f) {
+            return 0.0f;
+        }
+        return Math.min(ear, 1.0f);
+    }
+
+    private static float distance(float[] eye, int offset, int a, int b) {
+        float dx = eye[offset + 2 * a] - eye[offset + 2 * b];
+        float dy = eye[offset + 2 * a + 1] - eye[offset + 2 * b + 1];
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Feed one frame of packed eye landmarks
+     *
+     * @see #update(float, float, float, float, long)
+     */
+    public int updateWithLandmarks(float[] leftEye, float[] rightEye,
+                                   float leftEyeOpenProbability, float rightEyeOpenProbability,
+                                   long timestampMs) {
+        return update(computeEAR(leftEye, 0), computeEAR(rightEye, 0),
+                leftEyeOpenProbability, rightEyeOpenProbability, timestampMs);
+    }
+
+    /**
+     * Feed one frame of EAR values
+     *
+     * @param leftEAR                 EAR of the left eye
+     * @param rightEAR                EAR of the right eye
+     * @param leftEyeOpenProbability  probability of the left eye being open
+     * @param rightEyeOpenProbability probability of the right eye being open
+     * @param timestampMs             frame timestamp, used for the intentional blink interval
+     * @return bit set of {@link #EVENT_BLINK} / {@link #EVENT_INTENTIONAL_BLINK}, or {@link #EVENT_NONE}
+     */
+    public int update(float leftEAR, float rightEAR,
+                      float leftEyeOpenProbability, float rightEyeOpenProbability,
+                      long timestampMs) {
+        float avgEAR = (leftEAR + rightEAR) / 2.0f;
+
+        lastLeftEAR = leftEAR;
+        lastRightEAR = rightEAR;
+        leftEARHistory.add(leftEAR);
+        rightEARHistory.add(rightEAR);
+
+        if (!calibrated) {
+            calibrate(avgEAR);
+            return EVENT_NONE;
+        }
+
+        lastLeftClosed = leftEAR < EAR_THRESHOLD;
+        lastRightClosed = rightEAR < EAR_THRESHOLD;
+
+        // Use the eye open probability as additional evidence
+        boolean probabilityBlink = leftEyeOpenProbability < OPEN_PROBABILITY_THRESHOLD
+                && rightEyeOpenProbability < OPEN_PROBABILITY_THRESHOLD;
+
+        boolean strongBlinkEvidence = (lastLeftClosed && lastRightClosed)
+                || avgEAR < EAR_THRESHOLD * STRONG_EAR_FACTOR
+                || probabilityBlink;
+
+        return updateBlinkState(strongBlinkEvidence, timestampMs);
+    }
+
+    private void calibrate(float currentEAR) {
+        if (currentEAR > CALIBRATION_MIN_EAR) {
+            calibrationSum += currentEAR;
+            calibrationFrames++;
+            if (calibrationFrames >= CALIBRATION_FRAMES_NEEDED) {
+                calibrated = true;
+            }
+        }
+    }
+
+    private int updateBlinkState(boolean currentlyBlinking, long timestampMs) {
+        if (currentlyBlinking) {
+            if (blinking) {
+                blinkFrameCount++;
+            } else {
+                blinking = true;
+                blinkFrameCount = 1;
+            }
+            return EVENT_NONE;
+        }
+
+        if (!blinking) {
+            return EVENT_NONE;
+        }
+
+        // Blink ended - check if it was a valid blink
+        int events = EVENT_NONE;
+        if (blinkFrameCount >= BLINK_FRAME_THRESHOLD && blinkFrameCount <= MAX_BLINK_DURATION) {
+            totalBlinks++;
+            events = EVENT_BLINK;
+
+            // Check for intentional blink pattern
+            if (hasPreviousBlink && timestampMs - lastBlinkTimestampMs < INTENTIONAL_BLINK_INTERVAL_MS) {
+                consecutiveBlinkCount++;
+                if (consecutiveBlinkCount >= INTENTIONAL_BLINK_COUNT) {
+                    lastIntentionalBlinkCount = consecutiveBlinkCount;
+                    events |= EVENT_INTENTIONAL_BLINK;
+                    consecutiveBlinkCount = 0;
+                }
+            } else {
+                consecutiveBlinkCount = 1;
+            }
+            lastBlinkTimestampMs = timestampMs;
+            hasPreviousBlink = true;
+        }
+
+        blinking = false;
+        blinkFrameCount = 0;
+        return events;
+    }
+
+    public boolean isCalibrated() {
+        return calibrated;
+    }
+
+    public int getCalibrationFrames() {
+        return calibrationFrames;
+    }
+
+    /**
+     * Mean open-eye EAR measured during calibration (0.3 until the first sample)
+     */
+    public float getNormalEAR() {
+        return calibrationFrames == 0 ? DEFAULT_NORMAL_EAR : (float) (calibrationSum / calibrationFrames);
+    }
+
+    /**
+     * Moving average of both eyes' EAR over the last {@value #HISTORY_SIZE} frames
+     */
+    public float getAverageEAR() {
+        return (leftEARHistory.getMean(DEFAULT_NORMAL_EAR) + rightEARHistory.getMean(DEFAULT_NORMAL_EAR)) / 2.0f;
+    }
+
+    public float getLastLeftEAR() {
+        return lastLeftEAR;
+    }
+
+    public float getLastRightEAR() {
+        return lastRightEAR;
+    }
+
+    public boolean isLastLeftClosed() {
+        return lastLeftClosed;
+    }
+
+    public boolean isLastRightClosed() {
+        return lastRightClosed;
+    }
+
+    public boolean isBlinking() {
+        return blinking;
+    }
+
+    public int getTotalBlinks() {
+        return totalBlinks;
+    }
+
+    /**
+     * Blink count reported with the last {@link #EVENT_INTENTIONAL_BLINK}
+     */
+    public int getLastIntentionalBlinkCount() {
+        return lastIntentionalBlinkCount;
+    }
+
+    /**
+     * Reset blink state and history. Calibration is kept, since it describes the user, not the session.
+     */
+    public void reset() {
+        blinking = false;
+        blinkFrameCount = 0;
+        totalBlinks = 0;
+        leftEARHistory.clear();
+        rightEARHistory.clear();
+        consecutiveBlinkCount = 0;
+        lastBlinkTimestampMs = 0;
+        hasPreviousBlink = false;
+        lastIntentionalBlinkCount = 0;
+    }
+
+    /**
+     * Reset everything, including calibration
+     */
+    public void resetCalibration() {
+        reset();
+        calibrationSum = 0.0;
+        calibrationFrames = 0;
+        calibrated = false;
+    }
+}
@@ -0,0 +1,465 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Durable outbox for face embedding uploads (register / update / verify).
+ *
+ * The already-computed embedding is appended to a compact log before it is sent, so a failed or
+ * interrupted upload can be replayed later without the image or the models. Each entry carries an
+ * idempotency key that is sent with every attempt, so a replay of a request the server did receive
+ * is not applied twice.
+ *
+ * Two append-only files under filesDir/face_outbox:
+ * - outbox.log: records of [magic][length][payload][crc32], fsynced on append. A torn or corrupt
+ *   tail (crash mid-write) is cut off on open.
+ * - outbox.ack: 16-byte keys of delivered or dropped entries, fsynced on ack.
+ * Both are truncated once every entry is acked, or rewritten when acked entries dominate.
+ *
+ * An entry is superseded by a later register/update for the same user, or a later verify for the
+ * same request; superseded and expired entries are dropped without being sent, so a stale embedding
+ * never overwrites a newer one. A verify expires with its request window, which is stored with it.
+ * Entries handed out for sending are claimed in memory until acked or released, so the live call
+ * and the background drain never send the same entry at once.
+ *
+ * Thread-safe; use the process-wide instance from {@link #getInstance(Context)}.
+ */
+public final class EmbeddingOutbox {
+    private static final String TAG = "EmbeddingOutbox";
+
+    private static final String DIR_NAME = "face_outbox";
+    private static final String LOG_NAME = "outbox.log";
+    private static final String ACK_NAME = "outbox.ack";
+
+    private static final int RECORD_MAGIC = 0x46454F31; // "FEO1"
+    private static final int MAX_PAYLOAD_BYTES = 64 * 1024;
+    private static final int RECORD_OVERHEAD_BYTES = 12; // magic + length + crc
+    private static final int KEY_BYTES = 16;
+
+    // Entries older than this are dropped instead of sent
+    private static final long MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+    // Verify entries without a stored request expiry (written before it was recorded)
+    private static final long VERIFY_MAX_AGE_MS = 60L * 60 * 1000;
+
+    // Rewrite the log when it is at least this big and mostly acked
+    private static final long COMPACT_MIN_BYTES = 256 * 1024;
+
+    public enum Action {
+        REGISTER,
+        UPDATE,
+        VERIFY
+    }
+
+    /**
+     * One queued upload
+     */
+    public static final class Entry {
+        public final String key;          // Idempotency key, a UUID
+        public final Action action;
+        public final String userId;
+        public final String requestId;    // Verify only, otherwise null
+        public final Float threshold;     // Verify only, may be null
+        public final long createdAtMs;    // Wall clock
+        public final long expiresAtMs;    // Verify only: wall-clock end of the request window, 0 if unknown
+        public final float[] embedding;
+
+        Entry(String key, Action action, String userId, String requestId, Float threshold,
+              long createdAtMs, long expiresAtMs, float[] embedding) {
+            this.key = key;
+            this.action = action;
+            this.userId = userId;
+            this.requestId = requestId;
+            this.threshold = threshold;
+            this.createdAtMs = createdAtMs;
+            this.expiresAtMs = expiresAtMs;
+            this.embedding = embedding;
+        }
+
+        /**
+         * True once sending would be pointless: the request window has closed for a verify, or the
+         * entry is too old
+         */
+        boolean isExpired(long nowMs) {
+            if (action != Action.VERIFY) {
+                return nowMs - createdAtMs > MAX_AGE_MS;
+            }
+            return expiresAtMs > 0 ? nowMs >= expiresAtMs : nowMs - createdAtMs > VERIFY_MAX_AGE_MS;
+        }
+
+        /**
+         * Key an entry is superseded under: one live upload per user for register/update,
+         * one per request for verify
+         */
+        String supersedeKey() {
+            return action == Action.VERIFY ? "verify:" + requestId + ":" + userId : "enroll:" + userId;
+        }
+    }
+
+    private static volatile EmbeddingOutbox instance;
+
+    private final File logFile;
+    private final File ackFile;
+    private final Set<String> claimed = new HashSet<>();
+    private boolean recovered = false;
+
+    public static EmbeddingOutbox getInstance(Context context) {
+        EmbeddingOutbox outbox = instance;
+        if (outbox == null) {
+            synchronized (EmbeddingOutbox.class) {
+                outbox = instance;
+                if (outbox == null) {
+                    outbox = new EmbeddingOutbox(new File(context.getApplicationContext().getFilesDir(), DIR_NAME));
+                    instance = outbox;
+                }
+            }
+        }
+        return outbox;
+    }
+
+    EmbeddingOutbox(File dir) {
+        this.logFile = new File(dir, LOG_NAME);
+        this.ackFile = new File(dir, ACK_NAME);
+    }
+
+    /**
+     * Persist an upload and claim it for the caller, who must {@link #ack(String)} or
+     * {@link #release(String)} it once the live attempt is over
+     *
+     * @param requestId   Verify only, otherwise null
+     * @param threshold   Verify only, may be null
+     * @param expiresAtMs Verify only: wall-clock end of the request window, after which the entry is
+     *                    dropped unsent; 0 if unknown
+     */
+    public synchronized Entry append(Action action, String userId, String requestId, Float threshold,
+                                     long expiresAtMs, float[] embedding) throws IOException {
+        recoverIfNeeded();
+        Entry entry = new Entry(UUID.randomUUID().toString(), action, userId, requestId, threshold,
+                System.currentTimeMillis(), expiresAtMs, embedding.clone());
+        byte[] payload = encode(entry);
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(payload.length + RECORD_OVERHEAD_BYTES);
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeInt(RECORD_MAGIC);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt(crcOf(payload));
+        out.flush();
+
+        appendDurably(logFile, record.toByteArray());
+        claimed.add(entry.key);
+        return entry;
+    }
+
+    /**
+     * Mark an entry delivered (or permanently rejected) so it is never sent again
+     */
+    public synchronized void ack(String key) throws IOException {
+        claimed.remove(key);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(KEY_BYTES);
+        DataOutputStream out = new DataOutputStream(bytes);
+        UUID uuid = UUID.fromString(key);
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+        out.flush();
+        appendDurably(ackFile, bytes.toByteArray());
+        compactIfNeeded();
+    }
+
+    /**
+     * Give a claimed entry back to the queue after a failed attempt
+     */
+    public synchronized void release(String key) {
+        claimed.remove(key);
+    }
+
+    /**
+     * Claim up to max of the oldest pending entries for sending. Superseded and expired entries are
+     * acked on the way and never returned.
+     */
+    public synchronized List<Entry> claimPending(int max) throws IOException {
+        recoverIfNeeded();
+        List<Entry> all = readEntries();
+        Set<String> acked = readAcks();
+        Map<String, String> newest = newestBySupersedeKey(all);
+
+        long now = System.currentTimeMillis();
+        List<Entry> batch = new ArrayList<>();
+        for (Entry entry : all) {
+            if (acked.contains(entry.key) || claimed.contains(entry.key)) {
+                continue;
+            }
+            if (!entry.key.equals(newest.get(entry.supersedeKey()))) {
+                Log.d(TAG, "🗑️ Dropping superseded " + entry.action + " for user " + entry.userId);
+                ack(entry.key);
+                continue;
+            }
+            if (entry.isExpired(now)) {
+                Log.w(TAG, "🗑️ Dropping expired " + entry.action + " for user " + entry.userId);
+                ack(entry.key);
+                continue;
+            }
+            if (batch.size() < max) {
+                claimed.add(entry.key);
+                batch.add(entry);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Entries neither acked nor currently being sent
+     */
+    public synchronized int pendingCount() throws IOException {
+        recoverIfNeeded();
+        Set<String> acked = readAcks();
+        int pending = 0;
+        for (Entry entry : readEntries()) {
+            if (!acked.contains(entry.key) && !claimed.contains(entry.key)) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    // ===== Files =====
+
+    /**
+     * The newest entry per supersede key wins, whether or not it was already delivered
+     */
+    private static Map<String, String> newestBySupersedeKey(List<Entry> entries) {
+        Map<String, String> newest = new HashMap<>();
+        for (Entry entry : entries) {
+            newest.put(entry.supersedeKey(), entry.key);
+        }
+        return newest;
+    }
+
+    private void recoverIfNeeded() throws IOException {
+        if (recovered) {
+            return;
+        }
+        recovered = true;
+        File dir = logFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        // Cut a torn record left by a crash, so later appends stay readable
+        long valid = scanValidLength();
+        if (logFile.exists() && valid < logFile.length()) {
+            Log.w(TAG, "⚠️ Truncating torn outbox tail: " + (logFile.length() - valid) + " bytes");
+            truncate(logFile, valid);
+        }
+        if (ackFile.exists() && ackFile.length() % KEY_BYTES != 0) {
+            truncate(ackFile, ackFile.length() - ackFile.length() % KEY_BYTES);
+        }
+    }
+
+    private long scanValidLength() throws IOException {
+        if (!logFile.exists()) {
+            return 0;
+        }
+        long valid = 0;
+        try (DataInputStream in = openForRead(logFile)) {
+            byte[] payload;
+            while ((payload = readPayload(in)) != null) {
+                valid += RECORD_OVERHEAD_BYTES + payload.length;
+            }
+        }
+        return valid;
+    }
+
+    private List<Entry> readEntries() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!logFile.exists()) {
+            return entries;
+        }
+        try (DataInputStream in = openForRead(logFile)) {
+            byte[] payload;
+            while ((payload = readPayload(in)) != null) {
+                entries.add(decode(payload));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Payload of the next valid record, or null at the end of the log or at the first torn / corrupt record
+     */
+    private static byte[] readPayload(DataInputStream in) throws IOException {
+        try {
+            if (in.readInt() != RECORD_MAGIC) {
+                return null;
+            }
+            int length = in.readInt();
+            if (length <= 0 || length > MAX_PAYLOAD_BYTES) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            if (in.readInt() != crcOf(payload)) {
+                return null;
+            }
+            return payload;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private Set<String> readAcks() throws IOException {
+        Set<String> acked = new HashSet<>();
+        if (!ackFile.exists()) {
+            return acked;
+        }
+        try (DataInputStream in = openForRead(ackFile)) {
+            long count = ackFile.length() / KEY_BYTES;
+            for (long i = 0; i < count; i++) {
+                acked.add(new UUID(in.readLong(), in.readLong()).toString());
+            }
+        }
+        return acked;
+    }
+
+    /**
+     * Truncate both files when everything is acked; rewrite the log with only pending entries when it
+     * is large and mostly acked. The log is replaced before the ack file is cleared, so a crash in
+     * between leaves stale acks for keys that no longer exist, which is harmless.
+     */
+    private void compactIfNeeded() throws IOException {
+        List<Entry> all = readEntries();
+        Set<String> acked = readAcks();
+        Map<String, String> newest = newestBySupersedeKey(all);
+        // Superseded entries go too: once their newer entry is removed, nothing else would stop them
+        List<Entry> pending = new ArrayList<>();
+        for (Entry entry : all) {
+            if (!acked.contains(entry.key) && entry.key.equals(newest.get(entry.supersedeKey()))) {
+                pending.add(entry);
+            }
+        }
+        if (pending.isEmpty()) {
+            truncate(logFile, 0);
+            truncate(ackFile, 0);
+            return;
+        }
+        if (logFile.length() < COMPACT_MIN_BYTES || pending.size() * 2 > all.size()) {
+            return;
+        }
+
+        File tmp = new File(logFile.getParentFile(), LOG_NAME + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            for (Entry entry : pending) {
+                byte[] payload = encode(entry);
+                out.writeInt(RECORD_MAGIC);
+                out.writeInt(payload.length);
+                out.write(payload);
+                out.writeInt(crcOf(payload));
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(logFile)) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            throw new IOException("Cannot replace " + logFile);
+        }
+        truncate(ackFile, 0);
+        Log.d(TAG, "🧹 Outbox compacted: " + (all.size() - pending.size()) + " acked entries removed");
+    }
+
+    private static DataInputStream openForRead(File file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    private static void appendDurably(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(file, true)) {
+            fos.write(bytes);
+            fos.getFD().sync();
+        }
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+            raf.getFD().sync();
+        }
+    }
+
+    // ===== Encoding =====
+
+    private static byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entry.embedding.length * 4);
+        DataOutputStream out = new DataOutputStream(bytes);
+        UUID uuid = UUID.fromString(entry.key);
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+        out.writeByte(entry.action.ordinal());
+        out.writeLong(entry.createdAtMs);
+        out.writeUTF(entry.userId);
+        out.writeUTF(entry.requestId != null ? entry.requestId : "");
+        out.writeFloat(entry.threshold != null ? entry.threshold : Float.NaN);
+        out.writeInt(entry.embedding.length);
+        for (float value : entry.embedding) {
+            out.writeFloat(value);
+        }
+        // Last, so records written before it was stored still decode
+        out.writeLong(entry.expiresAtMs);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Entry decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        String key = new UUID(in.readLong(), in.readLong()).toString();
+        int actionIndex = in.readUnsignedByte();
+        if (actionIndex >= Action.values().length) {
+            throw new IOException("Unknown outbox action " + actionIndex);
+        }
+        Action action = Action.values()[actionIndex];
+        long createdAtMs = in.readLong();
+        String userId = in.readUTF();
+        String requestId = in.readUTF();
+        float threshold = in.readFloat();
+        int length = in.readInt();
+        if (length < 0 || length * 4 > payload.length) {
+            throw new IOException("Bad embedding length " + length);
+        }
+        float[] embedding = new float[length];
+        for (int i = 0; i < length; i++) {
+            embedding[i] = in.readFloat();
+        }
+        long expiresAtMs = in.available() >= 8 ? in.readLong() : 0L;
+        return new Entry(key, action, userId, requestId.isEmpty() ? null : requestId,
+                Float.isNaN(threshold) ? null : threshold, createdAtMs, expiresAtMs, embedding);
+    }
+
+    private static int crcOf(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+}
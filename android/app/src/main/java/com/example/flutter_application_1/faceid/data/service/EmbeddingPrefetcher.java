@@ -0,0 +1,204 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.flutter_application_1.faceid.util.EmbeddingSlot;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+/**
+ * Computes the verification embedding ahead of time, while the user is still positioning.
+ *
+ * The request manager wakes it when a verification request is announced. From then on, frames judged a
+ * high-confidence real face in the oval are offered, and any other frame discards what is held or
+ * being embedded, so a held embedding never outlives a spoof verdict; at most one is embedded at a time,
+ * no more often than MIN_EMBED_INTERVAL_MS, and the freshest good embedding is held in a short-TTL
+ * {@link EmbeddingSlot}. When the user submits, {@link #take(String)} hands it over and the submit is
+ * a network call only. Press-to-result times are kept apart for prefetched and cold submits.
+ */
+public class EmbeddingPrefetcher {
+    private static final String TAG = "EmbeddingPrefetcher";
+
+    // A captured embedding is usable this long; older means the user may have moved or left
+    private static final long SLOT_TTL_MS = 3000;
+    private static final float QUALITY_SLACK = 0.05f;
+    private static final long MIN_EMBED_INTERVAL_MS = 500;
+    private static final float MIN_QUALITY = 0.5f;
+
+    /**
+     * Embedding model call, run on the prefetcher's executor
+     */
+    public interface Embedder {
+        float[] embed(Bitmap faceBitmap) throws Exception;
+    }
+
+    public static final class Stats {
+        public final int embedsRun;         // Embeddings computed ahead of time
+        public final int hits;              // Submits served from the slot
+        public final int misses;            // Submits that had to embed first
+        public final float meanPrefetchedMs; // Press to server result, prefetched submits
+        public final float meanColdMs;       // Press to server result, cold submits
+
+        Stats(int embedsRun, int hits, int misses, float meanPrefetchedMs, float meanColdMs) {
+            this.embedsRun = embedsRun;
+            this.hits = hits;
+            this.misses = misses;
+            this.meanPrefetchedMs = meanPrefetchedMs;
+            this.meanColdMs = meanColdMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "embeds=%d hits=%d misses=%d pressToResult prefetched=%.0fms cold=%.0fms",
+                    embedsRun, hits, misses, meanPrefetchedMs, meanColdMs);
+        }
+    }
+
+    private final Executor executor;
+    private final Embedder embedder;
+
+    // Guarded by this
+    private final EmbeddingSlot slot = new EmbeddingSlot(SLOT_TTL_MS, QUALITY_SLACK);
+    private String requestId;          // Awake for this request; null while asleep
+    private long expirationTime;       // Wall-clock expiry of the request
+    private boolean embedInFlight = false;
+    private long lastEmbedStartMs = -MIN_EMBED_INTERVAL_MS;
+    private long discardedAtMs = Long.MIN_VALUE; // Embeddings of frames captured up to here are dropped
+    private int embedsRun;
+    private int hits;
+    private int misses;
+    private int prefetchedSubmits;
+    private long prefetchedTotalMs;
+    private int coldSubmits;
+    private long coldTotalMs;
+
+    public EmbeddingPrefetcher(Executor executor, Embedder embedder) {
+        this.executor = executor;
+        this.embedder = embedder;
+    }
+
+    /**
+     * Start prefetching for a request; drops anything held for a previous one
+     *
+     * @param expirationTime Wall-clock expiry (ms); prefetching stops by itself after it
+     */
+    public synchronized void wake(String requestId, long expirationTime) {
+        if (!requestId.equals(this.requestId)) {
+            slot.clear();
+        }
+        this.requestId = requestId;
+        this.expirationTime = expirationTime;
+        Log.d(TAG, "⚡ Prefetch awake for request " + requestId);
+    }
+
+    /**
+     * Stop prefetching and drop the held embedding
+     */
+    public synchronized void sleep() {
+        if (requestId == null) {
+            return;
+        }
+        Log.d(TAG, "💤 Prefetch asleep for request " + requestId + ": " + getStats());
+        requestId = null;
+        slot.clear();
+    }
+
+    public synchronized boolean isAwake() {
+        return requestId != null && System.currentTimeMillis() < expirationTime;
+    }
+
+    /**
+     * Offer a frame judged a high-confidence real face in the oval
+     *
+     * @param quality Confidence that the frame shows a real, well-placed face, 0..1
+     * @return true if the frame is being embedded
+     */
+    public boolean offer(Bitmap faceBitmap, float quality) {
+        final String forRequest;
+        final long capturedAtMs = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            if (!isAwake() || embedInFlight || quality < MIN_QUALITY
+                    || capturedAtMs - lastEmbedStartMs < MIN_EMBED_INTERVAL_MS
+                    || !slot.wouldAccept(quality, capturedAtMs)) {
+                return false;
+            }
+            embedInFlight = true;
+            lastEmbedStartMs = capturedAtMs;
+            forRequest = requestId;
+        }
+
+        executor.execute(() -> {
+            float[] embedding = null;
+            try {
+                embedding = embedder.embed(faceBitmap);
+            } catch (Exception e) {
+                Log.w(TAG, "Prefetch embedding failed", e);
+            }
+            synchronized (EmbeddingPrefetcher.this) {
+                embedInFlight = false;
+                if (embedding == null || embedding.length == 0 || !forRequest.equals(requestId)
+                        || capturedAtMs <= discardedAtMs) {
+                    return;
+                }
+                embedsRun++;
+                slot.offer(embedding, quality, capturedAtMs, SystemClock.elapsedRealtime());
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Drop the held embedding and the result of any embed in flight, after a frame that was not a
+     * high-confidence real face (spoof, uncertain, no face, several faces, outside the oval)
+     */
+    public synchronized void discard() {
+        slot.clear();
+        discardedAtMs = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Hand over the held embedding for a submit; each embedding is used at most once
+     *
+     * @return The embedding, or null if none is fresh enough (the caller embeds the frame itself)
+     */
+    public synchronized float[] take(String requestId) {
+        long now = SystemClock.elapsedRealtime();
+        float[] embedding = null;
+        if (requestId != null && requestId.equals(this.requestId)) {
+            long ageMs = slot.getAgeMs(now);
+            embedding = slot.take(now);
+            if (embedding != null) {
+                Log.d(TAG, "⚡ Prefetched embedding used, " + ageMs + "ms old");
+            }
+        }
+        if (embedding != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return embedding;
+    }
+
+    /**
+     * Record the time from the user's submit to the server result
+     */
+    public synchronized void recordPressToResult(long elapsedMs, boolean prefetched) {
+        if (prefetched) {
+            prefetchedSubmits++;
+            prefetchedTotalMs += elapsedMs;
+        } else {
+            coldSubmits++;
+            coldTotalMs += elapsedMs;
+        }
+        Log.d(TAG, "⏱️ Press to result: " + elapsedMs + "ms (" + (prefetched ? "prefetched" : "cold") + ")");
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(embedsRun, hits, misses,
+                prefetchedSubmits > 0 ? (float) prefetchedTotalMs / prefetchedSubmits : 0f,
+                coldSubmits > 0 ? (float) coldTotalMs / coldSubmits : 0f);
+    }
+}
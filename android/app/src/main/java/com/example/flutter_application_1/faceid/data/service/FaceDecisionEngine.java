@@ -11,6 +11,18 @@ import android.util.Log;
 public class FaceDecisionEngine {
     private static final String TAG = "FaceDecisionEngine";
     
+    private static final boolean VERBOSE_LOGGING = false;
+    
+    // One immutable result per reason, so the per-frame path never allocates
+    private static final FaceDecisionResult[] RESULTS;
+    static {
+        DecisionReason[] reasons = DecisionReason.values();
+        RESULTS = new FaceDecisionResult[reasons.length];
+        for (DecisionReason reason : reasons) {
+            RESULTS[reason.ordinal()] = new FaceDecisionResult(reason.getType(), null, reason);
+        }
+    }
+    
     private final FaceDecisionConfig config;
     
     public FaceDecisionEngine(FaceDecisionConfig config) {
@@ -23,79 +35,64 @@ public class FaceDecisionEngine {
     public FaceDecisionResult evaluate(FaceDetectionResult detection, 
                                      SpoofDetectionResult spoof, 
                                      OvalValidationResult oval) {
-        Log.d(TAG, "Evaluating face decision - Detection: " + detection + 
-              ", Spoof: " + spoof + ", Oval: " + oval);
-        
+        if (VERBOSE_LOGGING) {
+            Log.d(TAG, "Evaluating face decision - Detection: " + detection + 
+                  ", Spoof: " + spoof + ", Oval: " + oval);
+        }
+        return evaluate(spoof.isSpoof(), spoof.getConfidence(), oval != null, oval != null && oval.isValid());
+    }
+    
+    /**
+     * Per-frame evaluation on primitive inputs. Allocation-free: returns a shared, immutable result
+     * whose message is only looked up when the UI asks for it.
+     *
+     * @param isSpoof         Spoof model verdict
+     * @param spoofConfidence Confidence of that verdict
+     * @param ovalChecked     Whether an oval validation was performed
+     * @param ovalValid       Result of the oval validation (ignored if not checked)
+     */
+    public FaceDecisionResult evaluate(boolean isSpoof, float spoofConfidence, boolean ovalChecked, boolean ovalValid) {
+        return RESULTS[decide(isSpoof, spoofConfidence, ovalChecked, ovalValid).ordinal()];
+    }
+    
+    private DecisionReason decide(boolean isSpoof, float confidence, boolean ovalChecked, boolean ovalValid) {
         // Check if face is properly positioned
-        if (oval != null && !oval.isValid()) {
-            return new FaceDecisionResult(
-                DecisionType.REJECT,
-                "Please position your face within the oval guide",
-                DecisionReason.OVAL_VIOLATION
-            );
+        if (ovalChecked && !ovalValid) {
+            return DecisionReason.OVAL_VIOLATION;
         }
         
         // High confidence real face - trust the model
-        if (spoof.getConfidence() >= config.getHighConfidenceThreshold() && !spoof.isSpoof()) {
-            return new FaceDecisionResult(
-                DecisionType.ACCEPT,
-                "High confidence real face detected",
-                DecisionReason.HIGH_CONFIDENCE_REAL
-            );
+        if (confidence >= config.getHighConfidenceThreshold() && !isSpoof) {
+            return DecisionReason.HIGH_CONFIDENCE_REAL;
         }
         
         // Strong spoof detected - reject immediately
-        if (spoof.isSpoof() && spoof.getConfidence() >= config.getStrongSpoofThreshold()) {
-            return new FaceDecisionResult(
-                DecisionType.REJECT,
-                "Spoof detected! Please use a real face.",
-                DecisionReason.STRONG_SPOOF
-            );
+        if (isSpoof && confidence >= config.getStrongSpoofThreshold()) {
+            return DecisionReason.STRONG_SPOOF;
         }
         
         // Medium confidence real face - more lenient
-        if (!spoof.isSpoof() && spoof.getConfidence() >= config.getMediumConfidenceThreshold()) {
-            return new FaceDecisionResult(
-                DecisionType.ACCEPT,
-                "Real face detected with acceptable confidence",
-                DecisionReason.MEDIUM_CONFIDENCE_REAL
-            );
+        if (!isSpoof && confidence >= config.getMediumConfidenceThreshold()) {
+            return DecisionReason.MEDIUM_CONFIDENCE_REAL;
         }
         
         // Face within oval but low spoof confidence - allow with caution
-        if (oval != null && oval.isValid() && spoof.isSpoof() && 
-            spoof.getConfidence() < config.getLowSpoofThreshold()) {
-            return new FaceDecisionResult(
-                DecisionType.ACCEPT,
-                "Face within oval, allowing despite low spoof confidence",
-                DecisionReason.OVAL_COMPLIANT_LOW_SPOOF
-            );
+        if (ovalChecked && isSpoof && confidence < config.getLowSpoofThreshold()) {
+            return DecisionReason.OVAL_COMPLIANT_LOW_SPOOF;
         }
         
         // Low confidence cases - provide guidance
-        if (spoof.getConfidence() < config.getLowConfidenceThreshold()) {
-            return new FaceDecisionResult(
-                DecisionType.GUIDANCE,
-                "Low confidence detection - please improve lighting and position",
-                DecisionReason.LOW_CONFIDENCE
-            );
+        if (confidence < config.getLowConfidenceThreshold()) {
+            return DecisionReason.LOW_CONFIDENCE;
         }
         
         // Uncertain cases - give benefit of doubt if within oval
-        if (oval != null && oval.isValid()) {
-            return new FaceDecisionResult(
-                DecisionType.ACCEPT,
-                "Unclear verification but face properly positioned - proceeding",
-                DecisionReason.OVAL_COMPLIANT_UNCLEAR
-            );
+        if (ovalChecked) {
+            return DecisionReason.OVAL_COMPLIANT_UNCLEAR;
         }
         
         // Default rejection
-        return new FaceDecisionResult(
-            DecisionType.REJECT,
-            "Please position your face properly within the oval.",
-            DecisionReason.DEFAULT_REJECTION
-        );
+        return DecisionReason.DEFAULT_REJECTION;
     }
     
     /**
@@ -219,7 +216,8 @@ public class FaceDecisionEngine {
         }
         
         public DecisionType getType() { return type; }
-        public String getMessage() { return message; }
+        /** User-facing message; defaults to the reason's message */
+        public String getMessage() { return message != null ? message : reason.getMessage(); }
         public DecisionReason getReason() { return reason; }
         
         public boolean isAccepted() { return type == DecisionType.ACCEPT; }
@@ -229,7 +227,7 @@ public class FaceDecisionEngine {
         @Override
         public String toString() {
             return "FaceDecisionResult{type=" + type + 
-                   ", message='" + message + "', reason=" + reason + "}";
+                   ", message='" + getMessage() + "', reason=" + reason + "}";
         }
     }
     
@@ -243,16 +241,27 @@ public class FaceDecisionEngine {
     }
     
     /**
-     * Decision reasons
+     * Decision reasons, each with its decision type and user-facing message
      */
     public enum DecisionReason {
-        HIGH_CONFIDENCE_REAL,
-        MEDIUM_CONFIDENCE_REAL,
-        STRONG_SPOOF,
-        OVAL_VIOLATION,
-        OVAL_COMPLIANT_LOW_SPOOF,
-        OVAL_COMPLIANT_UNCLEAR,
-        LOW_CONFIDENCE,
-        DEFAULT_REJECTION
+        HIGH_CONFIDENCE_REAL(DecisionType.ACCEPT, "High confidence real face detected"),
+        MEDIUM_CONFIDENCE_REAL(DecisionType.ACCEPT, "Real face detected with acceptable confidence"),
+        STRONG_SPOOF(DecisionType.REJECT, "Spoof detected! Please use a real face."),
+        OVAL_VIOLATION(DecisionType.REJECT, "Please position your face within the oval guide"),
+        OVAL_COMPLIANT_LOW_SPOOF(DecisionType.ACCEPT, "Face within oval, allowing despite low spoof confidence"),
+        OVAL_COMPLIANT_UNCLEAR(DecisionType.ACCEPT, "Unclear verification but face properly positioned - proceeding"),
+        LOW_CONFIDENCE(DecisionType.GUIDANCE, "Low confidence detection - please improve lighting and position"),
+        DEFAULT_REJECTION(DecisionType.REJECT, "Please position your face properly within the oval.");
+        
+        private final DecisionType type;
+        private final String message;
+        
+        DecisionReason(DecisionType type, String message) {
+            this.type = type;
+            this.message = message;
+        }
+        
+        public DecisionType getType() { return type; }
+        public String getMessage() { return message; }
     }
 } 
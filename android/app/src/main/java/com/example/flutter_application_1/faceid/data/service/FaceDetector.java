@@ -3,9 +3,11 @@ package com.example.flutter_application_1.faceid.data.service;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Rect;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.example.flutter_application_1.BuildConfig;
+import com.example.flutter_application_1.faceid.util.StageLatencyRecorder;
 import com.google.mediapipe.tasks.vision.facedetector.FaceDetectorResult;
 import com.google.mediapipe.tasks.vision.facedetector.FaceDetector.FaceDetectorOptions;
 import com.google.mediapipe.tasks.vision.core.RunningMode;
@@ -31,6 +33,7 @@ public class FaceDetector {
     // Target minimum dimension (shorter side) for stable detector input across devices
     private static final int DETECT_TARGET_MIN_DIMENSION = 640;
     private static final int DETECT_MIN_ALLOWED_DIMENSION = 320;
+    private static final int WARMUP_IMAGE_SIZE = 128;
     
     private final Context context;
     private com.google.mediapipe.tasks.vision.facedetector.FaceDetector detector;
@@ -39,6 +42,8 @@ public class FaceDetector {
     private final CountDownLatch initLatch = new CountDownLatch(1);
     private volatile float minDetectionConfidence = 0.5f;
     private volatile float minSuppressionThreshold = 0.3f;
+    private volatile long loadTimeMs = 0;
+    private volatile long warmupTimeMs = 0;
     
     public static class FaceDetectionResult {
         private final Bitmap croppedBitmap;
@@ -64,6 +69,7 @@ public class FaceDetector {
         // Khởi tạo model bất đồng bộ
         executor.execute(() -> {
             try {
+                long loadStart = SystemClock.elapsedRealtime();
                 // Initialize MediaPipe face detector
                 FaceDetectorOptions options = FaceDetectorOptions.builder()
                         .setBaseOptions(
@@ -75,9 +81,17 @@ public class FaceDetector {
                         .setMinSuppressionThreshold(minSuppressionThreshold)
                         .build();
                 detector = com.google.mediapipe.tasks.vision.facedetector.FaceDetector.createFromOptions(context, options);
+                loadTimeMs = SystemClock.elapsedRealtime() - loadStart;
+                
+                // Warm up so the first real frame does not pay for graph setup
+                long warmupStart = SystemClock.elapsedRealtime();
+                Bitmap warmupBitmap = Bitmap.createBitmap(WARMUP_IMAGE_SIZE, WARMUP_IMAGE_SIZE, Bitmap.Config.ARGB_8888);
+                runDetection(warmupBitmap);
+                warmupBitmap.recycle();
+                warmupTimeMs = SystemClock.elapsedRealtime() - warmupStart;
                 
                 isInitialized = true;
-                Log.d(TAG, "Face detector initialized successfully");
+                Log.d(TAG, "Face detector initialized successfully (load " + loadTimeMs + "ms, warm-up " + warmupTimeMs + "ms)");
             } catch (Exception e) {
                 Log.e(TAG, "Error initializing face detector", e);
             } finally {
@@ -104,12 +118,29 @@ public class FaceDetector {
         initLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
     }
     
+    public long getLoadTimeMs() {
+        return loadTimeMs;
+    }
+    
+    public long getWarmupTimeMs() {
+        return warmupTimeMs;
+    }
+    
     /**
      * Detect faces in the given bitmap
      * @param bitmap Input bitmap
      * @return List of face detection results
      */
     public List<FaceDetectionResult> detectFaces(Bitmap bitmap) {
+        long startNanos = System.nanoTime();
+        try {
+            return detectFacesInternal(bitmap);
+        } finally {
+            StageLatencyRecorder.getInstance().record(StageLatencyRecorder.Stage.DETECT, startNanos, System.nanoTime());
+        }
+    }
+
+    private List<FaceDetectionResult> detectFacesInternal(Bitmap bitmap) {
         if (BuildConfig.DEBUG) {
             if (bitmap.getWidth() < 100 || bitmap.getHeight() < 100) {
             }
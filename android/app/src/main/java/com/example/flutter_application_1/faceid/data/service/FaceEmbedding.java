@@ -5,11 +5,14 @@ import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 
+import com.example.flutter_application_1.faceid.util.InterpreterAutotuner;
+import com.example.flutter_application_1.faceid.util.StageLatencyRecorder;
 
 import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.gpu.GpuDelegate;
@@ -20,7 +23,6 @@ import org.tensorflow.lite.support.image.TensorImage;
 import org.tensorflow.lite.support.image.ops.ResizeOp;
 import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
@@ -46,6 +48,7 @@ public class FaceEmbedding {
     private static final int EMBEDDING_DIM = 512;
     
     private Interpreter interpreter;
+    private TFLiteDelegateManager.Handle interpreterHandle; // Owns the interpreter and its delegate
     private ImageProcessor imageProcessor;
     private boolean useMockEmbedding = false;
     private final Random random = new Random();
@@ -55,6 +58,8 @@ public class FaceEmbedding {
     
     private volatile boolean isInitialized = false;
     private final CountDownLatch initLatch = new CountDownLatch(1);
+    private volatile long loadTimeMs = 0;
+    private volatile long warmupTimeMs = 0;
     
     public FaceEmbedding(Context context) {
         this.context = context.getApplicationContext();
@@ -62,20 +67,16 @@ public class FaceEmbedding {
         // Khởi tạo model bất đồng bộ
         executor.execute(() -> {
             try {
-                // Log thông tin về assets để debug
-                logAssetsContent(context);
-                
                 try {
                     Log.d(TAG, "Loading FaceNet model...");
-                    
-                    // Initialize TFLiteInterpreter
-                    Interpreter.Options interpreterOptions = TFLiteGpuDelegateManager.getInstance().getInterpreterOptions();
+                    long loadStart = SystemClock.elapsedRealtime();
                     
                     // Tải model từ assets
                     MappedByteBuffer modelBuffer = FileUtil.loadMappedFile(context, MODEL_FILE);
                     
-                    // Tạo interpreter
-                    interpreter = new Interpreter(modelBuffer, interpreterOptions);
+                    // Tạo interpreter with the delegate / thread count tuned for this device
+                    interpreterHandle = InterpreterAutotuner.createInterpreter(context, MODEL_FILE, modelBuffer, null);
+                    interpreter = interpreterHandle.getInterpreter();
                     
                     // Image processor cho tiền xử lý
                     imageProcessor = new ImageProcessor.Builder()
@@ -83,11 +84,18 @@ public class FaceEmbedding {
                             .add(new StandardizeOp())
                             .build();
                     
+                    loadTimeMs = SystemClock.elapsedRealtime() - loadStart;
                     Log.d(TAG, "Loaded FaceNet model successfully");
                     
                     // Kiểm tra model
                     inspectModel();
                     
+                    // Warm up so the first embedding does not pay for tensor allocation and delegate setup
+                    long warmupStart = SystemClock.elapsedRealtime();
+                    interpreter.run(new float[1][IMG_SIZE][IMG_SIZE][3], new float[1][EMBEDDING_DIM]);
+                    warmupTimeMs = SystemClock.elapsedRealtime() - warmupStart;
+                    Log.d(TAG, "FaceNet ready (load " + loadTimeMs + "ms, warm-up " + warmupTimeMs + "ms)");
+                    
                     isInitialized = true;
                 } catch (Exception e) {
                     Log.e(TAG, "Error initializing TensorFlow Lite model: " + e.getMessage(), e);
@@ -116,25 +124,12 @@ public class FaceEmbedding {
         initLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
     }
     
-    private void logAssetsContent(Context context) {
-        try {
-            String[] files = context.getAssets().list("");
-            Log.d(TAG, "Assets directory content: " + Arrays.toString(files));
-            
-            // Kiểm tra chi tiết về các file model
-            for (String file : files) {
-                if (file.endsWith(".tflite")) {
-                    try {
-                        MappedByteBuffer buffer = FileUtil.loadMappedFile(context, file);
-                        Log.d(TAG, "Model file: " + file + ", size: " + buffer.capacity() + " bytes");
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error inspecting model file " + file + ": " + e.getMessage(), e);
-                    }
-                }
-            }
-        } catch (IOException e) {
-            Log.e(TAG, "Error listing assets directory: " + e.getMessage(), e);
-        }
+    public long getLoadTimeMs() {
+        return loadTimeMs;
+    }
+    
+    public long getWarmupTimeMs() {
+        return warmupTimeMs;
     }
     
     /**
@@ -177,6 +172,15 @@ public class FaceEmbedding {
      * @return Embedding as float array
      */
     public float[] getFaceEmbedding(Bitmap bitmap) {
+        long startNanos = System.nanoTime();
+        try {
+            return computeFaceEmbedding(bitmap);
+        } finally {
+            StageLatencyRecorder.getInstance().record(StageLatencyRecorder.Stage.EMBED, startNanos, System.nanoTime());
+        }
+    }
+
+    private float[] computeFaceEmbedding(Bitmap bitmap) {
         // Nếu đang sử dụng mock embedding hoặc interpreter không được khởi tạo, tạo một embedding ngẫu nhiên nhưng nhất quán
         if (useMockEmbedding || interpreter == null || imageProcessor == null) {
             Log.d(TAG, "Using mock face embedding");
@@ -301,8 +305,8 @@ public class FaceEmbedding {
      * Release resources
      */
     public void close() {
-        if (interpreter != null) {
-            interpreter.close();
+        if (interpreterHandle != null) {
+            interpreterHandle.close();
         }
     }
 
@@ -0,0 +1,344 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.flutter_application_1.faceid.data.api.EmbeddingRequestBody;
+import com.example.flutter_application_1.faceid.data.api.FaceIdApiController;
+import com.example.flutter_application_1.faceid.data.model.response.FaceIdBatchVerifyResponse;
+import com.example.flutter_application_1.faceid.data.model.response.FaceIdVerifyResponse;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Kiosk-mode verification: one device verifies a queue of users against the same request.
+ *
+ * Embeddings are collected and sent as one multipart upload to the batch endpoint when maxBatchSize
+ * items are waiting or maxDelayMs after the first one arrived, whichever comes first, so a queue of
+ * students costs one round trip per batch instead of one per student. Results come back per item.
+ * Batches are sent asynchronously; the next one can fill while the previous is in flight.
+ *
+ * If the backend has no batch endpoint (404/405/501), every item is sent through the single verify
+ * endpoint instead, for the rest of the session. Works against any {@link FaceIdApiController}, e.g.
+ * a Retrofit built on a MockWebServer URL, and keeps throughput stats (students per minute).
+ */
+public class FaceIdBatchVerifier {
+    private static final String TAG = "FaceIdBatchVerifier";
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 8;
+    public static final long DEFAULT_MAX_DELAY_MS = 1500;
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final MediaType TEXT = MediaType.parse("text/plain");
+
+    public interface ItemCallback {
+        /** Called on a background thread with the server's result for this item */
+        void onResult(FaceIdBatchVerifyResponse.Item result);
+
+        /** Called on a background thread when the item could not be verified (network, HTTP error) */
+        void onError(String error);
+    }
+
+    /**
+     * Throughput of the session so far
+     */
+    public static final class Stats {
+        public final int submitted;
+        public final int completed;          // Items with a result or an error
+        public final int batches;            // Batch uploads sent (single fallbacks not counted)
+        public final float meanLatencyMs;    // Submit to result, over completed items
+        public final float studentsPerMinute; // Completed items over first submit to last completion
+
+        Stats(int submitted, int completed, int batches, float meanLatencyMs, float studentsPerMinute) {
+            this.submitted = submitted;
+            this.completed = completed;
+            this.batches = batches;
+            this.meanLatencyMs = meanLatencyMs;
+            this.studentsPerMinute = studentsPerMinute;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "submitted=%d completed=%d batches=%d meanLatency=%.0fms throughput=%.1f/min",
+                    submitted, completed, batches, meanLatencyMs, studentsPerMinute);
+        }
+    }
+
+    private static final class PendingItem {
+        final String itemId;
+        final String userId;
+        final float[] embedding;
+        final ItemCallback callback;
+        final long submittedAtMs;
+
+        PendingItem(String itemId, String userId, float[] embedding, ItemCallback callback, long submittedAtMs) {
+            this.itemId = itemId;
+            this.userId = userId;
+            this.embedding = embedding;
+            this.callback = callback;
+            this.submittedAtMs = submittedAtMs;
+        }
+    }
+
+    private final FaceIdApiController apiController;
+    private final ScheduledExecutorService scheduler;
+    private final String requestId;
+    private final Float threshold;
+    private final int maxBatchSize;
+    private final long maxDelayMs;
+    private final LongSupplier clock; // Elapsed ms, for latency and throughput
+
+    // Once the backend has no batch endpoint, do not ask again in this session
+    private volatile boolean batchUnsupported = false;
+
+    // Guarded by this
+    private List<PendingItem> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean closed = false;
+    private int submitted;
+    private int completed;
+    private int batches;
+    private long totalLatencyMs;
+    private long firstSubmitMs = -1;
+    private long lastCompletionMs = -1;
+
+    public FaceIdBatchVerifier(FaceIdApiController apiController, ScheduledExecutorService scheduler,
+                               String requestId, Float threshold) {
+        this(apiController, scheduler, requestId, threshold, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY_MS);
+    }
+
+    /**
+     * @param threshold Similarity threshold for every item, or null for the request's own
+     */
+    public FaceIdBatchVerifier(FaceIdApiController apiController, ScheduledExecutorService scheduler,
+                               String requestId, Float threshold, int maxBatchSize, long maxDelayMs) {
+        this(apiController, scheduler, requestId, threshold, maxBatchSize, maxDelayMs, SystemClock::elapsedRealtime);
+    }
+
+    FaceIdBatchVerifier(FaceIdApiController apiController, ScheduledExecutorService scheduler, String requestId,
+                        Float threshold, int maxBatchSize, long maxDelayMs, LongSupplier clock) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.apiController = apiController;
+        this.scheduler = scheduler;
+        this.requestId = requestId;
+        this.threshold = threshold;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMs = maxDelayMs;
+        this.clock = clock;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public Float getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Queue one user's embedding for verification
+     *
+     * @return Item id, as echoed in the result
+     */
+    public synchronized String submit(String userId, float[] embedding, ItemCallback callback) {
+        if (closed) {
+            throw new IllegalStateException("Batch verifier is closed");
+        }
+        long now = clock.getAsLong();
+        PendingItem item = new PendingItem(UUID.randomUUID().toString(), userId, embedding.clone(), callback, now);
+        submitted++;
+        if (firstSubmitMs < 0) {
+            firstSubmitMs = now;
+        }
+
+        if (batchUnsupported) {
+            sendSingle(item);
+            return item.itemId;
+        }
+        pending.add(item);
+        if (pending.size() >= maxBatchSize) {
+            flush();
+        } else if (scheduledFlush == null) {
+            scheduledFlush = scheduler.schedule(this::flush, maxDelayMs, TimeUnit.MILLISECONDS);
+        }
+        return item.itemId;
+    }
+
+    /**
+     * Send whatever is waiting now
+     */
+    public synchronized void flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<PendingItem> batch = pending;
+        pending = new ArrayList<>();
+        if (batchUnsupported) {
+            for (PendingItem item : batch) {
+                sendSingle(item);
+            }
+            return;
+        }
+        sendBatch(batch);
+    }
+
+    /**
+     * Flush what is waiting and refuse further items; results still in flight are delivered
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        Log.d(TAG, "📊 Kiosk session for request " + requestId + " closed: " + getStats());
+    }
+
+    public synchronized Stats getStats() {
+        float meanLatency = completed == 0 ? 0f : (float) totalLatencyMs / completed;
+        long span = lastCompletionMs - firstSubmitMs;
+        float perMinute = completed == 0 || span <= 0 ? 0f : completed * 60000f / span;
+        return new Stats(submitted, completed, batches, meanLatency, perMinute);
+    }
+
+    // ===== Batch endpoint =====
+
+    private void sendBatch(List<PendingItem> batch) {
+        JsonArray items = new JsonArray();
+        List<MultipartBody.Part> parts = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            PendingItem item = batch.get(i);
+            String partName = "embedding_" + i;
+            JsonObject entry = new JsonObject();
+            entry.addProperty("ItemId", item.itemId);
+            entry.addProperty("UserId", item.userId);
+            entry.addProperty("Embedding", partName);
+            items.add(entry);
+            parts.add(EmbeddingRequestBody.part(partName, item.embedding));
+        }
+        JsonObject manifest = new JsonObject();
+        manifest.addProperty("Threshold", threshold);
+        manifest.add("Items", items);
+
+        batches++;
+        Call<FaceIdBatchVerifyResponse> call = apiController.verifyFaceIdBatch(UUID.randomUUID().toString(),
+                requestId, RequestBody.create(JSON, manifest.toString()), parts);
+        call.enqueue(new Callback<FaceIdBatchVerifyResponse>() {
+            @Override
+            public void onResponse(@NonNull Call<FaceIdBatchVerifyResponse> call,
+                                   @NonNull Response<FaceIdBatchVerifyResponse> response) {
+                FaceIdBatchVerifyResponse body = response.body();
+                int code = response.code();
+                if (code == 404 || code == 405 || code == 501) {
+                    batchUnsupported = true;
+                    Log.i(TAG, "ℹ️ No batch verify endpoint (HTTP " + code + "), verifying one by one");
+                    for (PendingItem item : batch) {
+                        sendSingle(item);
+                    }
+                    return;
+                }
+                if (!response.isSuccessful() || body == null || body.getResults() == null) {
+                    failAll(batch, "Batch verify failed: HTTP " + code
+                            + (body != null && body.getMessage() != null ? " - " + body.getMessage() : ""));
+                    return;
+                }
+                deliverResults(batch, body.getResults());
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<FaceIdBatchVerifyResponse> call, @NonNull Throwable t) {
+                failAll(batch, "Network error: " + t.getMessage());
+            }
+        });
+        Log.d(TAG, "📤 Sent batch of " + batch.size() + " for request " + requestId);
+    }
+
+    private void deliverResults(List<PendingItem> batch, List<FaceIdBatchVerifyResponse.Item> results) {
+        Map<String, FaceIdBatchVerifyResponse.Item> byId = new HashMap<>();
+        for (FaceIdBatchVerifyResponse.Item result : results) {
+            if (result != null && result.getItemId() != null) {
+                byId.put(result.getItemId(), result);
+            }
+        }
+        for (PendingItem item : batch) {
+            FaceIdBatchVerifyResponse.Item result = byId.get(item.itemId);
+            markCompleted(item);
+            if (result != null) {
+                item.callback.onResult(result);
+            } else {
+                item.callback.onError("No result for user " + item.userId);
+            }
+        }
+    }
+
+    private void failAll(List<PendingItem> batch, String error) {
+        Log.w(TAG, "⚠️ " + error + " (" + batch.size() + " items)");
+        for (PendingItem item : batch) {
+            markCompleted(item);
+            item.callback.onError(error);
+        }
+    }
+
+    // ===== Single verify fallback =====
+
+    /**
+     * Verify one item through the single endpoint; the item id doubles as its idempotency key
+     */
+    private void sendSingle(PendingItem item) {
+        RequestBody thresholdPart = threshold != null ? RequestBody.create(TEXT, String.valueOf(threshold)) : null;
+        Call<FaceIdVerifyResponse> call = apiController.verifyFaceId(item.itemId, requestId,
+                RequestBody.create(TEXT, item.userId), EmbeddingRequestBody.part("embedding", item.embedding), thresholdPart);
+        call.enqueue(new Callback<FaceIdVerifyResponse>() {
+            @Override
+            public void onResponse(@NonNull Call<FaceIdVerifyResponse> call,
+                                   @NonNull Response<FaceIdVerifyResponse> response) {
+                markCompleted(item);
+                FaceIdVerifyResponse body = response.body();
+                if (!response.isSuccessful() || body == null) {
+                    item.callback.onError("Failed to verify: HTTP " + response.code());
+                    return;
+                }
+                item.callback.onResult(FaceIdBatchVerifyResponse.Item.of(item.itemId, item.userId, body));
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<FaceIdVerifyResponse> call, @NonNull Throwable t) {
+                markCompleted(item);
+                item.callback.onError("Network error: " + t.getMessage());
+            }
+        });
+    }
+
+    private synchronized void markCompleted(PendingItem item) {
+        long now = clock.getAsLong();
+        completed++;
+        totalLatencyMs += now - item.submittedAtMs;
+        lastCompletionMs = now;
+    }
+}
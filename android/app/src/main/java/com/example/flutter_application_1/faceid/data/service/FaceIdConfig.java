@@ -3,6 +3,9 @@ package com.example.flutter_application_1.faceid.data.service;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * 🔧 NEW: Centralized configuration management for Face ID processing
  * Supports different scenarios and configurable thresholds
@@ -70,11 +73,16 @@ public class FaceIdConfig {
         public final int maxSpoofStreak;
         public final float naturalMovementThreshold;
         public final float realFaceRecoveryThreshold;
+        // Sequential (SPRT) live/spoof decision: target error rates and frames allowed without a decision
+        public final float falseAcceptRate;
+        public final float falseRejectRate;
+        public final int maxDecisionFrames;
         
         public AntiSpoofConfig(float highConfidenceThreshold, float mediumConfidenceThreshold,
                              float lowConfidenceThreshold, float veryLowConfidenceThreshold,
                              int minRealFaceFrames, int maxSpoofStreak,
-                             float naturalMovementThreshold, float realFaceRecoveryThreshold) {
+                             float naturalMovementThreshold, float realFaceRecoveryThreshold,
+                             float falseAcceptRate, float falseRejectRate, int maxDecisionFrames) {
             this.highConfidenceThreshold = highConfidenceThreshold;
             this.mediumConfidenceThreshold = mediumConfidenceThreshold;
             this.lowConfidenceThreshold = lowConfidenceThreshold;
@@ -83,22 +91,25 @@ public class FaceIdConfig {
             this.maxSpoofStreak = maxSpoofStreak;
             this.naturalMovementThreshold = naturalMovementThreshold;
             this.realFaceRecoveryThreshold = realFaceRecoveryThreshold;
+            this.falseAcceptRate = falseAcceptRate;
+            this.falseRejectRate = falseRejectRate;
+            this.maxDecisionFrames = maxDecisionFrames;
         }
         
         public static AntiSpoofConfig getDefault() {
-            return new AntiSpoofConfig(0.85f, 0.70f, 0.55f, 0.40f, 3, 5, 0.15f, 0.60f);
+            return new AntiSpoofConfig(0.85f, 0.70f, 0.55f, 0.40f, 3, 5, 0.15f, 0.60f, 0.01f, 0.05f, 60);
         }
         
         public static AntiSpoofConfig forScenario(Scenario scenario) {
             switch (scenario) {
                 case REGISTRATION:
-                    return new AntiSpoofConfig(0.80f, 0.65f, 0.50f, 0.35f, 2, 3, 0.12f, 0.55f);
+                    return new AntiSpoofConfig(0.80f, 0.65f, 0.50f, 0.35f, 2, 3, 0.12f, 0.55f, 0.02f, 0.05f, 60);
                 case VERIFICATION:
-                    return new AntiSpoofConfig(0.85f, 0.70f, 0.55f, 0.40f, 3, 5, 0.15f, 0.60f);
+                    return new AntiSpoofConfig(0.85f, 0.70f, 0.55f, 0.40f, 3, 5, 0.15f, 0.60f, 0.01f, 0.05f, 60);
                 case UPDATE:
-                    return new AntiSpoofConfig(0.80f, 0.65f, 0.50f, 0.35f, 2, 3, 0.12f, 0.55f);
+                    return new AntiSpoofConfig(0.80f, 0.65f, 0.50f, 0.35f, 2, 3, 0.12f, 0.55f, 0.02f, 0.05f, 60);
                 case SECURITY_CHECK:
-                    return new AntiSpoofConfig(0.90f, 0.75f, 0.60f, 0.45f, 5, 2, 0.20f, 0.70f);
+                    return new AntiSpoofConfig(0.90f, 0.75f, 0.60f, 0.45f, 5, 2, 0.20f, 0.70f, 0.001f, 0.10f, 90);
                 default:
                     return getDefault();
             }
@@ -138,6 +149,24 @@ public class FaceIdConfig {
         }
     }
     
+    /**
+     * Models a scenario needs before its first frame. Anything else loads on first use.
+     * Registration and update use the iTracker gaze CNN only for the CENTER step of the liveness
+     * challenge; the enhancer acquires it when created, and CENTER falls back to head pose until it loads.
+     */
+    public static Set<ModelRegistry.Model> modelsForScenario(Scenario scenario) {
+        switch (scenario) {
+            case REGISTRATION:
+            case UPDATE:
+                return EnumSet.of(ModelRegistry.Model.FACE_DETECTOR, ModelRegistry.Model.FACE_EMBEDDING,
+                        ModelRegistry.Model.SPOOF_DETECTOR, ModelRegistry.Model.LANDMARK_EXTRACTOR);
+            case VERIFICATION:
+            case SECURITY_CHECK:
+            default:
+                return EnumSet.allOf(ModelRegistry.Model.class);
+        }
+    }
+    
     // Main Configuration Class
     public static class Config {
         public final MemoryConfig memoryConfig;
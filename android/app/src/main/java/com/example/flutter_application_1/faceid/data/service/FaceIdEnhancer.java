@@ -4,6 +4,8 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.PointF;
 import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import java.util.Arrays;
@@ -11,6 +13,9 @@ import java.util.List;
 import java.util.Random;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.example.flutter_application_1.faceid.data.service.FaceIdServiceManager;
@@ -21,7 +26,6 @@ import com.example.flutter_application_1.faceid.util.VibrationHelper;
  * to prevent spoofing with photos or videos
  */
 public class FaceIdEnhancer implements 
-        MediaPipeFaceLandmarkExtractor.LandmarkExtractionCallback,
         EyeBlinkDetector.BlinkDetectionCallback,
         GazeEstimator.GazeCallback {
     
@@ -43,16 +47,16 @@ public class FaceIdEnhancer implements
 
     private AuthState currentState = AuthState.WAITING;
     
-    // Component instances
-    private final MediaPipeFaceLandmarkExtractor landmarkExtractor;
+    // Component instances; the landmark extractor and gaze estimator are leased from FaceIdService
+    // per frame, so the registry never closes them under a running inference
     private final EyeBlinkDetector blinkDetector;
-    private final GazeEstimator gazeEstimator;
     private HeadPoseEstimation headPoseEstimation; // NEW: Head pose for LEFT/RIGHT detection using MediaPipe landmarks
     private final VibrationHelper vibrationHelper; // NEW: Haptic feedback for step completion
     
-    // Ownership flags to prevent double-close when instances are shared from FaceIdService
-    private final boolean ownsLandmarkExtractor;
-    private final boolean ownsGazeEstimator;
+    // Service whose shared models this enhancer holds references on
+    private final FaceIdService faceIdService;
+    // close() releases the holds once
+    private final AtomicBoolean closed = new AtomicBoolean(false);
     
     // State flags
     private boolean blinkDetected = false;
@@ -62,6 +66,21 @@ public class FaceIdEnhancer implements
     // Processing flags
     private final AtomicBoolean isProcessing = new AtomicBoolean(false);
     
+    // Reused packed eye coordinates for blink detection (6 points x/y per eye)
+    private final float[] leftEyeCoords = new float[BlinkStateMachine.EYE_COORDS_LENGTH];
+    private final float[] rightEyeCoords = new float[BlinkStateMachine.EYE_COORDS_LENGTH];
+    
+    // Reused packed landmark coordinates (x/y/z) for head pose
+    private final float[] landmarkCoords = new float[MediaPipeFaceLandmarkExtractor.MAX_LANDMARKS * 3];
+    private final int[] landmarkImageSize = new int[2]; // Width, height of the frame landmarkCoords came from
+    private int landmarkCount = 0;
+    
+    // Gaze runs off the main thread (the iTracker CNN is too slow for it); results come back via mainHandler
+    private final ExecutorService gazeExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean gazeInFlight = new AtomicBoolean(false);
+    private final float[] gazeLandmarkCoords = new float[MediaPipeFaceLandmarkExtractor.MAX_LANDMARKS * 3];
+    
     // Challenge type
     public enum ChallengeType {
         BLINK_ONLY,     // Only require blinking
@@ -111,39 +130,17 @@ public class FaceIdEnhancer implements
     public FaceIdEnhancer(Context context, FaceIdEnhancerCallback callback) {
         this.callback = callback;
         
-        // Initialize components - Use preloaded models from FaceIdService
-        FaceIdService faceIdService = FaceIdServiceManager.getInstance().getService();
-        
-        // Get preloaded MediaPipeFaceLandmarkExtractor from FaceIdService
-        if (faceIdService != null && faceIdService.getMediaPipeFaceLandmarkExtractor() != null) {
-            landmarkExtractor = faceIdService.getMediaPipeFaceLandmarkExtractor();
-            ownsLandmarkExtractor = false;
-            if (VERBOSE_LOGGING) Log.d(TAG, "Using preloaded MediaPipeFaceLandmarkExtractor from FaceIdService");
-        } else {
-            // Fallback: create new instance if not available
-            landmarkExtractor = new MediaPipeFaceLandmarkExtractor(context);
-            ownsLandmarkExtractor = true;
-            if (VERBOSE_LOGGING) Log.d(TAG, "Created new MediaPipeFaceLandmarkExtractor (fallback)");
-        }
+        // Models come from the shared FaceIdService; holding them starts loading any that are missing
+        // and keeps them loaded under memory pressure while this enhancer is alive
+        faceIdService = FaceIdServiceManager.getInstance().getService();
+        faceIdService.acquireModel(ModelRegistry.Model.LANDMARK_EXTRACTOR);
+        faceIdService.acquireModel(ModelRegistry.Model.GAZE_ESTIMATOR);
         
         blinkDetector = new EyeBlinkDetector(this);
         
-        // Get GazeEstimator from FaceIdService if available, otherwise create new instance
-        if (faceIdService != null && faceIdService.getGazeEstimator() != null) {
-            gazeEstimator = faceIdService.getGazeEstimator();
-            gazeEstimator.setCallback(this); // Set callback for the shared instance
-            ownsGazeEstimator = false;
-            if (VERBOSE_LOGGING) Log.d(TAG, "Using GazeEstimator from FaceIdService");
-        } else {
-            // Fallback: create new instance if not available
-            gazeEstimator = new GazeEstimator(context, this);
-            ownsGazeEstimator = true;
-            if (VERBOSE_LOGGING) Log.d(TAG, "Created new GazeEstimator (fallback)");
-        }
-        
         // Initialize HeadPoseEstimation for LEFT/RIGHT detection
-        // Assume 640x480 default, will be updated when first landmarks arrive
-        headPoseEstimation = new HeadPoseEstimation(640, 480);
+        // Image size is taken per frame from the landmark extractor
+        headPoseEstimation = new HeadPoseEstimation();
         
         // Initialize VibrationHelper for haptic feedback
         vibrationHelper = new VibrationHelper(context);
@@ -167,8 +164,10 @@ public class FaceIdEnhancer implements
      * 
      * @param faceBitmap The face bitmap to process
      * @param faceRect The detected face rectangle
+     * @param timestampMs Capture time of the frame (elapsedRealtime, from the camera callback), drives
+     *                    pose and gaze smoothing; processing time would stretch with pipeline latency
      */
-    public void processFaceFrame(Bitmap faceBitmap, Rect faceRect) {
+    public void processFaceFrame(Bitmap faceBitmap, Rect faceRect, long timestampMs) {
         // Skip if already processing a frame
         if (isProcessing.getAndSet(true)) {
             return;
@@ -180,9 +179,14 @@ public class FaceIdEnhancer implements
             return;
         }
         
-        // Check if landmarkExtractor is still active
-        if (landmarkExtractor == null || !landmarkExtractor.isActive()) {
-            Log.w(TAG, "LandmarkExtractor is not active, skipping frame processing");
+        // Lease the landmark extractor for this frame; skip the frame while it is loading
+        ModelRegistry.Lease<MediaPipeFaceLandmarkExtractor> extractor =
+                faceIdService.tryLeaseModel(ModelRegistry.Model.LANDMARK_EXTRACTOR);
+        if (extractor == null || !extractor.get().isActive()) {
+            Log.w(TAG, "LandmarkExtractor is not available, skipping frame processing");
+            if (extractor != null) {
+                extractor.close();
+            }
             isProcessing.set(false);
             return;
         }
@@ -192,8 +196,15 @@ public class FaceIdEnhancer implements
             updateState(AuthState.FACE_DETECTED);
         }
         
-        // Extract facial landmarks
-        landmarkExtractor.extractLandmarks(faceBitmap, faceRect, this);
+        // Extract facial landmarks; the frame travels with the callback instead of through shared fields
+        // The lease is released once the result has been read on the main thread
+        extractor.get().extractLandmarks(faceBitmap, faceRect, success -> {
+            try {
+                onLandmarksExtracted(success, extractor.get(), faceBitmap, timestampMs);
+            } finally {
+                extractor.close();
+            }
+        });
     }
     
     /**
@@ -468,11 +479,11 @@ public class FaceIdEnhancer implements
     }
     
     //------------------------------------------------------------------------------
-    // FaceLandmarkExtractor.LandmarkExtractionCallback Implementation
+    // Landmark extraction result, on the main thread
     //------------------------------------------------------------------------------
     
-    @Override
-    public void onLandmarksExtracted(boolean success) {
+    private void onLandmarksExtracted(boolean success, MediaPipeFaceLandmarkExtractor landmarkExtractor,
+                                      Bitmap faceBitmap, long timestampMs) {
         if (!success) {
             Log.w(TAG, "Landmark extraction failed");
             isProcessing.set(false);
@@ -484,17 +495,14 @@ public class FaceIdEnhancer implements
         }
         
         // Process for blink detection
-        List<PointF> leftEyePoints = landmarkExtractor.getLeftEyeEARPoints();
-        List<PointF> rightEyePoints = landmarkExtractor.getRightEyeEARPoints();
-        
-        // Debug logging for eye points
-        Log.d(TAG, "Eye points - Left: " + leftEyePoints.size() + ", Right: " + rightEyePoints.size());
+        boolean hasLeftEye = landmarkExtractor.copyLeftEyeEARCoords(leftEyeCoords);
+        boolean hasRightEye = landmarkExtractor.copyRightEyeEARCoords(rightEyeCoords);
         
         // Detect blinks - REMOVED blinkDetected check to allow multiple detections
-        if (!leftEyePoints.isEmpty() && !rightEyePoints.isEmpty()) {
+        if (hasLeftEye && hasRightEye) {
             boolean blinkDetected = blinkDetector.detectBlink(
-                    leftEyePoints, 
-                    rightEyePoints,
+                    leftEyeCoords, 
+                    rightEyeCoords,
                     landmarkExtractor.getLeftEyeOpenProbability(),
                     landmarkExtractor.getRightEyeOpenProbability()
             );
@@ -508,7 +516,7 @@ public class FaceIdEnhancer implements
         
         // NEW APPROACH: Use HeadPoseEstimation for LEFT/RIGHT, GazeEstimator for CENTER
         if (!gazeVerified && challengeType == ChallengeType.GAZE_ONLY) {
-            processHeadPoseChallenge();
+            processHeadPoseChallenge(landmarkExtractor, faceBitmap, timestampMs);
         }
         
         isProcessing.set(false);
@@ -517,18 +525,15 @@ public class FaceIdEnhancer implements
     /**
      * Process head pose challenge using PnP algorithm
      */
-    private void processHeadPoseChallenge() {
+    private void processHeadPoseChallenge(MediaPipeFaceLandmarkExtractor landmarkExtractor, Bitmap faceBitmap,
+                                          long timestampMs) {
         // Get facial landmarks for head pose estimation
-        if (landmarkExtractor == null) {
-            Log.w(TAG, "Landmark extractor not available");
-            return;
-        }
+        landmarkCount = landmarkExtractor.copyLandmarkCoords(landmarkCoords, landmarkImageSize);
         
-        List<PointF> landmarks = landmarkExtractor.getAllFaceLandmarks();
-        
-        if (landmarks != null && landmarks.size() >= 468) {
-            // Estimate head pose using PnP algorithm
-            boolean success = headPoseEstimation.estimateHeadPose(landmarks);
+        if (landmarkCount >= 468) {
+            // Estimate head pose using PnP (POSIT) on the 3D face model
+            boolean success = headPoseEstimation.estimateHeadPose(landmarkCoords, landmarkCount,
+                    landmarkImageSize[0], landmarkImageSize[1], timestampMs);
             
             if (success) {
                 String detectedDir = headPoseEstimation.getHeadDirection();
@@ -549,7 +554,7 @@ public class FaceIdEnhancer implements
                     if (detected == currentChallenge) {
                         if (currentChallenge == HeadDirection.CENTER) {
                             // For CENTER, also verify gaze is looking at camera
-                            verifyCenterWithGaze();
+                            verifyCenterWithGaze(landmarkExtractor, faceBitmap, timestampMs);
                         } else {
                             // For LEFT/RIGHT, head pose is sufficient
                             Log.i(TAG, "Head direction challenge COMPLETED: " + currentChallenge);
@@ -573,38 +578,68 @@ public class FaceIdEnhancer implements
                 Log.w(TAG, "Head pose estimation failed");
             }
         } else {
-            Log.w(TAG, "Insufficient landmarks for head pose estimation: " + 
-                  (landmarks != null ? landmarks.size() : "null"));
+            Log.w(TAG, "Insufficient landmarks for head pose estimation: " + landmarkCount);
         }
     }
     
     /**
      * Verify CENTER challenge by combining head pose + gaze detection
      */
-    private void verifyCenterWithGaze() {
+    private void verifyCenterWithGaze(MediaPipeFaceLandmarkExtractor landmarkExtractor, Bitmap faceBitmap,
+                                      long timestampMs) {
         // Check if head is facing forward
         if (headPoseEstimation.isFacingForward()) {
-            // Use gaze estimator to verify looking at camera
-            float[] headPose = landmarkExtractor.getHeadEulerAngles();
-            Bitmap leftEyeRegion = landmarkExtractor.getLeftEyeRegion();
-            Bitmap rightEyeRegion = landmarkExtractor.getRightEyeRegion();
-            
-            if (leftEyeRegion != null && rightEyeRegion != null) {
-                Log.d(TAG, "Verifying CENTER challenge with gaze detection...");
-                gazeEstimator.estimateGaze(leftEyeRegion, rightEyeRegion, headPose);
-                // Result will be handled in onGazeUpdate callback
-            } else {
-                Log.w(TAG, "Eye regions not available for CENTER verification");
-                // For 3-step challenge, accept CENTER based on head pose only
-                if (threeStepChallengeActive) {
-                    processThreeStepChallenge(HeadDirection.CENTER);
-                }
+            // One gaze estimate at a time; frames arriving meanwhile are covered by the next one
+            if (gazeInFlight.getAndSet(true)) {
+                return;
+            }
+            // Use gaze estimator to verify looking at camera. estimateGaze picks the iTracker CNN or the
+            // iris landmark path, so it runs on the gaze thread with its own copy of the landmarks.
+            final float[] headPose = landmarkExtractor.getHeadEulerAngles();
+            final int count = landmarkCount;
+            System.arraycopy(landmarkCoords, 0, gazeLandmarkCoords, 0, count * 3);
+            Log.d(TAG, "Verifying CENTER challenge with gaze detection...");
+            try {
+                gazeExecutor.execute(() -> {
+                    boolean estimated = false;
+                    // Not loaded yet: CENTER is judged by head pose alone, as without iris landmarks
+                    try (ModelRegistry.Lease<GazeEstimator> gazeEstimator =
+                                 faceIdService.tryLeaseModel(ModelRegistry.Model.GAZE_ESTIMATOR)) {
+                        if (gazeEstimator != null) {
+                            // Result will be handled in onGazeUpdate callback
+                            gazeEstimator.get().setCallback(this);
+                            estimated = gazeEstimator.get().estimateGaze(faceBitmap, gazeLandmarkCoords, count,
+                                    headPose, timestampMs);
+                        }
+                    } catch (Exception e) {
+                        Log.e(TAG, "Gaze estimation failed", e);
+                    } finally {
+                        gazeInFlight.set(false);
+                    }
+                    if (!estimated) {
+                        mainHandler.post(this::onGazeUnavailable);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Closed while this frame was in flight
+                gazeInFlight.set(false);
             }
         } else {
             Log.d(TAG, "Head not facing forward for CENTER challenge");
         }
     }
     
+    /**
+     * Gaze could not be estimated for a forward-facing head (no iris landmarks)
+     */
+    private void onGazeUnavailable() {
+        Log.w(TAG, "Gaze not available for CENTER verification");
+        // For 3-step challenge, accept CENTER based on head pose only
+        if (threeStepChallengeActive && currentChallenge == HeadDirection.CENTER) {
+            processThreeStepChallenge(HeadDirection.CENTER);
+        }
+    }
+    
     //------------------------------------------------------------------------------
     // EyeBlinkDetector.BlinkDetectionCallback Implementation
     //------------------------------------------------------------------------------
@@ -641,6 +676,12 @@ public class FaceIdEnhancer implements
     
     @Override
     public void onGazeUpdate(float x, float y, boolean isLookingAtScreen) {
+        // Gaze is estimated on the gaze thread; challenge state and UI callbacks live on the main thread
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            mainHandler.post(() -> onGazeUpdate(x, y, isLookingAtScreen));
+            return;
+        }
+        
         // This callback is now only used for CENTER verification (looking at camera)
         Log.d(TAG, String.format("Gaze callback: isLookingAtScreen=%b (for CENTER verification)", isLookingAtScreen));
         
@@ -667,6 +708,10 @@ public class FaceIdEnhancer implements
     
     @Override
     public void onLookingAway(boolean isLookingAway) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            mainHandler.post(() -> onLookingAway(isLookingAway));
+            return;
+        }
         // Can be used for additional security checks
         if (isLookingAway) {
             Log.d(TAG, "User is looking away from screen");
@@ -677,6 +722,13 @@ public class FaceIdEnhancer implements
      * Release resources
      */
     public void close() {
+        if (closed.getAndSet(true)) {
+            return;
+        }
+        // Stop gaze work first; a running estimate keeps its gaze estimator lease until it returns
+        gazeExecutor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+        
         try {
             // Cancel any ongoing vibration
             if (vibrationHelper != null) {
@@ -686,19 +738,8 @@ public class FaceIdEnhancer implements
             Log.w(TAG, "Error cancelling vibration", e);
         }
         
-        try {
-            if (ownsLandmarkExtractor && landmarkExtractor != null) {
-                landmarkExtractor.close();
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "Error closing landmark extractor", e);
-        }
-        try {
-            if (ownsGazeEstimator && gazeEstimator != null) {
-                gazeEstimator.close();
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "Error closing gaze estimator", e);
-        }
+        // Drop the holds taken in the constructor; the registry closes the models when idle
+        faceIdService.releaseModel(ModelRegistry.Model.LANDMARK_EXTRACTOR);
+        faceIdService.releaseModel(ModelRegistry.Model.GAZE_ESTIMATOR);
     }
 }
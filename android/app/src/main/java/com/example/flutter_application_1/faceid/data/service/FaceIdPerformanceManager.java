@@ -2,21 +2,19 @@ package com.example.flutter_application_1.faceid.data.service;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.Rect;
 import android.util.Log;
 
-import java.util.ArrayList;
+import com.example.flutter_application_1.faceid.util.StageLatencyRecorder;
+
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 🔧 NEW: Performance optimization for Face ID processing
- * Implements caching, batch processing, and optimized sequential processing
+ * Implements result caching and reports per-stage latency percentiles from the
+ * {@link StageLatencyRecorder} the pipeline stages record into
  */
 public class FaceIdPerformanceManager {
     private static final String TAG = "FaceIdPerformanceManager";
@@ -29,15 +27,10 @@ public class FaceIdPerformanceManager {
     private final AtomicInteger cacheHits;
     private final AtomicInteger cacheMisses;
     
-    // Batch processing
-    private final List<BatchItem> batchQueue;
-    private final ExecutorService batchExecutor;
-    private final AtomicInteger batchCount;
-    
-    // Performance monitoring
-    private final AtomicInteger totalProcessedFrames;
-    private final AtomicInteger totalProcessingTimeMs;
-    private long startTime;
+    // Performance monitoring: stages time themselves and record here
+    private final StageLatencyRecorder stageLatencies;
+    private final Thread cleanupThread;
+    private volatile long startTime;
     
     public FaceIdPerformanceManager(Context context, FaceIdConfig.PerformanceConfig config) {
         this.context = context.getApplicationContext();
@@ -45,24 +38,17 @@ public class FaceIdPerformanceManager {
         this.resultCache = new ConcurrentHashMap<>();
         this.cacheHits = new AtomicInteger(0);
         this.cacheMisses = new AtomicInteger(0);
-        this.batchQueue = new ArrayList<>();
-        this.batchExecutor = config.enableParallelProcessing ? 
-            Executors.newCachedThreadPool() : Executors.newSingleThreadExecutor();
-        this.batchCount = new AtomicInteger(0);
-        this.totalProcessedFrames = new AtomicInteger(0);
-        this.totalProcessingTimeMs = new AtomicInteger(0);
+        this.stageLatencies = StageLatencyRecorder.getInstance();
         this.startTime = System.currentTimeMillis();
         
         // Start cache cleanup thread
-        startCacheCleanupThread();
+        this.cleanupThread = startCacheCleanupThread();
     }
     
     /**
      * Process a single frame with caching
      */
     public CachedResult processFrameWithCache(Bitmap bitmap, String cacheKey) {
-        long startTime = System.currentTimeMillis();
-        
         // Check cache first
         CachedResult cached = resultCache.get(cacheKey);
         if (cached != null && !cached.isExpired()) {
@@ -80,131 +66,44 @@ public class FaceIdPerformanceManager {
         // Cache the result
         resultCache.put(cacheKey, result);
         
-        // Update statistics
-        long processingTime = System.currentTimeMillis() - startTime;
-        totalProcessingTimeMs.addAndGet((int) processingTime);
-        totalProcessedFrames.incrementAndGet();
-        
-        Log.d(TAG, "Processed frame in " + processingTime + "ms, cache size: " + resultCache.size());
-        
         return result;
     }
     
-    /**
-     * Add frame to batch processing queue
-     */
-    public void addToBatch(Bitmap bitmap, BatchCallback callback) {
-        BatchItem item = new BatchItem(bitmap, callback);
-        batchQueue.add(item);
-        
-        // Process batch if it reaches the size limit
-        if (batchQueue.size() >= config.batchSize) {
-            processBatch();
-        }
-    }
-    
-    /**
-     * Process the current batch
-     */
-    public void processBatch() {
-        if (batchQueue.isEmpty()) {
-            return;
-        }
-        
-        List<BatchItem> currentBatch = new ArrayList<>(batchQueue);
-        batchQueue.clear();
-        
-        if (config.enableBatchProcessing) {
-            // Process batch in parallel
-            List<Future<BatchResult>> futures = new ArrayList<>();
-            
-            for (BatchItem item : currentBatch) {
-                Future<BatchResult> future = batchExecutor.submit(() -> {
-                    long startTime = System.currentTimeMillis();
-                    // Simulate processing
-                    try {
-                        Thread.sleep(50); // Simulate processing time
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-                    
-                    BatchResult result = new BatchResult(item.bitmap, System.currentTimeMillis() - startTime);
-                    item.callback.onBatchProcessed(result);
-                    return result;
-                });
-                futures.add(future);
-            }
-            
-            // Wait for all futures to complete
-            for (Future<BatchResult> future : futures) {
-                try {
-                    future.get(5, TimeUnit.SECONDS);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error in batch processing", e);
-                }
-            }
-            
-            batchCount.incrementAndGet();
-            Log.d(TAG, "Processed batch of " + currentBatch.size() + " items, total batches: " + batchCount.get());
-        } else {
-            // Process sequentially
-            for (BatchItem item : currentBatch) {
-                long startTime = System.currentTimeMillis();
-                // Simulate processing
-                try {
-                    Thread.sleep(50); // Simulate processing time
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-                
-                BatchResult result = new BatchResult(item.bitmap, System.currentTimeMillis() - startTime);
-                item.callback.onBatchProcessed(result);
-            }
-        }
-    }
-    
-    /**
-     * Optimized sequential processing with caching
-     */
-    public void processSequentialOptimized(List<Bitmap> bitmaps, SequentialCallback callback) {
-        long batchStartTime = System.currentTimeMillis();
-        
-        for (int i = 0; i < bitmaps.size(); i++) {
-            Bitmap bitmap = bitmaps.get(i);
-            String cacheKey = generateCacheKey(bitmap, i);
-            
-            CachedResult result = processFrameWithCache(bitmap, cacheKey);
-            callback.onFrameProcessed(i, result);
-        }
-        
-        long totalTime = System.currentTimeMillis() - batchStartTime;
-        Log.d(TAG, "Sequential processing completed: " + bitmaps.size() + " frames in " + totalTime + "ms");
-    }
-    
     /**
      * Get performance statistics
      */
     public PerformanceStats getPerformanceStats() {
         long uptime = System.currentTimeMillis() - startTime;
-        int totalFrames = totalProcessedFrames.get();
-        int totalTime = totalProcessingTimeMs.get();
-        
-        double avgProcessingTime = totalFrames > 0 ? (double) totalTime / totalFrames : 0;
-        double framesPerSecond = uptime > 0 ? (totalFrames * 1000.0) / uptime : 0;
+        // Every analyzed frame goes through detection once
+        StageLatencyRecorder.StageSummary detect = stageLatencies.getSummary(StageLatencyRecorder.Stage.DETECT);
+        double framesPerSecond = uptime > 0 ? (detect.count * 1000.0) / uptime : 0;
         
         return new PerformanceStats(
-            totalFrames,
-            totalTime,
-            avgProcessingTime,
+            detect.count,
             framesPerSecond,
             cacheHits.get(),
             cacheMisses.get(),
             resultCache.size(),
-            batchCount.get(),
-            uptime
+            uptime,
+            stageLatencies.getSummaries()
         );
     }
     
+    /**
+     * Latency of one pipeline stage, in milliseconds
+     */
+    public StageLatencyRecorder.StageSummary getStageLatency(StageLatencyRecorder.Stage stage) {
+        return stageLatencies.getSummary(stage);
+    }
+    
+    /**
+     * Start a new measurement window: clears the stage histograms and the frame rate baseline
+     */
+    public void resetStageLatencies() {
+        stageLatencies.reset();
+        startTime = System.currentTimeMillis();
+    }
+    
     /**
      * Clear cache
      */
@@ -218,23 +117,14 @@ public class FaceIdPerformanceManager {
      * Shutdown the performance manager
      */
     public void shutdown() {
-        batchExecutor.shutdown();
-        try {
-            if (!batchExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                batchExecutor.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            batchExecutor.shutdownNow();
-            Thread.currentThread().interrupt();
-        }
-        
-        Log.d(TAG, "Performance manager shutdown completed");
+        cleanupThread.interrupt();
+        Log.d(TAG, "Performance manager shutdown completed: " + getPerformanceStats());
     }
     
     /**
      * Start cache cleanup thread
      */
-    private void startCacheCleanupThread() {
+    private Thread startCacheCleanupThread() {
         Thread cleanupThread = new Thread(() -> {
             while (!Thread.currentThread().isInterrupted()) {
                 try {
@@ -248,6 +138,7 @@ public class FaceIdPerformanceManager {
         });
         cleanupThread.setDaemon(true);
         cleanupThread.start();
+        return cleanupThread;
     }
     
     /**
@@ -271,13 +162,6 @@ public class FaceIdPerformanceManager {
         }
     }
     
-    /**
-     * Generate cache key for bitmap
-     */
-    private String generateCacheKey(Bitmap bitmap, int index) {
-        return bitmap.getWidth() + "x" + bitmap.getHeight() + "_" + index + "_" + System.currentTimeMillis();
-    }
-    
     /**
      * Cached result class
      */
@@ -299,72 +183,39 @@ public class FaceIdPerformanceManager {
         }
     }
     
-    /**
-     * Batch item class
-     */
-    private static class BatchItem {
-        public final Bitmap bitmap;
-        public final BatchCallback callback;
-        
-        public BatchItem(Bitmap bitmap, BatchCallback callback) {
-            this.bitmap = bitmap;
-            this.callback = callback;
-        }
-    }
-    
-    /**
-     * Batch result class
-     */
-    public static class BatchResult {
-        public final Bitmap bitmap;
-        public final long processingTimeMs;
-        
-        public BatchResult(Bitmap bitmap, long processingTimeMs) {
-            this.bitmap = bitmap;
-            this.processingTimeMs = processingTimeMs;
-        }
-    }
-    
-    /**
-     * Batch callback interface
-     */
-    public interface BatchCallback {
-        void onBatchProcessed(BatchResult result);
-    }
-    
-    /**
-     * Sequential callback interface
-     */
-    public interface SequentialCallback {
-        void onFrameProcessed(int index, CachedResult result);
-    }
-    
     /**
      * Performance statistics class
      */
     public static class PerformanceStats {
-        public final int totalFrames;
-        public final int totalProcessingTimeMs;
-        public final double avgProcessingTimeMs;
+        public final long totalFrames;
         public final double framesPerSecond;
         public final int cacheHits;
         public final int cacheMisses;
         public final int cacheSize;
-        public final int batchCount;
         public final long uptimeMs;
+        public final List<StageLatencyRecorder.StageSummary> stages; // Stages that ran, in pipeline order
         
-        public PerformanceStats(int totalFrames, int totalProcessingTimeMs, double avgProcessingTimeMs,
-                              double framesPerSecond, int cacheHits, int cacheMisses,
-                              int cacheSize, int batchCount, long uptimeMs) {
+        public PerformanceStats(long totalFrames, double framesPerSecond, int cacheHits, int cacheMisses,
+                              int cacheSize, long uptimeMs, List<StageLatencyRecorder.StageSummary> stages) {
             this.totalFrames = totalFrames;
-            this.totalProcessingTimeMs = totalProcessingTimeMs;
-            this.avgProcessingTimeMs = avgProcessingTimeMs;
             this.framesPerSecond = framesPerSecond;
             this.cacheHits = cacheHits;
             this.cacheMisses = cacheMisses;
             this.cacheSize = cacheSize;
-            this.batchCount = batchCount;
             this.uptimeMs = uptimeMs;
+            this.stages = stages;
+        }
+        
+        /**
+         * Latency of one stage, or null if it has not run
+         */
+        public StageLatencyRecorder.StageSummary getStage(StageLatencyRecorder.Stage stage) {
+            for (StageLatencyRecorder.StageSummary summary : stages) {
+                if (summary.stage == stage) {
+                    return summary;
+                }
+            }
+            return null;
         }
         
         @Override
@@ -372,10 +223,10 @@ public class FaceIdPerformanceManager {
             double cacheHitRate = (cacheHits + cacheMisses) > 0 ? 
                 (double) cacheHits / (cacheHits + cacheMisses) * 100 : 0;
             
-            return String.format("PerformanceStats{frames=%d, avgTime=%.2fms, fps=%.2f, " +
-                               "cacheHitRate=%.1f%%, cacheSize=%d, batches=%d, uptime=%ds}",
-                               totalFrames, avgProcessingTimeMs, framesPerSecond,
-                               cacheHitRate, cacheSize, batchCount, uptimeMs / 1000);
+            return String.format(Locale.US, "PerformanceStats{frames=%d, fps=%.2f, " +
+                               "cacheHitRate=%.1f%%, cacheSize=%d, uptime=%ds, stages=%s}",
+                               totalFrames, framesPerSecond,
+                               cacheHitRate, cacheSize, uptimeMs / 1000, stages);
         }
     }
 } 
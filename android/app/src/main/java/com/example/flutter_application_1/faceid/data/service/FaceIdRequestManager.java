@@ -7,9 +7,9 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import lombok.Getter;
@@ -21,9 +21,10 @@ import com.example.flutter_application_1.auth.client.ApiClient;
 
 /**
  * Manager để quản lý Face ID request lifecycle
- * - Status polling
+ * - Status updates (event stream, fallback polling với backoff) qua FaceIdStatusChannel
  * - Retry logic với exponential backoff
  * - Timeout handling
+ * - Đánh thức EmbeddingPrefetcher khi có request, tắt khi request kết thúc
  * - Request cleanup
  */
 public class FaceIdRequestManager {
@@ -38,14 +39,14 @@ public class FaceIdRequestManager {
         FAILED          // Verification thất bại
     }
     
-    // Configuration
-    private static final int STATUS_POLL_INTERVAL_MS = 2000; // 2 giây
-    
     // Dependencies
     private final Context context;
     private final FaceIdApiController apiController;
     private final ScheduledExecutorService scheduler;
+    // Held event stream reads, off the scheduler so polls and retries keep their threads
+    private final ExecutorService streamExecutor;
     private final Handler mainHandler;
+    private final FaceIdStatusChannel statusChannel;
 
     // Getters
     // Request state
@@ -65,8 +66,9 @@ public class FaceIdRequestManager {
     
     // Polling
     private boolean isPolling = false;
-    private Runnable statusPollingRunnable;
-    private ScheduledFuture<?> statusPollingFuture;
+    
+    // Prefetch: embedding computed ahead of the user's submit while a request is open
+    private EmbeddingPrefetcher prefetcher;
     
     public interface RequestStatusCallback {
         void onRequestStatusUpdated(RequestState state, FaceIdRequestStatusResponse response);
@@ -84,6 +86,9 @@ public class FaceIdRequestManager {
         this.apiController = ApiClient.getClient(context).create(FaceIdApiController.class);
         this.scheduler = Executors.newScheduledThreadPool(2);
         this.mainHandler = new Handler(Looper.getMainLooper());
+        this.streamExecutor = Executors.newSingleThreadExecutor();
+        this.statusChannel = new FaceIdStatusChannel(apiController,
+                ApiClient.getStreamingClient(context).create(FaceIdApiController.class), scheduler, streamExecutor);
         this.currentState = RequestState.PENDING;
     }
     
@@ -106,6 +111,11 @@ public class FaceIdRequestManager {
         this.retryCount = 0;
         this.lastRetryTime = 0;
         
+        // ⚡ Wake the pipeline: embed opportunistically while the user is positioning
+        if (prefetcher != null) {
+            prefetcher.wake(requestId, expirationTime);
+        }
+        
         // Start status polling
         startStatusPolling();
         
@@ -114,54 +124,56 @@ public class FaceIdRequestManager {
     }
     
     /**
-     * Bắt đầu polling request status
+     * Bắt đầu nhận request status (event stream, hoặc polling với backoff)
      */
     private void startStatusPolling() {
         if (isPolling) return;
         
         isPolling = true;
-        statusPollingRunnable = () -> {
-            if (System.currentTimeMillis() >= expirationTime) {
-                handleRequestExpired();
-                return;
-            }
-            
-            pollRequestStatus();
-        };
-        
-        statusPollingFuture = scheduler.scheduleAtFixedRate(statusPollingRunnable, 
-                                    STATUS_POLL_INTERVAL_MS, 
-                                    STATUS_POLL_INTERVAL_MS, 
-                                    TimeUnit.MILLISECONDS);
-        
-        Log.d(TAG, "📡 Started status polling for request: " + currentRequestId);
-    }
-    
-    /**
-     * Poll request status từ server
-     */
-    private void pollRequestStatus() {
-        if (currentRequestId == null) return;
-        
-        Call<FaceIdRequestStatusResponse> call = apiController.getFaceIdRequestStatus(currentRequestId);
-        call.enqueue(new retrofit2.Callback<FaceIdRequestStatusResponse>() {
+        statusChannel.open(currentRequestId, currentSessionId, expirationTime, new FaceIdStatusChannel.Listener() {
             @Override
-            public void onResponse(@NonNull Call<FaceIdRequestStatusResponse> call, 
-                                 @NonNull retrofit2.Response<FaceIdRequestStatusResponse> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    handleStatusResponse(response.body());
-                } else {
-                    Log.w(TAG, "⚠️ Failed to get request status: HTTP " + response.code());
-                    handlePollingError("HTTP " + response.code());
+            public void onStatus(FaceIdRequestStatusResponse response) {
+                if (System.currentTimeMillis() >= expirationTime) {
+                    handleRequestExpired();
+                    return;
                 }
+                handleStatusResponse(response);
             }
             
             @Override
-            public void onFailure(@NonNull Call<FaceIdRequestStatusResponse> call, @NonNull Throwable t) {
-                Log.e(TAG, "❌ Network error polling request status", t);
-                handlePollingError("Network error: " + t.getMessage());
+            public void onError(String error) {
+                handlePollingError(error);
             }
         });
+        
+        Log.d(TAG, "📡 Started status updates for request: " + currentRequestId);
+    }
+    
+    /**
+     * Gắn prefetcher của FaceIdService; đánh thức ngay nếu đang có request chờ verify
+     */
+    public void attachPrefetcher(EmbeddingPrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+        if (prefetcher != null && currentRequestId != null
+                && currentState == RequestState.PENDING && !isExpired()) {
+            prefetcher.wake(currentRequestId, expirationTime);
+        }
+    }
+    
+    /**
+     * Request đã kết thúc: dừng prefetch và bỏ embedding đang giữ
+     */
+    private void sleepPrefetcher() {
+        if (prefetcher != null) {
+            prefetcher.sleep();
+        }
+    }
+    
+    /**
+     * Số request status đã gửi trong session hiện tại (stream + polling)
+     */
+    public int getStatusRequestCount() {
+        return statusChannel.getRequestCount();
     }
     
     /**
@@ -227,6 +239,7 @@ public class FaceIdRequestManager {
     private void handleRequestVerified() {
         Log.d(TAG, "✅ Request verified successfully: " + currentRequestId);
         stopStatusPolling();
+        sleepPrefetcher();
         
         if (statusCallback != null) {
             mainHandler.post(() -> statusCallback.onRequestStatusUpdated(RequestState.VERIFIED, null));
@@ -240,6 +253,7 @@ public class FaceIdRequestManager {
         Log.d(TAG, "⏰ Request expired: " + currentRequestId);
         currentState = RequestState.EXPIRED;
         stopStatusPolling();
+        sleepPrefetcher();
         
         if (expiredCallback != null) {
             mainHandler.post(() -> expiredCallback.onExpired());
@@ -257,6 +271,7 @@ public class FaceIdRequestManager {
         Log.d(TAG, "❌ Request cancelled: " + currentRequestId);
         currentState = RequestState.CANCELLED;
         stopStatusPolling();
+        sleepPrefetcher();
         
         if (statusCallback != null) {
             mainHandler.post(() -> statusCallback.onRequestCancelled());
@@ -300,11 +315,8 @@ public class FaceIdRequestManager {
         
         isPolling = false;
         
-        // Cancel the scheduled task using Future.cancel()
-        if (statusPollingFuture != null && !statusPollingFuture.isCancelled()) {
-            statusPollingFuture.cancel(false); // false = don't interrupt if running
-            statusPollingFuture = null;
-        }
+        // Closes the event stream / cancels the pending poll and logs the session's request count
+        statusChannel.close();
         
         Log.d(TAG, "🛑 Stopped status polling for request: " + currentRequestId);
     }
@@ -348,7 +360,11 @@ public class FaceIdRequestManager {
      */
     public void cleanup() {
         stopStatusPolling();
+        sleepPrefetcher();
         
+        // The closed channel cancelled its stream; nothing waits on this thread
+        streamExecutor.shutdownNow();
+
         // Shutdown scheduler gracefully
         if (!scheduler.isShutdown()) {
             scheduler.shutdown();
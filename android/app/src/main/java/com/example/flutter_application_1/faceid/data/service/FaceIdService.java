@@ -2,38 +2,49 @@ package com.example.flutter_application_1.faceid.data.service;
 
 import static androidx.core.content.ContentProviderCompat.requireContext;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Rect;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import com.example.flutter_application_1.BuildConfig;
+import com.example.flutter_application_1.faceid.util.InterpreterAutotuner;
+import com.example.flutter_application_1.faceid.util.OvalGeometry;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
-import lombok.Getter;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
 import com.example.flutter_application_1.auth.client.ApiClient;
+import com.example.flutter_application_1.auth.client.CircuitBreakerInterceptor;
 import com.example.flutter_application_1.auth.AuthManager;
+import com.example.flutter_application_1.faceid.adapter.workers.FaceEmbeddingSyncWorker;
+import com.example.flutter_application_1.faceid.data.api.EmbeddingRequestBody;
 import com.example.flutter_application_1.faceid.data.api.FaceIdApiController;
+import com.example.flutter_application_1.faceid.data.model.response.FaceIdBatchVerifyResponse;
 import com.example.flutter_application_1.faceid.data.model.response.FaceIdResponse;
 import com.example.flutter_application_1.faceid.data.model.response.FaceIdVerifyResponse;
 
@@ -42,31 +53,29 @@ public class FaceIdService {
     private static final String TAG = "FaceIdService";
     
     private final Context context;
-    private FaceDetector faceDetector;
-    private FaceEmbedding faceEmbedding;
     private AuthManager authManager;
 
-    @Getter
-    private FaceSpoofDetector faceSpoofDetector;
+    // Models are owned by the registry and loaded when the current scenario (or a caller) first needs them
+    private final ModelRegistry modelRegistry;
 
-    @Getter
-    private GazeEstimator gazeEstimator; // Add GazeEstimator field
-
-    // 🔧 NEW: MediaPipe FaceLandmarkExtractor for real landmark detection
-    @Getter
-    private MediaPipeFaceLandmarkExtractor mediaPipeFaceLandmarkExtractor;
-
-    // Explicit getters to avoid relying on Lombok during Android/Gradle compile
-    public FaceSpoofDetector getFaceSpoofDetector() {
-        return this.faceSpoofDetector;
-    }
-
-    public GazeEstimator getGazeEstimator() {
-        return this.gazeEstimator;
+    /**
+     * Lease a model for one inference without waiting; null while it is loading (loading is started)
+     * or after it failed. Close the lease once the inference has returned.
+     */
+    public <T> ModelRegistry.Lease<T> tryLeaseModel(ModelRegistry.Model model) {
+        return modelRegistry.tryLease(model);
     }
 
-    public MediaPipeFaceLandmarkExtractor getMediaPipeFaceLandmarkExtractor() {
-        return this.mediaPipeFaceLandmarkExtractor;
+    /**
+     * Lease a model, waiting up to {@link #MODEL_READY_TIMEOUT_MS} for it to load; null if it does not
+     */
+    private <T> ModelRegistry.Lease<T> awaitLease(ModelRegistry.Model model) {
+        try {
+            return modelRegistry.lease(model, MODEL_READY_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
     }
 
     private final FaceIdApiController faceIdApiController;
@@ -75,7 +84,7 @@ public class FaceIdService {
     
     // 🔧 NEW: Improved components
     private final FaceDecisionEngine decisionEngine;
-    private final ModelRetryManager retryManager;
+    private final RetryScheduler retryScheduler;
     private final FaceProcessingErrorHandler errorHandler;
     
     // 🔧 NEW: Memory, Performance, and Configuration Management
@@ -83,14 +92,33 @@ public class FaceIdService {
     private final FaceIdMemoryManager memoryManager;
     private final FaceIdPerformanceManager performanceManager;
     
-    private final CountDownLatch modelLoadLatch = new CountDownLatch(5); // Update to 5 models (added MediaPipeFaceLandmarkExtractor)
-    private volatile boolean isInitialized = false;
+    private static final long MODEL_READY_TIMEOUT_MS = 15000;
+    // Reported instead of a processing error while a model is still loading (or reloading after a trim)
+    public static final String MODEL_LOADING_MESSAGE = "Face models are still loading, please try again";
+    // Unreferenced models unused for this long are dropped when the system reports memory pressure
+    private static final long MODEL_IDLE_UNLOAD_MS = 30000;
+    private final ModelStartupTimeline startupTimeline;
     private final AtomicBoolean isProcessing = new AtomicBoolean(false);
+
+    // Kiosk mode: at most one batch verification session, guarded by kioskLock
+    private final Object kioskLock = new Object();
+    private ScheduledExecutorService kioskScheduler; // Created with the first session, shut down in close()
+    private FaceIdBatchVerifier kioskVerifier;
+    private long kioskExpiresAtMs;
+
+    // Verification embedding computed while the user positions, woken by the request manager
+    private final EmbeddingPrefetcher embeddingPrefetcher;
+
+    // Per-frame results reach the UI through one coalesced callback per vsync
+    private final FrameResultDispatcher resultDispatcher;
+    private final AtomicLong frameSequence = new AtomicLong();
     
     public FaceIdService(Context context) {
+        long startTime = SystemClock.elapsedRealtime();
         this.context = context.getApplicationContext();
         this.executor = Executors.newCachedThreadPool(); // Thay đổi thành thread pool
         this.mainHandler = new Handler(Looper.getMainLooper());
+        this.resultDispatcher = new FrameResultDispatcher(mainHandler);
         this.faceIdApiController = ApiClient.getClient(context).create(FaceIdApiController.class);
         this.authManager = AuthManager.getInstance(context);
         // 🔧 NEW: Initialize configuration and managers
@@ -100,107 +128,235 @@ public class FaceIdService {
         
         // 🔧 NEW: Initialize improved components with configuration
         this.decisionEngine = new FaceDecisionEngine(FaceDecisionEngine.FaceDecisionConfig.getDefault());
-        this.retryManager = new ModelRetryManager.Builder()
-            .maxRetries(3)
-            .initialRetryDelayMs(1000)
-            .build();
+        this.retryScheduler = new RetryScheduler(executor);
+        this.embeddingPrefetcher = new EmbeddingPrefetcher(executor, bitmap -> embedNow(bitmap, false));
         this.errorHandler = new FaceProcessingErrorHandler(context);
         
-        // Khởi tạo các model bất đồng bộ
-        initializeModelsAsync();
+        List<String> requiredNames = new ArrayList<>();
+        for (ModelRegistry.Model model : requiredModels()) {
+            requiredNames.add(timelineName(model));
+        }
+        this.startupTimeline = new ModelStartupTimeline(startTime, requiredNames);
+        this.modelRegistry = new ModelRegistry(retryScheduler);
+        registerModels();
+        
+        // Preload only what the current scenario needs, in parallel
+        modelRegistry.preload(requiredModels());
     }
     
-    private void initializeModelsAsync() {
-        // 🔧 NEW: Initialize FaceDetector with retry
-        executor.execute(() -> {
-            try {
-                this.faceDetector = retryManager.executeWithRetry(() -> new FaceDetector(context));
-                modelLoadLatch.countDown();
-                Log.d(TAG, "FaceDetector initialized");
-            } catch (ModelRetryManager.ModelRetryException e) {
-                Log.e(TAG, "Error initializing FaceDetector", e);
-                errorHandler.handleModelInitializationError(e, "FaceDetector");
-                modelLoadLatch.countDown();
-            }
-        });
-        
-        // 🔧 NEW: Initialize FaceEmbedding with retry
-        executor.execute(() -> {
-            try {
-                this.faceEmbedding = retryManager.executeWithRetry(() -> new FaceEmbedding(context));
-                modelLoadLatch.countDown();
-                Log.d(TAG, "FaceEmbedding initialized");
-            } catch (ModelRetryManager.ModelRetryException e) {
-                Log.e(TAG, "Error initializing FaceEmbedding", e);
-                errorHandler.handleModelInitializationError(e, "FaceEmbedding");
-                modelLoadLatch.countDown();
-            }
-        });
-        
-        // 🔧 NEW: Initialize FaceSpoofDetector with retry
-        executor.execute(() -> {
-            try {
-                this.faceSpoofDetector = retryManager.executeWithRetry(() -> new FaceSpoofDetector(context));
-                modelLoadLatch.countDown();
-                Log.d(TAG, "FaceSpoofDetector initialized");
-            } catch (ModelRetryManager.ModelRetryException e) {
-                Log.e(TAG, "Error initializing FaceSpoofDetector", e);
-                errorHandler.handleModelInitializationError(e, "FaceSpoofDetector");
-                modelLoadLatch.countDown();
-            }
-        });
-        
-        // 🔧 NEW: Initialize GazeEstimator with retry
-        executor.execute(() -> {
-            try {
-                this.gazeEstimator = retryManager.executeWithRetry(() -> new GazeEstimator(context, null));
-                // Configure gaze estimator for front camera mirrored preview and reduced head pose weight
-                this.gazeEstimator.setFrontCameraMirrored(true);
-                this.gazeEstimator.setHeadPoseWeight(0.2f);
-                modelLoadLatch.countDown();
-                Log.d(TAG, "GazeEstimator initialized");
-            } catch (ModelRetryManager.ModelRetryException e) {
-                Log.e(TAG, "Error initializing GazeEstimator", e);
-                errorHandler.handleModelInitializationError(e, "GazeEstimator");
-                modelLoadLatch.countDown();
-            }
-        });
-        
-        // 🔧 NEW: Initialize MediaPipeFaceLandmarkExtractor with retry
-        executor.execute(() -> {
-            try {
-                this.mediaPipeFaceLandmarkExtractor = retryManager.executeWithRetry(() -> new MediaPipeFaceLandmarkExtractor(context));
-                modelLoadLatch.countDown();
-                Log.d(TAG, "MediaPipeFaceLandmarkExtractor initialized with face_landmarker.task");
-            } catch (ModelRetryManager.ModelRetryException e) {
-                Log.e(TAG, "Error initializing MediaPipeFaceLandmarkExtractor", e);
-                errorHandler.handleModelInitializationError(e, "MediaPipeFaceLandmarkExtractor");
-                modelLoadLatch.countDown();
-            }
-        });
+    /**
+     * Models needed by the current scenario
+     */
+    private Set<ModelRegistry.Model> requiredModels() {
+        return FaceIdConfig.modelsForScenario(configManager.getConfig().scenario);
     }
     
-    public boolean isInitialized() {
-        if (isInitialized) {
-            return true;
+    private void registerModels() {
+        // A model counts as loaded only after its own executor has finished loading and running
+        // a warm-up inference, so readiness means a steady-state first frame.
+        modelRegistry.register(ModelRegistry.Model.FACE_DETECTOR, this::loadFaceDetector, FaceDetector::close);
+        modelRegistry.register(ModelRegistry.Model.FACE_EMBEDDING, this::loadFaceEmbedding, FaceEmbedding::close);
+        modelRegistry.register(ModelRegistry.Model.SPOOF_DETECTOR, this::loadFaceSpoofDetector, FaceSpoofDetector::close);
+        modelRegistry.register(ModelRegistry.Model.GAZE_ESTIMATOR, this::loadGazeEstimator, GazeEstimator::close);
+        modelRegistry.register(ModelRegistry.Model.LANDMARK_EXTRACTOR, this::loadLandmarkExtractor,
+                MediaPipeFaceLandmarkExtractor::close);
+    }
+    
+    private FaceDetector loadFaceDetector() throws Exception {
+        long loadStart = SystemClock.elapsedRealtime();
+        FaceDetector model = null;
+        try {
+            model = new FaceDetector(context);
+            model.awaitInitialization(MODEL_READY_TIMEOUT_MS);
+            Log.d(TAG, "FaceDetector initialized");
+            return model;
+        } catch (Exception e) {
+            errorHandler.handleModelInitializationError(e, "FaceDetector");
+            throw e;
+        } finally {
+            onModelReady(ModelRegistry.Model.FACE_DETECTOR, loadStart,
+                    model != null ? model.getLoadTimeMs() : 0, model != null ? model.getWarmupTimeMs() : 0,
+                    model != null && model.isInitialized());
         }
-        
+    }
+    
+    private FaceEmbedding loadFaceEmbedding() throws Exception {
+        long loadStart = SystemClock.elapsedRealtime();
+        FaceEmbedding model = null;
         try {
-            // Kiểm tra xem tất cả model đã load xong chưa (với timeout 0 để không block)
-            boolean allLoaded = modelLoadLatch.await(0, TimeUnit.MILLISECONDS);
-            isInitialized = allLoaded;
-            return allLoaded;
-        } catch (InterruptedException e) {
-            return false;
+            model = new FaceEmbedding(context);
+            model.awaitInitialization(MODEL_READY_TIMEOUT_MS);
+            Log.d(TAG, "FaceEmbedding initialized");
+            return model;
+        } catch (Exception e) {
+            errorHandler.handleModelInitializationError(e, "FaceEmbedding");
+            throw e;
+        } finally {
+            onModelReady(ModelRegistry.Model.FACE_EMBEDDING, loadStart,
+                    model != null ? model.getLoadTimeMs() : 0, model != null ? model.getWarmupTimeMs() : 0,
+                    model != null && model.isInitialized());
+        }
+    }
+    
+    private FaceSpoofDetector loadFaceSpoofDetector() throws Exception {
+        long loadStart = SystemClock.elapsedRealtime();
+        FaceSpoofDetector model = null;
+        try {
+            model = new FaceSpoofDetector(context);
+            model.awaitInitialization(MODEL_READY_TIMEOUT_MS);
+            Log.d(TAG, "FaceSpoofDetector initialized");
+            return model;
+        } catch (Exception e) {
+            errorHandler.handleModelInitializationError(e, "FaceSpoofDetector");
+            throw e;
+        } finally {
+            onModelReady(ModelRegistry.Model.SPOOF_DETECTOR, loadStart,
+                    model != null ? model.getLoadTimeMs() : 0, model != null ? model.getWarmupTimeMs() : 0,
+                    model != null && model.isInitialized());
+        }
+    }
+    
+    private GazeEstimator loadGazeEstimator() throws Exception {
+        long loadStart = SystemClock.elapsedRealtime();
+        GazeEstimator model = null;
+        try {
+            model = new GazeEstimator(context, null);
+            // Configure gaze estimator for front camera mirrored preview and reduced head pose weight
+            model.setFrontCameraMirrored(true);
+            model.setHeadPoseWeight(0.2f);
+            model.awaitInitialization(MODEL_READY_TIMEOUT_MS);
+            Log.d(TAG, "GazeEstimator initialized");
+            return model;
+        } catch (Exception e) {
+            errorHandler.handleModelInitializationError(e, "GazeEstimator");
+            throw e;
+        } finally {
+            onModelReady(ModelRegistry.Model.GAZE_ESTIMATOR, loadStart,
+                    model != null ? model.getLoadTimeMs() : 0, model != null ? model.getWarmupTimeMs() : 0,
+                    model != null && model.isInitialized());
+        }
+    }
+    
+    private MediaPipeFaceLandmarkExtractor loadLandmarkExtractor() throws Exception {
+        long loadStart = SystemClock.elapsedRealtime();
+        MediaPipeFaceLandmarkExtractor model = null;
+        try {
+            // Loads and warms up synchronously in its constructor
+            model = new MediaPipeFaceLandmarkExtractor(context);
+            Log.d(TAG, "MediaPipeFaceLandmarkExtractor initialized with face_landmarker.task");
+            return model;
+        } catch (Exception e) {
+            errorHandler.handleModelInitializationError(e, "MediaPipeFaceLandmarkExtractor");
+            throw e;
+        } finally {
+            onModelReady(ModelRegistry.Model.LANDMARK_EXTRACTOR, loadStart,
+                    model != null ? model.getLoadTimeMs() : 0, model != null ? model.getWarmupTimeMs() : 0,
+                    model != null && model.isModelAvailable());
+        }
+    }
+    
+    /**
+     * Name of a model in the startup timeline
+     */
+    private static String timelineName(ModelRegistry.Model model) {
+        switch (model) {
+            case FACE_DETECTOR: return "FaceDetector";
+            case FACE_EMBEDDING: return "FaceEmbedding";
+            case SPOOF_DETECTOR: return "FaceSpoofDetector";
+            case GAZE_ESTIMATOR: return "GazeEstimator";
+            case LANDMARK_EXTRACTOR: return "MediaPipeFaceLandmarkExtractor";
+            default: return model.name();
+        }
+    }
+    
+    /**
+     * Record a model in the startup timeline
+     */
+    private void onModelReady(ModelRegistry.Model model, long loadStartMs, long loadTimeMs, long warmupTimeMs,
+                              boolean ready) {
+        boolean allDone = startupTimeline.recordModel(timelineName(model), loadStartMs, loadTimeMs, warmupTimeMs,
+                SystemClock.elapsedRealtime(), ready);
+        if (allDone) {
+            Log.i(TAG, startupTimeline.toString());
+        }
+    }
+    
+    /**
+     * Per-model load / warm-up timeline and time-to-first-verdict since this service was created
+     */
+    public ModelStartupTimeline getStartupTimeline() {
+        return startupTimeline;
+    }
+    
+    /**
+     * Keep a model loaded while a component holds on to it (e.g. the liveness enhancer);
+     * pair with {@link #releaseModel(ModelRegistry.Model)}
+     */
+    public void acquireModel(ModelRegistry.Model model) {
+        modelRegistry.acquire(model);
+    }
+    
+    public void releaseModel(ModelRegistry.Model model) {
+        modelRegistry.release(model);
+    }
+    
+    /**
+     * Drop unreferenced models under memory pressure; they reload on next use
+     *
+     * @param level Level from {@link android.content.ComponentCallbacks2#onTrimMemory(int)}
+     */
+    public void onTrimMemory(int level) {
+        int unloaded;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            // UI is hidden; models still leased by an in-flight inference or acquired are kept
+            unloaded = modelRegistry.unloadIdle(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            unloaded = modelRegistry.unloadIdle(MODEL_IDLE_UNLOAD_MS);
+        } else {
+            return;
+        }
+        Log.i(TAG, "onTrimMemory(" + level + "): unloaded " + unloaded + " models");
+    }
+    
+    /**
+     * True once every model of the current scenario is loaded; starts loading any that are missing.
+     * A model that failed to load counts as not loaded.
+     */
+    public boolean isInitialized() {
+        Set<ModelRegistry.Model> required = requiredModels();
+        if (modelRegistry.isLoaded(required)) {
+            return true;
         }
+        modelRegistry.preload(required);
+        return false;
+    }
+    
+    /**
+     * Models of the current scenario that failed to load after all retries. They stay unloaded until
+     * {@link #retryFailedModels()}; {@link #isInitialized()} is false while any is listed here.
+     */
+    public List<ModelRegistry.Model> getFailedModels() {
+        return modelRegistry.getFailed(requiredModels());
     }
     
+    /**
+     * Forget load failures and load the current scenario's models again
+     */
+    public void retryFailedModels() {
+        modelRegistry.resetFailures();
+        modelRegistry.preload(requiredModels());
+    }
+    
+    /**
+     * Wait on a background thread until the current scenario's models are loaded.
+     * onTimeout also runs if a model failed to load; see {@link #getFailedModels()}.
+     */
     public void awaitInitialization(long timeoutMs, Runnable onComplete, Runnable onTimeout) {
         executor.execute(() -> {
             try {
-                boolean initialized = modelLoadLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
+                Set<ModelRegistry.Model> required = requiredModels();
+                boolean initialized = modelRegistry.awaitAll(required, timeoutMs) && modelRegistry.isLoaded(required);
                 if (initialized) {
-                    isInitialized = true;
                     mainHandler.post(onComplete);
                 } else {
                     mainHandler.post(onTimeout);
@@ -251,22 +407,33 @@ public class FaceIdService {
         }
         
         executor.execute(() -> {
+            final long frameSeq = frameSequence.incrementAndGet();
+            final long frameTimeMs = SystemClock.elapsedRealtime();
             try {
                 // If face rectangle is not provided, detect it
                 if (faceRect == null) {
-                    List<FaceDetector.FaceDetectionResult> faces = faceDetector.detectFaces(bitmap);
+                    List<FaceDetector.FaceDetectionResult> faces;
+                    try (ModelRegistry.Lease<FaceDetector> detector = awaitLease(ModelRegistry.Model.FACE_DETECTOR)) {
+                        if (detector == null) {
+                            runOnMainThread(() -> callback.onError(MODEL_LOADING_MESSAGE));
+                            return;
+                        }
+                        faces = detector.get().detectFaces(bitmap);
+                    }
                     
                     Log.d(TAG, "processFaceImage: detected " + faces.size() + " faces");
                     
                     if (faces.isEmpty()) {
                         Log.d(TAG, "processFaceImage: No faces detected");
-                        runOnMainThread(() -> callback.onNoFaceDetected());
+                        resultDispatcher.dispatch(FrameResultDispatcher.CHANNEL_FACE_DETECTION, frameSeq, frameTimeMs,
+                                callback::onNoFaceDetected);
                         return;
                     }
                     
                     if (faces.size() > 1) {
                         Log.d(TAG, "processFaceImage: Multiple faces detected: " + faces.size());
-                        runOnMainThread(() -> callback.onMultipleFacesDetected());
+                        resultDispatcher.dispatch(FrameResultDispatcher.CHANNEL_FACE_DETECTION, frameSeq, frameTimeMs,
+                                callback::onMultipleFacesDetected);
                         return;
                     }
                     
@@ -276,7 +443,7 @@ public class FaceIdService {
                     Rect boundingBox = faceResult.getBoundingBox();
                     
                     // Now perform spoof detection with oval validation
-                    processFaceWithOvalBoundary(bitmap, boundingBox, ovalRect, faceBitmap, callback);
+                    processFaceWithOvalBoundary(bitmap, boundingBox, ovalRect, faceBitmap, frameSeq, frameTimeMs, callback);
                 } else {
                     // Use the provided face rectangle
                     Log.d(TAG, "processFaceImage: Using provided face rectangle: " + faceRect.toString());
@@ -291,7 +458,7 @@ public class FaceIdService {
                     );
                     
                     // Perform spoof detection with oval validation
-                    processFaceWithOvalBoundary(bitmap, faceRect, ovalRect, faceBitmap, callback);
+                    processFaceWithOvalBoundary(bitmap, faceRect, ovalRect, faceBitmap, frameSeq, frameTimeMs, callback);
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Error processing face image", e);
@@ -304,7 +471,8 @@ public class FaceIdService {
      * 🔧 NEW: Improved helper method using FaceDecisionEngine with Memory and Performance Management
      */
     private void processFaceWithOvalBoundary(Bitmap bitmap, Rect boundingBox, android.graphics.RectF ovalRect, 
-                                           Bitmap faceBitmap, FaceDetectionCallback callback) {
+                                           Bitmap faceBitmap, long frameSeq, long frameTimeMs,
+                                           FaceDetectionCallback callback) {
         // 🔧 NEW: Memory management - acquire rect from pool
         Rect pooledBoundingBox = memoryManager.acquireRect();
         pooledBoundingBox.set(boundingBox);
@@ -317,63 +485,77 @@ public class FaceIdService {
         FaceDecisionEngine.OvalValidationResult ovalValidation = validateOvalBoundary(pooledBoundingBox, ovalRect);
                 
         // Step 2: Check for spoofing using async method with oval validation
-        faceSpoofDetector.detectSpoofAsync(cachedResult.bitmap, pooledBoundingBox, ovalRect, spoofResult -> {
+        boolean started = detectSpoofLeased(cachedResult.bitmap, pooledBoundingBox, ovalRect, true, spoofResult -> {
             Log.d(TAG, "processFaceWithOvalBoundary: Spoof detection result - isSpoof: " + 
                     spoofResult.isSpoof() + ", score: " + spoofResult.getScore() + ", confidence: " + spoofResult.getConfidence());
 
-            // 🔧 NEW: Use FaceDecisionEngine for decision making
-            FaceDecisionEngine.FaceDetectionResult detectionResult = new FaceDecisionEngine.FaceDetectionResult(
-                true, pooledBoundingBox, spoofResult.getConfidence()
-            );
-            
-            FaceDecisionEngine.SpoofDetectionResult spoofDetectionResult = new FaceDecisionEngine.SpoofDetectionResult(
-                spoofResult.isSpoof(), spoofResult.getConfidence(), spoofResult.getScore()
-            );
-            
+            // 🔧 NEW: Use FaceDecisionEngine for decision making (primitive overload, no per-frame allocation)
             FaceDecisionEngine.FaceDecisionResult decision = decisionEngine.evaluate(
-                detectionResult, spoofDetectionResult, ovalValidation
+                spoofResult.isSpoof(), spoofResult.getConfidence(), true, ovalValidation.isValid()
             );
+            startupTimeline.markFirstVerdict(SystemClock.elapsedRealtime());
             
             Log.d(TAG, "================================================================================================ DECISION " + decision.getMessage());
 
             // 🔧 NEW: Handle decision result
             if (decision.isAccepted()) {
-                runOnMainThread(() -> callback.onFaceDetected(faceBitmap, boundingBox));
-            } else if (decision.isRejected()) {
-                runOnMainThread(() -> callback.onError(decision.getMessage()));
-            } else if (decision.needsGuidance()) {
-                runOnMainThread(() -> callback.onError(decision.getMessage()));
+                resultDispatcher.dispatch(FrameResultDispatcher.CHANNEL_FACE_DETECTION, frameSeq, frameTimeMs,
+                        () -> callback.onFaceDetected(faceBitmap, boundingBox));
+            } else if (decision.isRejected() || decision.needsGuidance()) {
+                resultDispatcher.dispatch(FrameResultDispatcher.CHANNEL_FACE_DETECTION, frameSeq, frameTimeMs,
+                        () -> callback.onError(decision.getMessage()));
             }
             
             // 🔧 NEW: Memory management - release pooled objects
             memoryManager.releaseRect(pooledBoundingBox);
         });
+        if (!started) {
+            memoryManager.releaseRect(pooledBoundingBox);
+            runOnMainThread(() -> callback.onError(MODEL_LOADING_MESSAGE));
+        }
     }
     
+    // Oval geometry kernel shared with OvalFaceOverlayView; scratch state guarded by synchronizing on it
+    private final OvalGeometry ovalGeometry = new OvalGeometry();
+    private final android.graphics.RectF mappedOvalScratch = new android.graphics.RectF();
+    private static final float OVAL_VALIDATION_EXPANSION = 0.07f;
+    private static final float OVAL_ELLIPSE_TOLERANCE = 1.2f;
+    private static final float FALLBACK_MIN_FACE_SIZE_RATIO = 0.15f;
+    private static final float FALLBACK_MAX_FACE_SIZE_RATIO = 0.95f;
+    
+    // Oval validation outcomes are immutable, so the per-frame check reuses them
+    private static final FaceDecisionEngine.OvalValidationResult OVAL_NOT_PROVIDED =
+            new FaceDecisionEngine.OvalValidationResult(true, "No oval boundary provided");
+    private static final FaceDecisionEngine.OvalValidationResult OVAL_VALID_FALLBACK =
+            new FaceDecisionEngine.OvalValidationResult(true, "Face positioned within oval (fallback validation)");
+    private static final FaceDecisionEngine.OvalValidationResult OVAL_VALID =
+            new FaceDecisionEngine.OvalValidationResult(true, "Face properly positioned within oval");
+    private static final FaceDecisionEngine.OvalValidationResult OVAL_INVALID =
+            new FaceDecisionEngine.OvalValidationResult(false, "Face not within oval boundary");
+    
     /**
      * 🔧 NEW: Helper method to validate oval boundary
      */
     private FaceDecisionEngine.OvalValidationResult validateOvalBoundary(Rect boundingBox, android.graphics.RectF ovalRect) {
         if (ovalRect == null) {
-            return new FaceDecisionEngine.OvalValidationResult(true, "No oval boundary provided");
+            return OVAL_NOT_PROVIDED;
         }
         
-        // Map ovalRect (view space) to bitmap space using current mapping
-        android.graphics.RectF mappedOval = ovalRect;
-        try {
-            android.graphics.RectF mapped = com.example.flutter_application_1.faceid.util.CoordinateMapper.getInstance().mapViewRectToBitmap(ovalRect);
-            if (mapped != null) {
-                mappedOval = mapped;
-            }
-        } catch (Exception ignored) {}
-
-        // Apply slight tolerance by expanding oval by 7% for validation only (not UI)
-        android.graphics.RectF tolerantOval = new android.graphics.RectF(mappedOval);
-        float expandX = tolerantOval.width() * 0.07f * 0.5f;
-        float expandY = tolerantOval.height() * 0.07f * 0.5f;
-        tolerantOval.inset(-expandX, -expandY);
+        boolean isWithinOval;
+        synchronized (ovalGeometry) {
+            // Map ovalRect (view space) to bitmap space using current mapping
+            android.graphics.RectF mappedOval = ovalRect;
+            try {
+                if (com.example.flutter_application_1.faceid.util.CoordinateMapper.getInstance()
+                        .mapViewRectToBitmap(ovalRect, mappedOvalScratch)) {
+                    mappedOval = mappedOvalScratch;
+                }
+            } catch (Exception ignored) {}
 
-        boolean isWithinOval = checkFaceWithinOval(boundingBox, tolerantOval);
+            // Apply slight tolerance by expanding oval by 7% for validation only (not UI)
+            ovalGeometry.setOval(mappedOval.left, mappedOval.top, mappedOval.right, mappedOval.bottom, OVAL_VALIDATION_EXPANSION);
+            isWithinOval = checkFaceWithinOval(boundingBox);
+        }
         
         // 🔧 NEW: Fallback validation for registration scenario
         if (!isWithinOval && configManager.getConfig().scenario == FaceIdConfig.Scenario.REGISTRATION) {
@@ -381,12 +563,11 @@ public class FaceIdService {
             boolean fallbackCheck = checkFaceWithinOvalFallback(boundingBox, ovalRect);
             if (fallbackCheck) {
                 Log.d(TAG, "Oval validation failed with strict thresholds, but passed with fallback for registration");
-                return new FaceDecisionEngine.OvalValidationResult(true, "Face positioned within oval (fallback validation)");
+                return OVAL_VALID_FALLBACK;
             }
         }
         
-        String reason = isWithinOval ? "Face properly positioned within oval" : "Face not within oval boundary";
-        return new FaceDecisionEngine.OvalValidationResult(isWithinOval, reason);
+        return isWithinOval ? OVAL_VALID : OVAL_INVALID;
     }
     
     /**
@@ -397,47 +578,30 @@ public class FaceIdService {
     }
     
     /**
-     * Check if face is within oval boundary
+     * Check if face is within the oval boundary currently set on {@link #ovalGeometry}
      */
-    private boolean checkFaceWithinOval(Rect faceRect, android.graphics.RectF ovalRect) {
-        if (faceRect == null || ovalRect == null) {
+    private boolean checkFaceWithinOval(Rect faceRect) {
+        if (faceRect == null) {
             return true; // No validation needed
         }
+        ovalGeometry.fit(faceRect.left, faceRect.top, faceRect.right, faceRect.bottom);
         
-        // Calculate face center relative to oval center
-        float faceCenterX = faceRect.exactCenterX();
-        float faceCenterY = faceRect.exactCenterY();
-        float ovalCenterX = ovalRect.centerX();
-        float ovalCenterY = ovalRect.centerY();
-        
-        // Calculate ellipse parameters
-        float a = ovalRect.width() / 2; // semi-major axis
-        float b = ovalRect.height() / 2; // semi-minor axis
-        
-        // Ellipse equation: (x-h)²/a² + (y-k)²/b² ≤ 1
-        float ellipseValue = (float) (
-            Math.pow(faceCenterX - ovalCenterX, 2) / Math.pow(a, 2) +
-            Math.pow(faceCenterY - ovalCenterY, 2) / Math.pow(b, 2)
-        );
-        
-        // 🔧 NEW: Use configuration for oval validation
+        // 🔧 NEW: Use configurable size thresholds; ellipse tolerance matches overlay behavior
         FaceIdConfig.OvalConfig ovalConfig = configManager.getConfig().ovalConfig;
-        
-        // Calculate face size relative to oval
-        float faceWidth = faceRect.width();
-        float faceHeight = faceRect.height();
-        float widthRatio = faceWidth / ovalRect.width();
-        float heightRatio = faceHeight / ovalRect.height();
-        
-        // 🔧 NEW: Use configurable thresholds
-        // Ellipse equation returns ≤ 1 for points inside ellipse, so we check if it's within the ellipse
-        // Align ellipse tolerance with overlay view tolerance for consistency
-        float ELLIPSE_TOLERANCE = 1.2f; // matches overlay behavior
-        boolean isWithinEllipse = ellipseValue <= ELLIPSE_TOLERANCE;
-        boolean isGoodSize = widthRatio >= ovalConfig.minFaceSizeRatio && widthRatio <= ovalConfig.maxFaceSizeRatio && 
-                            heightRatio >= ovalConfig.minFaceSizeRatio && heightRatio <= ovalConfig.maxFaceSizeRatio;
-        
-        return isWithinEllipse && isGoodSize;
+        return ovalGeometry.isGoodFit(OVAL_ELLIPSE_TOLERANCE, ovalConfig.minFaceSizeRatio, ovalConfig.maxFaceSizeRatio);
+    }
+    
+    /**
+     * Check if face is within the given oval, both in bitmap coordinates (capture and verify paths)
+     */
+    private boolean checkFaceWithinOval(Rect faceRect, android.graphics.RectF ovalRect) {
+        if (faceRect == null || ovalRect == null) {
+            return true; // No validation needed
+        }
+        synchronized (ovalGeometry) {
+            ovalGeometry.setOval(ovalRect.left, ovalRect.top, ovalRect.right, ovalRect.bottom);
+            return checkFaceWithinOval(faceRect);
+        }
     }
     
     /**
@@ -447,50 +611,25 @@ public class FaceIdService {
         if (faceRect == null || ovalRect == null) {
             return true; // No validation needed
         }
-        
-        // Calculate face center relative to oval center
-        float faceCenterX = faceRect.exactCenterX();
-        float faceCenterY = faceRect.exactCenterY();
-        float ovalCenterX = ovalRect.centerX();
-        float ovalCenterY = ovalRect.centerY();
-        
-        // Calculate ellipse parameters
-        float a = ovalRect.width() / 2; // semi-major axis
-        float b = ovalRect.height() / 2; // semi-minor axis
-        
-        // Ellipse equation: (x-h)²/a² + (y-k)²/b² ≤ 1
-        float ellipseValue = (float) (
-            Math.pow(faceCenterX - ovalCenterX, 2) / Math.pow(a, 2) +
-            Math.pow(faceCenterY - ovalCenterY, 2) / Math.pow(b, 2)
-        );
-        
-        // 🔧 NEW: More lenient thresholds for fallback validation
-        float fallbackMinFaceSizeRatio = 0.15f; // 15% size instead of 20%
-        float fallbackMaxFaceSizeRatio = 0.95f; // 95% size instead of 90%
-        
-        // Calculate face size relative to oval
-        float faceWidth = faceRect.width();
-        float faceHeight = faceRect.height();
-        float widthRatio = faceWidth / ovalRect.width();
-        float heightRatio = faceHeight / ovalRect.height();
-        
-        // 🔧 NEW: Use fallback thresholds
-        // Ellipse equation returns ≤ 1 for points inside ellipse, so we check if it's within the ellipse
-        boolean isWithinEllipse = ellipseValue <= 1.0f;
-        boolean isGoodSize = widthRatio >= fallbackMinFaceSizeRatio && widthRatio <= fallbackMaxFaceSizeRatio && 
-                            heightRatio >= fallbackMinFaceSizeRatio && heightRatio <= fallbackMaxFaceSizeRatio;
-
-        return isWithinEllipse && isGoodSize;
+        synchronized (ovalGeometry) {
+            ovalGeometry.setOval(ovalRect.left, ovalRect.top, ovalRect.right, ovalRect.bottom);
+            ovalGeometry.fit(faceRect.left, faceRect.top, faceRect.right, faceRect.bottom);
+            // 15% / 95% size instead of the configured 20% / 90%, strict ellipse
+            return ovalGeometry.isGoodFit(1.0f, FALLBACK_MIN_FACE_SIZE_RATIO, FALLBACK_MAX_FACE_SIZE_RATIO);
+        }
     }
     
     /**
      * Process a frame continuously for zero-touch face recognition
      * Enhanced with oval boundary validation
      * 
+     * Each call starts its own detection and spoof pass on the worker pool, even while an earlier frame
+     * is still in flight; a newer frame's result supersedes an older one that has not reached the UI yet.
+     *
      * @param bitmap Current frame bitmap
      * @param ovalRect Oval boundary for validation (can be null)
      * @param callback Callback for continuous processing results
-     * @return true if processing was started, false if already processing
+     * @return true if processing was started, false if the models are not initialized
      */
     public boolean processContinuousFrame(Bitmap bitmap, android.graphics.RectF ovalRect, ContinuousProcessingCallback callback) {
 
@@ -501,18 +640,31 @@ public class FaceIdService {
             return false;
         }
         
-        // If already processing, reset the flag to allow processing this new frame
+        // A frame still in flight does not block this one; its result is superseded in the dispatcher
         if (isProcessing.get()) {
             isProcessing.set(false);
         }
         
         isProcessing.set(true);
         
-        // 🔧 NEW: Use retry manager for face detection
-        retryManager.executeWithRetryAsync(() -> {
+        // Results of this frame reach the UI through the dispatcher; a newer frame supersedes them
+        final long frameSeq = frameSequence.incrementAndGet();
+        final long frameTimeMs = SystemClock.elapsedRealtime();
+        
+        // 🔧 NEW: Face detection runs on the retry scheduler (inference policy)
+        retryScheduler.submit(RetryPolicy.INFERENCE, () -> {
             try {
-                // Step 1: Detect face with retry
-                List<FaceDetector.FaceDetectionResult> faces = faceDetector.detectFaces(bitmap);
+                // Step 1: Detect face with retry; a model still loading is reported as such, not retried
+                List<FaceDetector.FaceDetectionResult> faces;
+                try (ModelRegistry.Lease<FaceDetector> detector = modelRegistry.tryLease(ModelRegistry.Model.FACE_DETECTOR)) {
+                    if (detector == null) {
+                        isProcessing.set(false);
+                        resultDispatcher.dispatch(FrameResultDispatcher.CHANNEL_CONTINUOUS_FRAME, frameSeq, frameTimeMs,
+                                () -> callback.onError(MODEL_LOADING_MESSAGE));
+                        return null;
+                    }
+                    faces = detector.get().detectFaces(bitmap);
+                }
 
                     Log.d("DEBUG_SERVICE", "======== STEP 1: Face detection completed: " + faces.size() + " faces found");
                     if (faces.isEmpty()) {
@@ -520,18 +672,18 @@ public class FaceIdService {
                     }
 
                 if (faces.isEmpty()) {
-                    runOnMainThread(() -> {
-                        callback.onNoFaceDetected();
-                        isProcessing.set(false);
-                    });
+                    embeddingPrefetcher.discard();
+                    isProcessing.set(false);
+                    resultDispatcher.dispatch(FrameResultDispatcher.CHANNEL_CONTINUOUS_FRAME, frameSeq, frameTimeMs,
+                            callback::onNoFaceDetected);
                     return null;
                 }
                 
                 if (faces.size() > 1) {
-                    runOnMainThread(() -> {
-                        callback.onMultipleFacesDetected();
-                        isProcessing.set(false);
-                    });
+                    embeddingPrefetcher.discard();
+                    isProcessing.set(false);
+                    resultDispatcher.dispatch(FrameResultDispatcher.CHANNEL_CONTINUOUS_FRAME, frameSeq, frameTimeMs,
+                            callback::onMultipleFacesDetected);
                     return null;
                 }
                 
@@ -544,67 +696,64 @@ public class FaceIdService {
                 
                 if (!ovalValidation.isValid()) {
                     Log.d(TAG, "processContinuousFrame: Face not within oval boundary");
-                    runOnMainThread(() -> {
-                        callback.onError(ovalValidation.getReason());
-                        isProcessing.set(false);
-                    });
+                    embeddingPrefetcher.discard();
+                    isProcessing.set(false);
+                    resultDispatcher.dispatch(FrameResultDispatcher.CHANNEL_CONTINUOUS_FRAME, frameSeq, frameTimeMs,
+                            () -> callback.onError(ovalValidation.getReason()));
                     return null;
                 }
                 
                 // Step 2: Check for spoofing with oval validation
-                faceSpoofDetector.detectSpoofAsync(bitmap, boundingBox, ovalRect, spoofResult -> {
+                boolean started = detectSpoofLeased(bitmap, boundingBox, ovalRect, false, spoofResult -> {
                     Log.d(TAG, "======== STEP 2: Spoof detection completed - isSpoof: " +
                           spoofResult.isSpoof() + ", score: " + spoofResult.getScore());
                     
-                    // 🔧 NEW: Use FaceDecisionEngine for decision making
-                    FaceDecisionEngine.FaceDetectionResult detectionResult = new FaceDecisionEngine.FaceDetectionResult(
-                        true, boundingBox, spoofResult.getConfidence()
-                    );
-                    
-                    FaceDecisionEngine.SpoofDetectionResult spoofDetectionResult = new FaceDecisionEngine.SpoofDetectionResult(
-                        spoofResult.isSpoof(), spoofResult.getConfidence(), spoofResult.getScore()
-                    );
-                    
+                    // 🔧 NEW: Use FaceDecisionEngine for decision making (primitive overload, no per-frame allocation)
                     FaceDecisionEngine.FaceDecisionResult decision = decisionEngine.evaluate(
-                        detectionResult, spoofDetectionResult, ovalValidation
+                        spoofResult.isSpoof(), spoofResult.getConfidence(), true, ovalValidation.isValid()
                     );
+                    startupTimeline.markFirstVerdict(SystemClock.elapsedRealtime());
+                    
+                    // ⚡ High-confidence real face in the oval: let the prefetcher embed it while the user is still
+                    // positioning. Anything less drops what it holds, so a submit never reuses a pre-spoof capture
+                    if (decision.getReason() == FaceDecisionEngine.DecisionReason.HIGH_CONFIDENCE_REAL) {
+                        embeddingPrefetcher.offer(bitmap, spoofResult.getConfidence());
+                    } else {
+                        embeddingPrefetcher.discard();
+                    }
                     
                     Log.d(TAG, "processContinuousFrame: Decision result: " + decision);
                     
-                    runOnMainThread(() -> {
+                    isProcessing.set(false);
+                    resultDispatcher.dispatch(FrameResultDispatcher.CHANNEL_CONTINUOUS_FRAME, frameSeq, frameTimeMs, () -> {
                         Log.d(TAG, "processContinuousFrame: Calling callback with isSpoof: " + 
                               spoofResult.isSpoof() + ", score: " + spoofResult.getScore());
                         callback.onFaceDetected(boundingBox, spoofResult.isSpoof(), spoofResult.getScore());
-                        isProcessing.set(false);
                     });
                 });
+                if (!started) {
+                    isProcessing.set(false);
+                    resultDispatcher.dispatch(FrameResultDispatcher.CHANNEL_CONTINUOUS_FRAME, frameSeq, frameTimeMs,
+                            () -> callback.onError(MODEL_LOADING_MESSAGE));
+                }
                 
                 return null;
                 
             } catch (Exception e) {
                 Log.e(TAG, "Error in continuous frame processing", e);
                 errorHandler.handleFaceDetectionError(e);
-                runOnMainThread(() -> {
-                    callback.onError("Error processing frame: " + e.getMessage());
-                    isProcessing.set(false);
-                });
+                isProcessing.set(false);
+                resultDispatcher.dispatch(FrameResultDispatcher.CHANNEL_CONTINUOUS_FRAME, frameSeq, frameTimeMs,
+                        () -> callback.onError("Error processing frame: " + e.getMessage()));
                 return null;
             }
-        }, new ModelRetryManager.RetryCallback<Object>() {
-            @Override
-            public void onSuccess(Object result) {
-                // Success handled in the operation
-            }
-            
-            @Override
-            public void onFailure(ModelRetryManager.ModelRetryException exception) {
-                Log.e(TAG, "Retry failed for continuous frame processing", exception);
-                errorHandler.handleGeneralError(exception, "continuous frame processing");
-                runOnMainThread(() -> {
-                    callback.onError("Processing failed after retries");
-                    isProcessing.set(false);
-                });
-            }
+        }).exceptionally(error -> {
+            Log.e(TAG, "Retry failed for continuous frame processing", error);
+            errorHandler.handleGeneralError(asException(error), "continuous frame processing");
+            isProcessing.set(false);
+            resultDispatcher.dispatch(FrameResultDispatcher.CHANNEL_CONTINUOUS_FRAME, frameSeq, frameTimeMs,
+                    () -> callback.onError("Processing failed after retries"));
+            return null;
         });
         
         return true;
@@ -649,7 +798,7 @@ public class FaceIdService {
                 
                 // Do one final spoof check with oval boundary
                 Bitmap finalFaceBitmap = faceBitmap;
-                faceSpoofDetector.detectSpoofAsync(bitmap, boundingBox, ovalRect, spoofResult -> {
+                boolean started = detectSpoofLeased(bitmap, boundingBox, ovalRect, true, spoofResult -> {
                     if (spoofResult.isSpoof()) {
                         Log.d(TAG, "captureAndRegisterFace: Spoof detected during registration");
                         runOnMainThread(() -> callback.onFailure("Spoof detected! Please use a real face for registration."));
@@ -659,6 +808,9 @@ public class FaceIdService {
                     // Register the face
                     registerFaceId(finalFaceBitmap, userId, callback);
                 });
+                if (!started) {
+                    runOnMainThread(() -> callback.onFailure(MODEL_LOADING_MESSAGE));
+                }
                 
             } catch (Exception e) {
                 Log.e(TAG, "Error capturing face for registration", e);
@@ -691,7 +843,7 @@ public class FaceIdService {
 
                 // Final spoof check before update
                 Bitmap finalFaceBitmap = faceBitmap;
-                faceSpoofDetector.detectSpoofAsync(bitmap, boundingBox, ovalRect, spoofResult -> {
+                boolean started = detectSpoofLeased(bitmap, boundingBox, ovalRect, true, spoofResult -> {
                     if (spoofResult.isSpoof()) {
                         runOnMainThread(() -> callback.onFailure("Spoof detected! Please use a real face for update."));
                         return;
@@ -700,6 +852,9 @@ public class FaceIdService {
                     // Proceed with update API
                     updateFaceId(finalFaceBitmap, userId, callback);
                 });
+                if (!started) {
+                    runOnMainThread(() -> callback.onFailure(MODEL_LOADING_MESSAGE));
+                }
             } catch (Exception e) {
                 Log.e(TAG, "Error capturing face for update", e);
                 runOnMainThread(() -> callback.onFailure("Error capturing face: " + e.getMessage()));
@@ -731,7 +886,7 @@ public class FaceIdService {
                 
                 // Optional spoof check before verification (same gate as update)
                 Bitmap finalFaceBitmap = faceBitmap;
-                faceSpoofDetector.detectSpoofAsync(bitmap, boundingBox, ovalRect, spoofResult -> {
+                boolean started = detectSpoofLeased(bitmap, boundingBox, ovalRect, true, spoofResult -> {
                     if (spoofResult.isSpoof()) {
                         runOnMainThread(() -> callback.onFailure("Spoof detected! Please use a real face for verification."));
                         return;
@@ -740,6 +895,9 @@ public class FaceIdService {
                     // Proceed with legacy verify API (ad-hoc) by default
                     verifyFaceId(finalFaceBitmap, userId, callback);
                 });
+                if (!started) {
+                    runOnMainThread(() -> callback.onFailure(MODEL_LOADING_MESSAGE));
+                }
             } catch (Exception e) {
                 Log.e(TAG, "Error capturing face for verify", e);
                 runOnMainThread(() -> callback.onFailure("Error capturing face: " + e.getMessage()));
@@ -749,64 +907,219 @@ public class FaceIdService {
 
     /**
      * Verify face embedding for a specific request window
+     *
+     * Uses the prefetched embedding if one is fresh enough, so the submit is a network call only;
+     * otherwise embeds faceBitmap first. Press-to-result time is recorded either way.
+     *
+     * @param expiresAtMs Wall-clock end of the request window; a queued retry is dropped after it (0 if unknown)
+     */
+    public void verifyFaceIdForRequest(Bitmap faceBitmap, String userId, String requestId, Float threshold,
+                                       long expiresAtMs, FaceIdCallback callback) {
+        if (!isInitialized()) {
+            awaitInitialization(5000,
+                () -> verifyFaceIdForRequest(faceBitmap, userId, requestId, threshold, expiresAtMs, callback),
+                () -> runOnMainThread(() -> callback.onFailure("Face embedding model not initialized yet"))
+            );
+            return;
+        }
+
+        final long pressedAtMs = SystemClock.elapsedRealtime();
+        float[] prefetched = embeddingPrefetcher.take(requestId);
+        if (prefetched != null) {
+            executor.execute(() -> submitVerification(prefetched, userId, requestId, threshold, expiresAtMs,
+                    timedCallback(callback, pressedAtMs, true)));
+            return;
+        }
+
+        FaceIdCallback timed = timedCallback(callback, pressedAtMs, false);
+        embedAsync(faceBitmap,
+                embedding -> executor.execute(() -> submitVerification(embedding, userId, requestId, threshold,
+                        expiresAtMs, timed)),
+                () -> timed.onFailure(MODEL_LOADING_MESSAGE));
+    }
+
+    /**
+     * Delivery of per-frame results to the UI: coalesced, superseded and late counts, frame-to-UI latency
+     */
+    public FrameResultDispatcher.Stats getResultDispatchStats() {
+        return resultDispatcher.getStats();
+    }
+
+    /**
+     * Prefetcher fed by processContinuousFrame; the request manager wakes it for a request
+     */
+    public EmbeddingPrefetcher getEmbeddingPrefetcher() {
+        return embeddingPrefetcher;
+    }
+
+    /**
+     * Upload a verification embedding for a request; runs on the executor
+     */
+    private void submitVerification(float[] embedding, String userId, String requestId, Float threshold,
+                                    long expiresAtMs, FaceIdCallback callback) {
+        try {
+            debugEmbedding(embedding, "verify_request");
+
+            RequestBody userIdPart = RequestBody.create(MediaType.parse("text/plain"), userId);
+            RequestBody thresholdPart = threshold != null ?
+                    RequestBody.create(MediaType.parse("text/plain"), String.valueOf(threshold)) :
+                    null;
+            MultipartBody.Part filePart = EmbeddingRequestBody.part("embedding", embedding);
+
+            EmbeddingOutbox.Entry upload = stageUpload(EmbeddingOutbox.Action.VERIFY, userId, requestId, threshold,
+                    expiresAtMs, embedding);
+            FaceIdApiController api = ApiClient.getClient(context).create(FaceIdApiController.class);
+            retrofit2.Call<FaceIdVerifyResponse> call =
+                    api.verifyFaceId(idempotencyKey(upload), requestId, userIdPart, filePart, thresholdPart);
+            call.enqueue(new retrofit2.Callback<FaceIdVerifyResponse>() {
+                @Override
+                public void onResponse(@NonNull retrofit2.Call<FaceIdVerifyResponse> c,
+                                       @NonNull retrofit2.Response<FaceIdVerifyResponse> resp) {
+                    if (resp.isSuccessful() && resp.body() != null) {
+                        finishUpload(upload, false);
+                        if (resp.body().isSuccess()) {
+                            runOnMainThread(() -> callback.onSuccess("Face ID verified successfully"));
+                        } else {
+                            runOnMainThread(() -> callback.onFailure(resp.body().getMessage() != null ? resp.body().getMessage() : "Verification failed"));
+                        }
+                    } else if (resp.code() == 410) {
+                        finishUpload(upload, false);
+                        runOnMainThread(() -> callback.onFailure("Verification window expired"));
+                    } else {
+                        finishUpload(upload, isTransientHttpFailure(resp.code()));
+                        runOnMainThread(() -> callback.onFailure("Failed to verify: HTTP " + resp.code())) ;
+                    }
+                }
+
+                @Override
+                public void onFailure(@NonNull retrofit2.Call<FaceIdVerifyResponse> c,
+                                      @NonNull Throwable t) {
+                    finishUpload(upload, true);
+                    String message = offlineMessage(upload, t, "verification", "Network error: " + t.getMessage());
+                    runOnMainThread(() -> callback.onFailure(message));
+                }
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Error in verifyFaceIdForRequest", e);
+            runOnMainThread(() -> callback.onFailure("Error: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Wrap a verification callback to record the time from submit to server result
+     */
+    private FaceIdCallback timedCallback(FaceIdCallback callback, long pressedAtMs, boolean prefetched) {
+        return new FaceIdCallback() {
+            @Override
+            public void onSuccess(String message) {
+                embeddingPrefetcher.recordPressToResult(SystemClock.elapsedRealtime() - pressedAtMs, prefetched);
+                callback.onSuccess(message);
+            }
+
+            @Override
+            public void onFailure(String errorMessage) {
+                embeddingPrefetcher.recordPressToResult(SystemClock.elapsedRealtime() - pressedAtMs, prefetched);
+                callback.onFailure(errorMessage);
+            }
+        };
+    }
+
+    /**
+     * Start kiosk mode for a request: one device verifies a queue of users, whose embeddings are
+     * uploaded in batches. Closes the previous kiosk session, if any.
+     *
+     * @param threshold   Similarity threshold for every user, or null for the request's own
+     * @param expiresAtMs Wall-clock end of the request window, 0 if unknown; bounds queued retries
      */
-    public void verifyFaceIdForRequest(Bitmap faceBitmap, String userId, String requestId, Float threshold, FaceIdCallback callback) {
+    public void openKioskSession(String requestId, Float threshold, long expiresAtMs) {
+        synchronized (kioskLock) {
+            if (kioskVerifier != null) {
+                kioskVerifier.close();
+            }
+            if (kioskScheduler == null) {
+                kioskScheduler = Executors.newSingleThreadScheduledExecutor();
+            }
+            kioskVerifier = new FaceIdBatchVerifier(faceIdApiController, kioskScheduler, requestId, threshold);
+            kioskExpiresAtMs = expiresAtMs;
+            Log.d(TAG, "🧑‍🎓 Kiosk session opened for request " + requestId);
+        }
+    }
+
+    /**
+     * Verify one user of the queue in the open kiosk session. The callback runs on the main thread
+     * once the batch holding this user has been answered.
+     */
+    public void verifyFaceIdInKiosk(Bitmap faceBitmap, String userId, FaceIdCallback callback) {
         if (!isInitialized()) {
             awaitInitialization(5000,
-                () -> verifyFaceIdForRequest(faceBitmap, userId, requestId, threshold, callback),
+                () -> verifyFaceIdInKiosk(faceBitmap, userId, callback),
                 () -> runOnMainThread(() -> callback.onFailure("Face embedding model not initialized yet"))
             );
             return;
         }
 
-        faceEmbedding.getFaceEmbeddingAsync(faceBitmap, embedding -> {
+        embedAsync(faceBitmap, embedding -> {
             executor.execute(() -> {
+                FaceIdBatchVerifier verifier;
+                long expiresAtMs;
+                synchronized (kioskLock) {
+                    verifier = kioskVerifier;
+                    expiresAtMs = kioskExpiresAtMs;
+                }
+                if (verifier == null) {
+                    runOnMainThread(() -> callback.onFailure("Kiosk session is not open"));
+                    return;
+                }
+                if (!ApiClient.isBackendAvailable()) {
+                    // 📦 Backend circuit open: keep the result for the sync worker instead of failing fast
+                    EmbeddingOutbox.Entry upload = stageUpload(EmbeddingOutbox.Action.VERIFY, userId,
+                            verifier.getRequestId(), verifier.getThreshold(), expiresAtMs, embedding);
+                    finishUpload(upload, true);
+                    String message = upload != null
+                            ? "Server is temporarily unavailable, your verification was saved and will be sent automatically"
+                            : "Server is temporarily unavailable";
+                    runOnMainThread(() -> callback.onFailure(message));
+                    return;
+                }
                 try {
-                    ByteBuffer buffer = ByteBuffer.allocate(embedding.length * 4);
-                    buffer.order(ByteOrder.LITTLE_ENDIAN);
-                    for (float v : embedding) buffer.putFloat(v);
-                    logEmbeddingDebug(embedding, buffer.array(), "verify_request");
-                    saveEmbeddingDebug(buffer.array(), "verify_request");
-
-                    RequestBody userIdPart = RequestBody.create(MediaType.parse("text/plain"), userId);
-                    RequestBody thresholdPart = threshold != null ?
-                            RequestBody.create(MediaType.parse("text/plain"), String.valueOf(threshold)) :
-                            null;
-                    RequestBody embeddingPart = RequestBody.create(MediaType.parse("application/octet-stream"), buffer.array());
-                    MultipartBody.Part filePart = MultipartBody.Part.createFormData("embedding", "embedding.bin", embeddingPart);
-
-                    FaceIdApiController api = ApiClient.getClient(context).create(FaceIdApiController.class);
-                    retrofit2.Call<FaceIdVerifyResponse> call =
-                            api.verifyFaceId(requestId, userIdPart, filePart, thresholdPart);
-                    call.enqueue(new retrofit2.Callback<FaceIdVerifyResponse>() {
+                    verifier.submit(userId, embedding, new FaceIdBatchVerifier.ItemCallback() {
                         @Override
-                        public void onResponse(@NonNull retrofit2.Call<FaceIdVerifyResponse> c,
-                                               @NonNull retrofit2.Response<FaceIdVerifyResponse> resp) {
-                            if (resp.isSuccessful() && resp.body() != null) {
-                                if (resp.body().isSuccess()) {
-                                    runOnMainThread(() -> callback.onSuccess("Face ID verified successfully"));
-                                } else {
-                                    runOnMainThread(() -> callback.onFailure(resp.body().getMessage() != null ? resp.body().getMessage() : "Verification failed"));
-                                }
-                            } else if (resp.code() == 410) {
-                                runOnMainThread(() -> callback.onFailure("Verification window expired"));
+                        public void onResult(FaceIdBatchVerifyResponse.Item result) {
+                            if (result.isSuccess()) {
+                                runOnMainThread(() -> callback.onSuccess("Face ID verified successfully"));
                             } else {
-                                runOnMainThread(() -> callback.onFailure("Failed to verify: HTTP " + resp.code())) ;
+                                runOnMainThread(() -> callback.onFailure(result.getMessage() != null ? result.getMessage() : "Verification failed"));
                             }
                         }
 
                         @Override
-                        public void onFailure(@NonNull retrofit2.Call<FaceIdVerifyResponse> c,
-                                              @NonNull Throwable t) {
-                            runOnMainThread(() -> callback.onFailure("Network error: " + t.getMessage()));
+                        public void onError(String error) {
+                            runOnMainThread(() -> callback.onFailure(error));
                         }
                     });
-                } catch (Exception e) {
-                    Log.e(TAG, "Error in verifyFaceIdForRequest", e);
-                    runOnMainThread(() -> callback.onFailure("Error: " + e.getMessage()));
+                } catch (IllegalStateException e) {
+                    // Session closed between the lookup and the submit
+                    runOnMainThread(() -> callback.onFailure("Kiosk session is not open"));
                 }
             });
-        });
+        }, () -> callback.onFailure(MODEL_LOADING_MESSAGE));
+    }
+
+    /**
+     * End kiosk mode, sending users still waiting for a batch
+     *
+     * @return Throughput of the session, or null if none was open
+     */
+    public FaceIdBatchVerifier.Stats closeKioskSession() {
+        synchronized (kioskLock) {
+            if (kioskVerifier == null) {
+                return null;
+            }
+            kioskVerifier.close();
+            FaceIdBatchVerifier.Stats stats = kioskVerifier.getStats();
+            kioskVerifier = null;
+            return stats;
+        }
     }
     
     /**
@@ -839,35 +1152,27 @@ public class FaceIdService {
         
         Log.d(TAG, "registerFaceId: Models initialized - generating face embedding");
         
-        // 🔧 NEW: Use retry manager for embedding generation
-        retryManager.executeWithRetryAsync(() -> {
+        // 🔧 NEW: Embedding inference is retried by the scheduler; the upload starts once it is done
+        Log.d(TAG, "registerFaceId: Starting face embedding generation...");
+        retryScheduler.submit(RetryPolicy.INFERENCE, () -> embedNow(faceBitmap, true))
+                .whenComplete((embedding, error) -> {
+            if (error != null && isModelUnavailable(error)) {
+                runOnMainThread(() -> callback.onFailure(MODEL_LOADING_MESSAGE));
+                return;
+            }
+            if (error != null) {
+                Log.e(TAG, "Retry failed for face registration", error);
+                errorHandler.handleGeneralError(asException(error), "face registration");
+                runOnMainThread(() -> callback.onFailure("Registration failed after retries"));
+                return;
+            }
             try {
-                Log.d(TAG, "registerFaceId: Starting face embedding generation...");
-                
-                // Generate face embedding with retry
-                float[] embedding = retryManager.executeWithRetry(() -> faceEmbedding.getFaceEmbedding(faceBitmap));
                 Log.d(TAG, "registerFaceId: Face embedding generated - length: " + embedding.length);
                 
-                // Convert embedding to byte array for API call (float32 little-endian)
-                ByteBuffer buffer = ByteBuffer.allocate(embedding.length * 4);
-                buffer.order(ByteOrder.LITTLE_ENDIAN);
-                for (float value : embedding) {
-                    buffer.putFloat(value);
-                }
-                // Log embedding preview + sizes
-                logEmbeddingDebug(embedding, buffer.array(), "register");
-                // Save a debug copy of the exact embedding being sent
-                saveEmbeddingDebug(buffer.array(), "register");
-                
-                Log.d(TAG, "registerFaceId: Creating multipart request - buffer size: " + buffer.array().length);
-                
-                // Create multipart request
-                RequestBody embeddingPart = RequestBody.create(
-                        MediaType.parse("application/octet-stream"), 
-                        buffer.array());
+                debugEmbedding(embedding, "register");
                 
-                MultipartBody.Part filePart = MultipartBody.Part.createFormData(
-                        "embedding", "embedding.bin", embeddingPart);
+                // Create multipart request; the embedding is streamed as float32 little-endian
+                MultipartBody.Part filePart = EmbeddingRequestBody.part("embedding", embedding);
                 
                 RequestBody userIdPart = RequestBody.create(
                         MediaType.parse("text/plain"), userId);
@@ -875,8 +1180,11 @@ public class FaceIdService {
                 Log.d(TAG, "registerFaceId: sending userId=" + userId);
                 Log.d(TAG, "registerFaceId: Making API call to register face ID");
                 
+                // 📦 Persist the embedding first: a failed upload is retried by the sync worker
+                EmbeddingOutbox.Entry upload = stageUpload(EmbeddingOutbox.Action.REGISTER, userId, null, null, 0L, embedding);
+                
                 // 🔧 NEW: Enhanced API call with better error handling and timeout
-                Call<FaceIdResponse> call = faceIdApiController.registerFaceId(filePart, userIdPart);
+                Call<FaceIdResponse> call = faceIdApiController.registerFaceId(idempotencyKey(upload), filePart, userIdPart);
                 
                 // 🔧 NEW: Add timeout to the call
                 call.enqueue(new Callback<FaceIdResponse>() {
@@ -907,6 +1215,7 @@ public class FaceIdService {
                         // ===== END: DETAILED RESPONSE LOGGING =====
                         
                         if (response.isSuccessful() && response.body() != null) {
+                            finishUpload(upload, false);
                             FaceIdResponse responseBody = response.body();
                             if (responseBody.isSuccess()) {
                                 Log.d(TAG, "registerFaceId: SUCCESS - Face ID registered successfully");
@@ -939,6 +1248,7 @@ public class FaceIdService {
                                     }
                                 }
                             } catch (Exception ignored) {}
+                            finishUpload(upload, isTransientHttpFailure(response.code()));
                             if (response.code() == 401) {
                                 errorMsg = "Authentication failed. Please login again.";
                             } else if (response.code() == 403) {
@@ -980,29 +1290,16 @@ public class FaceIdService {
                             errorMsg = "Network error: " + t.getMessage();
                         }
                         Log.e(TAG, "registerFaceId: NETWORK FAILURE - " + errorMsg, t);
-                        runOnMainThread(() -> callback.onFailure(errorMsg));
+                        finishUpload(upload, true);
+                        String message = offlineMessage(upload, t, "registration", errorMsg);
+                        runOnMainThread(() -> callback.onFailure(message));
                     }
                 });
                 
-                return null;
-                
             } catch (Exception e) {
                 Log.e(TAG, "registerFaceId: EXCEPTION during API call preparation", e);
                 errorHandler.handleGeneralError(e, "face registration");
                 runOnMainThread(() -> callback.onFailure("Error: " + e.getMessage()));
-                return null;
-            }
-        }, new ModelRetryManager.RetryCallback<Object>() {
-            @Override
-            public void onSuccess(Object result) {
-                // Success handled in the operation
-            }
-            
-            @Override
-            public void onFailure(ModelRetryManager.ModelRetryException exception) {
-                Log.e(TAG, "Retry failed for face registration", exception);
-                errorHandler.handleGeneralError(exception, "face registration");
-                runOnMainThread(() -> callback.onFailure("Registration failed after retries"));
             }
         });
     }
@@ -1021,50 +1318,41 @@ public class FaceIdService {
         }
         
         // Use async method to generate embedding
-        faceEmbedding.getFaceEmbeddingAsync(faceBitmap, embedding -> {
+        embedAsync(faceBitmap, embedding -> {
             executor.execute(() -> {
                 try {
-                    // Convert embedding to byte array for API call (float32 little-endian)
-                    ByteBuffer buffer = ByteBuffer.allocate(embedding.length * 4);
-                    buffer.order(ByteOrder.LITTLE_ENDIAN);
-                    for (float value : embedding) {
-                        buffer.putFloat(value);
-                    }
-                            // Log embedding preview + sizes
-                            logEmbeddingDebug(embedding, buffer.array(), "update");
-                            // Save a debug copy of the exact embedding being sent
-                            saveEmbeddingDebug(buffer.array(), "update");
-                    // Save a debug copy of the exact embedding being sent
-                    saveEmbeddingDebug(buffer.array(), "update");
+                    debugEmbedding(embedding, "update");
                     
-                    // Create multipart request
-                    RequestBody embeddingPart = RequestBody.create(
-                            MediaType.parse("application/octet-stream"), 
-                            buffer.array());
-                    
-                    MultipartBody.Part filePart = MultipartBody.Part.createFormData(
-                            "embedding", "embedding.bin", embeddingPart);
+                    // Create multipart request; the embedding is streamed as float32 little-endian
+                    MultipartBody.Part filePart = EmbeddingRequestBody.part("embedding", embedding);
                     
                     RequestBody userIdPart = RequestBody.create(
                             MediaType.parse("text/plain"), userId);
                     Log.d(TAG, "updateFaceId: sending userId=" + userId);
                     
+                    // 📦 Persist the embedding first: a failed upload is retried by the sync worker
+                    EmbeddingOutbox.Entry upload = stageUpload(EmbeddingOutbox.Action.UPDATE, userId, null, null, 0L, embedding);
+                    
                     // Make API call
-                    Call<FaceIdResponse> call = faceIdApiController.updateFaceId(filePart, userIdPart);
+                    Call<FaceIdResponse> call = faceIdApiController.updateFaceId(idempotencyKey(upload), filePart, userIdPart);
                     call.enqueue(new Callback<FaceIdResponse>() {
                         @Override
                         public void onResponse(@NonNull Call<FaceIdResponse> call, @NonNull Response<FaceIdResponse> response) {
                             if (response.isSuccessful() && response.body() != null) {
+                                finishUpload(upload, false);
                                 authManager.setFaceIdRegistered(true);
                                 runOnMainThread(() -> callback.onSuccess("Face ID updated successfully"));
                             } else {
+                                finishUpload(upload, isTransientHttpFailure(response.code()));
                                 runOnMainThread(() -> callback.onFailure("Failed to update Face ID: " + response.message()));
                             }
                         }
                         
                         @Override
                         public void onFailure(@NonNull Call<FaceIdResponse> call, @NonNull Throwable t) {
-                            runOnMainThread(() -> callback.onFailure("Network error: " + t.getMessage()));
+                            finishUpload(upload, true);
+                            String message = offlineMessage(upload, t, "update", "Network error: " + t.getMessage());
+                            runOnMainThread(() -> callback.onFailure(message));
                         }
                     });
                     
@@ -1073,7 +1361,7 @@ public class FaceIdService {
                     runOnMainThread(() -> callback.onFailure("Error: " + e.getMessage()));
                 }
             });
-        });
+        }, () -> callback.onFailure(MODEL_LOADING_MESSAGE));
     }
     
     /**
@@ -1106,33 +1394,11 @@ public class FaceIdService {
         }
         
         // Use async method to generate embedding
-        faceEmbedding.getFaceEmbeddingAsync(faceBitmap, embedding -> {
+        embedAsync(faceBitmap, embedding -> {
             executor.execute(() -> {
                 try {
-                                // Convert embedding to byte array for API call (float32 little-endian)
-                    ByteBuffer buffer = ByteBuffer.allocate(embedding.length * 4);
-                    buffer.order(ByteOrder.LITTLE_ENDIAN);
-                    for (float value : embedding) {
-                        buffer.putFloat(value);
-                    }
-                                // Log embedding preview + sizes
-                                logEmbeddingDebug(embedding, buffer.array(), "verify");
-                                // Save a debug copy of the exact embedding being sent
-                                saveEmbeddingDebug(buffer.array(), "verify");
-                    // Save a debug copy of the exact embedding being sent
-                    saveEmbeddingDebug(buffer.array(), "verify");
-                    
-                    // Create multipart request
-                    RequestBody embeddingPart = RequestBody.create(
-                            MediaType.parse("application/octet-stream"), 
-                            buffer.array());
-                    
-                    MultipartBody.Part filePart = MultipartBody.Part.createFormData(
-                            "embedding", "embedding.bin", embeddingPart);
-                    
-                    RequestBody userIdPart = RequestBody.create(
-                            MediaType.parse("text/plain"), userId);
-                    Log.d(TAG, "verifyFace: sending userId=" + userId);
+                    debugEmbedding(embedding, "verify");
+                    Log.d(TAG, "verifyFace: userId=" + userId);
                     
                     // Legacy ad-hoc verification removed
                     runOnMainThread(() -> callback.onError("Ad-hoc verification is no longer supported. Use request-based verification."));
@@ -1142,7 +1408,7 @@ public class FaceIdService {
                     runOnMainThread(() -> callback.onError("Error: " + e.getMessage()));
                 }
             });
-        });
+        }, () -> callback.onError(MODEL_LOADING_MESSAGE));
     }
     
     /**
@@ -1159,30 +1425,11 @@ public class FaceIdService {
         }
         
         // Use async method to generate embedding
-        faceEmbedding.getFaceEmbeddingAsync(faceBitmap, embedding -> {
+        embedAsync(faceBitmap, embedding -> {
             executor.execute(() -> {
                 try {
-                    // Convert embedding to byte array for API call (float32 little-endian)
-                    ByteBuffer buffer = ByteBuffer.allocate(embedding.length * 4);
-                    buffer.order(ByteOrder.LITTLE_ENDIAN);
-                    for (float value : embedding) {
-                        buffer.putFloat(value);
-                    }
-                    // Log and save debug copy
-                    logEmbeddingDebug(embedding, buffer.array(), "verify");
-                    saveEmbeddingDebug(buffer.array(), "verify");
-                    
-                    // Create multipart request
-                    RequestBody embeddingPart = RequestBody.create(
-                            MediaType.parse("application/octet-stream"), 
-                            buffer.array());
-                    
-                    MultipartBody.Part filePart = MultipartBody.Part.createFormData(
-                            "embedding", "embedding.bin", embeddingPart);
-                    
-                    RequestBody userIdPart = RequestBody.create(
-                            MediaType.parse("text/plain"), userId);
-                    Log.d(TAG, "verifyFaceId: sending userId=" + userId);
+                    debugEmbedding(embedding, "verify");
+                    Log.d(TAG, "verifyFaceId: userId=" + userId);
                     
                     // Legacy ad-hoc verification removed
                     runOnMainThread(() -> callback.onFailure("Ad-hoc verification is no longer supported. Use request-based verification."));
@@ -1192,7 +1439,7 @@ public class FaceIdService {
                     runOnMainThread(() -> callback.onFailure("Error: " + e.getMessage()));
                 }
             });
-        });
+        }, () -> callback.onFailure(MODEL_LOADING_MESSAGE));
     }
 
     /**
@@ -1213,17 +1460,27 @@ public class FaceIdService {
     }
     
     /**
-     * 🔧 NEW: Get performance statistics
+     * 🔧 NEW: Get performance statistics, with p50/p95/p99 latency for each pipeline stage that has run
+     * (convert, quality gate, detect, landmarks, spoof, gaze, embed, network)
      */
     public FaceIdPerformanceManager.PerformanceStats getPerformanceStats() {
         return performanceManager.getPerformanceStats();
     }
     
+    /**
+     * Start a new latency measurement window, e.g. before a benchmark run
+     */
+    public void resetPerformanceStats() {
+        performanceManager.resetStageLatencies();
+    }
+    
     /**
      * 🔧 NEW: Set scenario for configuration
      */
     public void setScenario(FaceIdConfig.Scenario scenario) {
         configManager.setScenario(scenario);
+        // Preloading hint: start loading what this scenario needs before its first frame
+        modelRegistry.preload(FaceIdConfig.modelsForScenario(scenario));
     }
     
     /**
@@ -1244,11 +1501,166 @@ public class FaceIdService {
         mainHandler.post(runnable);
     }
 
+    /**
+     * Persist an embedding upload in the outbox before the live call. Null if the outbox cannot be
+     * written; the live call still goes out, only without a background retry.
+     */
+    private EmbeddingOutbox.Entry stageUpload(EmbeddingOutbox.Action action, String userId, String requestId,
+                                              Float threshold, long expiresAtMs, float[] embedding) {
+        try {
+            return EmbeddingOutbox.getInstance(context).append(action, userId, requestId, threshold, expiresAtMs,
+                    embedding);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not persist " + action + " upload, sending without background retry", e);
+            return null;
+        }
+    }
+
+    private static String idempotencyKey(EmbeddingOutbox.Entry upload) {
+        return upload != null ? upload.key : null; // Retrofit omits a null header
+    }
+
+    /**
+     * End the live attempt of an upload: ack a final answer, or leave it queued for the sync worker
+     */
+    private void finishUpload(EmbeddingOutbox.Entry upload, boolean retryLater) {
+        if (upload == null) {
+            return;
+        }
+        EmbeddingOutbox outbox = EmbeddingOutbox.getInstance(context);
+        if (retryLater) {
+            outbox.release(upload.key);
+            FaceEmbeddingSyncWorker.enqueue(context);
+            Log.i(TAG, "📦 " + upload.action + " upload queued for background sync");
+            return;
+        }
+        try {
+            outbox.ack(upload.key);
+        } catch (IOException e) {
+            // Worst case it is sent again with the same key, which the server ignores
+            Log.w(TAG, "Could not ack " + upload.action + " upload", e);
+        }
+    }
+
+    /**
+     * Failure message for an upload whose live call failed. If the backend circuit rejected it and
+     * the outbox holds it, the user is told it will go out later instead of seeing a network error.
+     */
+    private static String offlineMessage(EmbeddingOutbox.Entry upload, Throwable error, String what, String fallback) {
+        if (upload != null && error instanceof CircuitBreakerInterceptor.CircuitOpenException) {
+            return "Server is temporarily unavailable, your " + what + " was saved and will be sent automatically";
+        }
+        return fallback;
+    }
+
+    private static Exception asException(Throwable error) {
+        return error instanceof Exception ? (Exception) error : new Exception(error);
+    }
+
+    /**
+     * True if a failure came from a model that was not loaded rather than from the inference itself
+     */
+    private static boolean isModelUnavailable(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof ModelRegistry.ModelUnavailableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Embed a face on the calling thread with a leased embedding model
+     *
+     * @param wait Wait for the model to load; frame paths pass false and fail at once
+     * @throws ModelRegistry.ModelUnavailableException If the model is not loaded (not retried)
+     */
+    private float[] embedNow(Bitmap faceBitmap, boolean wait) throws Exception {
+        try (ModelRegistry.Lease<FaceEmbedding> embedder = wait
+                ? awaitLease(ModelRegistry.Model.FACE_EMBEDDING)
+                : modelRegistry.tryLease(ModelRegistry.Model.FACE_EMBEDDING)) {
+            if (embedder == null) {
+                throw new ModelRegistry.ModelUnavailableException(ModelRegistry.Model.FACE_EMBEDDING);
+            }
+            return embedder.get().getFaceEmbedding(faceBitmap);
+        }
+    }
+
+    /**
+     * Embed a face with the async model API, holding a lease until the embedding arrives.
+     * The model is awaited on the service executor; onEmbedding runs on the main thread, and so does
+     * onUnavailable if the model does not load in time.
+     */
+    private void embedAsync(Bitmap faceBitmap, FaceEmbedding.EmbeddingCallback onEmbedding, Runnable onUnavailable) {
+        executor.execute(() -> {
+            ModelRegistry.Lease<FaceEmbedding> embedder = awaitLease(ModelRegistry.Model.FACE_EMBEDDING);
+            if (embedder == null) {
+                runOnMainThread(onUnavailable);
+                return;
+            }
+            try {
+                embedder.get().getFaceEmbeddingAsync(faceBitmap, embedding -> {
+                    embedder.close();
+                    onEmbedding.onEmbeddingGenerated(embedding);
+                });
+            } catch (RuntimeException e) {
+                // Model executor already shut down
+                Log.w(TAG, "Embedding model rejected the face", e);
+                embedder.close();
+                runOnMainThread(onUnavailable);
+            }
+        });
+    }
+
+    /**
+     * Run spoof detection with a leased detector, released when the result arrives. The callback
+     * runs on the detector's thread.
+     *
+     * @param wait Wait for the model to load; frame paths pass false
+     * @return False if the detector is not loaded and nothing was started
+     */
+    private boolean detectSpoofLeased(Bitmap bitmap, Rect boundingBox, android.graphics.RectF ovalRect, boolean wait,
+                                      FaceSpoofDetector.SpoofCallback callback) {
+        ModelRegistry.Lease<FaceSpoofDetector> detector = wait
+                ? awaitLease(ModelRegistry.Model.SPOOF_DETECTOR)
+                : modelRegistry.tryLease(ModelRegistry.Model.SPOOF_DETECTOR);
+        if (detector == null) {
+            return false;
+        }
+        try {
+            detector.get().detectSpoofAsync(bitmap, boundingBox, ovalRect, Runnable::run, spoofResult -> {
+                detector.close();
+                callback.onResult(spoofResult);
+            });
+            return true;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Spoof detector rejected the frame", e);
+            detector.close();
+            return false;
+        }
+    }
+
+    private static boolean isTransientHttpFailure(int code) {
+        // 401: the token may be refreshed before the background retry
+        return code == 401 || code == 408 || code == 429 || code >= 500;
+    }
+
+    /**
+     * Debug builds only: log a preview of the embedding and save the exact bytes being uploaded
+     */
+    private void debugEmbedding(float[] embedding, String action) {
+        if (!BuildConfig.DEBUG) {
+            return;
+        }
+        logEmbeddingDebug(embedding, action);
+        saveEmbeddingDebug(embedding, action);
+    }
+
     /**
      * Save a copy of the embedding bytes to app cache for debugging/API testing
      * File name format: embedding_{action}_<timestamp>.bin
      */
-     private void saveEmbeddingDebug(byte[] bytes, String action) {
+     private void saveEmbeddingDebug(float[] embedding, String action) {
          try {
              File dir = new File(context.getCacheDir(), "face_registration");
              if (!dir.exists()) {
@@ -1256,8 +1668,8 @@ public class FaceIdService {
                  dir.mkdirs();
              }
              File out = new File(dir, "embedding_" + action + "_" + System.currentTimeMillis() + ".bin");
-             try (FileOutputStream fos = new FileOutputStream(out)) {
-                 fos.write(bytes);
+             try (BufferedSink sink = Okio.buffer(Okio.sink(out))) {
+                 new EmbeddingRequestBody(embedding).writeTo(sink);
              }
              Log.d(TAG, "Saved embedding debug file: " + out.getAbsolutePath());
          } catch (Exception e) {
@@ -1268,10 +1680,10 @@ public class FaceIdService {
     /**
      * Log a short preview and sizes to help debugging embedding payload
      */
-    private void logEmbeddingDebug(float[] embedding, byte[] rawBytes, String action) {
+    private void logEmbeddingDebug(float[] embedding, String action) {
         try {
             int n = embedding != null ? embedding.length : -1;
-            int bytes = rawBytes != null ? rawBytes.length : -1;
+            int bytes = n >= 0 ? n * 4 : -1;
             // preview first up to 8 floats
             StringBuilder sb = new StringBuilder();
             int preview = Math.min(8, Math.max(0, n));
@@ -1319,21 +1731,37 @@ public class FaceIdService {
      */
     private Bitmap tryAlignFace(Bitmap faceBitmap) {
         try {
-            if (mediaPipeFaceLandmarkExtractor == null || !mediaPipeFaceLandmarkExtractor.isModelAvailable()) {
+            ModelRegistry.Lease<MediaPipeFaceLandmarkExtractor> extractor =
+                    modelRegistry.tryLease(ModelRegistry.Model.LANDMARK_EXTRACTOR);
+            if (extractor == null) {
+                return null;
+            }
+            if (!extractor.get().isModelAvailable()) {
+                extractor.close();
                 return null;
             }
-            // Extract landmarks synchronously (best-effort) using image mode
+            // Extract landmarks synchronously (best-effort) using image mode. The eye centers are read
+            // and the lease released in the callback, which may still arrive after the wait times out.
             final CountDownLatch latch = new CountDownLatch(1);
-            final boolean[] ok = {false};
-            mediaPipeFaceLandmarkExtractor.extractLandmarks(faceBitmap, new Rect(0,0,faceBitmap.getWidth(), faceBitmap.getHeight()), success -> {
-                ok[0] = success;
-                latch.countDown();
-            });
-            latch.await(300, TimeUnit.MILLISECONDS);
-            if (!ok[0]) return null;
+            final android.graphics.PointF[] eyes = new android.graphics.PointF[2];
+            try {
+                extractor.get().extractLandmarks(faceBitmap, new Rect(0,0,faceBitmap.getWidth(), faceBitmap.getHeight()), Runnable::run, success -> {
+                    if (success) {
+                        eyes[0] = extractor.get().getLastLeftEyeCenter();
+                        eyes[1] = extractor.get().getLastRightEyeCenter();
+                    }
+                    extractor.close();
+                    latch.countDown();
+                });
+            } catch (RuntimeException e) {
+                // Extractor executor shut down between the check and the submit
+                extractor.close();
+                return null;
+            }
+            if (!latch.await(300, TimeUnit.MILLISECONDS)) return null;
 
-            android.graphics.PointF left = mediaPipeFaceLandmarkExtractor.getLastLeftEyeCenter();
-            android.graphics.PointF right = mediaPipeFaceLandmarkExtractor.getLastRightEyeCenter();
+            android.graphics.PointF left = eyes[0];
+            android.graphics.PointF right = eyes[1];
             if (left == null || right == null) return null;
 
             // Compute angle and scale to align eyes horizontally to canonical distance
@@ -1367,50 +1795,30 @@ public class FaceIdService {
     }
     
     /**
-     * Close and release all resources
+     * Close and release all resources, including models other screens still hold. Only the owner of
+     * the shared service calls this ({@link FaceIdServiceManager#shutdown(Context)}); a screen releases
+     * the models it acquired instead.
      */
     public void close() {
         try {
             Log.d(TAG, "Closing FaceIdService and releasing resources");
-            
-            // Close MediaPipeFaceLandmarkExtractor
-            if (mediaPipeFaceLandmarkExtractor != null) {
-                mediaPipeFaceLandmarkExtractor.close();
-                mediaPipeFaceLandmarkExtractor = null;
-            }
-            
-            // Close other components if they have close methods
-            if (faceDetector != null && faceDetector instanceof AutoCloseable) {
-                try {
-                    ((AutoCloseable) faceDetector).close();
-                } catch (Exception e) {
-                    Log.w(TAG, "Error closing faceDetector", e);
-                }
-            }
-            
-            if (faceEmbedding != null && faceEmbedding instanceof AutoCloseable) {
-                try {
-                    ((AutoCloseable) faceEmbedding).close();
-                } catch (Exception e) {
-                    Log.w(TAG, "Error closing faceEmbedding", e);
-                }
-            }
-            
-            if (faceSpoofDetector != null && faceSpoofDetector instanceof AutoCloseable) {
-                try {
-                    ((AutoCloseable) faceSpoofDetector).close();
-                } catch (Exception e) {
-                    Log.w(TAG, "Error closing faceSpoofDetector", e);
+
+            // Pending retries fail now instead of reloading models after the unload
+            retryScheduler.shutdown();
+            // Users still waiting for a batch are sent; then the kiosk timer thread goes with the service
+            closeKioskSession();
+            synchronized (kioskLock) {
+                if (kioskScheduler != null) {
+                    kioskScheduler.shutdownNow();
+                    kioskScheduler = null;
                 }
             }
+            modelRegistry.unloadAll();
             
-            if (gazeEstimator != null && gazeEstimator instanceof AutoCloseable) {
-                try {
-                    ((AutoCloseable) gazeEstimator).close();
-                } catch (Exception e) {
-                    Log.w(TAG, "Error closing gazeEstimator", e);
-                }
-            }
+            TFLiteDelegateManager delegates = TFLiteDelegateManager.getInstance();
+            Log.d(TAG, "Open interpreters after close: " + delegates.getOpenHandleCount()
+                    + " (GPU delegates " + delegates.getLiveDelegateCount(InterpreterAutotuner.Backend.GPU)
+                    + ", NNAPI delegates " + delegates.getLiveDelegateCount(InterpreterAutotuner.Backend.NNAPI) + ")");
             
             Log.d(TAG, "FaceIdService closed successfully");
         } catch (Exception e) {
@@ -1430,11 +1838,6 @@ public class FaceIdService {
             return null;
         }
 
-        if (faceEmbedding == null) {
-            Log.e(TAG, "FaceEmbedding model not available");
-            return null;
-        }
-
         try {
             Bitmap faceBitmap;
             
@@ -1462,7 +1865,7 @@ public class FaceIdService {
             }
 
             // Generate embedding
-            float[] embedding = faceEmbedding.getFaceEmbedding(faceBitmap);
+            float[] embedding = embedNow(faceBitmap, false);
             
             if (embedding != null && embedding.length > 0) {
                 Log.d(TAG, "Face embedding extracted successfully: " + embedding.length + " dimensions");
@@ -1472,6 +1875,9 @@ public class FaceIdService {
                 return null;
             }
             
+        } catch (ModelRegistry.ModelUnavailableException e) {
+            Log.w(TAG, "FaceEmbedding model is still loading, cannot extract embedding");
+            return null;
         } catch (Exception e) {
             Log.e(TAG, "Error extracting face embedding", e);
             return null;
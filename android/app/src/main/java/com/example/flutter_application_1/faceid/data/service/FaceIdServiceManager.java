@@ -1,10 +1,14 @@
 package com.example.flutter_application_1.faceid.data.service;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
+import com.example.flutter_application_1.auth.client.ApiClient;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -23,6 +27,26 @@ public class FaceIdServiceManager {
     
     private final List<InitCallback> pendingCallbacks = new ArrayList<>();
     
+    // Forwards memory pressure to the service so idle models can be unloaded
+    private final ComponentCallbacks2 memoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            FaceIdService service = faceIdService;
+            if (service != null) {
+                service.onTrimMemory(level);
+            }
+        }
+        
+        @Override
+        public void onLowMemory() {
+            onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        }
+        
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    };
+    
     public interface InitCallback {
         void onInitialized(FaceIdService service);
         void onError(String message);
@@ -65,8 +89,12 @@ public class FaceIdServiceManager {
         
         executor.execute(() -> {
             try {
+                // Mở sẵn kết nối tới API server trong lúc load model
+                ApiClient.prewarm(context.getApplicationContext());
+                
                 // Khởi tạo service trên background thread
                 faceIdService = new FaceIdService(context.getApplicationContext());
+                context.getApplicationContext().registerComponentCallbacks(memoryCallbacks);
                 
                 // Đánh dấu đã khởi tạo xong
                 isInitialized = true;
@@ -103,6 +131,24 @@ public class FaceIdServiceManager {
         return isInitialized;
     }
     
+    /**
+     * Close the shared service and unload every model, e.g. when the user signs out. Screens must not
+     * close the service themselves; they release only the models they acquired.
+     */
+    public void shutdown(Context context) {
+        FaceIdService service;
+        synchronized (pendingCallbacks) {
+            if (!isInitialized) {
+                return;
+            }
+            service = faceIdService;
+            faceIdService = null;
+            isInitialized = false;
+        }
+        context.getApplicationContext().unregisterComponentCallbacks(memoryCallbacks);
+        service.close();
+    }
+    
     public FaceIdService getService() {
         if (!isInitialized) {
             throw new IllegalStateException("FaceIdService not initialized. Call initialize() first.");
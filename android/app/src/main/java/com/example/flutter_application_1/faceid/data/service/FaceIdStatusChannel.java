@@ -0,0 +1,462 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.flutter_application_1.auth.client.CircuitBreakerInterceptor;
+import com.example.flutter_application_1.faceid.data.api.FaceIdApiController;
+import com.example.flutter_application_1.faceid.data.model.response.FaceIdRequestStatusResponse;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Delivers status updates for one Face ID request with as few backend requests as possible.
+ *
+ * Prefers the Server-Sent Events endpoint: one held connection, the server pushes each change.
+ * If the backend does not have it (404/405/406/501 or a non event-stream response) or the stream
+ * keeps failing, falls back to polling the status endpoint with exponential backoff and jitter,
+ * capped by the time left until the request expires. Sessions this channel opens in the next
+ * {@link #STREAM_RECHECK_MS} after a missing endpoint start by polling, then the stream is tried
+ * again. Each poll carries a long-poll hint; when the server held the request, the next poll goes
+ * out at once instead of backing off. While the client's backend circuit is open, the next attempt
+ * waits for the circuit's probe time and the last status received stays available from
+ * {@link #getLastStatus()}.
+ *
+ * The stream is read on its own executor, so a held connection never ties up a scheduler thread, and
+ * through its own controller, whose client must not have a read timeout shorter than the server's
+ * quiet periods (see {@code ApiClient.getStreamingClient}). A stream that stayed up for
+ * {@link #HEALTHY_STREAM_MS} and then dropped reconnects without counting toward the polling fallback.
+ *
+ * Works against any {@link FaceIdApiController}, e.g. a Retrofit built on a MockWebServer URL,
+ * and keeps request counts per session.
+ */
+public class FaceIdStatusChannel {
+    private static final String TAG = "FaceIdStatusChannel";
+
+    // Polling fallback
+    private static final long INITIAL_POLL_DELAY_MS = 1000;
+    private static final long MAX_POLL_DELAY_MS = 15000;
+    private static final double POLL_BACKOFF_MULTIPLIER = 1.6;
+    private static final int EXPIRY_FRACTION_CAP = 4; // Never wait longer than 1/4 of the time left
+    private static final int LONG_POLL_WAIT_SECONDS = 25;
+
+    // Event stream
+    private static final int MAX_STREAM_FAILURES = 2;
+    static final long HEALTHY_STREAM_MS = 30000;
+    // After the backend answered without an event stream, poll for this long before asking again
+    static final long STREAM_RECHECK_MS = 10 * 60 * 1000;
+
+    public interface Listener {
+        /** Called on a background thread for every status received */
+        void onStatus(FaceIdRequestStatusResponse response);
+
+        /** Called on a background thread when a request fails; the channel keeps trying */
+        void onError(String error);
+    }
+
+    /**
+     * Time sources, replaceable in tests
+     */
+    interface Clock {
+        /** Wall-clock time, compared with the request's expiration time */
+        long currentTimeMs();
+
+        /** Monotonic time, for how long a stream or poll was held */
+        long elapsedRealtimeMs();
+    }
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMs() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long elapsedRealtimeMs() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    private final FaceIdApiController apiController;
+    private final FaceIdApiController streamController;
+    private final ScheduledExecutorService scheduler;
+    private final Executor streamExecutor;
+    private final Random random;
+    private final Clock clock;
+    private final Gson gson = new Gson();
+
+    // Until when (elapsed ms) to poll without trying the stream; 0 while the stream is worth trying
+    private volatile long streamUnsupportedUntilMs = 0;
+
+    // Session state, guarded by this
+    private String requestId;
+    private String sessionId;
+    private long expirationTime;
+    private Listener listener;
+    private int generation = 0; // Bumped on open/close so callbacks of an old session are dropped
+    private boolean open = false;
+    private long pollDelayMs;
+    private int streamFailures;
+    private String lastStatus;
+    private Call<?> inFlight;
+    private ScheduledFuture<?> scheduledAttempt; // Next poll or stream reconnect
+
+    // Request counts for the current session
+    private int streamRequests;
+    private int pollRequests;
+    private int eventsReceived;
+
+    /**
+     * @param apiController    Polls
+     * @param streamController Event stream, on a client without a short read timeout
+     * @param scheduler        Backoff timers and polls
+     * @param streamExecutor   Blocking stream reads; one session holds one thread while its stream is open
+     */
+    public FaceIdStatusChannel(FaceIdApiController apiController, FaceIdApiController streamController,
+                               ScheduledExecutorService scheduler, Executor streamExecutor) {
+        this(apiController, streamController, scheduler, streamExecutor, new Random());
+    }
+
+    public FaceIdStatusChannel(FaceIdApiController apiController, FaceIdApiController streamController,
+                               ScheduledExecutorService scheduler, Executor streamExecutor, Random random) {
+        this(apiController, streamController, scheduler, streamExecutor, random, SYSTEM_CLOCK);
+    }
+
+    FaceIdStatusChannel(FaceIdApiController apiController, FaceIdApiController streamController,
+                        ScheduledExecutorService scheduler, Executor streamExecutor, Random random, Clock clock) {
+        this.apiController = apiController;
+        this.streamController = streamController;
+        this.scheduler = scheduler;
+        this.streamExecutor = streamExecutor;
+        this.random = random;
+        this.clock = clock;
+    }
+
+    /**
+     * Start delivering status updates for a request, closing any previous session
+     *
+     * @param expirationTime Wall-clock expiry (ms); no request is made after it
+     */
+    public synchronized void open(String requestId, String sessionId, long expirationTime, Listener listener) {
+        close();
+        this.requestId = requestId;
+        this.sessionId = sessionId;
+        this.expirationTime = expirationTime;
+        this.listener = listener;
+        this.open = true;
+        this.pollDelayMs = INITIAL_POLL_DELAY_MS;
+        this.streamFailures = 0;
+        this.lastStatus = null;
+        this.streamRequests = 0;
+        this.pollRequests = 0;
+        this.eventsReceived = 0;
+
+        final int session = generation;
+        boolean polling = isStreamUnsupported();
+        if (polling) {
+            schedulePoll(session, INITIAL_POLL_DELAY_MS);
+        } else {
+            streamExecutor.execute(() -> runStream(session));
+        }
+        Log.d(TAG, "📡 Status channel opened for request " + requestId + (polling ? " (polling)" : " (stream)"));
+    }
+
+    /**
+     * Stop the session: cancel the open stream or pending poll and log its request counts
+     */
+    public synchronized void close() {
+        if (!open) {
+            return;
+        }
+        open = false;
+        generation++;
+        if (inFlight != null) {
+            inFlight.cancel();
+            inFlight = null;
+        }
+        if (scheduledAttempt != null) {
+            scheduledAttempt.cancel(false);
+            scheduledAttempt = null;
+        }
+        Log.d(TAG, "🛑 Status channel closed for session " + sessionId + ": " + getRequestCount()
+                + " requests (stream " + streamRequests + ", poll " + pollRequests + "), "
+                + eventsReceived + " events");
+    }
+
+    /**
+     * Requests made in the current (or last) session, stream connections and polls together
+     */
+    public synchronized int getRequestCount() {
+        return streamRequests + pollRequests;
+    }
+
+    /**
+     * Last status received in the current (or last) session, null before the first
+     */
+    public synchronized String getLastStatus() {
+        return lastStatus;
+    }
+
+    public synchronized int getStreamRequestCount() {
+        return streamRequests;
+    }
+
+    public synchronized int getPollRequestCount() {
+        return pollRequests;
+    }
+
+    /**
+     * True while a recent session found no event stream endpoint, so new sessions start by polling
+     */
+    boolean isStreamUnsupported() {
+        long until = streamUnsupportedUntilMs;
+        return until != 0 && clock.elapsedRealtimeMs() < until;
+    }
+
+    // ===== Event stream =====
+
+    private void runStream(int session) {
+        Call<ResponseBody> call;
+        synchronized (this) {
+            if (!isCurrent(session)) return;
+            call = streamController.streamFaceIdRequestEvents(requestId);
+            inFlight = call;
+            streamRequests++;
+        }
+
+        long openedMs = -1;
+        try {
+            Response<ResponseBody> response = call.execute();
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                ResponseBody errorBody = response.errorBody();
+                if (errorBody != null) errorBody.close();
+                int code = response.code();
+                if (code == 404 || code == 405 || code == 406 || code == 501) {
+                    fallBackToPolling(session, "HTTP " + code);
+                } else {
+                    onStreamFailed(session, "HTTP " + code, 0, false);
+                }
+                return;
+            }
+            try {
+                MediaType type = body.contentType();
+                if (type == null || !"event-stream".equals(type.subtype())) {
+                    fallBackToPolling(session, "content type " + type);
+                    return;
+                }
+                openedMs = clock.elapsedRealtimeMs();
+                readEvents(session, body.source());
+            } finally {
+                body.close();
+            }
+            // Server ended the stream; reconnect unless the session is over
+            onStreamFailed(session, "stream ended", 0, wasHealthy(openedMs));
+        } catch (IOException e) {
+            onStreamFailed(session, e.getMessage(), circuitRetryAfterMs(e), wasHealthy(openedMs));
+        }
+    }
+
+    /**
+     * True for a stream that stayed open long enough that its drop is not a sign the stream cannot work
+     */
+    private boolean wasHealthy(long openedMs) {
+        return openedMs >= 0 && clock.elapsedRealtimeMs() - openedMs >= HEALTHY_STREAM_MS;
+    }
+
+    private void readEvents(int session, BufferedSource source) throws IOException {
+        StringBuilder data = new StringBuilder();
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (!isStillCurrent(session)) return;
+            if (line.isEmpty()) {
+                // Blank line ends an event
+                if (data.length() > 0) {
+                    dispatchEvent(session, data.toString());
+                    data.setLength(0);
+                }
+            } else if (line.startsWith("data:")) {
+                if (data.length() > 0) data.append('\n');
+                data.append(line.startsWith("data: ") ? line.substring(6) : line.substring(5));
+            }
+            // "event:", "id:", "retry:" and ":" keep-alive comments carry nothing we need
+        }
+    }
+
+    private void dispatchEvent(int session, String json) {
+        FaceIdRequestStatusResponse status;
+        try {
+            status = gson.fromJson(json, FaceIdRequestStatusResponse.class);
+        } catch (JsonParseException e) {
+            Log.w(TAG, "⚠️ Unparseable status event: " + json);
+            return;
+        }
+        Listener target;
+        synchronized (this) {
+            if (!isCurrent(session) || status == null) return;
+            eventsReceived++;
+            streamFailures = 0;
+            target = listener;
+        }
+        target.onStatus(status);
+    }
+
+    /**
+     * @param healthy The stream had been up for {@link #HEALTHY_STREAM_MS}; its drop starts a fresh count
+     */
+    private void onStreamFailed(int session, String reason, long minDelayMs, boolean healthy) {
+        long delay;
+        synchronized (this) {
+            if (!isCurrent(session)) return;
+            inFlight = null;
+            if (healthy) {
+                streamFailures = 0;
+                pollDelayMs = INITIAL_POLL_DELAY_MS;
+            }
+            streamFailures++;
+            if (streamFailures >= MAX_STREAM_FAILURES) {
+                Log.w(TAG, "⚠️ Event stream failed " + streamFailures + " times (" + reason + "), polling instead");
+                schedulePoll(session, minDelayMs);
+                return;
+            }
+            delay = Math.max(nextBackoffDelay(), minDelayMs);
+            // The timer only hands over: the reconnect itself blocks on the stream executor
+            scheduledAttempt = scheduler.schedule(() -> streamExecutor.execute(() -> runStream(session)),
+                    delay, TimeUnit.MILLISECONDS);
+        }
+        Log.d(TAG, "🔄 Event stream dropped (" + reason + "), reconnecting in " + delay + "ms");
+    }
+
+    private void fallBackToPolling(int session, String reason) {
+        streamUnsupportedUntilMs = clock.elapsedRealtimeMs() + STREAM_RECHECK_MS;
+        Log.i(TAG, "ℹ️ No event stream endpoint (" + reason + "), polling with backoff");
+        synchronized (this) {
+            if (!isCurrent(session)) return;
+            inFlight = null;
+            schedulePoll(session, 0);
+        }
+    }
+
+    // ===== Polling =====
+
+    /**
+     * Schedule the next poll, never past the expiration time. Caller holds the lock.
+     */
+    private void schedulePoll(int session, long delayMs) {
+        long remaining = expirationTime - clock.currentTimeMs();
+        if (remaining <= 0) {
+            // The request manager's expiration check takes over
+            return;
+        }
+        long delay = Math.min(delayMs, remaining);
+        scheduledAttempt = scheduler.schedule(() -> poll(session), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll(int session) {
+        Call<FaceIdRequestStatusResponse> call;
+        synchronized (this) {
+            if (!isCurrent(session) || clock.currentTimeMs() >= expirationTime) return;
+            call = apiController.getFaceIdRequestStatus(requestId, LONG_POLL_WAIT_SECONDS, lastStatus);
+            inFlight = call;
+            pollRequests++;
+        }
+        final long startedMs = clock.elapsedRealtimeMs();
+
+        call.enqueue(new Callback<FaceIdRequestStatusResponse>() {
+            @Override
+            public void onResponse(@NonNull Call<FaceIdRequestStatusResponse> call,
+                                   @NonNull Response<FaceIdRequestStatusResponse> response) {
+                FaceIdRequestStatusResponse body = response.body();
+                if (!response.isSuccessful() || body == null) {
+                    onPollFailed(session, "HTTP " + response.code(), 0);
+                    return;
+                }
+
+                // Held close to the wait hint: the server long-polls, so ask again right away
+                boolean heldByServer = clock.elapsedRealtimeMs() - startedMs >= LONG_POLL_WAIT_SECONDS * 500L;
+                String status = body.getData() != null ? body.getData().getStatus() : null;
+                Listener target;
+                synchronized (FaceIdStatusChannel.this) {
+                    if (!isCurrent(session)) return;
+                    inFlight = null;
+                    boolean changed = status != null && !status.equals(lastStatus);
+                    if (changed) {
+                        lastStatus = status;
+                        pollDelayMs = INITIAL_POLL_DELAY_MS;
+                    }
+                    schedulePoll(session, heldByServer ? 0 : nextBackoffDelay());
+                    target = listener;
+                }
+                target.onStatus(body);
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<FaceIdRequestStatusResponse> call, @NonNull Throwable t) {
+                onPollFailed(session, "Network error: " + t.getMessage(), circuitRetryAfterMs(t));
+            }
+        });
+    }
+
+    /**
+     * @param minDelayMs Wait at least this long before the next poll
+     */
+    private void onPollFailed(int session, String error, long minDelayMs) {
+        Listener target;
+        synchronized (this) {
+            if (!isCurrent(session)) return;
+            inFlight = null;
+            schedulePoll(session, Math.max(nextBackoffDelay(), minDelayMs));
+            target = listener;
+        }
+        target.onError(error);
+    }
+
+    /**
+     * Current backoff delay with equal jitter, then grow it. Caller holds the lock.
+     * Capped at MAX_POLL_DELAY_MS and at a fraction of the time left before expiry.
+     */
+    private long nextBackoffDelay() {
+        long remaining = Math.max(0, expirationTime - clock.currentTimeMs());
+        long cap = Math.max(INITIAL_POLL_DELAY_MS, Math.min(MAX_POLL_DELAY_MS, remaining / EXPIRY_FRACTION_CAP));
+        long base = Math.min(pollDelayMs, cap);
+        pollDelayMs = Math.min(cap, (long) (pollDelayMs * POLL_BACKOFF_MULTIPLIER));
+        // Half fixed, half random: spreads clients that started together without ever polling at ~0
+        return base / 2 + (long) (random.nextDouble() * (base / 2 + 1));
+    }
+
+    /**
+     * Time until the backend circuit lets a probe through, if the failure was a fast-fail; 0 otherwise
+     */
+    private long circuitRetryAfterMs(Throwable error) {
+        if (!(error instanceof CircuitBreakerInterceptor.CircuitOpenException)) {
+            return 0;
+        }
+        // Jitter so channels waiting on the same circuit do not race for the single probe
+        long retryAfterMs = ((CircuitBreakerInterceptor.CircuitOpenException) error).getRetryAfterMs();
+        return retryAfterMs + (long) (random.nextDouble() * INITIAL_POLL_DELAY_MS);
+    }
+
+    private boolean isCurrent(int session) {
+        return open && session == generation;
+    }
+
+    private synchronized boolean isStillCurrent(int session) {
+        return isCurrent(session);
+    }
+}
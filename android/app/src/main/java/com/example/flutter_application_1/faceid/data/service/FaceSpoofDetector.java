@@ -7,6 +7,7 @@ import android.graphics.Color;
 import android.graphics.Rect;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -18,20 +19,18 @@ import org.tensorflow.lite.support.common.ops.CastOp;
 import org.tensorflow.lite.support.image.ImageProcessor;
 import org.tensorflow.lite.support.image.TensorImage;
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.nio.MappedByteBuffer;
-import java.util.Arrays;
-import java.util.Objects;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import lombok.Getter;
-import com.example.flutter_application_1.faceid.util.InterpreterOptionsFactory;
+import com.example.flutter_application_1.faceid.util.InterpreterAutotuner;
+import com.example.flutter_application_1.faceid.util.StageLatencyRecorder;
 
 public class FaceSpoofDetector {
     private static final String TAG = "FaceSpoofDetector";
@@ -48,6 +47,9 @@ public class FaceSpoofDetector {
 
     private Interpreter firstModelInterpreter;
     private Interpreter secondModelInterpreter;
+    // Own the interpreters and their delegates
+    private TFLiteDelegateManager.Handle firstModelHandle;
+    private TFLiteDelegateManager.Handle secondModelHandle;
     private ImageProcessor imageTensorProcessor;
     private boolean useMockDetection = false;
     private final Object interpreterLock = new Object();
@@ -56,6 +58,8 @@ public class FaceSpoofDetector {
 
     private volatile boolean isInitialized = false;
     private final CountDownLatch initLatch = new CountDownLatch(1);
+    private volatile long loadTimeMs = 0;
+    private volatile long warmupTimeMs = 0;
 
 
     /**
@@ -101,16 +105,9 @@ public class FaceSpoofDetector {
         // Initialize model asynchronously
         executor.execute(() -> {
             try {
-                // Log asset information for debugging
-                logAssetsContent(context);
-
                 try {
                     Log.d(TAG, "Loading model files...");
-
-                    // Initialize TFLiteInterpreter with OnDevice-like options (CPU, 4 threads)
-                    Interpreter.Options interpreterOptions = new Interpreter.Options();
-                    try { interpreterOptions.setNumThreads(4); } catch (Throwable ignore) {}
-                    try { interpreterOptions.setUseXNNPACK(true); } catch (Throwable ignore) {}
+                    long loadStart = SystemClock.elapsedRealtime();
 
                     // Load models from assets
                     MappedByteBuffer model1Buffer = FileUtil.loadMappedFile(context, MODEL_FILE_1);
@@ -119,17 +116,22 @@ public class FaceSpoofDetector {
                     Log.d(TAG, "Model 1 loaded, size: " + model1Buffer.capacity() + " bytes");
                     Log.d(TAG, "Model 2 loaded, size: " + model2Buffer.capacity() + " bytes");
 
-                    // Create interpreters
-                    firstModelInterpreter = new Interpreter(model1Buffer, interpreterOptions);
-                    secondModelInterpreter = new Interpreter(model2Buffer, interpreterOptions);
+                    // Create interpreters with the delegate / thread count tuned per model for this device
+                    int[] inputShape = {1, INPUT_IMAGE_DIM, INPUT_IMAGE_DIM, 3};
+                    firstModelHandle = InterpreterAutotuner.createInterpreter(context, MODEL_FILE_1, model1Buffer, inputShape);
+                    secondModelHandle = InterpreterAutotuner.createInterpreter(context, MODEL_FILE_2, model2Buffer, inputShape);
+                    firstModelInterpreter = firstModelHandle.getInterpreter();
+                    secondModelInterpreter = secondModelHandle.getInterpreter();
                     try {
                         // Ensure expected input shape [1,80,80,3]
-                        firstModelInterpreter.resizeInput(0, new int[]{1, INPUT_IMAGE_DIM, INPUT_IMAGE_DIM, 3});
-                        secondModelInterpreter.resizeInput(0, new int[]{1, INPUT_IMAGE_DIM, INPUT_IMAGE_DIM, 3});
+                        firstModelInterpreter.resizeInput(0, inputShape);
+                        secondModelInterpreter.resizeInput(0, inputShape);
                     } catch (Throwable ignore) {}
                     try { firstModelInterpreter.allocateTensors(); } catch (Throwable ignore) {}
                     try { secondModelInterpreter.allocateTensors(); } catch (Throwable ignore) {}
+                    loadTimeMs = SystemClock.elapsedRealtime() - loadStart;
                     // Warmup both models with NHWC 4D input shape
+                    long warmupStart = SystemClock.elapsedRealtime();
                     try {
                         float[][][][] dummy = new float[1][INPUT_IMAGE_DIM][INPUT_IMAGE_DIM][3];
                         int outDim1 = firstModelInterpreter.getOutputTensor(0).shape()[1];
@@ -142,13 +144,14 @@ public class FaceSpoofDetector {
                     } catch (Throwable warm) {
                         Log.e(TAG, "Warmup ignored: " + warm.getMessage(), warm);
                     }
+                    warmupTimeMs = SystemClock.elapsedRealtime() - warmupStart;
 
                     // Create image processor for preprocessing
                     imageTensorProcessor = new ImageProcessor.Builder()
                             .add(new CastOp(DataType.FLOAT32))
                             .build();
 
-                    Log.d(TAG, "Models loaded successfully");
+                    Log.d(TAG, "Models loaded successfully (load " + loadTimeMs + "ms, warm-up " + warmupTimeMs + "ms)");
                     isInitialized = true;
                 } catch (Exception e) {
                     Log.e(TAG, "Error initializing TensorFlow Lite model: " + e.getMessage(), e);
@@ -177,25 +180,12 @@ public class FaceSpoofDetector {
         initLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
     }
 
-    private void logAssetsContent(Context context) {
-        try {
-            String[] files = context.getAssets().list("");
-            Log.d(TAG, "Assets directory content: " + Arrays.toString(files));
+    public long getLoadTimeMs() {
+        return loadTimeMs;
+    }
 
-            // Check details about model files
-            for (String file : Objects.requireNonNull(files)) {
-                if (file.endsWith(".tflite")) {
-                    try {
-                        MappedByteBuffer buffer = FileUtil.loadMappedFile(context, file);
-                        Log.d(TAG, "Model file: " + file + ", size: " + buffer.capacity() + " bytes");
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error checking model file " + file + ": " + e.getMessage(), e);
-                    }
-                }
-            }
-        } catch (IOException e) {
-            Log.e(TAG, "Error listing assets directory: " + e.getMessage(), e);
-        }
+    public long getWarmupTimeMs() {
+        return warmupTimeMs;
     }
 
     /**
@@ -204,9 +194,18 @@ public class FaceSpoofDetector {
      * @param frameImage Original frame image
      * @param faceRect   Face bounding box
      * @param ovalRect   Oval guide boundaries (optional, can be null)
-     * @param callback   Callback for result
+     * @param callback   Callback for result, run on the main thread
      */
     public void detectSpoofAsync(Bitmap frameImage, Rect faceRect, android.graphics.RectF ovalRect, SpoofCallback callback) {
+        detectSpoofAsync(frameImage, faceRect, ovalRect, mainHandler::post, callback);
+    }
+
+    /**
+     * Same, with the callback run by callbackExecutor; Runnable::run runs it on the detection thread
+     * for callers that hand the result on themselves
+     */
+    public void detectSpoofAsync(Bitmap frameImage, Rect faceRect, android.graphics.RectF ovalRect,
+                                 Executor callbackExecutor, SpoofCallback callback) {
         executor.execute(() -> {
             try {
                 // Ensure model is initialized
@@ -220,10 +219,10 @@ public class FaceSpoofDetector {
                 }
 
                 SpoofResult result = detectSpoof(frameImage, faceRect, ovalRect);
-                mainHandler.post(() -> callback.onResult(result));
+                callbackExecutor.execute(() -> callback.onResult(result));
             } catch (Exception e) {
                 Log.e(TAG, "Error in spoof detection", e);
-                mainHandler.post(() -> callback.onResult(new SpoofResult(true, 0.75f, 0))); // Default to spoof on error for security
+                callbackExecutor.execute(() -> callback.onResult(new SpoofResult(true, 0.75f, 0))); // Default to spoof on error for security
             }
         });
     }
@@ -240,6 +239,15 @@ public class FaceSpoofDetector {
     }
 
     public SpoofResult detectSpoof(Bitmap frameImage, Rect faceRect, android.graphics.RectF ovalRect) {
+        long startNanos = System.nanoTime();
+        try {
+            return runSpoofModels(frameImage, faceRect, ovalRect);
+        } finally {
+            StageLatencyRecorder.getInstance().record(StageLatencyRecorder.Stage.SPOOF, startNanos, System.nanoTime());
+        }
+    }
+
+    private SpoofResult runSpoofModels(Bitmap frameImage, Rect faceRect, android.graphics.RectF ovalRect) {
         long startTime = System.currentTimeMillis();
 
         // If using mock detection or interpreter not initialized, always return not spoof
@@ -496,11 +504,11 @@ public class FaceSpoofDetector {
      * Release resources
      */
     public void close() {
-        if (firstModelInterpreter != null) {
-            firstModelInterpreter.close();
+        if (firstModelHandle != null) {
+            firstModelHandle.close();
         }
-        if (secondModelInterpreter != null) {
-            secondModelInterpreter.close();
+        if (secondModelHandle != null) {
+            secondModelHandle.close();
         }
     }
 }
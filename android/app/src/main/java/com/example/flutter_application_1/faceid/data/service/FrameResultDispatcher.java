@@ -0,0 +1,196 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Delivers per-frame pipeline results to the UI at most once per vsync.
+ *
+ * Each result belongs to a channel and a frame (an increasing sequence number). Results wait in one
+ * slot per channel until the next Choreographer frame, when every waiting channel is run in a single
+ * main-thread callback. A newer frame's result replaces an older one still waiting (superseded), and
+ * a result for a frame older than the last one shown on its channel is dropped (late). Frame-to-UI
+ * latency is measured from the frame timestamp to the vsync that shows it.
+ *
+ * {@link #dispatch} may be called from any thread; the updates run on the main thread. The vsync and
+ * the clock are injectable, so tests drive both by hand.
+ */
+public class FrameResultDispatcher {
+
+    // Continuous frame analysis: face found / no face / multiple faces / oval guidance
+    public static final int CHANNEL_CONTINUOUS_FRAME = 0;
+    // Face detection with oval validation (processFaceImage)
+    public static final int CHANNEL_FACE_DETECTION = 1;
+    private static final int CHANNEL_COUNT = 2;
+
+    /**
+     * Runs a callback on the UI thread at the next vsync. At most one callback is pending at a time.
+     */
+    public interface VsyncScheduler {
+        void postOnNextVsync(Runnable callback);
+    }
+
+    public interface Clock {
+        long nowMs();
+    }
+
+    public static final class Stats {
+        public final long delivered;     // Updates run on the UI
+        public final long superseded;    // Replaced by a newer frame before their vsync
+        public final long late;          // Arrived after a newer frame was already shown
+        public final long vsyncs;        // Main-thread callbacks used
+        public final float meanFrameToUiMs;
+        public final long maxFrameToUiMs;
+
+        Stats(long delivered, long superseded, long late, long vsyncs, float meanFrameToUiMs, long maxFrameToUiMs) {
+            this.delivered = delivered;
+            this.superseded = superseded;
+            this.late = late;
+            this.vsyncs = vsyncs;
+            this.meanFrameToUiMs = meanFrameToUiMs;
+            this.maxFrameToUiMs = maxFrameToUiMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "delivered=%d superseded=%d late=%d vsyncs=%d frameToUi mean=%.1fms max=%dms",
+                    delivered, superseded, late, vsyncs, meanFrameToUiMs, maxFrameToUiMs);
+        }
+    }
+
+    private final VsyncScheduler vsyncScheduler;
+    private final Clock clock;
+    private final Runnable vsyncCallback = this::onVsync;
+
+    // Guarded by this
+    private final Runnable[] pendingUpdates = new Runnable[CHANNEL_COUNT];
+    private final long[] pendingSeqs = new long[CHANNEL_COUNT];
+    private final long[] pendingFrameMs = new long[CHANNEL_COUNT];
+    private final long[] shownSeqs = new long[CHANNEL_COUNT];
+    private boolean vsyncScheduled = false;
+    private long delivered;
+    private long superseded;
+    private long late;
+    private long vsyncs;
+    private long totalFrameToUiMs;
+    private long maxFrameToUiMs;
+
+    // Main thread only: updates taken out of the slots for the current vsync
+    private final Runnable[] runUpdates = new Runnable[CHANNEL_COUNT];
+    private final long[] runFrameMs = new long[CHANNEL_COUNT];
+
+    public FrameResultDispatcher(Handler mainHandler) {
+        this(new ChoreographerVsync(mainHandler), SystemClock::elapsedRealtime);
+    }
+
+    public FrameResultDispatcher(VsyncScheduler vsyncScheduler, Clock clock) {
+        this.vsyncScheduler = vsyncScheduler;
+        this.clock = clock;
+        Arrays.fill(shownSeqs, -1);
+    }
+
+    /**
+     * Queue a frame's UI update for the next vsync
+     *
+     * @param channel     One of the CHANNEL_ constants
+     * @param frameSeq    Increasing per frame on this channel
+     * @param frameTimeMs When the frame entered the pipeline ({@link SystemClock#elapsedRealtime()})
+     */
+    public void dispatch(int channel, long frameSeq, long frameTimeMs, Runnable update) {
+        boolean schedule;
+        synchronized (this) {
+            if (frameSeq <= shownSeqs[channel]
+                    || (pendingUpdates[channel] != null && frameSeq < pendingSeqs[channel])) {
+                late++;
+                return;
+            }
+            if (pendingUpdates[channel] != null) {
+                superseded++;
+            }
+            pendingUpdates[channel] = update;
+            pendingSeqs[channel] = frameSeq;
+            pendingFrameMs[channel] = frameTimeMs;
+            schedule = !vsyncScheduled;
+            vsyncScheduled = true;
+        }
+        if (schedule) {
+            vsyncScheduler.postOnNextVsync(vsyncCallback);
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(delivered, superseded, late, vsyncs,
+                delivered > 0 ? (float) totalFrameToUiMs / delivered : 0f, maxFrameToUiMs);
+    }
+
+    private void onVsync() {
+        int count = 0;
+        synchronized (this) {
+            vsyncScheduled = false;
+            vsyncs++;
+            for (int channel = 0; channel < CHANNEL_COUNT; channel++) {
+                if (pendingUpdates[channel] == null) {
+                    continue;
+                }
+                runUpdates[count] = pendingUpdates[channel];
+                runFrameMs[count] = pendingFrameMs[channel];
+                count++;
+                shownSeqs[channel] = pendingSeqs[channel];
+                pendingUpdates[channel] = null;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            Runnable update = runUpdates[i];
+            runUpdates[i] = null;
+            update.run();
+        }
+
+        long now = clock.nowMs();
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                long latencyMs = now - runFrameMs[i];
+                delivered++;
+                totalFrameToUiMs += latencyMs;
+                maxFrameToUiMs = Math.max(maxFrameToUiMs, latencyMs);
+            }
+        }
+    }
+
+    /**
+     * The main thread's Choreographer; until it is obtained there, a plain main-thread post
+     */
+    private static final class ChoreographerVsync implements VsyncScheduler {
+        private final Handler mainHandler;
+        private volatile Choreographer choreographer;
+        // Only one callback is pending at a time, so one FrameCallback serves every post
+        private volatile Runnable callback;
+        private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> callback.run();
+        private final Runnable fallbackCallback = () -> callback.run();
+
+        ChoreographerVsync(Handler mainHandler) {
+            this.mainHandler = mainHandler;
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                choreographer = Choreographer.getInstance();
+            } else {
+                mainHandler.post(() -> choreographer = Choreographer.getInstance());
+            }
+        }
+
+        @Override
+        public void postOnNextVsync(Runnable callback) {
+            this.callback = callback;
+            Choreographer target = choreographer;
+            if (target != null) {
+                target.postFrameCallback(frameCallback);
+            } else {
+                mainHandler.post(fallbackCallback);
+            }
+        }
+    }
+}
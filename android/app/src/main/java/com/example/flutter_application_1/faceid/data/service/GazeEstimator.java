@@ -3,14 +3,16 @@ package com.example.flutter_application_1.faceid.data.service;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.PointF;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.example.flutter_application_1.faceid.util.InterpreterAutotuner;
+import com.example.flutter_application_1.faceid.util.TimeConstantEma;
+import com.example.flutter_application_1.faceid.util.StageLatencyRecorder;
+
 import org.tensorflow.lite.Interpreter;
-import org.tensorflow.lite.gpu.CompatibilityList;
-import org.tensorflow.lite.gpu.GpuDelegate;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -22,8 +24,6 @@ import java.util.concurrent.TimeUnit;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.List;
-import java.util.ArrayList;
 
 /**
  * Gaze direction estimator using TensorFlow Lite iTracker model
@@ -31,6 +31,7 @@ import java.util.ArrayList;
  */
 public class GazeEstimator {
     private static final String TAG = "GazeEstimator";
+    private static final boolean VERBOSE_LOGGING = false;
 
     // TensorFlow Lite model parameters
     private static final String MODEL_FILE = "itracker_adv_fp32.tflite";
@@ -49,6 +50,7 @@ public class GazeEstimator {
 
     // Interpreter and associated objects
     private Interpreter interpreter;
+    private TFLiteDelegateManager.Handle interpreterHandle; // Owns the interpreter and its delegate
     private float[][] outputBuffer; // [1][2] - x,y gaze coordinates (range depends on model)
 
     // Landmark indices for eye cropping (MediaPipe Face Mesh)
@@ -66,8 +68,8 @@ public class GazeEstimator {
     // Tracking state
     private boolean isLookingAway = false;
     private boolean isLookingAtScreen = false;
-    private int lookingAwayFrames = 0;
-    private static final int LOOKING_AWAY_THRESHOLD = 5; // Frames threshold for looking away
+    private long lookingAwaySinceMs = -1; // Start of the current looking-away streak, -1 if none
+    private static final long LOOKING_AWAY_HOLD_MS = 130; // Time threshold for looking away (~5 frames at 30 fps)
 
     // For tracking gaze stability
     private float[] gazeHistory = new float[10]; // Last 10 gaze positions (magnitude)
@@ -76,10 +78,19 @@ public class GazeEstimator {
     // Camera/coordinate config
     private boolean frontCameraMirrored = true;
 
-    // Post-process smoothing
+    // Post-process smoothing, driven by frame timestamps so it behaves the same at any frame rate.
+    // Same response as the previous per-frame EMA (alpha 0.8) at 30 fps.
+    private static final float GAZE_SMOOTHING_TIME_CONSTANT_MS = TimeConstantEma.tauForAlpha(0.8f, 30f);
+    private final TimeConstantEma gazeXFilter = new TimeConstantEma(GAZE_SMOOTHING_TIME_CONSTANT_MS);
+    private final TimeConstantEma gazeYFilter = new TimeConstantEma(GAZE_SMOOTHING_TIME_CONSTANT_MS);
     private float emaGazeX = 0f;
     private float emaGazeY = 0f;
-    private float emaAlpha = 0.8f; // smoothing factor - higher alpha = more responsive
+
+    // Landmark-only fallback / fast path
+    private final LandmarkGazeEstimator landmarkGazeEstimator = new LandmarkGazeEstimator();
+
+    // Automatic CNN vs landmark path selection by measured iTracker latency (crop + inference)
+    private final GazePathSelector pathSelector = new GazePathSelector();
 
     // Head pose blending weight
     private float headPoseWeight = 0.0f; // DISABLED: was causing bias when head slightly turned
@@ -109,6 +120,8 @@ public class GazeEstimator {
     private volatile boolean isInitialized = false;
     private final CountDownLatch initLatch = new CountDownLatch(1);
     private final Executor executor = Executors.newSingleThreadExecutor();
+    private volatile long loadTimeMs = 0;
+    private volatile long warmupTimeMs = 0;
 
     /**
      * Creates a new gaze estimator
@@ -130,21 +143,28 @@ public class GazeEstimator {
                 Log.d(TAG, "Buffers initialized, loading TensorFlow Lite model...");
 
                 // Initialize TensorFlow Lite with the iTracker model
+                long loadStart = SystemClock.elapsedRealtime();
                 initializeTFLite(context);
+                loadTimeMs = SystemClock.elapsedRealtime() - loadStart;
 
                 // Only set as initialized if interpreter is not null
                 isInitialized = (interpreter != null);
 
                 if (isInitialized) {
-                    Log.d(TAG, "Gaze estimator initialized successfully with model: " + MODEL_FILE);
+                    // Warm up before signalling readiness so the first real frame runs at steady-state latency
+                    long warmupStart = SystemClock.elapsedRealtime();
+                    testModelInference();
+                    warmupTimeMs = SystemClock.elapsedRealtime() - warmupStart;
+                    Log.d(TAG, "Gaze estimator initialized successfully with model: " + MODEL_FILE
+                            + " (load " + loadTimeMs + "ms, warm-up " + warmupTimeMs + "ms)");
                 } else {
                     Log.w(TAG, "Gaze estimator initialization incomplete - interpreter is null");
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Error initializing gaze estimator: " + e.getMessage(), e);
-                // Fallback to simulate mode if model loading fails
+                // Gaze falls back to the landmark-only path if model loading fails
                 outputBuffer = new float[1][2];
-                Log.w(TAG, "Falling back to simulated mode due to initialization error");
+                Log.w(TAG, "Falling back to landmark gaze due to initialization error");
             } finally {
                 initLatch.countDown();
             }
@@ -170,6 +190,14 @@ public class GazeEstimator {
         initLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
     }
 
+    public long getLoadTimeMs() {
+        return loadTimeMs;
+    }
+
+    public long getWarmupTimeMs() {
+        return warmupTimeMs;
+    }
+
     /**
      * Set the callback for gaze events
      *
@@ -282,40 +310,11 @@ public class GazeEstimator {
         // Load model from assets
         ByteBuffer modelBuffer = loadModelFile(context);
 
-        Log.d(TAG, "Setting up interpreter options with TFLiteGpuDelegateManager...");
-
-        // Set up interpreter options
-        Interpreter.Options options = new Interpreter.Options();
-
-        try {
-            // Try to use GPU delegate manager
-            options = TFLiteGpuDelegateManager.getInstance().getInterpreterOptions();
-            Log.d(TAG, "Using GPU delegate manager for acceleration");
-        } catch (Exception e) {
-            Log.w(TAG, "Could not use GPU delegate manager: " + e.getMessage());
-            // If GPU delegate manager fails, try direct GPU delegate
-            try {
-                CompatibilityList compatList = new CompatibilityList();
-                if (compatList.isDelegateSupportedOnThisDevice()) {
-                    GpuDelegate.Options delegateOptions = compatList.getBestOptionsForThisDevice();
-                    GpuDelegate gpuDelegate = new GpuDelegate(delegateOptions);
-                    options.addDelegate(gpuDelegate);
-                    Log.d(TAG, "Using direct GPU delegate for acceleration");
-                } else {
-                    options.setNumThreads(4); // Use 4 threads on CPU
-                    Log.d(TAG, "Using CPU for model inference with 4 threads");
-                }
-            } catch (Exception ex) {
-                Log.w(TAG, "Could not use GPU directly: " + ex.getMessage());
-                options.setNumThreads(4); // Use 4 threads on CPU
-                Log.d(TAG, "Falling back to CPU with 4 threads");
-            }
-        }
-
-        Log.d(TAG, "Creating TensorFlow Lite interpreter...");
+        Log.d(TAG, "Creating TensorFlow Lite interpreter with tuned options...");
 
-        // Create the interpreter
-        interpreter = new Interpreter(modelBuffer, options);
+        // Delegate / thread count benchmarked once per device and persisted
+        interpreterHandle = InterpreterAutotuner.createInterpreter(context, MODEL_FILE, modelBuffer, null);
+        interpreter = interpreterHandle.getInterpreter();
 
         Log.d(TAG, "TensorFlow Lite interpreter initialized successfully");
 
@@ -357,150 +356,210 @@ public class GazeEstimator {
     }
 
     /**
-     * Estimate gaze direction from face image with landmarks
+     * Estimate gaze direction from face image with landmarks, timestamped now
+     *
+     * @see #estimateGaze(Bitmap, float[], int, float[], long)
+     */
+    public boolean estimateGaze(Bitmap faceImage, float[] landmarkCoords, int landmarkCount, float[] headPose) {
+        return estimateGaze(faceImage, landmarkCoords, landmarkCount, headPose, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Estimate gaze direction from face image with landmarks.
+     * Runs the iTracker CNN when it is ready and fast enough on this device, otherwise
+     * (or if inference fails) uses the landmark-only iris estimate. Call from a background thread.
      *
-     * @param faceImage  Full face image bitmap
-     * @param landmarks  List of face landmarks (MediaPipe format)
-     * @param headPose   Head pose angles [pitch, roll, yaw]
+     * @param faceImage      Image the landmarks were extracted from (may be null for the landmark path)
+     * @param landmarkCoords Packed [x, y, z] per landmark in image pixels (MediaPipe, 478 with irises)
+     * @param landmarkCount  Number of landmarks in landmarkCoords
+     * @param headPose       Head pose angles [pitch, roll, yaw]
+     * @param timestampMs    Capture time of the frame, drives smoothing and looking-away timing
      * @return True if gaze was successfully estimated
      */
-    public boolean estimateGaze(Bitmap faceImage, List<PointF> landmarks, float[] headPose) {
+    public boolean estimateGaze(Bitmap faceImage, float[] landmarkCoords, int landmarkCount, float[] headPose,
+                                long timestampMs) {
+        long startNanos = System.nanoTime();
         try {
-            if (!isInitialized) {
-                Log.w(TAG, "TensorFlow Lite interpreter not initialized, falling back to simulation");
-                return simulateGazeEstimation(headPose);
-            }
+            return estimateGazeInternal(faceImage, landmarkCoords, landmarkCount, headPose, timestampMs);
+        } finally {
+            StageLatencyRecorder.getInstance().record(StageLatencyRecorder.Stage.GAZE, startNanos, System.nanoTime());
+        }
+    }
 
-            // Check if input image and landmarks are valid
-            if (faceImage == null || landmarks == null || landmarks.size() < 468) {
-                Log.w(TAG, "Face image or landmarks are invalid, falling back to simulation");
-                return simulateGazeEstimation(headPose);
-            }
+    private boolean estimateGazeInternal(Bitmap faceImage, float[] landmarkCoords, int landmarkCount, float[] headPose,
+                                         long timestampMs) {
+        if (landmarkCoords == null || landmarkCount < 468) {
+            Log.w(TAG, "Landmarks are invalid, cannot estimate gaze");
+            return false;
+        }
 
-            // Check if interpreter is null
-            if (interpreter == null) {
-                Log.w(TAG, "TensorFlow Lite interpreter is null, falling back to simulation");
-                return simulateGazeEstimation(headPose);
-            }
+        if (!isModelReady() || faceImage == null || faceImage.isRecycled() || !pathSelector.shouldRunModel()) {
+            return landmarkGaze(landmarkCoords, landmarkCount, headPose, timestampMs);
+        }
 
+        Bitmap leftEyeCrop = null;
+        Bitmap rightEyeCrop = null;
+        Bitmap faceCrop = null;
+        try {
+            long startNs = System.nanoTime();
             int imgW = faceImage.getWidth();
             int imgH = faceImage.getHeight();
 
             // Extract ROI regions from landmarks
-            RectF leftEyeRect = rectFromLandmarks(landmarks, imgW, imgH, LEFT_EYE_LANDMARKS, 2.2f);
-            RectF rightEyeRect = rectFromLandmarks(landmarks, imgW, imgH, RIGHT_EYE_LANDMARKS, 2.2f);
-            RectF faceRect = faceRect(landmarks, imgW, imgH, 1.3f);
+            RectF leftEyeRect = rectFromLandmarks(landmarkCoords, landmarkCount, imgW, imgH, LEFT_EYE_LANDMARKS, 2.2f);
+            RectF rightEyeRect = rectFromLandmarks(landmarkCoords, landmarkCount, imgW, imgH, RIGHT_EYE_LANDMARKS, 2.2f);
+            RectF faceRect = faceRect(landmarkCoords, Math.min(landmarkCount, 468), imgW, imgH, 1.3f);
+            if (leftEyeRect == null || rightEyeRect == null || faceRect == null) {
+                // An eye or the face is outside the frame: nothing to crop for the CNN
+                return landmarkGaze(landmarkCoords, landmarkCount, headPose, timestampMs);
+            }
 
             // Crop and resize regions
-            Bitmap leftEyeCrop = cropResize(faceImage, leftEyeRect, INPUT_SIZE, INPUT_SIZE);
-            Bitmap rightEyeCrop = cropResize(faceImage, rightEyeRect, INPUT_SIZE, INPUT_SIZE);
-            Bitmap faceCrop = cropResize(faceImage, faceRect, INPUT_SIZE, INPUT_SIZE);
+            leftEyeCrop = cropResize(faceImage, leftEyeRect, INPUT_SIZE, INPUT_SIZE);
+            rightEyeCrop = cropResize(faceImage, rightEyeRect, INPUT_SIZE, INPUT_SIZE);
+            faceCrop = cropResize(faceImage, faceRect, INPUT_SIZE, INPUT_SIZE);
 
             // Create face grid (25x25)
             float[] faceGrid = makeFaceGrid(faceRect, imgW, imgH, FACE_GRID_SIZE);
 
             // Run gaze estimation
             float[] gazeResult = runGaze(leftEyeCrop, rightEyeCrop, faceCrop, faceGrid);
+            recordModelLatency((System.nanoTime() - startNs) / 1_000_000f);
 
-            if (gazeResult != null && gazeResult.length >= 2) {
-                // Store previous gaze for delta calculation
-                prevGazeX = gazeX;
-                prevGazeY = gazeY;
-                
-                // Extract gaze coordinates from the output
-                gazeX = gazeResult[0];
-                gazeY = gazeResult[1];
-
-                // Calculate delta for debugging
-                float deltaX = gazeX - prevGazeX;
-                float deltaY = gazeY - prevGazeY;
-                float deltaMagnitude = (float) Math.sqrt(deltaX * deltaX + deltaY * deltaY);
-                
-                // Log inference results and delta
-                Log.d(TAG, String.format("iTracker inference SUCCESS: gaze(%.3f, %.3f), Δ(%.3f, %.3f), |Δ|:%.3f", 
-                      gazeX, gazeY, deltaX, deltaY, deltaMagnitude));
+            if (gazeResult == null || gazeResult.length < 2) {
+                Log.w(TAG, "iTracker model inference FAILED, using landmark gaze");
+                return landmarkGaze(landmarkCoords, landmarkCount, headPose, timestampMs);
+            }
 
-                Log.d(TAG, String.format("PRE-PROCESSING: raw_model_output=(%.4f, %.4f)", gazeX, gazeY));
+            if (VERBOSE_LOGGING) {
+                Log.d(TAG, String.format("iTracker raw output: (%.4f, %.4f), bias=(%.4f, %.4f)",
+                        gazeResult[0], gazeResult[1], gazeXBias, gazeYBias));
+            }
 
-                // Apply bias correction BEFORE any other processing
-                float rawGazeX = gazeX;
-                float rawGazeY = gazeY;
-                gazeX = gazeX - gazeXBias;  // Center around 0
-                gazeY = gazeY - gazeYBias;
-                
-                Log.d(TAG, String.format("BIAS CORRECTION: raw=(%.4f,%.4f) → corrected=(%.4f,%.4f), bias=(%.4f,%.4f)", 
-                      rawGazeX, rawGazeY, gazeX, gazeY, gazeXBias, gazeYBias));
+            // Apply bias correction BEFORE any other processing
+            publishGaze(gazeResult[0] - gazeXBias, gazeResult[1] - gazeYBias, headPose, timestampMs);
+            return true;
 
-                // Apply front camera mirroring if needed
-                if (frontCameraMirrored) {
-                    gazeX = -gazeX;
-                    Log.d(TAG, "Applied front camera mirroring: gazeX = " + gazeX);
-                }
+        } catch (Exception e) {
+            Log.e(TAG, "Error during model inference, using landmark gaze", e);
+            return landmarkGaze(landmarkCoords, landmarkCount, headPose, timestampMs);
+        } finally {
+            // Clean up cropped bitmaps
+            if (leftEyeCrop != null) leftEyeCrop.recycle();
+            if (rightEyeCrop != null) rightEyeCrop.recycle();
+            if (faceCrop != null) faceCrop.recycle();
+        }
+    }
 
-                // Adjust gaze based on head pose
-                if (headPose != null && headPose.length >= 3) {
-                    float preAdjustX = gazeX, preAdjustY = gazeY;
-                    adjustGazeWithHeadPose(headPose);
-                    Log.d(TAG, String.format("Head pose adjustment: (%.3f,%.3f) → (%.3f,%.3f)", 
-                          preAdjustX, preAdjustY, gazeX, gazeY));
-                }
+    /**
+     * Landmark-only gaze, timestamped now
+     *
+     * @see #estimateGazeFromLandmarks(float[], int, float[], long)
+     */
+    public boolean estimateGazeFromLandmarks(float[] landmarkCoords, int landmarkCount, float[] headPose) {
+        return estimateGazeFromLandmarks(landmarkCoords, landmarkCount, headPose, SystemClock.elapsedRealtime());
+    }
 
-                // Smooth gaze with EMA to stabilize thresholds
-                float preEmaX = emaGazeX, preEmaY = emaGazeY;
-                emaGazeX = emaAlpha * gazeX + (1 - emaAlpha) * emaGazeX;
-                emaGazeY = emaAlpha * gazeY + (1 - emaAlpha) * emaGazeY;
-                
-                // *** GAZE DIRECTION CLASSIFICATION DEBUG ***
-                String gazeDirection = getGazeDirection(0.08f);
-                String emaGazeDirection = getGazeDirectionFromValues(emaGazeX, emaGazeY, 0.08f);
-                
-                Log.i(TAG, "=== GAZE DIRECTION DEBUG ===");
-                Log.i(TAG, String.format("Raw gaze: (%.4f, %.4f) → Direction: %s", gazeX, gazeY, gazeDirection));
-                Log.i(TAG, String.format("EMA smoothed: (%.4f, %.4f) → Direction: %s", emaGazeX, emaGazeY, emaGazeDirection));
-                Log.i(TAG, String.format("EMA change: (%.4f,%.4f) → (%.4f,%.4f)", preEmaX, preEmaY, emaGazeX, emaGazeY));
-                Log.i(TAG, String.format("Threshold τ=0.08: LEFT≤%.3f, CENTER<%.3f, RIGHT≥%.3f", -0.08f, 0.08f, 0.08f));
-                Log.i(TAG, String.format("Classification logic: gazeX=%.4f → %s", gazeX, 
-                      (gazeX >= 0.08f) ? "RIGHT" : (gazeX <= -0.08f) ? "LEFT" : "CENTER"));
-                Log.i(TAG, "============================");
-
-                // Update gaze history
-                updateGazeHistory();
-
-                // Check if looking away from the screen
-                checkLookingAway();
-
-                // Log the result with direction classification
-                String currentDirection = getGazeDirectionFromValues(emaGazeX, emaGazeY, 0.08f);
-                Log.i(TAG, String.format("FINAL RESULT: Direction=%s, EMA=(%.3f,%.3f), LookingAtScreen=%b", 
-                      currentDirection, emaGazeX, emaGazeY, isLookingAtScreen));
-
-                // Notify callback if available (use smoothed values)
-                if (callback != null) {
-                    Log.d(TAG, String.format("Sending to callback: gaze=(%.3f,%.3f), direction=%s, lookingAtScreen=%b", 
-                          emaGazeX, emaGazeY, currentDirection, isLookingAtScreen));
-                    callback.onGazeUpdate(emaGazeX, emaGazeY, isLookingAtScreen);
-                    callback.onLookingAway(isLookingAway);
-                }
+    /**
+     * Landmark-only gaze from iris position relative to the eye corners.
+     * Deterministic and model-free; needs the 10 iris landmarks (478 total).
+     *
+     * @return True if iris landmarks were available
+     */
+    public boolean estimateGazeFromLandmarks(float[] landmarkCoords, int landmarkCount, float[] headPose,
+                                             long timestampMs) {
+        long startNanos = System.nanoTime();
+        try {
+            return landmarkGaze(landmarkCoords, landmarkCount, headPose, timestampMs);
+        } finally {
+            StageLatencyRecorder.getInstance().record(StageLatencyRecorder.Stage.GAZE, startNanos, System.nanoTime());
+        }
+    }
 
-                // Clean up cropped bitmaps
-                if (leftEyeCrop != null) leftEyeCrop.recycle();
-                if (rightEyeCrop != null) rightEyeCrop.recycle();
-                if (faceCrop != null) faceCrop.recycle();
+    private boolean landmarkGaze(float[] landmarkCoords, int landmarkCount, float[] headPose, long timestampMs) {
+        if (!landmarkGazeEstimator.estimate(landmarkCoords, landmarkCount)) {
+            Log.w(TAG, "Iris landmarks not available for landmark gaze (count=" + landmarkCount + ")");
+            return false;
+        }
+        publishGaze(landmarkGazeEstimator.getGazeX(), landmarkGazeEstimator.getGazeY(), headPose, timestampMs);
+        return true;
+    }
 
-                return true;
-            } else {
-                Log.w(TAG, "iTracker model inference FAILED - runGaze() returned null or invalid result");
-                Log.w(TAG, "Falling back to head pose simulation...");
-                return simulateGazeEstimation(headPose);
-            }
+    /**
+     * Shared post-processing for both gaze paths: mirroring, head pose blend, smoothing, callbacks
+     */
+    private void publishGaze(float x, float y, float[] headPose, long timestampMs) {
+        // Store previous gaze for delta calculation
+        prevGazeX = gazeX;
+        prevGazeY = gazeY;
+        gazeX = x;
+        gazeY = y;
+
+        // Apply front camera mirroring if needed
+        if (frontCameraMirrored) {
+            gazeX = -gazeX;
+        }
 
-        } catch (Exception e) {
-            Log.e(TAG, "Error during model inference", e);
-            // Fall back to simulation if model inference fails
-            return simulateGazeEstimation(headPose);
+        // Adjust gaze based on head pose
+        if (headPose != null && headPose.length >= 3) {
+            adjustGazeWithHeadPose(headPose);
+        }
+
+        // Smooth gaze with EMA to stabilize thresholds
+        emaGazeX = gazeXFilter.update(gazeX, timestampMs);
+        emaGazeY = gazeYFilter.update(gazeY, timestampMs);
+
+        // Update gaze history
+        updateGazeHistory();
+
+        // Check if looking away from the screen
+        checkLookingAway(timestampMs);
+
+        if (VERBOSE_LOGGING) {
+            Log.d(TAG, String.format("Gaze: raw=(%.3f,%.3f), EMA=(%.3f,%.3f) → %s, lookingAtScreen=%b, path=%s",
+                    gazeX, gazeY, emaGazeX, emaGazeY, getGazeDirectionFromValues(emaGazeX, emaGazeY, 0.08f),
+                    isLookingAtScreen, isUsingLandmarkFastPath() ? "landmarks" : "iTracker"));
+        }
+
+        // Notify callback if available (use smoothed values)
+        if (callback != null) {
+            callback.onGazeUpdate(emaGazeX, emaGazeY, isLookingAtScreen);
+            callback.onLookingAway(isLookingAway);
         }
     }
 
+    /**
+     * Track iTracker latency; the selector moves gaze to the landmark path when the CNN is over budget
+     * and back when probes show it well under
+     */
+    private void recordModelLatency(float latencyMs) {
+        if (pathSelector.recordModelLatency(latencyMs)) {
+            Log.i(TAG, String.format("iTracker latency %.1f ms, gaze now on the %s path",
+                    pathSelector.getLatencyEmaMs(), pathSelector.isUsingLandmarks() ? "landmark" : "iTracker"));
+        }
+    }
+
+    /**
+     * Check whether gaze currently uses the landmark-only path instead of the iTracker CNN
+     */
+    public boolean isUsingLandmarkFastPath() {
+        return pathSelector.isUsingLandmarks() || !isModelReady();
+    }
+
+    /**
+     * Force or clear the landmark-only path. Clearing it also restarts the latency measurement.
+     */
+    public void setLandmarkFastPath(boolean enabled) {
+        pathSelector.setForced(enabled);
+    }
+
+    /**
+     * Smoothed iTracker latency (crop + inference) in milliseconds, 0 if not measured yet
+     */
+    public float getModelLatencyMs() {
+        return pathSelector.getLatencyEmaMs();
+    }
+
     /**
      * Legacy method - Now simplified to detect "looking at camera" only
      * HEAD DIRECTION (LEFT/RIGHT) should be handled by HeadPoseEstimation class
@@ -530,8 +589,9 @@ public class GazeEstimator {
             }
             
             // Apply smoothing
-            emaGazeX = emaAlpha * gazeX + (1 - emaAlpha) * emaGazeX;
-            emaGazeY = emaAlpha * gazeY + (1 - emaAlpha) * emaGazeY;
+            long timestampMs = SystemClock.elapsedRealtime();
+            emaGazeX = gazeXFilter.update(gazeX, timestampMs);
+            emaGazeY = gazeYFilter.update(gazeY, timestampMs);
             
             Log.i(TAG, "=== GAZE CAMERA DETECTION ===");
             Log.i(TAG, String.format("Head pose: pitch=%.1f°, yaw=%.1f°, roll=%.1f°", pitch, yaw, roll));
@@ -582,58 +642,65 @@ public class GazeEstimator {
     }
 
     /**
-     * Create ROI rectangle from landmarks
+     * Create ROI rectangle from packed pixel landmarks
+     *
+     * @return null if none of the landmarks exist or the ROI lies outside the image
      */
-    private RectF rectFromLandmarks(List<PointF> landmarks, int w, int h, int[] indices, float expand) {
-        float minX = 1f, minY = 1f, maxX = 0f, maxY = 0f;
+    private RectF rectFromLandmarks(float[] landmarks, int count, int w, int h, int[] indices, float expand) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        boolean found = false;
         
         for (int id : indices) {
-            if (id >= 0 && id < landmarks.size()) {
-                PointF lm = landmarks.get(id);
-                minX = Math.min(minX, lm.x);
-                minY = Math.min(minY, lm.y);
-                maxX = Math.max(maxX, lm.x);
-                maxY = Math.max(maxY, lm.y);
+            if (id < 0 || id >= count || id * 3 + 1 >= landmarks.length) {
+                continue;
             }
+            found = true;
+            float x = landmarks[id * 3];
+            float y = landmarks[id * 3 + 1];
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
         }
         
-        float cx = (minX + maxX) / 2f;
-        float cy = (minY + maxY) / 2f;
-        float half = Math.max((maxX - minX), (maxY - minY)) * 0.5f * expand;
-        
-        RectF r = new RectF((cx - half) * w, (cy - half) * h, (cx + half) * w, (cy + half) * h);
-        r.left = Math.max(0, r.left);
-        r.top = Math.max(0, r.top);
-        r.right = Math.min(w - 1, r.right);
-        r.bottom = Math.min(h - 1, r.bottom);
-        
-        return r;
+        return found ? squareRect(minX, minY, maxX, maxY, w, h, expand) : null;
     }
 
     /**
-     * Create face ROI rectangle from all landmarks
+     * Create face ROI rectangle from all mesh landmarks
      */
-    private RectF faceRect(List<PointF> landmarks, int w, int h, float expand) {
-        float minX = 1f, minY = 1f, maxX = 0f, maxY = 0f;
+    private RectF faceRect(float[] landmarks, int count, int w, int h, float expand) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
         
-        for (PointF lm : landmarks) {
-            minX = Math.min(minX, lm.x);
-            minY = Math.min(minY, lm.y);
-            maxX = Math.max(maxX, lm.x);
-            maxY = Math.max(maxY, lm.y);
+        for (int i = 0; i < count; i++) {
+            float x = landmarks[i * 3];
+            float y = landmarks[i * 3 + 1];
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
         }
         
+        return squareRect(minX, minY, maxX, maxY, w, h, expand);
+    }
+
+    /**
+     * Expand a bounding box to a square around its center, clipped to the image
+     *
+     * @return null if less than a pixel of the square is inside the image
+     */
+    private RectF squareRect(float minX, float minY, float maxX, float maxY, int w, int h, float expand) {
         float cx = (minX + maxX) / 2f;
         float cy = (minY + maxY) / 2f;
         float half = Math.max((maxX - minX), (maxY - minY)) * 0.5f * expand;
         
-        RectF r = new RectF((cx - half) * w, (cy - half) * h, (cx + half) * w, (cy + half) * h);
+        RectF r = new RectF(cx - half, cy - half, cx + half, cy + half);
         r.left = Math.max(0, r.left);
         r.top = Math.max(0, r.top);
         r.right = Math.min(w - 1, r.right);
         r.bottom = Math.min(h - 1, r.bottom);
         
-        return r;
+        return r.width() >= 1f && r.height() >= 1f ? r : null;
     }
 
     /**
@@ -771,59 +838,6 @@ public class GazeEstimator {
             return null;
         }
     }
-    /**
-     * Simulate gaze estimation when model inference is not possible
-     */
-    private boolean simulateGazeEstimation(float[] headPose) {
-        try {
-            // Simulate changing gaze direction based on head pose
-            if (headPose != null && headPose.length >= 3) {
-                // Use head pose to influence gaze direction
-                float yaw = headPose[2]; // Left/right head rotation
-                float pitch = headPose[0]; // Up/down head rotation
-
-                // Map head rotation to gaze coordinates
-                // Normalize to range [-1, 1]
-                gazeX = Math.max(-1.0f, Math.min(1.0f, yaw / 45.0f));
-                gazeY = Math.max(-1.0f, Math.min(1.0f, pitch / 30.0f));
-            } else {
-                // Simulate changing gaze by moving slightly in random directions
-                float deltaX = (float) (Math.random() * 0.1 - 0.05);
-                float deltaY = (float) (Math.random() * 0.1 - 0.05);
-
-                gazeX = Math.max(-1.0f, Math.min(1.0f, gazeX + deltaX));
-                gazeY = Math.max(-1.0f, Math.min(1.0f, gazeY + deltaY));
-            }
-
-            // Update gaze history
-            updateGazeHistory();
-
-            // Check if looking away from the screen
-            checkLookingAway();
-
-            // Log the simulation result with direction
-            String simDirection = getGazeDirectionFromValues(gazeX, gazeY, 0.08f);
-            Log.w(TAG, "=== SIMULATION MODE DEBUG ===");
-            Log.w(TAG, String.format("Simulated gaze: (%.3f, %.3f) → Direction: %s", gazeX, gazeY, simDirection));
-            Log.w(TAG, String.format("Head pose: %s", headPose != null ? 
-                  String.format("[%.1f, %.1f, %.1f]", headPose[0], headPose[1], headPose[2]) : "null"));
-            Log.w(TAG, String.format("Looking at screen: %b", isLookingAtScreen));
-            Log.w(TAG, "==============================");
-
-            // Notify callback if available
-            if (callback != null) {
-                Log.d(TAG, String.format("Sending simulated data to callback: direction=%s", simDirection));
-                callback.onGazeUpdate(gazeX, gazeY, isLookingAtScreen);
-                callback.onLookingAway(isLookingAway);
-            }
-
-            return true;
-        } catch (Exception e) {
-            Log.e(TAG, "Error during gaze simulation", e);
-            return false;
-        }
-    }
-
     /**
      * Adjust the estimated gaze direction based on head pose
      */
@@ -877,7 +891,7 @@ public class GazeEstimator {
     /**
      * Check if the user is looking away from the screen
      */
-    private void checkLookingAway() {
+    private void checkLookingAway(long timestampMs) {
         // Calculate the magnitude of the gaze vector
         float gazeMagnitude = (float) Math.sqrt(gazeX * gazeX + gazeY * gazeY);
 
@@ -885,10 +899,12 @@ public class GazeEstimator {
         boolean currentlyLookingAway = gazeMagnitude > 0.7f; // Threshold for looking away
 
         if (currentlyLookingAway) {
-            lookingAwayFrames++;
+            if (lookingAwaySinceMs < 0) {
+                lookingAwaySinceMs = timestampMs;
+            }
 
-            // Update looking away state after sufficient consistent frames
-            if (lookingAwayFrames >= LOOKING_AWAY_THRESHOLD && !isLookingAway) {
+            // Update looking away state after it has persisted long enough
+            if (timestampMs - lookingAwaySinceMs >= LOOKING_AWAY_HOLD_MS && !isLookingAway) {
                 isLookingAway = true;
                 isLookingAtScreen = false;
                 if (callback != null) {
@@ -897,7 +913,7 @@ public class GazeEstimator {
                 Log.d(TAG, "User is now looking away from screen");
             }
         } else {
-            lookingAwayFrames = 0;
+            lookingAwaySinceMs = -1;
 
             // Update state if was previously looking away
             if (isLookingAway) {
@@ -1056,7 +1072,7 @@ public class GazeEstimator {
         Log.i(TAG, "Looking at screen: " + isLookingAtScreen);
         Log.i(TAG, "Looking away: " + isLookingAway);
         Log.i(TAG, "Front camera mirrored: " + frontCameraMirrored);
-        Log.i(TAG, "EMA alpha: " + emaAlpha);
+        Log.i(TAG, "EMA time constant: " + gazeXFilter.getTimeConstantMs() + "ms");
         Log.i(TAG, "Head pose weight: " + headPoseWeight);
         if (isModelReady()) {
             Log.i(TAG, getModelInfo());
@@ -1101,114 +1117,6 @@ public class GazeEstimator {
         return stdDev < 0.1f;
     }
 
-    /**
-     * Create a synthetic face image by combining eye regions
-     * This is a workaround for legacy method when full face image is not available
-     */
-    private Bitmap createSyntheticFaceFromEyes(Bitmap leftEye, Bitmap rightEye) {
-        if (leftEye == null || rightEye == null) {
-            return null;
-        }
-        
-        try {
-            // Create a 64x64 face image (model input size)
-            Bitmap syntheticFace = Bitmap.createBitmap(INPUT_SIZE, INPUT_SIZE, Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(syntheticFace);
-            
-            // Fill with a neutral gray background
-            canvas.drawColor(0xFF808080); // Gray background
-            
-            // Scale eye regions to fit in face image
-            int eyeSize = INPUT_SIZE / 4; // Each eye takes 1/4 of face width
-            
-            // Position eyes in typical face locations (CORRECTED: swap left/right for camera coordinate)
-            int leftEyeX = 3 * INPUT_SIZE / 4 - eyeSize / 2;  // Left eye at 3/4 position (was 1/4)
-            int rightEyeX = INPUT_SIZE / 4 - eyeSize / 2; // Right eye at 1/4 position (was 3/4)
-            int eyeY = INPUT_SIZE / 3 - eyeSize / 2; // Eyes at 1/3 height
-            
-            // Draw scaled eye regions (SWAPPED to correct coordinate system)
-            Bitmap scaledLeftEye = Bitmap.createScaledBitmap(rightEye, eyeSize, eyeSize, true);  // Use rightEye for leftEye position
-            Bitmap scaledRightEye = Bitmap.createScaledBitmap(leftEye, eyeSize, eyeSize, true);  // Use leftEye for rightEye position
-            
-            canvas.drawBitmap(scaledLeftEye, leftEyeX, eyeY, null);
-            canvas.drawBitmap(scaledRightEye, rightEyeX, eyeY, null);
-            
-            // Clean up scaled bitmaps
-            scaledLeftEye.recycle();
-            scaledRightEye.recycle();
-            
-            Log.d(TAG, String.format("Synthetic face created: leftEyeX=%d, rightEyeX=%d, eyeY=%d (SWAPPED coordinates)", 
-                  leftEyeX, rightEyeX, eyeY));
-            Log.d(TAG, "Created synthetic face image from eye regions: " + INPUT_SIZE + "x" + INPUT_SIZE);
-            return syntheticFace;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error creating synthetic face image: " + e.getMessage());
-            return null;
-        }
-    }
-    
-    /**
-     * Create dummy landmarks for synthetic face image
-     * Provides basic MediaPipe-compatible landmark positions
-     */
-    private List<PointF> createDummyLandmarksForEyes(int faceWidth, int faceHeight) {
-        List<PointF> landmarks = new ArrayList<>();
-        
-        // Create minimal set of 468 landmarks required by MediaPipe
-        // Most will be dummy values, but eye landmarks should be reasonably positioned
-        
-        float centerX = faceWidth / 2.0f;
-        float centerY = faceHeight / 2.0f;
-        float eyeY = faceHeight / 3.0f;
-        float leftEyeX = faceWidth / 4.0f;
-        float rightEyeX = 3 * faceWidth / 4.0f;
-        
-        for (int i = 0; i < 468; i++) {
-            PointF point;
-            
-            // Eye landmarks - use reasonable positions
-            if (isLeftEyeLandmark(i)) {
-                point = new PointF(leftEyeX + (float)(Math.random() * 20 - 10), eyeY + (float)(Math.random() * 10 - 5));
-            } else if (isRightEyeLandmark(i)) {
-                point = new PointF(rightEyeX + (float)(Math.random() * 20 - 10), eyeY + (float)(Math.random() * 10 - 5));
-            } else {
-                // Other landmarks - place around face perimeter
-                double angle = 2 * Math.PI * i / 468.0;
-                float radius = Math.min(faceWidth, faceHeight) * 0.4f;
-                point = new PointF(
-                    centerX + radius * (float)Math.cos(angle),
-                    centerY + radius * (float)Math.sin(angle)
-                );
-            }
-            
-            landmarks.add(point);
-        }
-        
-        Log.d(TAG, "Created " + landmarks.size() + " dummy landmarks for synthetic face");
-        return landmarks;
-    }
-    
-    /**
-     * Check if landmark index corresponds to left eye region
-     */
-    private boolean isLeftEyeLandmark(int index) {
-        // MediaPipe left eye landmarks (approximate range)
-        return (index >= 33 && index <= 41) || 
-               (index >= 130 && index <= 145) ||
-               (index >= 157 && index <= 163);
-    }
-    
-    /**
-     * Check if landmark index corresponds to right eye region  
-     */
-    private boolean isRightEyeLandmark(int index) {
-        // MediaPipe right eye landmarks (approximate range)
-        return (index >= 362 && index <= 374) ||
-               (index >= 385 && index <= 398) ||
-               (index >= 263 && index <= 269);
-    }
-
     /**
      * Calibrate the gaze estimator by having user look straight ahead
      * Call this when user is looking straight at camera
@@ -1259,17 +1167,16 @@ public class GazeEstimator {
      */
     public void close() {
         try {
-            if (interpreter != null) {
-                interpreter.close();
+            if (interpreterHandle != null) {
+                // Closes the interpreter first, then releases its delegate
+                interpreterHandle.close();
+                interpreterHandle = null;
                 interpreter = null;
                 Log.d(TAG, "TensorFlow Lite interpreter closed");
             } else {
                 Log.d(TAG, "No TensorFlow Lite interpreter to close (was null)");
             }
 
-            // Note: We don't close the GPU delegate here because it's managed by TFLiteGpuDelegateManager
-            // The delegate will be closed when the application exits or when the manager is explicitly closed
-
             Log.d(TAG, "GazeEstimator resources released");
         } catch (Exception e) {
             Log.e(TAG, "Error closing GazeEstimator resources: " + e.getMessage(), e);
@@ -0,0 +1,92 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+/**
+ * Chooses between the iTracker CNN and the landmark gaze path from measured CNN latency.
+ *
+ * CNN latency (crop + inference) is smoothed with an EMA. Once it is over {@link #SWITCH_TO_LANDMARKS_MS}
+ * after {@link #MIN_SAMPLES} runs, gaze moves to the landmark path. From then on the CNN still runs as a
+ * probe every {@link #PROBE_INTERVAL_FRAMES} frames, and gaze moves back once the smoothed latency is
+ * under {@link #SWITCH_BACK_MS}. The gap between the two thresholds keeps a device hovering around the
+ * budget from flipping every frame. A forced landmark path is not probed.
+ *
+ * Android-free; methods are synchronized because the path is read from other threads.
+ */
+public final class GazePathSelector {
+    static final float SWITCH_TO_LANDMARKS_MS = 40f;
+    static final float SWITCH_BACK_MS = 30f;
+    static final int MIN_SAMPLES = 5;
+    static final int PROBE_INTERVAL_FRAMES = 30; // About 2 s at 15 fps
+    private static final float EMA_ALPHA = 0.3f;
+
+    private float latencyEmaMs = 0f;
+    private int samples = 0;
+    private boolean useLandmarks = false;
+    private boolean forced = false;
+    private int framesSinceProbe = 0;
+
+    /**
+     * Call once per frame that could run the CNN
+     *
+     * @return true if this frame runs the CNN, either as the chosen path or as a probe
+     */
+    public synchronized boolean shouldRunModel() {
+        if (forced) {
+            return false;
+        }
+        if (!useLandmarks) {
+            return true;
+        }
+        if (++framesSinceProbe >= PROBE_INTERVAL_FRAMES) {
+            framesSinceProbe = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record one CNN run
+     *
+     * @return true if this switched the path
+     */
+    public synchronized boolean recordModelLatency(float latencyMs) {
+        latencyEmaMs = samples == 0 ? latencyMs : EMA_ALPHA * latencyMs + (1 - EMA_ALPHA) * latencyEmaMs;
+        samples++;
+        if (!useLandmarks && samples >= MIN_SAMPLES && latencyEmaMs > SWITCH_TO_LANDMARKS_MS) {
+            useLandmarks = true;
+            framesSinceProbe = 0;
+            return true;
+        }
+        if (useLandmarks && !forced && latencyEmaMs < SWITCH_BACK_MS) {
+            useLandmarks = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * True while gaze uses the landmark path, probes aside
+     */
+    public synchronized boolean isUsingLandmarks() {
+        return forced || useLandmarks;
+    }
+
+    /**
+     * Force the landmark path, or release it and start measuring again
+     */
+    public synchronized void setForced(boolean forced) {
+        this.forced = forced;
+        if (!forced) {
+            useLandmarks = false;
+            samples = 0;
+            latencyEmaMs = 0f;
+            framesSinceProbe = 0;
+        }
+    }
+
+    /**
+     * Smoothed CNN latency in milliseconds, 0 if not measured yet
+     */
+    public synchronized float getLatencyEmaMs() {
+        return latencyEmaMs;
+    }
+}
@@ -1,170 +1,113 @@
 package com.example.flutter_application_1.faceid.data.service;
 
-import android.graphics.PointF;
+import android.os.SystemClock;
 import android.util.Log;
 
-import java.util.List;
-import java.util.ArrayList;
+import com.example.flutter_application_1.faceid.util.HoldTimeDebouncer;
+import com.example.flutter_application_1.faceid.util.TimeConstantEma;
 
 /**
  * Head pose estimation using only MediaPipe facial landmarks
- * No OpenCV dependency - uses geometric calculations for head orientation
+ * No OpenCV dependency - pitch, yaw and roll come from {@link HeadPoseSolver} (POSIT on a 3D face model)
  * Provides LEFT/RIGHT/CENTER detection for face authentication challenges
  */
 public class HeadPoseEstimation {
     private static final String TAG = "HeadPoseEstimation";
-    
-    // MediaPipe 468-point face mesh landmark indices for key facial features
-    private static final int NOSE_TIP = 1;        // Nose tip
-    private static final int CHIN = 152;          // Chin center
-    private static final int LEFT_EYE_LEFT = 33;  // Left eye left corner  
-    private static final int RIGHT_EYE_RIGHT = 362; // Right eye right corner
-    private static final int LEFT_EYE_CENTER = 159; // Left eye center
-    private static final int RIGHT_EYE_CENTER = 386; // Right eye center
-    private static final int LEFT_MOUTH = 61;     // Left mouth corner
-    private static final int RIGHT_MOUTH = 291;   // Right mouth corner
-    
-    // Head direction thresholds (based on geometric ratios)
-    private static final double YAW_THRESHOLD = 0.15;   // Ratio threshold for LEFT/RIGHT
-    private static final double SYMMETRY_THRESHOLD = 0.1; // Facial symmetry threshold
-    
-    // Smoothing parameters for stable detection
-    private static final double SMOOTH_ALPHA = 0.3;
-    private double emaAlpha = SMOOTH_ALPHA; // Exponential moving average alpha for legacy compatibility
-    private double smoothedYawRatio = 0.0;
-    private double smoothedSymmetryRatio = 0.0;
-    
-    // Image dimensions for landmark normalization
-    private final int imageWidth;
-    private final int imageHeight;
-    
-    // Current head orientation metrics
-    private double currentYawRatio = 0.0;      // Left/right asymmetry ratio
-    private double currentSymmetryRatio = 0.0;  // Facial symmetry ratio
+    private static final boolean VERBOSE_LOGGING = false;
+
+    // Head direction threshold: yaw beyond this is LEFT/RIGHT
+    private static final double YAW_THRESHOLD_DEGREES = 15.0;
+
+    // Smoothing parameters for stable detection, driven by frame timestamps so behavior does not
+    // depend on frame rate. Same response as the previous per-frame EMA (0.7 new / 0.3 previous) at 30 fps.
+    private static final float SMOOTHING_TIME_CONSTANT_MS = TimeConstantEma.tauForAlpha(0.7f, 30f);
+    private final TimeConstantEma pitchFilter = new TimeConstantEma(SMOOTHING_TIME_CONSTANT_MS);
+    private final TimeConstantEma yawFilter = new TimeConstantEma(SMOOTHING_TIME_CONSTANT_MS);
+    private final TimeConstantEma rollFilter = new TimeConstantEma(SMOOTHING_TIME_CONSTANT_MS);
+
+    private final HeadPoseSolver solver = new HeadPoseSolver();
+
+    // Current head orientation (smoothed, degrees)
+    private double currentPitch = 0.0;
+    private double currentYaw = 0.0;
+    private double currentRoll = 0.0;
     private String currentDirection = "CENTER";
-    
-    // Frame confidence tracking
-    private int consecutiveFrames = 0;
-    private String lastStableDirection = "CENTER";
-    private static final int STABILITY_FRAMES = 3; // Frames needed for stable detection
-    
+
+    // A direction must persist this long to become current (~3 frames at 30 fps)
+    private static final long STABILITY_DURATION_MS = 60;
+    private static final int DIRECTION_CENTER = 0;
+    private static final int DIRECTION_LEFT = 1;
+    private static final int DIRECTION_RIGHT = 2;
+    private static final String[] DIRECTION_NAMES = {"CENTER", "LEFT", "RIGHT"};
+    private final HoldTimeDebouncer directionDebouncer = new HoldTimeDebouncer(STABILITY_DURATION_MS, DIRECTION_CENTER);
+
+    public HeadPoseEstimation() {
+        Log.d(TAG, "HeadPoseEstimation initialized (MediaPipe landmarks, POSIT solver)");
+    }
+
     /**
-     * Initialize head pose estimation with image dimensions
-     * @param imageWidth Camera image width in pixels
-     * @param imageHeight Camera image height in pixels
+     * Estimate head pose from facial landmarks, timestamped now
+     *
+     * @see #estimateHeadPose(float[], int, int, int, long)
      */
-    public HeadPoseEstimation(int imageWidth, int imageHeight) {
-        this.imageWidth = imageWidth;
-        this.imageHeight = imageHeight;
-        
-        Log.d(TAG, String.format("HeadPoseEstimation initialized: %dx%d (MediaPipe landmarks only)", 
-                imageWidth, imageHeight));
+    public boolean estimateHeadPose(float[] landmarkCoords, int landmarkCount, int imageWidth, int imageHeight) {
+        return estimateHeadPose(landmarkCoords, landmarkCount, imageWidth, imageHeight, SystemClock.elapsedRealtime());
     }
+
     /**
-     * Estimate head pose from facial landmarks using geometric analysis
-     * @param landmarks List of all face landmarks from MediaPipe (468 points)  
+     * Estimate head pose from facial landmarks
+     * @param landmarkCoords Packed [x, y, z] per landmark from MediaPipe (x/y in pixels, z scaled like x)
+     * @param landmarkCount Number of landmarks in landmarkCoords (468 or 478)
+     * @param imageWidth Width of the image the landmarks were detected in
+     * @param imageHeight Height of the image the landmarks were detected in
+     * @param timestampMs Capture time of the frame, drives smoothing and stability
      * @return true if pose was estimated successfully
      */
-    public boolean estimateHeadPose(List<PointF> landmarks) {
-        if (landmarks == null || landmarks.size() < 468) {
-            Log.w(TAG, "Insufficient landmarks for head pose estimation: " + 
-                  (landmarks != null ? landmarks.size() : "null"));
+    public boolean estimateHeadPose(float[] landmarkCoords, int landmarkCount, int imageWidth, int imageHeight,
+                                    long timestampMs) {
+        if (landmarkCoords == null || landmarkCount < 468) {
+            Log.w(TAG, "Insufficient landmarks for head pose estimation: " + landmarkCount);
             return false;
         }
-        
-        try {
-            // Get key landmark points
-            PointF noseTip = landmarks.get(NOSE_TIP);
-            PointF chin = landmarks.get(CHIN);
-            PointF leftEyeLeft = landmarks.get(LEFT_EYE_LEFT);
-            PointF rightEyeRight = landmarks.get(RIGHT_EYE_RIGHT);
-            PointF leftEyeCenter = landmarks.get(LEFT_EYE_CENTER);
-            PointF rightEyeCenter = landmarks.get(RIGHT_EYE_CENTER);
-            PointF leftMouth = landmarks.get(LEFT_MOUTH);
-            PointF rightMouth = landmarks.get(RIGHT_MOUTH);
-            
-            // Calculate head direction using geometric ratios
-            calculateHeadDirection(noseTip, chin, leftEyeLeft, rightEyeRight, 
-                                 leftEyeCenter, rightEyeCenter, leftMouth, rightMouth);
-            
-            return true;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error in head pose estimation", e);
+
+        if (!solver.solve(landmarkCoords, landmarkCount, imageWidth, imageHeight)) {
+            Log.w(TAG, "Head pose solver did not converge");
             return false;
         }
+
+        updateHeadDirection(solver.getPitch(), solver.getYaw(), solver.getRoll(), timestampMs);
+        return true;
     }
-    
+
     /**
-     * Calculate head direction using facial landmark geometry
+     * Smooth the solved angles and update the stable head direction
      */
-    private void calculateHeadDirection(PointF noseTip, PointF chin, 
-                                      PointF leftEyeLeft, PointF rightEyeRight,
-                                      PointF leftEyeCenter, PointF rightEyeCenter,
-                                      PointF leftMouth, PointF rightMouth) {
-        
-        // Method 1: Eye asymmetry analysis
-        // When head turns left, left eye appears smaller/more profile
-        // When head turns right, right eye appears smaller/more profile
-        double leftEyeWidth = distance(leftEyeLeft, leftEyeCenter) * 2; // approximate
-        double rightEyeWidth = distance(rightEyeCenter, rightEyeRight) * 2; // approximate
-        double eyeAsymmetryRatio = (rightEyeWidth - leftEyeWidth) / (rightEyeWidth + leftEyeWidth);
-        
-        // Method 2: Face width analysis  
-        // Distance from nose to left vs right face boundary
-        double noseToLeftDistance = distance(noseTip, leftEyeLeft);
-        double noseToRightDistance = distance(noseTip, rightEyeRight);
-        double faceAsymmetryRatio = (noseToRightDistance - noseToLeftDistance) / 
-                                  (noseToRightDistance + noseToLeftDistance);
-        
-        // Method 3: Mouth asymmetry
-        double noseToLeftMouth = distance(noseTip, leftMouth);
-        double noseToRightMouth = distance(noseTip, rightMouth);
-        double mouthAsymmetryRatio = (noseToRightMouth - noseToLeftMouth) / 
-                                   (noseToRightMouth + noseToLeftMouth);
-        
-        // Combine ratios for robust detection
-        double combinedRatio = (eyeAsymmetryRatio + faceAsymmetryRatio + mouthAsymmetryRatio) / 3.0;
-        
+    private void updateHeadDirection(double pitch, double yaw, double roll, long timestampMs) {
         // Apply smoothing
-        currentYawRatio = SMOOTH_ALPHA * currentYawRatio + (1 - SMOOTH_ALPHA) * combinedRatio;
-        
-        // Determine direction based on combined ratio
-        String detectedDirection;
-        if (currentYawRatio > YAW_THRESHOLD) {
-            detectedDirection = "LEFT";   // Head turned left (positive ratio means left eye narrower)
-        } else if (currentYawRatio < -YAW_THRESHOLD) {
-            detectedDirection = "RIGHT";  // Head turned right (negative ratio means right eye narrower)
-        } else {
-            detectedDirection = "CENTER"; // Head facing forward
-        }
-        
-        // Apply stability filtering
-        if (detectedDirection.equals(lastStableDirection)) {
-            consecutiveFrames++;
+        currentPitch = pitchFilter.update((float) pitch, timestampMs);
+        currentYaw = yawFilter.update((float) yaw, timestampMs);
+        currentRoll = rollFilter.update((float) roll, timestampMs);
+
+        // Determine direction based on yaw
+        int detectedDirection;
+        if (currentYaw > YAW_THRESHOLD_DEGREES) {
+            detectedDirection = DIRECTION_LEFT;   // Nose turned towards image left
+        } else if (currentYaw < -YAW_THRESHOLD_DEGREES) {
+            detectedDirection = DIRECTION_RIGHT;  // Nose turned towards image right
         } else {
-            consecutiveFrames = 1;
-            lastStableDirection = detectedDirection;
+            detectedDirection = DIRECTION_CENTER; // Head facing forward
         }
-        
-        // Update current direction only if stable
-        if (consecutiveFrames >= STABILITY_FRAMES) {
-            currentDirection = detectedDirection;
+
+        // Update current direction only once it has been stable long enough
+        currentDirection = DIRECTION_NAMES[directionDebouncer.update(detectedDirection, timestampMs)];
+
+        if (VERBOSE_LOGGING) {
+            Log.d(TAG, String.format("Head direction: %s (yaw=%.1f, pitch=%.1f, roll=%.1f, held=%dms)",
+                    currentDirection, currentYaw, currentPitch, currentRoll,
+                    directionDebouncer.getCandidateDurationMs(timestampMs)));
         }
-        
-        Log.d(TAG, String.format("Head direction: %s (ratio=%.3f, frames=%d)", 
-              currentDirection, currentYawRatio, consecutiveFrames));
-    }
-    
-    /**
-     * Calculate Euclidean distance between two points
-     */
-    private double distance(PointF p1, PointF p2) {
-        double dx = p1.x - p2.x;
-        double dy = p1.y - p2.y;
-        return Math.sqrt(dx * dx + dy * dy);
     }
-    
+
     /**
      * Get the current head direction
      * @return "LEFT", "RIGHT", or "CENTER"
@@ -172,7 +115,7 @@ public class HeadPoseEstimation {
     public String getHeadDirection() {
         return currentDirection;
     }
-    
+
     /**
      * Check if head is facing forward (suitable for gaze detection)
      * @return true if head is facing forward
@@ -180,52 +123,56 @@ public class HeadPoseEstimation {
     public boolean isFacingForward() {
         return "CENTER".equals(currentDirection);
     }
-    
-    /**
-     * Get the current yaw ratio (for debugging)
-     * Positive values indicate rightward head turn
-     * Negative values indicate leftward head turn  
-     * @return yaw asymmetry ratio
-     */
-    public double getYawRatio() {
-        return currentYawRatio;
-    }
-    
+
     /**
      * Reset the pose estimation state
      */
     public void reset() {
-        currentYawRatio = 0.0;
-        currentSymmetryRatio = 0.0;
-        smoothedYawRatio = 0.0;
-        smoothedSymmetryRatio = 0.0;
+        currentPitch = 0.0;
+        currentYaw = 0.0;
+        currentRoll = 0.0;
+        resetSmoothing();
         currentDirection = "CENTER";
-        consecutiveFrames = 0;
-        lastStableDirection = "CENTER";
-        
+        directionDebouncer.reset();
+
         Log.d(TAG, "Head pose estimation reset");
     }
-    
-    // Legacy compatibility methods (return dummy values since we don't use Euler angles)
-    public double getYaw() { return currentYawRatio * 45.0; } // Convert ratio to approximate degrees
-    public double getPitch() { return 0.0; } // Not calculated in this simplified approach
-    public double getRoll() { return 0.0; }  // Not calculated in this simplified approach
-    
+
+    /**
+     * Smoothed yaw in degrees, positive when the nose turns towards image left
+     */
+    public double getYaw() { return currentYaw; }
+
+    /**
+     * Smoothed pitch in degrees, positive when the head tilts down
+     */
+    public double getPitch() { return currentPitch; }
+
+    /**
+     * Smoothed roll in degrees, positive when the head rotates clockwise in the image
+     */
+    public double getRoll() { return currentRoll; }
+
     /**
-     * Set smoothing factor for EMA filtering
+     * Set the smoothing time constant; 0 disables smoothing
      */
-    public void setSmoothingFactor(double alpha) {
-        this.emaAlpha = Math.max(0.0, Math.min(1.0, alpha));
-        Log.d(TAG, "Smoothing factor set to: " + this.emaAlpha);
+    public void setSmoothingTimeConstantMs(float timeConstantMs) {
+        pitchFilter.setTimeConstantMs(timeConstantMs);
+        yawFilter.setTimeConstantMs(timeConstantMs);
+        rollFilter.setTimeConstantMs(timeConstantMs);
+        Log.d(TAG, "Smoothing time constant set to: " + timeConstantMs + "ms");
     }
-    
+
     /**
-     * Reset smoothing state - stub method for compatibility
+     * Reset smoothing state so the next frame is taken as-is
      */
     public void resetSmoothing() {
+        pitchFilter.reset();
+        yawFilter.reset();
+        rollFilter.reset();
         Log.d(TAG, "Smoothing state reset");
     }
-    
+
     /**
      * Log current head pose state for debugging
      */
@@ -233,12 +180,12 @@ public class HeadPoseEstimation {
         Log.i(TAG, "=== HEAD POSE STATE ===");
         Log.i(TAG, String.format("Current direction: %s", getHeadDirection()));
         Log.i(TAG, String.format("Facing forward: %b", isFacingForward()));
-        Log.i(TAG, String.format("Yaw ratio: %.3f", currentYawRatio));
+        Log.i(TAG, String.format("Yaw: %.1f, Pitch: %.1f, Roll: %.1f", currentYaw, currentPitch, currentRoll));
         Log.i(TAG, "======================");
     }
-    
+
     /**
-     * Release resources - stub method for compatibility 
+     * Release resources - stub method for compatibility
      */
     public void release() {
         Log.d(TAG, "HeadPoseEstimation resources released");
@@ -0,0 +1,300 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+/**
+ * Allocation-free POSIT (Pose from Orthography and Scaling with ITerations) solver for head pose.
+ *
+ * Fits a 6-point generic 3D face model to MediaPipe landmarks and returns pitch, yaw and roll.
+ * The perspective correction terms are seeded from the landmark {@code z} values MediaPipe
+ * already provides, so the iteration usually converges in 2-4 steps. All working storage is
+ * allocated once per instance; {@link #solve} does not allocate.
+ *
+ * Coordinate frame (camera): x right, y down, z away from the camera. Angles in degrees:
+ * <ul>
+ *   <li>yaw &gt; 0: nose moves towards image left</li>
+ *   <li>pitch &gt; 0: head tilts down</li>
+ *   <li>roll &gt; 0: head rotates clockwise in the image</li>
+ * </ul>
+ *
+ * Not thread-safe; use one instance per processing thread.
+ */
+public final class HeadPoseSolver {
+
+    /** MediaPipe face mesh indices matching {@link #MODEL_POINTS}, reference point first */
+    public static final int[] LANDMARK_INDICES = {
+            1,    // Nose tip
+            152,  // Chin
+            33,   // Eye outer corner, image left
+            263,  // Eye outer corner, image right
+            61,   // Mouth corner, image left
+            291   // Mouth corner, image right
+    };
+
+    /** Generic face model in camera orientation (x right, y down, z away), arbitrary units */
+    private static final double[][] MODEL_POINTS = {
+            {0.0, 0.0, 0.0},
+            {0.0, 330.0, 65.0},
+            {-225.0, -170.0, 135.0},
+            {225.0, -170.0, 135.0},
+            {-150.0, 150.0, 125.0},
+            {150.0, 150.0, 125.0}
+    };
+
+    private static final int POINT_COUNT = LANDMARK_INDICES.length;
+    private static final int MAX_ITERATIONS = 20;
+    private static final double CONVERGENCE_EPSILON = 1e-5;
+
+    // Pseudo-inverse of the model vector matrix, 3 x (POINT_COUNT - 1), constant for the model
+    private static final double[][] MODEL_PSEUDO_INVERSE = computeModelPseudoInverse();
+
+    // Working storage (reused per solve)
+    private final double[] imageX = new double[POINT_COUNT];
+    private final double[] imageY = new double[POINT_COUNT];
+    private final double[] epsilon = new double[POINT_COUNT];
+    private final double[] rotation = new double[9];
+
+    // Results
+    private double pitch;
+    private double yaw;
+    private double roll;
+    private double translationX;
+    private double translationY;
+    private double translationZ;
+    private int lastIterations;
+
+    /**
+     * Solve head pose from packed landmarks
+     *
+     * @param landmarks     packed {@code [x, y, z]} per landmark, x/y in pixels, z in the same scale as x
+     * @param landmarkCount number of landmarks in {@code landmarks}
+     * @param imageWidth    width of the image the landmarks were detected in
+     * @param imageHeight   height of the image the landmarks were detected in
+     * @return true if a pose was computed
+     */
+    public boolean solve(float[] landmarks, int landmarkCount, int imageWidth, int imageHeight) {
+        if (landmarks == null || imageWidth <= 0 || imageHeight <= 0) {
+            return false;
+        }
+        for (int index : LANDMARK_INDICES) {
+            if (index >= landmarkCount || index * 3 + 2 >= landmarks.length) {
+                return false;
+            }
+        }
+
+        // Pinhole camera approximation: focal length ~ image width, principal point at center
+        double focal = imageWidth;
+        double cx = imageWidth * 0.5;
+        double cy = imageHeight * 0.5;
+
+        int reference = LANDMARK_INDICES[0] * 3;
+        double referenceZ = landmarks[reference + 2];
+        for (int i = 0; i < POINT_COUNT; i++) {
+            int base = LANDMARK_INDICES[i] * 3;
+            imageX[i] = landmarks[base] - cx;
+            imageY[i] = landmarks[base + 1] - cy;
+            // Seed perspective correction with MediaPipe relative depth: eps_i ~ (z_i - z_0) / f
+            epsilon[i] = (landmarks[base + 2] - referenceZ) / focal;
+        }
+
+        double scale = 0.0;
+        double ix = 0, iy = 0, iz = 0;
+        double jx = 0, jy = 0, jz = 0;
+        double kx = 0, ky = 0, kz = 0;
+        int iteration = 0;
+        while (iteration < MAX_ITERATIONS) {
+            iteration++;
+
+            // I = B * x', J = B * y' with x'_i = x_i (1 + eps_i) - x_0
+            double ivx = 0, ivy = 0, ivz = 0;
+            double jvx = 0, jvy = 0, jvz = 0;
+            for (int p = 1; p < POINT_COUNT; p++) {
+                double xp = imageX[p] * (1.0 + epsilon[p]) - imageX[0];
+                double yp = imageY[p] * (1.0 + epsilon[p]) - imageY[0];
+                int col = p - 1;
+                ivx += MODEL_PSEUDO_INVERSE[0][col] * xp;
+                ivy += MODEL_PSEUDO_INVERSE[1][col] * xp;
+                ivz += MODEL_PSEUDO_INVERSE[2][col] * xp;
+                jvx += MODEL_PSEUDO_INVERSE[0][col] * yp;
+                jvy += MODEL_PSEUDO_INVERSE[1][col] * yp;
+                jvz += MODEL_PSEUDO_INVERSE[2][col] * yp;
+            }
+
+            double normI = Math.sqrt(ivx * ivx + ivy * ivy + ivz * ivz);
+            double normJ = Math.sqrt(jvx * jvx + jvy * jvy + jvz * jvz);
+            if (normI < 1e-12 || normJ < 1e-12) {
+                return false;
+            }
+            scale = (normI + normJ) * 0.5;
+
+            ix = ivx / normI; iy = ivy / normI; iz = ivz / normI;
+            jx = jvx / normJ; jy = jvy / normJ; jz = jvz / normJ;
+
+            // k = i x j
+            kx = iy * jz - iz * jy;
+            ky = iz * jx - ix * jz;
+            kz = ix * jy - iy * jx;
+            double normK = Math.sqrt(kx * kx + ky * ky + kz * kz);
+            if (normK < 1e-12) {
+                return false;
+            }
+            kx /= normK; ky /= normK; kz /= normK;
+
+            // eps_i = (M0Mi . k) / Tz, with Tz = f / s
+            double tz = focal / scale;
+            double maxDelta = 0.0;
+            for (int p = 1; p < POINT_COUNT; p++) {
+                double[] m = MODEL_POINTS[p];
+                double next = ((m[0] - MODEL_POINTS[0][0]) * kx
+                        + (m[1] - MODEL_POINTS[0][1]) * ky
+                        + (m[2] - MODEL_POINTS[0][2]) * kz) / tz;
+                maxDelta = Math.max(maxDelta, Math.abs(next - epsilon[p]));
+                epsilon[p] = next;
+            }
+            if (maxDelta < CONVERGENCE_EPSILON) {
+                break;
+            }
+        }
+
+        // Orthonormalize: j = k x i
+        jx = ky * iz - kz * iy;
+        jy = kz * ix - kx * iz;
+        jz = kx * iy - ky * ix;
+
+        rotation[0] = ix; rotation[1] = iy; rotation[2] = iz;
+        rotation[3] = jx; rotation[4] = jy; rotation[5] = jz;
+        rotation[6] = kx; rotation[7] = ky; rotation[8] = kz;
+
+        translationX = imageX[0] / scale;
+        translationY = imageY[0] / scale;
+        translationZ = focal / scale;
+        lastIterations = iteration;
+
+        // R = Rz(roll) * Ry(yaw) * Rx(pitch)
+        yaw = Math.toDegrees(Math.asin(clamp(-rotation[6], -1.0, 1.0)));
+        pitch = Math.toDegrees(Math.atan2(rotation[7], rotation[8]));
+        roll = Math.toDegrees(Math.atan2(rotation[3], rotation[0]));
+        return true;
+    }
+
+    /**
+     * Project the model with a given pose, for building synthetic inputs.
+     * Writes packed {@code [x, y, z]} at the MediaPipe indices in {@code out}; z is scaled like x.
+     *
+     * @param distance model-to-camera distance in model units
+     */
+    public static void projectModel(double pitchDeg, double yawDeg, double rollDeg, double distance,
+                                    int imageWidth, int imageHeight, float[] out) {
+        double p = Math.toRadians(pitchDeg);
+        double y = Math.toRadians(yawDeg);
+        double r = Math.toRadians(rollDeg);
+        double cp = Math.cos(p), sp = Math.sin(p);
+        double cyaw = Math.cos(y), syaw = Math.sin(y);
+        double cr = Math.cos(r), sr = Math.sin(r);
+
+        // Rz * Ry * Rx
+        double r00 = cr * cyaw, r01 = cr * syaw * sp - sr * cp, r02 = cr * syaw * cp + sr * sp;
+        double r10 = sr * cyaw, r11 = sr * syaw * sp + cr * cp, r12 = sr * syaw * cp - cr * sp;
+        double r20 = -syaw, r21 = cyaw * sp, r22 = cyaw * cp;
+
+        double focal = imageWidth;
+        for (int i = 0; i < POINT_COUNT; i++) {
+            double[] m = MODEL_POINTS[i];
+            double x = r00 * m[0] + r01 * m[1] + r02 * m[2];
+            double yy = r10 * m[0] + r11 * m[1] + r12 * m[2];
+            double z = r20 * m[0] + r21 * m[1] + r22 * m[2] + distance;
+            int base = LANDMARK_INDICES[i] * 3;
+            out[base] = (float) (focal * x / z + imageWidth * 0.5);
+            out[base + 1] = (float) (focal * yy / z + imageHeight * 0.5);
+            out[base + 2] = (float) (focal * (z - distance) / distance);
+        }
+    }
+
+    private static double[][] computeModelPseudoInverse() {
+        int n = POINT_COUNT - 1;
+        double[][] a = new double[n][3];
+        for (int p = 1; p < POINT_COUNT; p++) {
+            for (int c = 0; c < 3; c++) {
+                a[p - 1][c] = MODEL_POINTS[p][c] - MODEL_POINTS[0][c];
+            }
+        }
+
+        // (A^T A)^-1 A^T
+        double[][] ata = new double[3][3];
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 3; c++) {
+                double sum = 0;
+                for (int k = 0; k < n; k++) {
+                    sum += a[k][r] * a[k][c];
+                }
+                ata[r][c] = sum;
+            }
+        }
+        double[][] inv = invert3x3(ata);
+
+        double[][] b = new double[3][n];
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < n; c++) {
+                double sum = 0;
+                for (int k = 0; k < 3; k++) {
+                    sum += inv[r][k] * a[c][k];
+                }
+                b[r][c] = sum;
+            }
+        }
+        return b;
+    }
+
+    private static double[][] invert3x3(double[][] m) {
+        double det = m[0][0] * (m[1][1] * m[2][2] - m[1][2] * m[2][1])
+                - m[0][1] * (m[1][0] * m[2][2] - m[1][2] * m[2][0])
+                + m[0][2] * (m[1][0] * m[2][1] - m[1][1] * m[2][0]);
+        if (Math.abs(det) < 1e-12) {
+            throw new IllegalStateException("Face model points are coplanar");
+        }
+        double invDet = 1.0 / det;
+        double[][] r = new double[3][3];
+        r[0][0] = (m[1][1] * m[2][2] - m[1][2] * m[2][1]) * invDet;
+        r[0][1] = (m[0][2] * m[2][1] - m[0][1] * m[2][2]) * invDet;
+        r[0][2] = (m[0][1] * m[1][2] - m[0][2] * m[1][1]) * invDet;
+        r[1][0] = (m[1][2] * m[2][0] - m[1][0] * m[2][2]) * invDet;
+        r[1][1] = (m[0][0] * m[2][2] - m[0][2] * m[2][0]) * invDet;
+        r[1][2] = (m[0][2] * m[1][0] - m[0][0] * m[1][2]) * invDet;
+        r[2][0] = (m[1][0] * m[2][1] - m[1][1] * m[2][0]) * invDet;
+        r[2][1] = (m[0][1] * m[2][0] - m[0][0] * m[2][1]) * invDet;
+        r[2][2] = (m[0][0] * m[1][1] - m[0][1] * m[1][0]) * invDet;
+        return r;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    public double getPitch() {
+        return pitch;
+    }
+
+    public double getYaw() {
+        return yaw;
+    }
+
+    public double getRoll() {
+        return roll;
+    }
+
+    /** Translation of the nose tip in model units (camera frame) */
+    public double getTranslationX() {
+        return translationX;
+    }
+
+    public double getTranslationY() {
+        return translationY;
+    }
+
+    public double getTranslationZ() {
+        return translationZ;
+    }
+
+    /** Iterations used by the last successful solve */
+    public int getLastIterations() {
+        return lastIterations;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+/**
+ * Model-free gaze estimate from MediaPipe iris landmarks.
+ *
+ * The face_landmarker.task model returns 478 landmarks; indices 468-477 are the two irises
+ * (468 and 473 are the iris centers). Gaze is the iris center position relative to the eye
+ * corners (horizontal) and the eyelid midpoint (vertical), averaged over both eyes.
+ *
+ * Deterministic, allocation-free and Android-free: used when the iTracker CNN is not loaded
+ * or too slow on the device.
+ */
+public final class LandmarkGazeEstimator {
+
+    /** Landmarks needed: 468 mesh points + 10 iris points */
+    public static final int REQUIRED_LANDMARKS = 478;
+
+    // Eye on the image left: corners 33 (outer) -> 133 (inner), lids 159 / 145, iris center 468
+    private static final int EYE_A_LEFT_CORNER = 33;
+    private static final int EYE_A_RIGHT_CORNER = 133;
+    private static final int EYE_A_TOP_LID = 159;
+    private static final int EYE_A_BOTTOM_LID = 145;
+    private static final int EYE_A_IRIS_CENTER = 468;
+
+    // Eye on the image right: corners 362 (inner) -> 263 (outer), lids 386 / 374, iris center 473
+    private static final int EYE_B_LEFT_CORNER = 362;
+    private static final int EYE_B_RIGHT_CORNER = 263;
+    private static final int EYE_B_TOP_LID = 386;
+    private static final int EYE_B_BOTTOM_LID = 374;
+    private static final int EYE_B_IRIS_CENTER = 473;
+
+    // The iris center travels roughly +-0.3 of the eye width around the middle, map that to +-1
+    private static final float HORIZONTAL_GAIN = 3.0f;
+    private static final float VERTICAL_GAIN = 4.0f;
+
+    private float gazeX;
+    private float gazeY;
+
+    /**
+     * Estimate gaze from packed landmarks
+     *
+     * @param landmarks     packed {@code [x, y, z]} per landmark in image pixels
+     * @param landmarkCount number of landmarks in {@code landmarks}
+     * @return true if iris landmarks were available and a gaze was computed
+     */
+    public boolean estimate(float[] landmarks, int landmarkCount) {
+        if (landmarks == null || landmarkCount < REQUIRED_LANDMARKS
+                || landmarks.length < REQUIRED_LANDMARKS * 3) {
+            return false;
+        }
+
+        float widthA = eyeWidth(landmarks, EYE_A_LEFT_CORNER, EYE_A_RIGHT_CORNER);
+        float widthB = eyeWidth(landmarks, EYE_B_LEFT_CORNER, EYE_B_RIGHT_CORNER);
+        if (widthA <= 0f || widthB <= 0f) {
+            return false;
+        }
+
+        float horizontalA = horizontalRatio(landmarks, EYE_A_LEFT_CORNER, EYE_A_RIGHT_CORNER, EYE_A_IRIS_CENTER);
+        float horizontalB = horizontalRatio(landmarks, EYE_B_LEFT_CORNER, EYE_B_RIGHT_CORNER, EYE_B_IRIS_CENTER);
+        float verticalA = verticalOffset(landmarks, EYE_A_TOP_LID, EYE_A_BOTTOM_LID, EYE_A_IRIS_CENTER) / widthA;
+        float verticalB = verticalOffset(landmarks, EYE_B_TOP_LID, EYE_B_BOTTOM_LID, EYE_B_IRIS_CENTER) / widthB;
+
+        // 0.5 is the eye center; positive x = towards image right, positive y = down
+        gazeX = clamp(((horizontalA + horizontalB) * 0.5f - 0.5f) * 2f * HORIZONTAL_GAIN);
+        gazeY = clamp((verticalA + verticalB) * 0.5f * VERTICAL_GAIN);
+        return true;
+    }
+
+    /**
+     * Position of the iris center along the corner-to-corner axis: 0 at the image-left corner, 1 at the other
+     */
+    private static float horizontalRatio(float[] lm, int leftCorner, int rightCorner, int iris) {
+        float ax = lm[leftCorner * 3], ay = lm[leftCorner * 3 + 1];
+        float dx = lm[rightCorner * 3] - ax, dy = lm[rightCorner * 3 + 1] - ay;
+        float lengthSq = dx * dx + dy * dy;
+        return ((lm[iris * 3] - ax) * dx + (lm[iris * 3 + 1] - ay) * dy) / lengthSq;
+    }
+
+    /**
+     * Vertical offset of the iris center from the eyelid midpoint, in pixels (positive = down)
+     */
+    private static float verticalOffset(float[] lm, int topLid, int bottomLid, int iris) {
+        float lidMidY = (lm[topLid * 3 + 1] + lm[bottomLid * 3 + 1]) * 0.5f;
+        return lm[iris * 3 + 1] - lidMidY;
+    }
+
+    private static float eyeWidth(float[] lm, int a, int b) {
+        float dx = lm[b * 3] - lm[a * 3];
+        float dy = lm[b * 3 + 1] - lm[a * 3 + 1];
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static float clamp(float value) {
+        return Math.max(-1.0f, Math.min(1.0f, value));
+    }
+
+    /**
+     * Horizontal gaze of the last estimate, -1 (image left) to 1 (image right)
+     */
+    public float getGazeX() {
+        return gazeX;
+    }
+
+    /**
+     * Vertical gaze of the last estimate, -1 (up) to 1 (down)
+     */
+    public float getGazeY() {
+        return gazeY;
+    }
+}
@@ -2,12 +2,18 @@ package com.example.flutter_application_1.faceid.data.service;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.PointF;
 import android.graphics.Rect;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.example.flutter_application_1.faceid.util.StageLatencyRecorder;
+
 import com.google.mediapipe.tasks.vision.facelandmarker.FaceLandmarker;
 import com.google.mediapipe.tasks.vision.facelandmarker.FaceLandmarkerResult;
 import com.google.mediapipe.tasks.vision.facelandmarker.FaceLandmarker.FaceLandmarkerOptions;
@@ -21,6 +27,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -42,6 +49,10 @@ import java.util.concurrent.TimeUnit;
  * PRELOADED MODEL: This class is now preloaded during app startup in FaceIdService.
  * 
  * RUNNING MODE: Uses IMAGE mode for processing individual face images (not continuous stream).
+ * 
+ * REGION OF INTEREST: When a face rectangle is given, only an expanded square around it is rendered
+ * into a pooled {@value #ROI_INPUT_SIZE}x{@value #ROI_INPUT_SIZE} bitmap and passed to the landmarker.
+ * Landmarks are mapped back, so all outputs stay in the coordinates of the bitmap passed in.
  */
 public class MediaPipeFaceLandmarkExtractor {
     private static final String TAG = "MediaPipeFaceLandmarkExtractor";
@@ -59,6 +70,33 @@ public class MediaPipeFaceLandmarkExtractor {
     private List<PointF> rightEyePoints = new ArrayList<>();
     private Map<Integer, PointF> faceLandmarks = new HashMap<>();
     private Map<Integer, List<PointF>> faceContours = new HashMap<>();
+
+    // Packed [x, y, z] per landmark for head pose: x/y in pixels, z scaled by image width like x.
+    // Written on the extraction thread and copied out on the enhancer's, so both hold coordsLock:
+    // a reader never sees half of one frame and half of the next, or another frame's image size.
+    public static final int MAX_LANDMARKS = 478; // 468 mesh points + 10 iris points
+    private final Object coordsLock = new Object();
+    private final float[] landmarkCoords = new float[MAX_LANDMARKS * 3];
+    private int landmarkCount = 0;
+    private int lastImageWidth = 0;
+    private int lastImageHeight = 0;
+    
+    // ROI input: square around the face rect, scaled to a fixed size in a reused bitmap.
+    // Only touched on the single executor thread.
+    private static final int ROI_INPUT_SIZE = 256;
+    private static final float ROI_EXPANSION = 1.5f; // Margin around the detector box, the mesh needs forehead and chin
+    private Bitmap roiBitmap;
+    private Canvas roiCanvas;
+    private final Paint roiPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect roiRect = new Rect();
+    private final Rect roiSrcRect = new Rect();
+    private final Rect roiDstRect = new Rect();
+    private volatile long lastExtractionTimeMs = 0;
+    private long loadTimeMs = 0;
+    private long warmupTimeMs = 0;
+    
+    // Offsets into the 14-point eye contour used as EAR points p1..p6
+    private static final int[] EAR_POINT_OFFSETS = {0, 1, 2, 3, 5, 7};
     
     // Eye state tracking
     private float leftEyeOpenProbability = 1.0f;
@@ -85,6 +123,7 @@ public class MediaPipeFaceLandmarkExtractor {
         // Initialize MediaPipe FaceLandmarker with real model
         FaceLandmarker faceLandmarkerInstance = null;
         try {
+            long loadStart = SystemClock.elapsedRealtime();
             // Configure MediaPipe FaceLandmarker options
             BaseOptions baseOptions = BaseOptions.builder()
                     .setModelAssetPath("face_landmarker.task")
@@ -99,7 +138,20 @@ public class MediaPipeFaceLandmarkExtractor {
             
             // Create FaceLandmarker instance
             faceLandmarkerInstance = FaceLandmarker.createFromOptions(context, options);
-            Log.d(TAG, "MediaPipe FaceLandmarker initialized successfully with real model (PRELOADED)");
+            loadTimeMs = SystemClock.elapsedRealtime() - loadStart;
+            
+            // Warm up on a blank ROI-sized input so the first real frame does not pay for graph setup
+            long warmupStart = SystemClock.elapsedRealtime();
+            try {
+                Bitmap warmupBitmap = Bitmap.createBitmap(ROI_INPUT_SIZE, ROI_INPUT_SIZE, Bitmap.Config.ARGB_8888);
+                faceLandmarkerInstance.detect(new BitmapImageBuilder(warmupBitmap).build());
+                warmupBitmap.recycle();
+            } catch (Exception warm) {
+                Log.w(TAG, "Landmarker warm-up ignored: " + warm.getMessage());
+            }
+            warmupTimeMs = SystemClock.elapsedRealtime() - warmupStart;
+            Log.d(TAG, "MediaPipe FaceLandmarker initialized successfully with real model (PRELOADED, load "
+                    + loadTimeMs + "ms, warm-up " + warmupTimeMs + "ms)");
             
         } catch (Exception e) {
             Log.e(TAG, "Failed to initialize MediaPipe FaceLandmarker with real model", e);
@@ -154,38 +206,87 @@ public class MediaPipeFaceLandmarkExtractor {
     /**
      * Convert NormalizedLandmark to PointF
      */
-    private PointF convertNormalizedLandmarkToPointF(NormalizedLandmark landmark, int imageWidth, int imageHeight) {
-        // NormalizedLandmark has x, y, z coordinates in range [0, 1]
-        // Convert to pixel coordinates
-        float pixelX = landmark.x() * imageWidth;
-        float pixelY = landmark.y() * imageHeight;
+    private PointF convertNormalizedLandmarkToPointF(NormalizedLandmark landmark,
+                                                     float originX, float originY, float width, float height) {
+        // NormalizedLandmark has x, y, z coordinates in range [0, 1] of the detector input
+        // Convert to pixel coordinates of the source bitmap
+        float pixelX = originX + landmark.x() * width;
+        float pixelY = originY + landmark.y() * height;
         return new PointF(pixelX, pixelY);
     }
     
     /**
      * Convert List<NormalizedLandmark> to List<PointF>
      */
-    private List<PointF> convertNormalizedLandmarksToPointF(List<NormalizedLandmark> normalizedLandmarks, int imageWidth, int imageHeight) {
-        List<PointF> pointFLandmarks = new ArrayList<>();
+    private List<PointF> convertNormalizedLandmarksToPointF(List<NormalizedLandmark> normalizedLandmarks,
+                                                            float originX, float originY, float width, float height) {
+        List<PointF> pointFLandmarks = new ArrayList<>(normalizedLandmarks.size());
         for (NormalizedLandmark landmark : normalizedLandmarks) {
-            pointFLandmarks.add(convertNormalizedLandmarkToPointF(landmark, imageWidth, imageHeight));
+            pointFLandmarks.add(convertNormalizedLandmarkToPointF(landmark, originX, originY, width, height));
         }
         return pointFLandmarks;
     }
     
+    /**
+     * Square region around the face rect, expanded by {@link #ROI_EXPANSION}. It may extend past the
+     * bitmap; the part outside is left black so the face is never stretched.
+     *
+     * @return false if there is no usable face rect
+     */
+    private boolean computeRoi(Rect faceRect, int imageWidth, int imageHeight) {
+        if (faceRect == null || faceRect.isEmpty()) {
+            return false;
+        }
+        int side = Math.round(Math.max(faceRect.width(), faceRect.height()) * ROI_EXPANSION);
+        int left = faceRect.centerX() - side / 2;
+        int top = faceRect.centerY() - side / 2;
+        roiRect.set(left, top, left + side, top + side);
+        // The ROI must overlap the image to contain anything
+        roiSrcRect.set(roiRect);
+        return roiSrcRect.intersect(0, 0, imageWidth, imageHeight);
+    }
+    
+    /**
+     * Render {@link #roiRect} of the source bitmap into the pooled ROI bitmap
+     */
+    private Bitmap renderRoi(Bitmap source) {
+        if (roiBitmap == null || roiBitmap.isRecycled()) {
+            roiBitmap = Bitmap.createBitmap(ROI_INPUT_SIZE, ROI_INPUT_SIZE, Bitmap.Config.ARGB_8888);
+            roiCanvas = new Canvas(roiBitmap);
+        }
+        float scale = (float) ROI_INPUT_SIZE / roiRect.width();
+        roiDstRect.set(
+                Math.round((roiSrcRect.left - roiRect.left) * scale),
+                Math.round((roiSrcRect.top - roiRect.top) * scale),
+                Math.round((roiSrcRect.right - roiRect.left) * scale),
+                Math.round((roiSrcRect.bottom - roiRect.top) * scale));
+        roiBitmap.eraseColor(Color.BLACK);
+        roiCanvas.drawBitmap(source, roiSrcRect, roiDstRect, roiPaint);
+        return roiBitmap;
+    }
+    
     /**
      * Extract landmarks from a face image using real MediaPipe model
      * 
      * @param faceBitmap The face bitmap
      * @param faceRect The face bounding box
-     * @param callback Callback for extraction results
+     * @param callback Callback for extraction results, run on the main thread
      */
     public void extractLandmarks(Bitmap faceBitmap, Rect faceRect, LandmarkExtractionCallback callback) {
+        extractLandmarks(faceBitmap, faceRect, this::runOnMainThread, callback);
+    }
+
+    /**
+     * Same, with the callback run by callbackExecutor; Runnable::run runs it on the extraction thread,
+     * e.g. for a caller that waits for the result on a background thread
+     */
+    public void extractLandmarks(Bitmap faceBitmap, Rect faceRect, Executor callbackExecutor,
+                                 LandmarkExtractionCallback callback) {
         // Check if executor is still active before executing
         if (!isExecutorActive || executor.isShutdown() || executor.isTerminated()) {
             Log.w(TAG, "Executor is not active, skipping landmark extraction");
             if (callback != null) {
-                runOnMainThread(() -> callback.onLandmarksExtracted(false));
+                callbackExecutor.execute(() -> callback.onLandmarksExtracted(false));
             }
             return;
         }
@@ -195,7 +296,7 @@ public class MediaPipeFaceLandmarkExtractor {
                 // Double-check executor state inside the task
                 if (!isExecutorActive || executor.isShutdown() || executor.isTerminated()) {
                     Log.w(TAG, "Executor became inactive during task execution");
-                    runOnMainThread(() -> callback.onLandmarksExtracted(false));
+                    callbackExecutor.execute(() -> callback.onLandmarksExtracted(false));
                     return;
                 }
                 
@@ -207,42 +308,91 @@ public class MediaPipeFaceLandmarkExtractor {
                     Log.e(TAG, "Then place it in: app/src/main/assets/face_landmarker.task");
                     Log.e(TAG, "Finally, clean and rebuild the project");
                     
-                    runOnMainThread(() -> callback.onLandmarksExtracted(false));
+                    callbackExecutor.execute(() -> callback.onLandmarksExtracted(false));
                     return;
                 }
                 
-                // Convert bitmap to MPImage for MediaPipe processing
-                MPImage mpImage = new BitmapImageBuilder(faceBitmap).build();
+                long startNanos = System.nanoTime();
+                int imageWidth = faceBitmap.getWidth();
+                int imageHeight = faceBitmap.getHeight();
                 
-                // Process image with MediaPipe face landmarker (REAL DATA)
-                FaceLandmarkerResult result = faceLandmarker.detect(mpImage);
+                // Run the landmarker on the face ROI only; the detector input is a fixed-size pooled bitmap
+                float originX = 0f, originY = 0f, inputWidth = imageWidth, inputHeight = imageHeight;
+                FaceLandmarkerResult result = null;
+                if (computeRoi(faceRect, imageWidth, imageHeight)) {
+                    result = faceLandmarker.detect(new BitmapImageBuilder(renderRoi(faceBitmap)).build());
+                    originX = roiRect.left;
+                    originY = roiRect.top;
+                    inputWidth = roiRect.width();
+                    inputHeight = roiRect.height();
+                }
+                
+                // No usable rect, or the face moved out of it: fall back to the full bitmap
+                if (result == null || result.faceLandmarks().isEmpty()) {
+                    MPImage mpImage = new BitmapImageBuilder(faceBitmap).build();
+                    result = faceLandmarker.detect(mpImage);
+                    originX = 0f;
+                    originY = 0f;
+                    inputWidth = imageWidth;
+                    inputHeight = imageHeight;
+                }
                 
                 if (result == null || result.faceLandmarks().isEmpty()) {
+                    StageLatencyRecorder.getInstance().record(StageLatencyRecorder.Stage.LANDMARKS, startNanos, System.nanoTime());
                     Log.w(TAG, "No faces detected in real MediaPipe processing");
-                    runOnMainThread(() -> callback.onLandmarksExtracted(false));
+                    callbackExecutor.execute(() -> callback.onLandmarksExtracted(false));
                     return;
                 }
                 
-                // Get the first detected face and convert to PointF (REAL LANDMARKS)
+                // Get the first detected face and convert to PointF in source bitmap coordinates (REAL LANDMARKS)
                 List<NormalizedLandmark> normalizedLandmarks = result.faceLandmarks().get(0);
-                List<PointF> landmarks = convertNormalizedLandmarksToPointF(normalizedLandmarks, faceBitmap.getWidth(), faceBitmap.getHeight());
+                List<PointF> landmarks = convertNormalizedLandmarksToPointF(normalizedLandmarks,
+                        originX, originY, inputWidth, inputHeight);
+                storeLandmarkCoords(normalizedLandmarks, originX, originY, inputWidth, inputHeight,
+                        imageWidth, imageHeight);
                 
                 // Process real face landmarks
                 processFaceLandmarks(landmarks, faceBitmap);
                 
-                // Extract real eye regions for gaze estimation
-                extractEyeRegions(faceBitmap, landmarks);
+                // Extract real eye regions for gaze estimation, sized relative to the face
+                int faceWidth = faceRect != null && !faceRect.isEmpty() ? faceRect.width() : imageWidth;
+                extractEyeRegions(faceBitmap, landmarks, faceWidth);
                 
-                Log.d(TAG, "Real MediaPipe landmarks extracted successfully. Landmarks: " + landmarks.size());
-                runOnMainThread(() -> callback.onLandmarksExtracted(true));
+                long endNanos = System.nanoTime();
+                StageLatencyRecorder.getInstance().record(StageLatencyRecorder.Stage.LANDMARKS, startNanos, endNanos);
+                lastExtractionTimeMs = (endNanos - startNanos) / 1_000_000L;
+                Log.d(TAG, "Real MediaPipe landmarks extracted successfully. Landmarks: " + landmarks.size()
+                        + ", time: " + lastExtractionTimeMs + "ms");
+                callbackExecutor.execute(() -> callback.onLandmarksExtracted(true));
                 
             } catch (Exception e) {
                 Log.e(TAG, "Error extracting real MediaPipe landmarks", e);
-                runOnMainThread(() -> callback.onLandmarksExtracted(false));
+                callbackExecutor.execute(() -> callback.onLandmarksExtracted(false));
             }
         });
     }
     
+    /**
+     * Keep packed x/y/z coordinates, including MediaPipe's relative depth, for head pose estimation.
+     * The detector input covered [originX, originX + inputWidth] x [originY, originY + inputHeight] of the image.
+     */
+    private void storeLandmarkCoords(List<NormalizedLandmark> normalizedLandmarks,
+                                     float originX, float originY, float inputWidth, float inputHeight,
+                                     int imageWidth, int imageHeight) {
+        int count = Math.min(normalizedLandmarks.size(), MAX_LANDMARKS);
+        synchronized (coordsLock) {
+            for (int i = 0; i < count; i++) {
+                NormalizedLandmark landmark = normalizedLandmarks.get(i);
+                landmarkCoords[i * 3] = originX + landmark.x() * inputWidth;
+                landmarkCoords[i * 3 + 1] = originY + landmark.y() * inputHeight;
+                landmarkCoords[i * 3 + 2] = landmark.z() * inputWidth;
+            }
+            landmarkCount = count;
+            lastImageWidth = imageWidth;
+            lastImageHeight = imageHeight;
+        }
+    }
+    
     /**
      * Process real face landmarks from MediaPipe
      */
@@ -367,7 +517,7 @@ public class MediaPipeFaceLandmarkExtractor {
     /**
      * Extract eye regions for gaze estimation
      */
-    private void extractEyeRegions(Bitmap faceBitmap, List<PointF> landmarks) {
+    private void extractEyeRegions(Bitmap faceBitmap, List<PointF> landmarks, float faceWidth) {
         try {
             // Get eye landmarks
             if (landmarks.size() < 375) {
@@ -389,7 +539,7 @@ public class MediaPipeFaceLandmarkExtractor {
             }
             
             // Calculate eye regions with padding
-            int eyeSize = (int) (faceBitmap.getWidth() * 0.2); // 20% of face width
+            int eyeSize = (int) (faceWidth * 0.2); // 20% of face width
             
             Rect leftEyeRect = new Rect(
                     (int) (leftEyeCenter.x - eyeSize/2),
@@ -470,64 +620,36 @@ public class MediaPipeFaceLandmarkExtractor {
     }
     
     /**
-     * Get the 6 key points for EAR calculation for left eye
+     * Copy the 6 key points for EAR calculation for left eye into a packed array
+     * {@code [x0, y0, ..., x5, y5]} (p1..p6: corner, top left, top right, corner, bottom right, bottom left)
+     *
+     * @param out Destination with at least 12 floats
+     * @return false if eye landmarks are not available
      */
-    public List<PointF> getLeftEyeEARPoints() {
-        if (leftEyePoints.size() < 6) {
-            return new ArrayList<>();
-        }
-        
-        List<PointF> earPoints = new ArrayList<>();
-        
-        // Select 6 key points for EAR calculation
-        if (leftEyePoints.size() >= 8) {
-            // Left corner (0)
-            earPoints.add(leftEyePoints.get(0));
-            // Top left (1)
-            earPoints.add(leftEyePoints.get(1));
-            // Top right (2)
-            earPoints.add(leftEyePoints.get(2));
-            // Right corner (3)
-            earPoints.add(leftEyePoints.get(3));
-            // Bottom right (4)
-            earPoints.add(leftEyePoints.get(5));
-            // Bottom left (5)
-            earPoints.add(leftEyePoints.get(7));
-        } else {
-            earPoints.addAll(leftEyePoints);
-        }
-        
-        return earPoints;
+    public boolean copyLeftEyeEARCoords(float[] out) {
+        return copyEyeEARCoords(leftEyePoints, out);
     }
-    
+
     /**
-     * Get the 6 key points for EAR calculation for right eye
+     * Copy the 6 key points for EAR calculation for right eye into a packed array
+     *
+     * @see #copyLeftEyeEARCoords(float[])
      */
-    public List<PointF> getRightEyeEARPoints() {
-        if (rightEyePoints.size() < 6) {
-            return new ArrayList<>();
+    public boolean copyRightEyeEARCoords(float[] out) {
+        return copyEyeEARCoords(rightEyePoints, out);
+    }
+
+    private static boolean copyEyeEARCoords(List<PointF> eyePoints, float[] out) {
+        if (eyePoints.size() <= EAR_POINT_OFFSETS[EAR_POINT_OFFSETS.length - 1]
+                || out.length < EAR_POINT_OFFSETS.length * 2) {
+            return false;
         }
-        
-        List<PointF> earPoints = new ArrayList<>();
-        
-        if (rightEyePoints.size() >= 8) {
-            // Left corner (0)
-            earPoints.add(rightEyePoints.get(0));
-            // Top left (1)
-            earPoints.add(rightEyePoints.get(1));
-            // Top right (2)
-            earPoints.add(rightEyePoints.get(2));
-            // Right corner (3)
-            earPoints.add(rightEyePoints.get(3));
-            // Bottom right (4)
-            earPoints.add(rightEyePoints.get(5));
-            // Bottom left (5)
-            earPoints.add(rightEyePoints.get(7));
-        } else {
-            earPoints.addAll(rightEyePoints);
+        for (int i = 0; i < EAR_POINT_OFFSETS.length; i++) {
+            PointF point = eyePoints.get(EAR_POINT_OFFSETS[i]);
+            out[2 * i] = point.x;
+            out[2 * i + 1] = point.y;
         }
-        
-        return earPoints;
+        return true;
     }
     
     /**
@@ -590,6 +712,74 @@ public class MediaPipeFaceLandmarkExtractor {
         return landmarks;
     }
     
+    /**
+     * Copy the last landmarks as packed [x, y, z] (x/y in pixels, z scaled like x)
+     *
+     * @param out Destination with room for 3 floats per landmark
+     * @return Number of landmarks copied
+     */
+    public int copyLandmarkCoords(float[] out) {
+        return copyLandmarkCoords(out, null);
+    }
+    
+    /**
+     * Copy the last landmarks and the size of the image they came from, all from the same frame
+     *
+     * @param out       Destination with room for 3 floats per landmark
+     * @param imageSize Receives width and height, or null
+     * @return Number of landmarks copied
+     */
+    public int copyLandmarkCoords(float[] out, int[] imageSize) {
+        synchronized (coordsLock) {
+            int count = Math.min(landmarkCount, out.length / 3);
+            System.arraycopy(landmarkCoords, 0, out, 0, count * 3);
+            if (imageSize != null) {
+                imageSize[0] = lastImageWidth;
+                imageSize[1] = lastImageHeight;
+            }
+            return count;
+        }
+    }
+    
+    /**
+     * Width of the image the last landmarks were extracted from
+     */
+    public int getLastImageWidth() {
+        synchronized (coordsLock) {
+            return lastImageWidth;
+        }
+    }
+    
+    /**
+     * Height of the image the last landmarks were extracted from
+     */
+    public int getLastImageHeight() {
+        synchronized (coordsLock) {
+            return lastImageHeight;
+        }
+    }
+    
+    /**
+     * Time spent creating the landmarker, in milliseconds
+     */
+    public long getLoadTimeMs() {
+        return loadTimeMs;
+    }
+    
+    /**
+     * Time spent on the warm-up inference, in milliseconds
+     */
+    public long getWarmupTimeMs() {
+        return warmupTimeMs;
+    }
+    
+    /**
+     * Wall time of the last successful landmark extraction (ROI render + landmarker), in milliseconds
+     */
+    public long getLastExtractionTimeMs() {
+        return lastExtractionTimeMs;
+    }
+    
     /**
      * Get the last processed face bitmap (for iTracker model)
      */
@@ -654,6 +844,12 @@ public class MediaPipeFaceLandmarkExtractor {
                 }
             }
             
+            if (executor.isTerminated() && roiBitmap != null && !roiBitmap.isRecycled()) {
+                roiBitmap.recycle();
+                roiBitmap = null;
+                roiCanvas = null;
+            }
+            
             Log.d(TAG, "MediaPipe face landmark extractor closed");
         } catch (Exception e) {
             Log.e(TAG, "Error closing MediaPipe face landmark extractor", e);
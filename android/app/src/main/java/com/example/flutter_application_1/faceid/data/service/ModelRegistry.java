@@ -0,0 +1,442 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads Face ID models on first use and unloads idle ones under memory pressure.
+ *
+ * Each model is registered with a loader (construct + wait until warmed up) and an unloader.
+ * Nothing is loaded until a model is preloaded, acquired or leased, so a flow only pays for
+ * the models it touches. Loads go through a {@link RetryScheduler} with {@link RetryPolicy#MODEL_INIT},
+ * so a failed attempt is retried after a timer delay instead of a sleeping load thread.
+ *
+ * Instances are only handed out as a {@link Lease} around one inference: {@link #tryLease(Model)} on
+ * frame paths, {@link #lease(Model, long)} on background threads that can wait. An instance is never
+ * closed while leased: {@link #unloadIdle(long)} skips it and {@link #unloadAll()} retires it, closing
+ * it when the last lease is released. A load still running when unloadAll() is called is abandoned: its
+ * instance is unloaded as soon as it arrives instead of being installed. Holders that want a model to stay loaded across frames (e.g. the
+ * liveness enhancer) {@link #acquire(Model)} it; an acquired model is not dropped by unloadIdle either.
+ */
+public class ModelRegistry {
+    private static final String TAG = "ModelRegistry";
+
+    public enum Model {
+        FACE_DETECTOR,
+        FACE_EMBEDDING,
+        SPOOF_DETECTOR,
+        GAZE_ESTIMATOR,
+        LANDMARK_EXTRACTOR
+    }
+
+    /**
+     * Creates a ready-to-use model instance; runs on a background thread and may block.
+     * Makes a single attempt: the registry retries failed loads.
+     */
+    public interface Loader<T> {
+        T load() throws Exception;
+    }
+
+    /**
+     * Releases a model instance
+     */
+    public interface Unloader<T> {
+        void unload(T instance);
+    }
+
+    /**
+     * Thrown by inference code that needed a model which is still loading or failed to load
+     */
+    public static class ModelUnavailableException extends Exception {
+        private final Model model;
+
+        public ModelUnavailableException(Model model) {
+            super(model + " is not loaded");
+            this.model = model;
+        }
+
+        public Model getModel() {
+            return model;
+        }
+    }
+
+    /**
+     * Use of a loaded instance for one operation; close it when the operation is done (including
+     * asynchronous completion). Closing twice is harmless.
+     */
+    public final class Lease<T> implements AutoCloseable {
+        private final Model model;
+        private final Loaded loaded;
+        private boolean closed;   // Guarded by the registry
+
+        private Lease(Model model, Loaded loaded) {
+            this.model = model;
+            this.loaded = loaded;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get() {
+            return (T) loaded.instance;
+        }
+
+        public Model getModel() {
+            return model;
+        }
+
+        @Override
+        public void close() {
+            releaseLease(this);
+        }
+    }
+
+    /**
+     * One loaded instance and its open leases; retired instances close when their last lease does
+     */
+    private static final class Loaded {
+        final Object instance;
+        int leases;
+        boolean retired;
+
+        Loaded(Object instance) {
+            this.instance = instance;
+        }
+    }
+
+    private static final class Slot {
+        Loader<?> loader;
+        Unloader<Object> unloader;
+        Loaded loaded;
+        boolean loading;
+        boolean failed;          // Sticky until unloadAll(), so a missing asset is not retried every frame
+        CountDownLatch loadDone; // Counted down when the current load finishes
+        int generation;          // Bumped by unloadAll(); a load started in an older generation is discarded
+        int refCount;
+        long lastUsedMs;
+    }
+
+    private final RetryScheduler retryScheduler;
+    private final Map<Model, Slot> slots = new EnumMap<>(Model.class);
+
+    /**
+     * @param retryScheduler Runs and retries loads; models load in parallel if its executor has several threads
+     */
+    public ModelRegistry(RetryScheduler retryScheduler) {
+        this.retryScheduler = retryScheduler;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized <T> void register(Model model, Loader<T> loader, Unloader<T> unloader) {
+        Slot slot = new Slot();
+        slot.loader = loader;
+        slot.unloader = (Unloader<Object>) unloader;
+        slots.put(model, slot);
+    }
+
+    /**
+     * Start loading the given models in the background if they are not loaded yet
+     */
+    public void preload(Collection<Model> models) {
+        for (Model model : models) {
+            preload(model);
+        }
+    }
+
+    /**
+     * Start loading a model in the background if it is not loaded yet
+     */
+    public void preload(Model model) {
+        final Slot slot;
+        final int generation;
+        synchronized (this) {
+            slot = slot(model);
+            if (slot.loaded != null || slot.loading || slot.failed) {
+                return;
+            }
+            slot.loading = true;
+            slot.loadDone = new CountDownLatch(1);
+            generation = slot.generation;
+        }
+        Loader<?> loader = slot.loader;
+        retryScheduler.<Object>submit(RetryPolicy.MODEL_INIT, loader::load)
+                .whenComplete((instance, error) -> onLoaded(model, slot, generation, instance, error));
+    }
+
+    private void onLoaded(Model model, Slot slot, int generation, Object instance, Throwable error) {
+        if (error != null) {
+            Log.e(TAG, "Failed to load " + model, error);
+        }
+
+        CountDownLatch latch;
+        synchronized (this) {
+            if (generation != slot.generation) {
+                latch = null;
+            } else {
+                slot.loaded = instance != null ? new Loaded(instance) : null;
+                slot.failed = instance == null;
+                slot.loading = false;
+                slot.lastUsedMs = SystemClock.elapsedRealtime();
+                latch = slot.loadDone;
+            }
+        }
+        if (latch == null) {
+            // unloadAll() ran while this was loading: nobody may use it, close it right away
+            if (instance != null) {
+                Log.d(TAG, model + " finished loading after unloadAll, discarding it");
+                unload(model, instance, slot.unloader);
+            }
+            return;
+        }
+        latch.countDown();
+        Log.d(TAG, model + (instance != null ? " loaded" : " failed to load"));
+    }
+
+    /**
+     * Lease the loaded instance, or null while it is loading (a load is started if needed) or after it
+     * failed. Never blocks, so frame paths can call it and skip the frame on null.
+     */
+    public <T> Lease<T> tryLease(Model model) {
+        Lease<T> lease;
+        synchronized (this) {
+            Slot slot = slot(model);
+            if (slot.loaded == null) {
+                lease = null;
+            } else {
+                slot.loaded.leases++;
+                slot.lastUsedMs = SystemClock.elapsedRealtime();
+                lease = new Lease<>(model, slot.loaded);
+            }
+        }
+        if (lease == null) {
+            preload(model);
+        }
+        return lease;
+    }
+
+    /**
+     * Lease the instance, waiting up to timeoutMs for it to load. Background threads only.
+     *
+     * @return null if the model did not load in time or failed to load
+     */
+    public <T> Lease<T> lease(Model model, long timeoutMs) throws InterruptedException {
+        preload(model);
+        CountDownLatch latch;
+        synchronized (this) {
+            latch = slot(model).loadDone;
+        }
+        if (latch != null) {
+            latch.await(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        return tryLease(model);
+    }
+
+    private void releaseLease(Lease<?> lease) {
+        Slot slot;
+        synchronized (this) {
+            if (lease.closed) {
+                return;
+            }
+            lease.closed = true;
+            Loaded loaded = lease.loaded;
+            loaded.leases--;
+            slot = slot(lease.model);
+            slot.lastUsedMs = SystemClock.elapsedRealtime();
+            if (!loaded.retired || loaded.leases > 0) {
+                return;
+            }
+        }
+        // Last user of an instance that was unloaded while in use
+        unload(lease.model, lease.loaded.instance, slot.unloader);
+    }
+
+    /**
+     * Load the given models and wait until all of them finished loading (or failed). Background threads only.
+     *
+     * @return true if every model finished within timeoutMs
+     */
+    public boolean awaitAll(Collection<Model> models, long timeoutMs) throws InterruptedException {
+        preload(models);
+        long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+        for (Model model : models) {
+            CountDownLatch latch;
+            synchronized (this) {
+                latch = slot(model).loadDone;
+            }
+            long remaining = deadline - SystemClock.elapsedRealtime();
+            if (latch == null || remaining <= 0 || !latch.await(remaining, TimeUnit.MILLISECONDS)) {
+                return isSettled(models);
+            }
+        }
+        return isSettled(models);
+    }
+
+    /**
+     * True once every given model has finished loading, successfully or not
+     */
+    private synchronized boolean isSettled(Collection<Model> models) {
+        for (Model model : models) {
+            Slot slot = slot(model);
+            if (slot.loaded == null && !slot.failed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * True if every given model is loaded and usable; a failed model does not count
+     */
+    public synchronized boolean isLoaded(Collection<Model> models) {
+        for (Model model : models) {
+            if (slot(model).loaded == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Models among the given ones whose last load failed after all retries. They are not retried
+     * until {@link #resetFailures()} or {@link #unloadAll()}.
+     */
+    public synchronized List<Model> getFailed(Collection<Model> models) {
+        List<Model> failed = new ArrayList<>();
+        for (Model model : models) {
+            if (slot(model).failed) {
+                failed.add(model);
+            }
+        }
+        return failed;
+    }
+
+    public synchronized boolean hasFailed(Model model) {
+        return slot(model).failed;
+    }
+
+    /**
+     * Forget load failures so the next use retries the load (e.g. after the user asks to try again)
+     */
+    public synchronized void resetFailures() {
+        for (Slot slot : slots.values()) {
+            slot.failed = false;
+        }
+    }
+
+    /**
+     * Keep a model loaded until the matching {@link #release(Model)}; starts loading it if needed
+     */
+    public void acquire(Model model) {
+        synchronized (this) {
+            slot(model).refCount++;
+        }
+        preload(model);
+    }
+
+    public synchronized void release(Model model) {
+        Slot slot = slot(model);
+        slot.refCount = Math.max(0, slot.refCount - 1);
+        slot.lastUsedMs = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Unload loaded models that are neither acquired nor leased and were not used for at least minIdleMs
+     *
+     * @return Number of models unloaded
+     */
+    public int unloadIdle(long minIdleMs) {
+        long now = SystemClock.elapsedRealtime();
+        List<Model> models = new ArrayList<>();
+        List<Object> instances = new ArrayList<>();
+        List<Unloader<Object>> unloaders = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<Model, Slot> entry : slots.entrySet()) {
+                Slot slot = entry.getValue();
+                Loaded loaded = slot.loaded;
+                if (loaded != null && loaded.leases == 0 && slot.refCount == 0
+                        && now - slot.lastUsedMs >= minIdleMs) {
+                    models.add(entry.getKey());
+                    instances.add(loaded.instance);
+                    unloaders.add(slot.unloader);
+                    loaded.retired = true;
+                    slot.loaded = null;
+                }
+            }
+        }
+        for (int i = 0; i < models.size(); i++) {
+            unload(models.get(i), instances.get(i), unloaders.get(i));
+        }
+        return models.size();
+    }
+
+    /**
+     * Unload every model regardless of acquire references and forget earlier load failures. For the
+     * owner of the registry when the whole service shuts down; an instance that is leased right now
+     * is closed when its last lease is released, one still loading when its load finishes.
+     */
+    public void unloadAll() {
+        List<Model> models = new ArrayList<>();
+        List<Object> instances = new ArrayList<>();
+        List<Unloader<Object>> unloaders = new ArrayList<>();
+        List<CountDownLatch> abandoned = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<Model, Slot> entry : slots.entrySet()) {
+                Slot slot = entry.getValue();
+                Loaded loaded = slot.loaded;
+                if (loaded != null) {
+                    loaded.retired = true;
+                    if (loaded.leases == 0) {
+                        models.add(entry.getKey());
+                        instances.add(loaded.instance);
+                        unloaders.add(slot.unloader);
+                    } else {
+                        Log.d(TAG, entry.getKey() + " in use by " + loaded.leases + " leases, closing when released");
+                    }
+                }
+                if (slot.loading) {
+                    // Its onLoaded will see the new generation and unload the instance
+                    slot.loading = false;
+                    abandoned.add(slot.loadDone);
+                }
+                slot.generation++;
+                slot.loaded = null;
+                slot.failed = false;
+                slot.refCount = 0;
+            }
+        }
+        // Wake anyone waiting in lease() or awaitAll(); they find nothing loaded
+        for (CountDownLatch latch : abandoned) {
+            latch.countDown();
+        }
+        for (int i = 0; i < models.size(); i++) {
+            unload(models.get(i), instances.get(i), unloaders.get(i));
+        }
+    }
+
+    public synchronized boolean isLoaded(Model model) {
+        return slot(model).loaded != null;
+    }
+
+    private void unload(Model model, Object instance, Unloader<Object> unloader) {
+        try {
+            unloader.unload(instance);
+            Log.d(TAG, model + " unloaded");
+        } catch (Exception e) {
+            Log.w(TAG, "Error unloading " + model, e);
+        }
+    }
+
+    private Slot slot(Model model) {
+        Slot slot = slots.get(model);
+        if (slot == null) {
+            throw new IllegalArgumentException("Model not registered: " + model);
+        }
+        return slot;
+    }
+}
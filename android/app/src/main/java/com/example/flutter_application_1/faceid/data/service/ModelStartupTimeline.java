@@ -0,0 +1,157 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Startup timeline for the Face ID models.
+ *
+ * Records, per model, when loading started relative to service creation, how long the load and
+ * warm-up inference took and when the model was ready, plus the time to the first verdict.
+ * "All ready" means every required model has a successful entry; models loaded on first use outside
+ * the required set are recorded but do not count, and a failed required model holds it back until a
+ * retry records it as ready.
+ * All times are milliseconds on one monotonic clock supplied by the caller; no Android dependencies.
+ */
+public final class ModelStartupTimeline {
+
+    /**
+     * Load / warm-up record for one model
+     */
+    public static final class Entry {
+        private final String modelName;
+        private final long startOffsetMs;
+        private final long loadTimeMs;
+        private final long warmupTimeMs;
+        private final long readyOffsetMs;
+        private final boolean ready;
+
+        Entry(String modelName, long startOffsetMs, long loadTimeMs, long warmupTimeMs,
+              long readyOffsetMs, boolean ready) {
+            this.modelName = modelName;
+            this.startOffsetMs = startOffsetMs;
+            this.loadTimeMs = loadTimeMs;
+            this.warmupTimeMs = warmupTimeMs;
+            this.readyOffsetMs = readyOffsetMs;
+            this.ready = ready;
+        }
+
+        public String getModelName() { return modelName; }
+
+        /** Start of loading, relative to service creation */
+        public long getStartOffsetMs() { return startOffsetMs; }
+
+        public long getLoadTimeMs() { return loadTimeMs; }
+
+        public long getWarmupTimeMs() { return warmupTimeMs; }
+
+        /** Readiness (load + warm-up done), relative to service creation */
+        public long getReadyOffsetMs() { return readyOffsetMs; }
+
+        /** False if the model failed to load or did not become ready in time */
+        public boolean isReady() { return ready; }
+
+        @Override
+        public String toString() {
+            return String.format("%s: start=+%dms load=%dms warmup=%dms ready=+%dms%s",
+                    modelName, startOffsetMs, loadTimeMs, warmupTimeMs, readyOffsetMs, ready ? "" : " (FAILED)");
+        }
+    }
+
+    private final long startTimeMs;
+    private final Set<String> requiredModels;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private long allReadyOffsetMs = -1;
+    private long firstVerdictOffsetMs = -1;
+
+    /**
+     * @param startTimeMs    service creation time
+     * @param requiredModels names of the models that make up "all ready", as passed to recordModel
+     */
+    public ModelStartupTimeline(long startTimeMs, Collection<String> requiredModels) {
+        this.startTimeMs = startTimeMs;
+        this.requiredModels = new LinkedHashSet<>(requiredModels);
+    }
+
+    /**
+     * Record a model that finished loading (or failed); a later record of the same model replaces it
+     *
+     * @return true if this made every required model ready
+     */
+    public synchronized boolean recordModel(String modelName, long loadStartMs, long loadTimeMs,
+                                            long warmupTimeMs, long readyTimeMs, boolean ready) {
+        entries.put(modelName, new Entry(modelName, loadStartMs - startTimeMs, loadTimeMs, warmupTimeMs,
+                readyTimeMs - startTimeMs, ready));
+        if (allReadyOffsetMs < 0 && ready && requiredModels.contains(modelName) && allRequiredReady()) {
+            allReadyOffsetMs = readyTimeMs - startTimeMs;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean allRequiredReady() {
+        for (String name : requiredModels) {
+            Entry entry = entries.get(name);
+            if (entry == null || !entry.ready) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Record the first verdict produced after startup; later calls are ignored
+     */
+    public synchronized void markFirstVerdict(long timeMs) {
+        if (firstVerdictOffsetMs < 0) {
+            firstVerdictOffsetMs = timeMs - startTimeMs;
+        }
+    }
+
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Time from service creation until every required model was ready, or -1 if one is still loading
+     * or failed
+     */
+    public synchronized long getTimeToReadyMs() {
+        return allReadyOffsetMs;
+    }
+
+    /**
+     * Time from service creation to the first verdict, or -1 if none yet
+     */
+    public synchronized long getTimeToFirstVerdictMs() {
+        return firstVerdictOffsetMs;
+    }
+
+    /**
+     * Slowest model to become ready, or null if none recorded
+     */
+    public synchronized Entry getCriticalPath() {
+        Entry slowest = null;
+        for (Entry entry : entries.values()) {
+            if (slowest == null || entry.readyOffsetMs > slowest.readyOffsetMs) {
+                slowest = entry;
+            }
+        }
+        return slowest;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("Model startup timeline (ready=")
+                .append(allReadyOffsetMs).append("ms, first verdict=").append(firstVerdictOffsetMs).append("ms)");
+        for (Entry entry : entries.values()) {
+            sb.append("\n  ").append(entry);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import java.util.Random;
+
+/**
+ * Retry settings for one kind of operation, used with {@link RetryScheduler}.
+ *
+ * Delays grow exponentially from initialDelayMs, are capped at maxDelayMs and get ±jitterFactor of
+ * jitter. Each policy also has a retry budget (a token bucket: a retry costs one token, a success
+ * refunds budgetRefundPerSuccess, up to budgetCapacity) so a failing dependency cannot multiply the
+ * load by maxAttempts, and optionally a circuit breaker that fails calls fast after
+ * breakerFailureThreshold failures in a row. Immutable; the scheduler keeps the state per policy name.
+ *
+ * Backend calls are not retried here: the HTTP client's CircuitBreakerInterceptor, the outbox worker
+ * and the status channel's poll backoff own network failures.
+ */
+public final class RetryPolicy {
+
+    /**
+     * Which failures are worth another attempt
+     */
+    public interface RetryPredicate {
+        boolean shouldRetry(Throwable error);
+    }
+
+    /** Model construction and warm-up: few attempts, slow backoff, no breaker (a failed load is sticky) */
+    public static final RetryPolicy MODEL_INIT = new Builder("model_init")
+            .maxAttempts(4)
+            .initialDelayMs(1000)
+            .maxDelayMs(5000)
+            .jitterFactor(0.1)
+            .build();
+
+    /** Per-frame inference: one quick retry at most, a stale frame is not worth more; a model still loading is not retried */
+    public static final RetryPolicy INFERENCE = new Builder("inference")
+            .maxAttempts(2)
+            .initialDelayMs(50)
+            .maxDelayMs(200)
+            .jitterFactor(0.2)
+            .retryOn(error -> !(error instanceof ModelRegistry.ModelUnavailableException))
+            .build();
+
+    public final String name;
+    public final int maxAttempts;           // Including the first one
+    public final long initialDelayMs;
+    public final double backoffMultiplier;
+    public final long maxDelayMs;
+    public final double jitterFactor;       // Delay varies by ± this fraction
+    public final double budgetCapacity;
+    public final double budgetRefundPerSuccess;
+    public final int breakerFailureThreshold; // 0 = no breaker
+    public final long breakerOpenDurationMs;
+    private final RetryPredicate retryPredicate;
+
+    private RetryPolicy(Builder builder) {
+        this.name = builder.name;
+        this.maxAttempts = builder.maxAttempts;
+        this.initialDelayMs = builder.initialDelayMs;
+        this.backoffMultiplier = builder.backoffMultiplier;
+        this.maxDelayMs = builder.maxDelayMs;
+        this.jitterFactor = builder.jitterFactor;
+        this.budgetCapacity = builder.budgetCapacity;
+        this.budgetRefundPerSuccess = builder.budgetRefundPerSuccess;
+        this.breakerFailureThreshold = builder.breakerFailureThreshold;
+        this.breakerOpenDurationMs = builder.breakerOpenDurationMs;
+        this.retryPredicate = builder.retryPredicate;
+    }
+
+    public boolean shouldRetry(Throwable error) {
+        return retryPredicate.shouldRetry(error);
+    }
+
+    public boolean hasCircuitBreaker() {
+        return breakerFailureThreshold > 0;
+    }
+
+    /**
+     * Delay before the retry that follows the given failed attempt (1-based)
+     */
+    public long delayAfterAttempt(int attempt, Random random) {
+        double delay = initialDelayMs * Math.pow(backoffMultiplier, attempt - 1);
+        delay = Math.min(delay, maxDelayMs);
+        delay += delay * jitterFactor * (2 * random.nextDouble() - 1);
+        return Math.max(0, Math.round(delay));
+    }
+
+    /**
+     * Builder for creating RetryPolicy with custom configuration
+     */
+    public static class Builder {
+        private final String name;
+        private int maxAttempts = 3;
+        private long initialDelayMs = 1000;
+        private double backoffMultiplier = 2.0;
+        private long maxDelayMs = 30000;
+        private double jitterFactor = 0.1;
+        private double budgetCapacity = 10;
+        private double budgetRefundPerSuccess = 0.1;
+        private int breakerFailureThreshold = 0;
+        private long breakerOpenDurationMs = 0;
+        private RetryPredicate retryPredicate = error -> error instanceof Exception;
+
+        /**
+         * @param name Key of the policy's budget and breaker in a scheduler
+         */
+        public Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder initialDelayMs(long initialDelayMs) {
+            this.initialDelayMs = initialDelayMs;
+            return this;
+        }
+
+        public Builder backoffMultiplier(double backoffMultiplier) {
+            this.backoffMultiplier = backoffMultiplier;
+            return this;
+        }
+
+        public Builder maxDelayMs(long maxDelayMs) {
+            this.maxDelayMs = maxDelayMs;
+            return this;
+        }
+
+        public Builder jitterFactor(double jitterFactor) {
+            this.jitterFactor = jitterFactor;
+            return this;
+        }
+
+        public Builder retryBudget(double capacity, double refundPerSuccess) {
+            this.budgetCapacity = capacity;
+            this.budgetRefundPerSuccess = refundPerSuccess;
+            return this;
+        }
+
+        public Builder circuitBreaker(int failureThreshold, long openDurationMs) {
+            this.breakerFailureThreshold = failureThreshold;
+            this.breakerOpenDurationMs = openDurationMs;
+            return this;
+        }
+
+        public Builder retryOn(RetryPredicate retryPredicate) {
+            this.retryPredicate = retryPredicate;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            }
+            return new RetryPolicy(this);
+        }
+    }
+}
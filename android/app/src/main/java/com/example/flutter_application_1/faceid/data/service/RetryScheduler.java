@@ -0,0 +1,297 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.flutter_application_1.faceid.util.CircuitBreaker;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retry engine for model loading, inference and backend calls.
+ *
+ * An operation is submitted with a {@link RetryPolicy} and returns a {@link CompletableFuture}.
+ * Attempts run on the given executor; waits between attempts are timer callbacks, so no thread ever
+ * sleeps and a retrying operation holds no pool thread while it waits. Per policy name the scheduler
+ * keeps a retry budget and, if the policy has one, a {@link CircuitBreaker}: with the circuit open an
+ * operation fails at once with {@link Reason#CIRCUIT_OPEN}.
+ *
+ * Time comes from a {@link Clock} and delays go through a {@link Timer}, so a fake clock and timer
+ * with a direct executor make every schedule deterministic. The owner calls {@link #shutdown()} when
+ * done; it stops the scheduler's own timer thread and fails operations still waiting to retry.
+ */
+public class RetryScheduler {
+    private static final String TAG = "RetryScheduler";
+
+    public interface Clock {
+        long nowMs();
+    }
+
+    /**
+     * Runs a task after a delay
+     */
+    public interface Timer {
+        void schedule(Runnable task, long delayMs);
+    }
+
+    /**
+     * One blocking attempt, run on the scheduler's executor
+     */
+    public interface Attempt<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * One non-blocking attempt: starts the work and returns its future
+     */
+    public interface AsyncAttempt<T> {
+        CompletableFuture<T> start();
+    }
+
+    public enum Reason {
+        EXHAUSTED,        // Every attempt failed
+        NOT_RETRYABLE,    // The policy does not retry this failure
+        BUDGET_EXHAUSTED, // The policy's retry budget is spent
+        CIRCUIT_OPEN,     // Failed fast, no attempt made
+        SHUT_DOWN         // The scheduler was shut down before the next attempt
+    }
+
+    /**
+     * Failure of a retried operation; the cause is the last attempt's error, if any
+     */
+    public static class RetryException extends Exception {
+        private final Reason reason;
+        private final int attempts;
+
+        public RetryException(String message, Reason reason, int attempts, Throwable cause) {
+            super(message, cause);
+            this.reason = reason;
+            this.attempts = attempts;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+    }
+
+    /**
+     * Retry budget and breaker shared by every operation of one policy
+     */
+    private static final class PolicyState {
+        final CircuitBreaker breaker;
+        double tokens;
+
+        PolicyState(RetryPolicy policy) {
+            this.breaker = policy.hasCircuitBreaker()
+                    ? new CircuitBreaker(policy.breakerFailureThreshold, policy.breakerOpenDurationMs)
+                    : null;
+            this.tokens = policy.budgetCapacity;
+        }
+
+        synchronized boolean withdrawRetry() {
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized void refund(RetryPolicy policy) {
+            tokens = Math.min(policy.budgetCapacity, tokens + policy.budgetRefundPerSuccess);
+        }
+    }
+
+    private final Executor executor;
+    private final Timer timer;
+    private final Clock clock;
+    private final Random random;
+    private final ConcurrentHashMap<String, PolicyState> states = new ConcurrentHashMap<>();
+    // Timer thread created by this scheduler, null when the timer was passed in
+    private final ScheduledExecutorService ownTimer;
+    // Retries handed to the timer and not yet run; shutdown runs them at once so they fail
+    private final Set<Runnable> waiting = ConcurrentHashMap.newKeySet();
+    private volatile boolean shutDown = false;
+
+    /**
+     * Attempts run on the executor; delays on a single timer thread of its own, stopped by {@link #shutdown()}
+     */
+    public RetryScheduler(Executor executor) {
+        this(executor, Executors.newSingleThreadScheduledExecutor());
+    }
+
+    private RetryScheduler(Executor executor, ScheduledExecutorService ownTimer) {
+        this(executor, schedulerTimer(ownTimer), SystemClock::elapsedRealtime, new Random(), ownTimer);
+    }
+
+    public RetryScheduler(Executor executor, Timer timer, Clock clock, Random random) {
+        this(executor, timer, clock, random, null);
+    }
+
+    private RetryScheduler(Executor executor, Timer timer, Clock clock, Random random, ScheduledExecutorService ownTimer) {
+        this.executor = executor;
+        this.timer = timer;
+        this.clock = clock;
+        this.random = random;
+        this.ownTimer = ownTimer;
+    }
+
+    public static Timer schedulerTimer(ScheduledExecutorService scheduler) {
+        return (task, delayMs) -> scheduler.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run a blocking operation on the executor, retrying per policy
+     */
+    public <T> CompletableFuture<T> submit(RetryPolicy policy, Attempt<T> attempt) {
+        return submitAsync(policy, () -> {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            executor.execute(() -> {
+                try {
+                    future.complete(attempt.run());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+            return future;
+        });
+    }
+
+    /**
+     * Run an operation that is already asynchronous (e.g. an enqueued HTTP call), retrying per policy
+     */
+    public <T> CompletableFuture<T> submitAsync(RetryPolicy policy, AsyncAttempt<T> attempt) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        runAttempt(policy, stateOf(policy), attempt, result, 1);
+        return result;
+    }
+
+    /**
+     * Stop retrying: operations waiting for their next attempt fail with {@link Reason#SHUT_DOWN}, later
+     * submissions fail at once, and the scheduler's own timer thread ends. Attempts already running
+     * finish normally. The executor belongs to the caller and is left alone.
+     */
+    public void shutdown() {
+        shutDown = true;
+        for (Runnable retry : waiting) {
+            retry.run();
+        }
+        if (ownTimer != null) {
+            ownTimer.shutdownNow();
+        }
+    }
+
+    public boolean isShutdown() {
+        return shutDown;
+    }
+
+    /**
+     * Breaker state of a policy; CLOSED for policies without a breaker
+     */
+    public CircuitBreaker.State getCircuitState(RetryPolicy policy) {
+        CircuitBreaker breaker = stateOf(policy).breaker;
+        return breaker != null ? breaker.getState(clock.nowMs()) : CircuitBreaker.State.CLOSED;
+    }
+
+    private PolicyState stateOf(RetryPolicy policy) {
+        return states.computeIfAbsent(policy.name, name -> new PolicyState(policy));
+    }
+
+    private <T> void runAttempt(RetryPolicy policy, PolicyState state, AsyncAttempt<T> attempt,
+                                CompletableFuture<T> result, int attemptNumber) {
+        if (result.isDone()) {
+            // Cancelled by the caller while waiting
+            return;
+        }
+        if (shutDown) {
+            result.completeExceptionally(new RetryException(policy.name + ": scheduler shut down",
+                    Reason.SHUT_DOWN, attemptNumber - 1, null));
+            return;
+        }
+        if (state.breaker != null && !state.breaker.tryAcquire(clock.nowMs())) {
+            result.completeExceptionally(new RetryException(policy.name + ": circuit open",
+                    Reason.CIRCUIT_OPEN, attemptNumber - 1, null));
+            return;
+        }
+
+        CompletableFuture<T> future;
+        try {
+            future = attempt.start();
+        } catch (Throwable t) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(t);
+        }
+
+        future.whenComplete((value, error) -> {
+            if (error == null) {
+                if (state.breaker != null) {
+                    state.breaker.onSuccess();
+                }
+                state.refund(policy);
+                result.complete(value);
+                return;
+            }
+
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (state.breaker != null) {
+                state.breaker.onFailure(clock.nowMs());
+            }
+            Log.w(TAG, "⚠️ " + policy.name + " attempt " + attemptNumber + "/" + policy.maxAttempts
+                    + " failed: " + cause.getMessage());
+
+            if (!policy.shouldRetry(cause)) {
+                result.completeExceptionally(new RetryException(policy.name + ": not retryable",
+                        Reason.NOT_RETRYABLE, attemptNumber, cause));
+                return;
+            }
+            if (attemptNumber >= policy.maxAttempts) {
+                result.completeExceptionally(new RetryException(policy.name + ": failed after "
+                        + attemptNumber + " attempts", Reason.EXHAUSTED, attemptNumber, cause));
+                return;
+            }
+            if (!state.withdrawRetry()) {
+                result.completeExceptionally(new RetryException(policy.name + ": retry budget exhausted",
+                        Reason.BUDGET_EXHAUSTED, attemptNumber, cause));
+                return;
+            }
+
+            long delay = policy.delayAfterAttempt(attemptNumber, random);
+            Log.d(TAG, "⏰ " + policy.name + " retry in " + delay + "ms");
+            Runnable retry = new Runnable() {
+                @Override
+                public void run() {
+                    // Once: from the timer or from shutdown, whichever comes first
+                    if (waiting.remove(this)) {
+                        runAttempt(policy, state, attempt, result, attemptNumber + 1);
+                    }
+                }
+            };
+            waiting.add(retry);
+            try {
+                timer.schedule(retry, delay);
+            } catch (RejectedExecutionException e) {
+                // The timer is gone: there is no way to wait out the delay
+                waiting.remove(retry);
+                result.completeExceptionally(new RetryException(policy.name + ": timer shut down",
+                        Reason.SHUT_DOWN, attemptNumber, cause));
+                return;
+            }
+            if (shutDown) {
+                // Shut down while this retry was being scheduled
+                retry.run();
+            }
+        });
+    }
+}
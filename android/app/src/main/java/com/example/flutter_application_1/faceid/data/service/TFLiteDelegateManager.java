@@ -0,0 +1,225 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.flutter_application_1.faceid.util.InterpreterAutotuner;
+import com.example.flutter_application_1.faceid.util.InterpreterOptionsFactory;
+
+import org.tensorflow.lite.Delegate;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.InterpreterApi;
+import org.tensorflow.lite.gpu.CompatibilityList;
+import org.tensorflow.lite.gpu.GpuDelegate;
+import org.tensorflow.lite.nnapi.NnApiDelegate;
+
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Owns every TensorFlow Lite accelerator delegate (GPU, NNAPI) used by the Face ID models.
+ *
+ * A delegate must not be shared between interpreters, so each interpreter gets its own through a
+ * {@link Handle}. Closing the handle closes the interpreter before its delegate, and the manager
+ * counts live delegates per backend so leaks across service restarts show up in the logs.
+ * When a delegate rejects a model's ops the model falls back to the CPU, and the rejection is
+ * remembered so later loads of that model skip the accelerator.
+ *
+ * The native objects come from a {@link Factory}; the app uses TFLite, JVM tests pass fakes so the
+ * lifecycle logic runs without native code.
+ */
+public final class TFLiteDelegateManager {
+    private static final String TAG = "TFLiteDelegateManager";
+
+    private static TFLiteDelegateManager instance;
+
+    /**
+     * Builds delegates and interpreters. Either call may throw if the backend cannot run the model.
+     */
+    public interface Factory {
+        Delegate createDelegate(InterpreterAutotuner.Backend backend);
+
+        /**
+         * @param delegate Accelerator to attach, or null for the CPU
+         */
+        InterpreterApi createInterpreter(ByteBuffer model, InterpreterAutotuner.Config config,
+                                         @Nullable Delegate delegate);
+    }
+
+    private final Factory factory;
+    private final Map<InterpreterAutotuner.Backend, Integer> liveDelegates =
+            new EnumMap<>(InterpreterAutotuner.Backend.class);
+    private final Set<String> rejected = new HashSet<>();
+    private int openHandles = 0;
+
+    /**
+     * An interpreter together with the delegate it was built with
+     */
+    public final class Handle implements AutoCloseable {
+        private final String modelName;
+        private final InterpreterApi interpreter;
+        private final Delegate delegate;
+        private final InterpreterAutotuner.Backend backend;
+        private boolean closed = false;
+
+        private Handle(String modelName, InterpreterApi interpreter, Delegate delegate,
+                       InterpreterAutotuner.Backend backend) {
+            this.modelName = modelName;
+            this.interpreter = interpreter;
+            this.delegate = delegate;
+            this.backend = backend;
+        }
+
+        /**
+         * The interpreter; always an {@link Interpreter} with the default factory
+         */
+        public Interpreter getInterpreter() {
+            return (Interpreter) interpreter;
+        }
+
+        /**
+         * Backend actually in use; CPU if the requested accelerator rejected the model
+         */
+        public InterpreterAutotuner.Backend getBackend() {
+            return backend;
+        }
+
+        /**
+         * Close the interpreter, then release its delegate. Safe to call more than once.
+         */
+        @Override
+        public void close() {
+            synchronized (TFLiteDelegateManager.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                openHandles--;
+            }
+            interpreter.close();
+            if (delegate != null) {
+                releaseDelegate(backend, delegate);
+            }
+            Log.d(TAG, modelName + " interpreter closed (" + backend + ")");
+        }
+    }
+
+    TFLiteDelegateManager(Factory factory) {
+        this.factory = factory;
+    }
+
+    public static synchronized TFLiteDelegateManager getInstance() {
+        if (instance == null) {
+            instance = new TFLiteDelegateManager(new TfLiteFactory());
+        }
+        return instance;
+    }
+
+    /**
+     * Create an interpreter for the given configuration. If the accelerator cannot run this model the
+     * interpreter is built on the CPU with the same thread / XNNPACK settings instead.
+     *
+     * @param modelName Stable model identifier, used to remember per-model rejections
+     */
+    public Handle createInterpreter(String modelName, ByteBuffer model, InterpreterAutotuner.Config config) {
+        InterpreterAutotuner.Backend backend = config.backend;
+        if (backend != InterpreterAutotuner.Backend.CPU && !isRejected(modelName, backend)) {
+            Delegate delegate = null;
+            try {
+                delegate = factory.createDelegate(backend);
+                InterpreterApi interpreter = factory.createInterpreter(model, config, delegate);
+                return register(new Handle(modelName, interpreter, delegate, backend));
+            } catch (Throwable t) {
+                // Typically the delegate refusing one of the model's ops
+                if (delegate != null) {
+                    closeDelegate(delegate);
+                }
+                synchronized (this) {
+                    rejected.add(rejectionKey(modelName, backend));
+                }
+                Log.w(TAG, modelName + ": " + backend + " delegate rejected the model, using CPU: " + t.getMessage());
+            }
+        }
+        InterpreterApi interpreter = factory.createInterpreter(model, config, null);
+        return register(new Handle(modelName, interpreter, null, InterpreterAutotuner.Backend.CPU));
+    }
+
+    public synchronized boolean isRejected(String modelName, InterpreterAutotuner.Backend backend) {
+        return rejected.contains(rejectionKey(modelName, backend));
+    }
+
+    /**
+     * Number of delegates of a backend currently attached to open interpreters
+     */
+    public synchronized int getLiveDelegateCount(InterpreterAutotuner.Backend backend) {
+        Integer count = liveDelegates.get(backend);
+        return count != null ? count : 0;
+    }
+
+    public synchronized int getOpenHandleCount() {
+        return openHandles;
+    }
+
+    private synchronized Handle register(Handle handle) {
+        openHandles++;
+        if (handle.delegate != null) {
+            liveDelegates.put(handle.backend, getLiveDelegateCount(handle.backend) + 1);
+        }
+        return handle;
+    }
+
+    private void releaseDelegate(InterpreterAutotuner.Backend backend, Delegate delegate) {
+        synchronized (this) {
+            liveDelegates.put(backend, Math.max(0, getLiveDelegateCount(backend) - 1));
+        }
+        closeDelegate(delegate);
+    }
+
+    /**
+     * The real TFLite objects
+     */
+    private static final class TfLiteFactory implements Factory {
+        @Override
+        public Delegate createDelegate(InterpreterAutotuner.Backend backend) {
+            switch (backend) {
+                case GPU:
+                    CompatibilityList compatList = new CompatibilityList();
+                    try {
+                        return new GpuDelegate(compatList.getBestOptionsForThisDevice());
+                    } finally {
+                        compatList.close();
+                    }
+                case NNAPI:
+                    return new NnApiDelegate();
+                default:
+                    throw new IllegalArgumentException("No delegate for " + backend);
+            }
+        }
+
+        @Override
+        public InterpreterApi createInterpreter(ByteBuffer model, InterpreterAutotuner.Config config,
+                                                @Nullable Delegate delegate) {
+            Interpreter.Options options = InterpreterOptionsFactory.createOptions(config);
+            if (delegate != null) {
+                options.addDelegate(delegate);
+            }
+            return new Interpreter(model, options);
+        }
+    }
+
+    private static void closeDelegate(Delegate delegate) {
+        try {
+            delegate.close();
+        } catch (Exception e) {
+            Log.w(TAG, "Error closing delegate", e);
+        }
+    }
+
+    private static String rejectionKey(String modelName, InterpreterAutotuner.Backend backend) {
+        return modelName + "@" + backend.name();
+    }
+}
@@ -3,10 +3,8 @@ package com.example.flutter_application_1.faceid.data.service;
 import android.graphics.Rect;
 import android.util.Log;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Queue;
+import com.example.flutter_application_1.faceid.util.FloatRingBuffer;
+import com.example.flutter_application_1.faceid.util.SlidingWindowStats;
 
 /**
  * Enhanced temporal variance analyzer for improved liveness detection.
@@ -24,26 +22,21 @@ public class TemporalVarianceAnalyzer {
     
     // Frame history for temporal analysis - increased for better statistical significance
     private static final int DEFAULT_FRAME_HISTORY_SIZE = 12;
-    private final Queue<FrameData> frameHistory;
-    private final int maxFrameHistorySize;
-
-    /**
-     * Class to track temporal data for analysis
-     */
-    public static class FrameData {
-        final float[] modelResults;
-        final Rect faceRect;
-        final long timestamp;
-        final float confidence;
-        
-        public FrameData(float[] modelResults, Rect faceRect, float confidence) {
-            this.modelResults = modelResults != null ? modelResults.clone() : null;
-            this.faceRect = new Rect(faceRect);
-            this.timestamp = System.currentTimeMillis();
-            this.confidence = confidence;
-        }
-    }
+    // Real/spoof margin below which a classification change is treated as a minor fluctuation
+    private static final float FLIP_MIN_MARGIN = 0.15f;
     
+    // Per-frame values in fixed-size windows; statistics are updated in O(1) as frames arrive
+    private final SlidingWindowStats centerXStats;
+    private final SlidingWindowStats centerYStats;
+    private final SlidingWindowStats widthStats;
+    private final SlidingWindowStats heightStats;
+    private final SlidingWindowStats confidenceStats;
+    // Classification history: real-minus-spoof margin, whether the frame had model results, and
+    // whether it flipped (significantly) against the previous frame
+    private final FloatRingBuffer classMargins;
+    private final FloatRingBuffer hasModelResults;
+    private final FloatRingBuffer flips;
+
     /**
      * Result of temporal variance analysis
      */
@@ -96,195 +89,131 @@ public class TemporalVarianceAnalyzer {
      * Create a temporal variance analyzer with custom frame history size
      */
     public TemporalVarianceAnalyzer(int frameHistorySize) {
-        this.frameHistory = new LinkedList<>();
-        this.maxFrameHistorySize = frameHistorySize;
+        this.centerXStats = new SlidingWindowStats(frameHistorySize);
+        this.centerYStats = new SlidingWindowStats(frameHistorySize);
+        this.widthStats = new SlidingWindowStats(frameHistorySize);
+        this.heightStats = new SlidingWindowStats(frameHistorySize);
+        this.confidenceStats = new SlidingWindowStats(frameHistorySize);
+        this.classMargins = new FloatRingBuffer(frameHistorySize);
+        this.hasModelResults = new FloatRingBuffer(frameHistorySize);
+        this.flips = new FloatRingBuffer(frameHistorySize);
     }
     
     /**
      * Add a new frame to history
      */
     public void addFrame(float[] modelResults, Rect faceRect, float confidence) {
-        FrameData currentFrame = new FrameData(modelResults, faceRect, confidence);
-        frameHistory.add(currentFrame);
-        if (frameHistory.size() > maxFrameHistorySize) {
-            frameHistory.poll();
+        centerXStats.add(faceRect.exactCenterX());
+        centerYStats.add(faceRect.exactCenterY());
+        widthStats.add(faceRect.width());
+        heightStats.add(faceRect.height());
+        confidenceStats.add(confidence);
+        
+        // Assuming index 1 is real probability, find max of 0 and 2 for spoof
+        boolean hasResults = modelResults != null && modelResults.length >= 3;
+        float margin = hasResults ? modelResults[1] - Math.max(modelResults[0], modelResults[2]) : 0f;
+        boolean flipped = false;
+        if (hasResults && hasModelResults.getLast(0f) > 0f) {
+            // Check for flip with significant margin (to filter minor fluctuations)
+            float prevMargin = classMargins.getLast(0f);
+            flipped = (prevMargin > 0f) != (margin > 0f)
+                    && Math.abs(prevMargin) > FLIP_MIN_MARGIN
+                    && Math.abs(margin) > FLIP_MIN_MARGIN;
         }
+        classMargins.add(margin);
+        hasModelResults.add(hasResults ? 1f : 0f);
+        flips.add(flipped ? 1f : 0f);
     }
     
     /**
      * Clear frame history
      */
     public void clearHistory() {
-        frameHistory.clear();
+        centerXStats.clear();
+        centerYStats.clear();
+        widthStats.clear();
+        heightStats.clear();
+        confidenceStats.clear();
+        classMargins.clear();
+        hasModelResults.clear();
+        flips.clear();
     }
     
     /**
      * Get current frame history size
      */
     public int getHistorySize() {
-        return frameHistory.size();
+        return confidenceStats.size();
     }
     
     /**
      * Check if we have enough history for analysis
      */
     public boolean hasEnoughHistory(int minFrames) {
-        return frameHistory.size() >= minFrames;
+        return getHistorySize() >= minFrames;
     }
     
     /**
      * Calculate position variance across frames
      */
     public float calculatePositionVariance() {
-        if (frameHistory.size() < 2) {
+        if (getHistorySize() < 2) {
             return 0.01f; // Default value if not enough data
         }
         
-        float sumX = 0;
-        float sumY = 0;
-        float sumSqX = 0;
-        float sumSqY = 0;
-        int count = 0;
-        
-        for (FrameData frame : frameHistory) {
-            float centerX = frame.faceRect.exactCenterX();
-            float centerY = frame.faceRect.exactCenterY();
-            
-            sumX += centerX;
-            sumY += centerY;
-            sumSqX += centerX * centerX;
-            sumSqY += centerY * centerY;
-            count++;
-        }
-        
-        float meanX = sumX / count;
-        float meanY = sumY / count;
-        float varianceX = (sumSqX / count) - (meanX * meanX);
-        float varianceY = (sumSqY / count) - (meanY * meanY);
-        
         // Normalize by face size
-        FrameData lastFrame = getLastFrame();
-        if (lastFrame != null) {
-            float faceSize = Math.max(lastFrame.faceRect.width(), lastFrame.faceRect.height());
-            varianceX /= (faceSize * faceSize);
-            varianceY /= (faceSize * faceSize);
-        }
+        float faceSize = Math.max(widthStats.getLast(0f), heightStats.getLast(0f));
+        double faceSizeSq = (double) faceSize * faceSize;
+        double varianceX = centerXStats.getVariance() / faceSizeSq;
+        double varianceY = centerYStats.getVariance() / faceSizeSq;
         
-        return (varianceX + varianceY) / 2;
+        return (float) ((varianceX + varianceY) / 2);
     }
     
     /**
      * Calculate size variance across frames
      */
     public float calculateSizeVariance() {
-        if (frameHistory.size() < 2) {
+        if (getHistorySize() < 2) {
             return 0.005f; // Default value if not enough data
         }
         
-        float sumW = 0;
-        float sumH = 0;
-        float sumSqW = 0;
-        float sumSqH = 0;
-        int count = 0;
-        
-        for (FrameData frame : frameHistory) {
-            float width = frame.faceRect.width();
-            float height = frame.faceRect.height();
-            
-            sumW += width;
-            sumH += height;
-            sumSqW += width * width;
-            sumSqH += height * height;
-            count++;
-        }
-        
-        float meanW = sumW / count;
-        float meanH = sumH / count;
-        float varianceW = (sumSqW / count) - (meanW * meanW);
-        float varianceH = (sumSqH / count) - (meanH * meanH);
-        
         // Normalize by face size
-        FrameData lastFrame = getLastFrame();
-        if (lastFrame != null) {
-            float faceWidth = lastFrame.faceRect.width();
-            float faceHeight = lastFrame.faceRect.height();
-            varianceW /= (faceWidth * faceWidth);
-            varianceH /= (faceHeight * faceHeight);
-        }
+        float faceWidth = widthStats.getLast(0f);
+        float faceHeight = heightStats.getLast(0f);
+        double varianceW = widthStats.getVariance() / ((double) faceWidth * faceWidth);
+        double varianceH = heightStats.getVariance() / ((double) faceHeight * faceHeight);
         
-        return (varianceW + varianceH) / 2;
+        return (float) ((varianceW + varianceH) / 2);
     }
     
     /**
      * Calculate confidence variance across frames
      */
     public float calculateConfidenceVariance() {
-        if (frameHistory.size() < 2) {
+        if (getHistorySize() < 2) {
             return 0.01f; // Default value if not enough data
         }
         
-        float sum = 0;
-        float sumSq = 0;
-        int count = 0;
-        
-        for (FrameData frame : frameHistory) {
-            sum += frame.confidence;
-            sumSq += frame.confidence * frame.confidence;
-            count++;
-        }
-        
-        float mean = sum / count;
-        float variance = (sumSq / count) - (mean * mean);
-        
-        return variance;
+        return (float) confidenceStats.getVariance();
     }
     
     /**
      * Check for abnormal classification patterns (like rapid flips between real/spoof)
      */
     public boolean checkAbnormalPattern() {
-        if (frameHistory.size() < 4) {
+        if (getHistorySize() < 4) {
             return false; // Not enough data
         }
         
-        // Convert queue to list for easier processing
-        List<FrameData> frames = new ArrayList<>(frameHistory);
-        
-        // Count classification flips (real->spoof->real) - more sophisticated analysis
-        int classificationFlips = 0;
-        boolean lastWasReal = false;
-        boolean currentIsReal = false;
-        
         // We need model results for this analysis
-        if (frames.get(0).modelResults == null) {
+        if (hasModelResults.get(0) == 0f) {
             return false;
         }
         
-        for (int i = 1; i < frames.size(); i++) {
-            FrameData prevFrame = frames.get(i-1);
-            FrameData currFrame = frames.get(i);
-            
-            // Skip if model results missing
-            if (prevFrame.modelResults == null || currFrame.modelResults == null) {
-                continue;
-            }
-            
-            // Assuming index 1 is real probability, find max of 0 and 2 for spoof
-            float prevReal = prevFrame.modelResults[1];
-            float prevSpoof = Math.max(prevFrame.modelResults[0], prevFrame.modelResults[2]);
-            float currReal = currFrame.modelResults[1];
-            float currSpoof = Math.max(currFrame.modelResults[0], currFrame.modelResults[2]);
-            
-            lastWasReal = prevReal > prevSpoof;
-            currentIsReal = currReal > currSpoof;
-            
-            // Check for flip with significant margin (to filter minor fluctuations)
-            if (lastWasReal != currentIsReal && 
-                Math.abs(prevReal - prevSpoof) > 0.15f && 
-                Math.abs(currReal - currSpoof) > 0.15f) {
-                classificationFlips++;
-            }
-        }
+        // Count classification flips (real->spoof->real) - more sophisticated analysis.
+        // The oldest frame's flag refers to a frame that already left the window.
+        int classificationFlips = Math.round((float) flips.getSum() - flips.get(0));
         
         // Calculate confidence stability
         float confidenceVariance = calculateConfidenceVariance();
@@ -301,25 +230,13 @@ public class TemporalVarianceAnalyzer {
         return abnormalPattern;
     }
     
-    /**
-     * Get the last frame from history
-     */
-    private FrameData getLastFrame() {
-        if (frameHistory.isEmpty()) {
-            return null;
-        }
-        
-        // Convert queue to array and get last element
-        return frameHistory.toArray(new FrameData[0])[frameHistory.size() - 1];
-    }
-    
     /**
      * Analyze temporal variance in face position and size
      * @param minFrames Minimum frames required for analysis
      * @return Temporal variance analysis result
      */
     public TemporalVarianceResult analyze(int minFrames) {
-        if (frameHistory.size() < minFrames) {
+        if (getHistorySize() < minFrames) {
             // Not enough data, provide default analysis
             return new TemporalVarianceResult(
                 true, // Assume natural movement when insufficient data
@@ -399,7 +316,7 @@ public class TemporalVarianceAnalyzer {
                 minRequiredFrames = 3;
         }
         
-        if (frameHistory.size() < minRequiredFrames) {
+        if (getHistorySize() < minRequiredFrames) {
             // Not enough data for this scenario
             return new TemporalVarianceResult(
                 true, // Assume natural movement when insufficient data
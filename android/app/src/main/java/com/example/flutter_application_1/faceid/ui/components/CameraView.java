@@ -26,6 +26,7 @@ import com.otaliastudios.cameraview.controls.Audio;
 import androidx.lifecycle.LifecycleOwner;
 
 import com.example.flutter_application_1.BuildConfig;
+import com.example.flutter_application_1.faceid.util.StageLatencyRecorder;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -33,7 +34,9 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.SystemClock;
 
 /**
  * Custom camera view for face capture with continuous frame analysis
@@ -44,11 +47,17 @@ public class CameraView extends FrameLayout {
     // Switched to natario CameraView as the rendering & capture engine
     private com.otaliastudios.cameraview.CameraView natarioView;
     private AtomicBoolean processingFrame = new AtomicBoolean(false);
-    private final Handler testFrameHandler = new Handler(Looper.getMainLooper());
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Analysis thread: frame preparation, quality gate and FrameAnalysisCallback; started by startCamera()
+    private HandlerThread analysisThread;
+    private volatile Handler analysisHandler;
     private Runnable activeTestFrameRunnable;
-    private boolean testFrameInjectionEnabled = false;
+    @Nullable
+    private volatile FrameUiListener frameUiListener;
+    private int lastFrameQuality = -1; // Analysis thread only: -1 unknown, 0 rejected, 1 acceptable
+    private volatile boolean testFrameInjectionEnabled = false;
     private Bitmap testFrameBitmap;
-    private Bitmap preparedTestFrameBitmap; // mirrored & prepared to match pipeline
+    private volatile Bitmap preparedTestFrameBitmap; // mirrored & prepared to match pipeline
     private int testFrameIntervalMs = 66; // ~15 FPS by default
 
     // Quality gate configuration (high impact first)
@@ -64,8 +73,37 @@ public class CameraView extends FrameLayout {
     private int frameCount = 0;
 
     
+    /**
+     * Receives camera frames for analysis.
+     *
+     * Called on the view's analysis thread, never on the main thread, and one call at a time: camera
+     * frames that arrive while a call (or the frame's preparation) is still running are dropped. Only
+     * the call itself is covered; work it hands to other threads is not, and the next frame is delivered
+     * as soon as it returns. A callback that starts asynchronous work must drop or supersede frames
+     * itself ({@code FaceIdService.processContinuousFrame} starts each frame on its own and lets newer
+     * results supersede older ones). Frames are already rotated to the user, mirrored and through
+     * the quality gate. Do not touch views here; UI work goes through {@link FrameUiListener} or is
+     * posted to the main thread. Do not recycle the bitmap: test frame injection delivers the same one
+     * repeatedly.
+     */
     public interface FrameAnalysisCallback {
-        void onFrameAnalyzed(Bitmap bitmap);
+        /**
+         * @param bitmap      the prepared frame
+         * @param timestampMs capture time ({@link SystemClock#elapsedRealtime()} when the camera handed the
+         *                    frame over), for smoothing and timing that must not stretch with analysis latency
+         */
+        void onFrameAnalyzed(Bitmap bitmap, long timestampMs);
+    }
+
+    /**
+     * UI-side frame events, called on the main thread
+     */
+    public interface FrameUiListener {
+        /**
+         * The quality gate started or stopped rejecting frames (too dark, too bright, low contrast or
+         * blurry). Called only on a change; while frames are rejected, no frames reach analysis.
+         */
+        void onFrameQualityChanged(boolean acceptable);
     }
     
     public CameraView(@NonNull Context context) {
@@ -97,6 +135,13 @@ public class CameraView extends FrameLayout {
         addView(natarioView);
     }
     
+    /**
+     * Set the listener for UI-side frame events, or null to remove it
+     */
+    public void setFrameUiListener(@Nullable FrameUiListener listener) {
+        this.frameUiListener = listener;
+    }
+
     /**
      * Start the camera
      * @param lifecycleOwner Lifecycle owner
@@ -108,12 +153,16 @@ public class CameraView extends FrameLayout {
     /**
      * Start the camera with frame analysis
      * @param lifecycleOwner Lifecycle owner
-     * @param frameCallback Callback for frame analysis
+     * @param frameCallback Callback for frame analysis, called on the analysis thread
      */
     public void startCamera(LifecycleOwner lifecycleOwner, @Nullable FrameAnalysisCallback frameCallback) {
         Log.d(TAG, "Starting natario CameraView with frame analysis: " + (frameCallback != null));
 
         try {
+            if (frameCallback != null) {
+                startAnalysisThread();
+            }
+
             // If test frame injection is enabled, bypass real camera and feed constant frames
             if (testFrameInjectionEnabled && preparedTestFrameBitmap != null && frameCallback != null) {
                 Log.d(TAG, "Test frame injection mode enabled. Skipping real camera.");
@@ -126,11 +175,13 @@ public class CameraView extends FrameLayout {
                             isPreviewMirrored, isBitmapMirrored
                     );
                 } catch (Exception ignored) {}
-                startTestFrameLoop(bitmap -> {
-                    if (!passesQualityGate(bitmap)) {
+                startTestFrameLoop((bitmap, timestampMs) -> {
+                    boolean acceptable = passesQualityGate(bitmap);
+                    reportFrameQuality(acceptable);
+                    if (!acceptable) {
                         return;
                     }
-                    frameCallback.onFrameAnalyzed(bitmap);
+                    frameCallback.onFrameAnalyzed(bitmap, timestampMs);
                 });
                 return;
             }
@@ -145,6 +196,8 @@ public class CameraView extends FrameLayout {
                 natarioView.addFrameProcessor(new FrameProcessor() {
                     @Override
                     public void process(@NonNull Frame frame) {
+                        // Capture time in the clock the pipeline uses; natario's Frame.getTime() is wall clock
+                        long timestampMs = SystemClock.elapsedRealtime();
                         frameCount++;
                         if (processingFrame.get()) {
                             if (frameCount % 30 == 0) {
@@ -153,8 +206,15 @@ public class CameraView extends FrameLayout {
                             return;
                         }
 
+                        Handler handler = analysisHandler;
+                        if (handler == null) {
+                            return;
+                        }
+
                         processingFrame.set(true);
                         try {
+                            // Only the YUV -> Bitmap conversion needs the frame; it is released when process() returns
+                            long convertStartNanos = System.nanoTime();
                             int width = frame.getSize().getWidth();
                             int height = frame.getSize().getHeight();
                             Bitmap bitmap = frameToBitmap(frame, width, height);
@@ -162,48 +222,12 @@ public class CameraView extends FrameLayout {
                                 processingFrame.set(false);
                                 return;
                             }
-
-                            // Rotate to user orientation if needed
-                            try {
-                                int rotationToUser = frame.getRotationToUser();
-                                if (rotationToUser != 0) {
-                                    Matrix rot = new Matrix();
-                                    rot.postRotate(rotationToUser);
-                                    bitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), rot, true);
-                                }
-                            } catch (Throwable ignored) {}
-
-                            // Mirror horizontally for front camera to keep consistency with previous pipeline
-                            Matrix mirrorMatrix = new Matrix();
-                            mirrorMatrix.preScale(-1.0f, 1.0f);
-                            bitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), mirrorMatrix, true);
-
-                            // Quality gate check
-                            if (!passesQualityGate(bitmap)) {
+                            int rotationToUser = frame.getRotationToUser();
+                            long decodeNanos = System.nanoTime() - convertStartNanos;
+                            if (!handler.post(() -> analyzeFrame(bitmap, rotationToUser, timestampMs, decodeNanos, frameCallback))) {
+                                // Analysis thread quit: camera stopped
                                 processingFrame.set(false);
-                                return;
                             }
-
-                            // Update coordinate mapping using standardized policy
-                            try {
-                                boolean isPreviewMirrored = true;
-                                boolean isBitmapMirrored = true;
-                                com.example.flutter_application_1.faceid.util.CoordinateMapper.getInstance().updateMappingWithPolicy(
-                                        getWidth(), getHeight(), bitmap.getWidth(), bitmap.getHeight(),
-                                        isPreviewMirrored, isBitmapMirrored
-                                );
-                            } catch (Exception ignored) {}
-
-                            final Bitmap finalBitmap = bitmap;
-                            post(() -> {
-                                try {
-                                    frameCallback.onFrameAnalyzed(finalBitmap);
-                                } catch (Exception e) {
-                                    Log.e(TAG, "Error delivering analyzed frame", e);
-                                } finally {
-                                    processingFrame.set(false);
-                                }
-                            });
                         } catch (Exception e) {
                             Log.e(TAG, "Error processing natario frame", e);
                             processingFrame.set(false);
@@ -227,12 +251,102 @@ public class CameraView extends FrameLayout {
             if (natarioView != null) {
                 natarioView.close();
             }
-            // Stop any active test frame loop
-            if (activeTestFrameRunnable != null) {
-                testFrameHandler.removeCallbacks(activeTestFrameRunnable);
-                activeTestFrameRunnable = null;
-            }
         } catch (Exception ignored) {}
+        // Stops the test frame loop too; a frame already being analyzed finishes first
+        stopAnalysisThread();
+    }
+
+    /**
+     * Prepare a converted frame and hand it to the callback. Runs on the analysis thread.
+     *
+     * @param timestampMs Capture time of the frame, passed on to the callback
+     * @param decodeNanos Time the YUV decode took on the camera thread; the convert stage is decode plus
+     *                    rotate and mirror here, without the hop between threads
+     */
+    private void analyzeFrame(Bitmap bitmap, int rotationToUser, long timestampMs, long decodeNanos,
+                              @NonNull FrameAnalysisCallback frameCallback) {
+        try {
+            long orientStartNanos = System.nanoTime();
+            // Rotate to user orientation if needed
+            try {
+                if (rotationToUser != 0) {
+                    Matrix rot = new Matrix();
+                    rot.postRotate(rotationToUser);
+                    bitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), rot, true);
+                }
+            } catch (Throwable ignored) {}
+
+            // Mirror horizontally for front camera to keep consistency with previous pipeline
+            Matrix mirrorMatrix = new Matrix();
+            mirrorMatrix.preScale(-1.0f, 1.0f);
+            bitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), mirrorMatrix, true);
+            StageLatencyRecorder.getInstance().recordNanos(StageLatencyRecorder.Stage.CONVERT,
+                    decodeNanos + (System.nanoTime() - orientStartNanos));
+
+            // Quality gate check
+            boolean acceptable = passesQualityGate(bitmap);
+            reportFrameQuality(acceptable);
+            if (!acceptable) {
+                return;
+            }
+
+            // Update coordinate mapping using standardized policy
+            try {
+                boolean isPreviewMirrored = true;
+                boolean isBitmapMirrored = true;
+                com.example.flutter_application_1.faceid.util.CoordinateMapper.getInstance().updateMappingWithPolicy(
+                        getWidth(), getHeight(), bitmap.getWidth(), bitmap.getHeight(),
+                        isPreviewMirrored, isBitmapMirrored
+                );
+            } catch (Exception ignored) {}
+
+            frameCallback.onFrameAnalyzed(bitmap, timestampMs);
+        } catch (Exception e) {
+            Log.e(TAG, "Error delivering analyzed frame", e);
+        } finally {
+            processingFrame.set(false);
+        }
+    }
+
+    /**
+     * Tell the UI listener when the quality gate flips. Runs on the analysis thread.
+     */
+    private void reportFrameQuality(boolean acceptable) {
+        int quality = acceptable ? 1 : 0;
+        if (quality == lastFrameQuality) {
+            return;
+        }
+        lastFrameQuality = quality;
+        mainHandler.post(() -> {
+            FrameUiListener listener = frameUiListener;
+            if (listener != null) {
+                listener.onFrameQualityChanged(acceptable);
+            }
+        });
+    }
+
+    private void startAnalysisThread() {
+        stopAnalysisThread();
+        processingFrame.set(false);
+        analysisThread = new HandlerThread("CameraView-Analysis");
+        analysisThread.start();
+        Handler handler = new Handler(analysisThread.getLooper());
+        // Reset on the thread that owns it
+        handler.post(() -> lastFrameQuality = -1);
+        analysisHandler = handler;
+    }
+
+    private void stopAnalysisThread() {
+        Handler handler = analysisHandler;
+        analysisHandler = null;
+        activeTestFrameRunnable = null;
+        if (handler != null) {
+            handler.removeCallbacksAndMessages(null);
+        }
+        if (analysisThread != null) {
+            analysisThread.quitSafely();
+            analysisThread = null;
+        }
     }
 
     // ---------------------------
@@ -255,10 +369,11 @@ public class CameraView extends FrameLayout {
         this.testFrameInjectionEnabled = false;
         this.testFrameBitmap = null;
         this.preparedTestFrameBitmap = null;
-        if (activeTestFrameRunnable != null) {
-            testFrameHandler.removeCallbacks(activeTestFrameRunnable);
-            activeTestFrameRunnable = null;
+        Handler handler = analysisHandler;
+        if (activeTestFrameRunnable != null && handler != null) {
+            handler.removeCallbacks(activeTestFrameRunnable);
         }
+        activeTestFrameRunnable = null;
     }
 
     /** Optional: set the FPS used when injecting test frames. */
@@ -298,7 +413,8 @@ public class CameraView extends FrameLayout {
     }
 
     private void startTestFrameLoop(@NonNull FrameAnalysisCallback frameCallback) {
-        if (preparedTestFrameBitmap == null) return;
+        Handler testFrameHandler = analysisHandler;
+        if (preparedTestFrameBitmap == null || testFrameHandler == null) return;
         // Ensure previous loop is stopped
         if (activeTestFrameRunnable != null) {
             testFrameHandler.removeCallbacks(activeTestFrameRunnable);
@@ -306,9 +422,11 @@ public class CameraView extends FrameLayout {
         activeTestFrameRunnable = new Runnable() {
             @Override
             public void run() {
+                Bitmap testFrame = preparedTestFrameBitmap;
+                if (testFrame == null) return;
                 try {
                     // Deliver the same prepared bitmap to mimic camera pipeline
-                    frameCallback.onFrameAnalyzed(preparedTestFrameBitmap);
+                    frameCallback.onFrameAnalyzed(testFrame, SystemClock.elapsedRealtime());
                 } catch (Exception e) {
                     Log.e(TAG, "Error delivering test frame", e);
                 } finally {
@@ -329,6 +447,15 @@ public class CameraView extends FrameLayout {
 
     private boolean passesQualityGate(@NonNull Bitmap bitmap) {
         if (!qualityGateEnabled) return true;
+        long startNanos = System.nanoTime();
+        try {
+            return evaluateQualityGate(bitmap);
+        } finally {
+            StageLatencyRecorder.getInstance().record(StageLatencyRecorder.Stage.QUALITY_GATE, startNanos, System.nanoTime());
+        }
+    }
+
+    private boolean evaluateQualityGate(@NonNull Bitmap bitmap) {
         try {
             // Downscale for speed
             int targetW = 320;
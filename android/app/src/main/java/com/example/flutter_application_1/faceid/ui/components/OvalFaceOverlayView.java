@@ -17,10 +17,12 @@ import android.view.animation.AccelerateDecelerateInterpolator;
 import androidx.annotation.Nullable;
 
 import com.example.flutter_application_1.faceid.data.service.FaceProcessingState;
+import com.example.flutter_application_1.faceid.util.OvalGeometry;
 import android.util.Log;
 
 public class OvalFaceOverlayView extends View {
     private static final String TAG = "OvalFaceOverlayView";
+    private static final boolean VERBOSE_LOGGING = false;
     
     // Constants for oval dimensions - adjusted for better face fitting
     private static final float OVAL_WIDTH_RATIO = 0.65f;
@@ -46,7 +48,8 @@ public class OvalFaceOverlayView extends View {
     private final Paint guidePaint;
     
     // Geometry
-    private RectF ovalRect;
+    private volatile RectF ovalRect; // Replaced, never mutated: read by frame analysis off the main thread
+    private final OvalGeometry ovalGeometry = new OvalGeometry(); // Same kernel FaceIdService validates with
     private Path ovalPath;
     
     // State
@@ -266,76 +269,25 @@ public class OvalFaceOverlayView extends View {
         
         lastFaceRect = faceRect;
         
-        // Calculate face center relative to oval center
-        float faceCenterX = faceRect.exactCenterX();
-        float faceCenterY = faceRect.exactCenterY();
-        float ovalCenterX = ovalRect.centerX();
-        float ovalCenterY = ovalRect.centerY();
-        
-        // Calculate face width and height relative to oval
-        float faceWidth = faceRect.width();
-        float faceHeight = faceRect.height();
-        float widthRatio = faceWidth / ovalRect.width();
-        float heightRatio = faceHeight / ovalRect.height();
-        
-        // Check if face is properly centered
-        float xOffset = Math.abs(faceCenterX - ovalCenterX) / (ovalRect.width() / 2);
-        float yOffset = Math.abs(faceCenterY - ovalCenterY) / (ovalRect.height() / 2);
-        boolean isCentered = xOffset < 0.45f && yOffset < 0.45f; // Much more lenient centering check
-        
-        // Check if face size is appropriate
-        boolean isGoodSize = 
-            widthRatio >= MIN_FACE_OVAL_RATIO && 
-            widthRatio <= MAX_FACE_OVAL_RATIO &&
-            heightRatio >= MIN_FACE_OVAL_RATIO && 
-            heightRatio <= MAX_FACE_OVAL_RATIO;
-        
-        // Calculate ellipse equation value
-        // (x-h)²/a² + (y-k)²/b² ≤ 1 for points inside ellipse
-        float a = ovalRect.width() / 2; // semi-major axis
-        float b = ovalRect.height() / 2; // semi-minor axis
-        float ellipseValue = (float) (
-            Math.pow(faceCenterX - ovalCenterX, 2) / Math.pow(a, 2) +
-            Math.pow(faceCenterY - ovalCenterY, 2) / Math.pow(b, 2)
-        );
-        boolean isWithinEllipse = ellipseValue <= ELLIPSE_TOLERANCE;
-        
-        // Debug logging
-        Log.d(TAG, "updateFacePosition: ellipseValue=" + String.format("%.4f", ellipseValue) + 
-              ", widthRatio=" + String.format("%.4f", widthRatio) + ", heightRatio=" + String.format("%.4f", heightRatio) + 
-              ", xOffset=" + String.format("%.4f", xOffset) + ", yOffset=" + String.format("%.4f", yOffset) +
-              ", isWithinEllipse=" + isWithinEllipse + ", isGoodSize=" + isGoodSize + ", isCentered=" + isCentered);
+        ovalGeometry.setOval(ovalRect.left, ovalRect.top, ovalRect.right, ovalRect.bottom);
+        ovalGeometry.fit(faceRect.left, faceRect.top, faceRect.right, faceRect.bottom);
         
         // Determine guidance message - Simplified logic
-        if (!isWithinEllipse) {
-            if (faceCenterX < ovalCenterX - a * GUIDANCE_TOLERANCE) {
-                positionGuidance = "Move face right";
-            } else if (faceCenterX > ovalCenterX + a * GUIDANCE_TOLERANCE) {
-                positionGuidance = "Move face left";
-            } else if (faceCenterY < ovalCenterY - b * GUIDANCE_TOLERANCE) {
-                positionGuidance = "Move face down";
-            } else if (faceCenterY > ovalCenterY + b * GUIDANCE_TOLERANCE) {
-                positionGuidance = "Move face up";
-            } else {
-                positionGuidance = "Position face within oval";
-            }
-        } else if (!isGoodSize) {
-            if (widthRatio < MIN_FACE_OVAL_RATIO || heightRatio < MIN_FACE_OVAL_RATIO) {
-                positionGuidance = "Move closer to camera";
-            } else if (widthRatio > MAX_FACE_OVAL_RATIO || heightRatio > MAX_FACE_OVAL_RATIO) {
-                positionGuidance = "Move away from camera";
-            } else {
-                positionGuidance = "Adjust face position";
-            }
-        } else {
-            // If face is within ellipse and good size, consider it good enough
-            positionGuidance = "Perfect position";
-        }
+        OvalGeometry.Guidance guidance = ovalGeometry.guidance(
+                ELLIPSE_TOLERANCE, MIN_FACE_OVAL_RATIO, MAX_FACE_OVAL_RATIO, GUIDANCE_TOLERANCE);
+        positionGuidance = guidance.getMessage();
         
         // Simplified good position check - if face is within ellipse and good size, it's good
-        isGoodPosition = isWithinEllipse && isGoodSize;
-        
-        Log.d(TAG, "updateFacePosition: final result=" + isGoodPosition + ", guidance=" + positionGuidance);
+        isGoodPosition = guidance == OvalGeometry.Guidance.PERFECT;
+        
+        if (VERBOSE_LOGGING) {
+            Log.d(TAG, "updateFacePosition: ellipseValue=" + String.format("%.4f", ovalGeometry.getEllipseValue()) + 
+                  ", widthRatio=" + String.format("%.4f", ovalGeometry.getWidthRatio()) +
+                  ", heightRatio=" + String.format("%.4f", ovalGeometry.getHeightRatio()) + 
+                  ", xOffset=" + String.format("%.4f", ovalGeometry.getXOffset()) +
+                  ", yOffset=" + String.format("%.4f", ovalGeometry.getYOffset()) +
+                  ", result=" + isGoodPosition + ", guidance=" + positionGuidance);
+        }
         
         invalidate();
         return isGoodPosition;
@@ -456,7 +408,7 @@ public class OvalFaceOverlayView extends View {
     }
     
     /**
-     * Get the oval rect in absolute coordinates
+     * Get the oval rect in absolute coordinates; safe to call from any thread, do not modify the result
      */
     public RectF getOvalRect() {
         return ovalRect;
@@ -481,35 +433,8 @@ public class OvalFaceOverlayView extends View {
             return false;
         }
         
-        // Calculate face center relative to oval center
-        float faceCenterX = faceRect.exactCenterX();
-        float faceCenterY = faceRect.exactCenterY();
-        
-        // Calculate ellipse parameters
-        float centerX = ovalRect.centerX();
-        float centerY = ovalRect.centerY();
-        float a = ovalRect.width() / 2; // semi-major axis
-        float b = ovalRect.height() / 2; // semi-minor axis
-        
-        // Ellipse equation: (x-h)²/a² + (y-k)²/b² ≤ 1
-        float ellipseValue = (float) (
-            Math.pow(faceCenterX - centerX, 2) / Math.pow(a, 2) +
-            Math.pow(faceCenterY - centerY, 2) / Math.pow(b, 2)
-        );
-        
-        // Check face size relative to oval
-        float faceWidth = faceRect.width();
-        float faceHeight = faceRect.height();
-        float widthRatio = faceWidth / ovalRect.width();
-        float heightRatio = faceHeight / ovalRect.height();
-        
-        boolean isWithinEllipse = ellipseValue <= ELLIPSE_TOLERANCE;
-        boolean hasSuitableSize = 
-            widthRatio >= MIN_FACE_OVAL_RATIO && 
-            widthRatio <= MAX_FACE_OVAL_RATIO &&
-            heightRatio >= MIN_FACE_OVAL_RATIO && 
-            heightRatio <= MAX_FACE_OVAL_RATIO;
-        
-        return isWithinEllipse && hasSuitableSize;
+        ovalGeometry.setOval(ovalRect.left, ovalRect.top, ovalRect.right, ovalRect.bottom);
+        ovalGeometry.fit(faceRect.left, faceRect.top, faceRect.right, faceRect.bottom);
+        return ovalGeometry.isGoodFit(ELLIPSE_TOLERANCE, MIN_FACE_OVAL_RATIO, MAX_FACE_OVAL_RATIO);
     }
 }
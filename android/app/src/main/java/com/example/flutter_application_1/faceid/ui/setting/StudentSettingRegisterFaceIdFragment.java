@@ -3,12 +3,14 @@ package com.example.flutter_application_1.faceid.ui.setting;
 import android.Manifest;
 import android.animation.ValueAnimator;
 import android.content.Intent;
+import android.content.res.ColorStateList;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.text.method.ScrollingMovementMethod;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -25,23 +27,20 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.Locale;
 
 import com.example.flutter_application_1.R;
 import com.example.flutter_application_1.auth.AuthManager;
 import com.example.flutter_application_1.auth.client.ApiClient;
 import com.example.flutter_application_1.databinding.FragmentStudentSettingRegisterFaceIdBinding;
+import com.example.flutter_application_1.faceid.data.api.EmbeddingRequestBody;
 import com.example.flutter_application_1.faceid.data.service.FaceIdConfig;
 import com.example.flutter_application_1.faceid.data.service.FaceIdEnhancer;
 import com.example.flutter_application_1.faceid.data.service.FaceIdService;
 import com.example.flutter_application_1.faceid.data.service.FaceIdServiceManager;
 import com.example.flutter_application_1.faceid.data.service.FaceProcessingState;
 import com.example.flutter_application_1.faceid.data.service.FaceTracker;
+import com.example.flutter_application_1.faceid.data.service.ModelRegistry;
 import com.example.flutter_application_1.faceid.ui.components.CameraView;
 import com.example.flutter_application_1.faceid.ui.components.OvalFaceOverlayView;
 import com.example.flutter_application_1.faceid.ui.setting.detection.SpoofDetectionManager;
@@ -49,6 +48,7 @@ import com.example.flutter_application_1.faceid.ui.setting.state.FaceRegistratio
 import com.example.flutter_application_1.faceid.ui.setting.state.FaceRegistrationStateManager;
 import com.example.flutter_application_1.faceid.ui.setting.success.FaceIdSuccessActivity;
 import com.example.flutter_application_1.faceid.ui.setting.controller.FaceRegistrationUIController;
+import com.example.flutter_application_1.faceid.util.FaceQualityAnalysis;
 
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
@@ -86,14 +86,11 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
     private boolean isCameraStarted = false;
 
     // 💾 CURRENT DATA
-    private Bitmap currentFrameBitmap;
+    private volatile Bitmap currentFrameBitmap; // Written on the camera analysis thread
     private Rect currentFaceRect;
 
     // 5-Second Analysis
-    private final java.util.List<Float> frameScores = new java.util.ArrayList<>();
-    private boolean isAnalyzing = false;
-    private static final int ANALYSIS_DURATION_MS = 5000;
-    private static final float MIN_AVERAGE_SCORE_FOR_REGISTRATION = 0.75f;
+    private ValueAnimator analysisProgressAnimator;
     // After liveness is verified, we trust the face is live and should not filter out frames as spoof
     private boolean livenessVerified = false;
     // Analysis stability gating
@@ -103,6 +100,8 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
 
     // 🔄 HANDLERS
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 5-second analysis: scores, early pass and verdict; this screen owns the overlay
+    private final FaceQualityAnalysis qualityAnalysis = new FaceQualityAnalysis(mainHandler);
 
     @Nullable
     @Override
@@ -296,7 +295,7 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
                 break;
 
             case FACE_STABLE:
-                if (!isAnalyzing) {
+                if (!qualityAnalysis.isRunning()) {
                     // Hiển thị UI thông báo
                     Log.d(TAG, "Khuôn mặt đã ổn định, bắt đầu phân tích...");
                     stateManager.transitionTo(FaceRegistrationState.ANALYZING,
@@ -507,8 +506,10 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
      * Initialize spoof detection with FaceSpoofDetector
      */
     private void initializeSpoofDetection() {
-        if (faceIdService != null && faceIdService.getFaceSpoofDetector() != null) {
-            spoofDetectionManager = new SpoofDetectionManager(faceIdService.getFaceSpoofDetector(), requireContext());
+        if (faceIdService != null) {
+            spoofDetectionManager = new SpoofDetectionManager(faceIdService, requireContext());
+            // Hold the spoof model for the lifetime of this screen
+            faceIdService.acquireModel(ModelRegistry.Model.SPOOF_DETECTOR);
             // Set the oval boundary for enhanced security validation
             if (faceOverlayView != null) {
                 spoofDetectionManager.setOvalBoundary(faceOverlayView.getOvalRect());
@@ -561,6 +562,7 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
 
             try {
                 Log.d(TAG, "Starting camera after delay...");
+                    cameraView.setFrameUiListener(this::onFrameQualityChanged);
                     cameraView.startCamera(getViewLifecycleOwner(), this::processFrame);
                 isCameraStarted = true;
 
@@ -590,11 +592,29 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
         }, 500); // Small delay to ensure previous camera is fully released
     }
 
+    /**
+     * 💡 Quality gate feedback; while frames are too dark or blurry none reach detection
+     */
+    private void onFrameQualityChanged(boolean acceptable) {
+        if (!isAdded() || binding == null || acceptable) {
+            return;
+        }
+        FaceRegistrationState state = stateManager.getCurrentState();
+        if (state.isFinalState() || state == FaceRegistrationState.LIVENESS_CHALLENGE) {
+            return;
+        }
+        // Cleared by the next detection result once frames pass again
+        binding.tvStatusMessage.setText("Improve lighting and hold the phone steady");
+    }
+
     /**
      * 🔍 Process camera frame with enhanced security logic
      */
-    private void processFrame(Bitmap bitmap) {
+    private void processFrame(Bitmap bitmap, long timestampMs) {
         currentFrameBitmap = bitmap;
+        // Runs on the camera's analysis thread: read the overlay once, it may be gone by now
+        OvalFaceOverlayView overlay = faceOverlayView;
+        android.graphics.RectF ovalRect = overlay != null ? overlay.getOvalRect() : null;
 
         // Kiểm tra xem FaceIdService đã khởi tạo chưa
         if (faceIdService == null || !faceIdServiceInitialized) {
@@ -605,7 +625,7 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
         // Special handling for LIVENESS_CHALLENGE state
         if (stateManager.getCurrentState() == FaceRegistrationState.LIVENESS_CHALLENGE) {
             // Process frame using FaceIdService first to get face rect
-            faceIdService.processContinuousFrame(bitmap, faceOverlayView.getOvalRect(),
+            faceIdService.processContinuousFrame(bitmap, ovalRect,
                     new FaceIdService.ContinuousProcessingCallback() {
                         @Override
                         public void onFaceDetected(Rect boundingBox, boolean isSpoof, float spoofScore) {
@@ -665,7 +685,7 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
                             }
 
                             // Process the frame for liveness challenges
-                            processFrameForLivenessChallenge(bitmap, boundingBox);
+                            processFrameForLivenessChallenge(bitmap, boundingBox, timestampMs);
                         }
 
                         @Override
@@ -689,8 +709,8 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
             return; // Skip normal processing
         }
 
-        if (isAnalyzing) {
-            faceIdService.processContinuousFrame(bitmap, faceOverlayView.getOvalRect(), new FaceIdService.ContinuousProcessingCallback() {
+        if (qualityAnalysis.isRunning()) {
+            faceIdService.processContinuousFrame(bitmap, ovalRect, new FaceIdService.ContinuousProcessingCallback() {
                 @Override
                 public void onFaceDetected(Rect boundingBox, boolean isSpoof, float spoofScore) {
                     // During analysis, only accept frames that are sufficiently stable to avoid high variance
@@ -714,7 +734,7 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
                     // Normalize to realness probability for analysis
                     if (!isSpoof || livenessVerified) {
                         float realness = isSpoof ? Math.max(0f, 1f - spoofScore) : Math.min(1f, spoofScore);
-                        frameScores.add(realness);
+                        qualityAnalysis.addScore(realness);
                     }
                 }
 
@@ -741,7 +761,7 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
         }
 
         // Process frame with oval boundary validation
-        faceIdService.processContinuousFrame(bitmap, faceOverlayView.getOvalRect(),
+        faceIdService.processContinuousFrame(bitmap, ovalRect,
                 new FaceIdService.ContinuousProcessingCallback() {
                     @Override
                     public void onFaceDetected(Rect boundingBox, boolean isSpoof, float spoofScore) {
@@ -1027,13 +1047,6 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
         try {
             stopCamera();
 
-            // Save bitmap for background sync
-            String bitmapPath = null;
-            try {
-                bitmapPath = saveBitmapToTempFile(currentFrameBitmap);
-            } catch (Exception e) {
-                Log.w(TAG, "Failed to save bitmap for background sync, proceeding without worker", e);
-            }
             String userId = AuthManager.getInstance(requireContext()).getCurrentUserId();
             String successMessage = "Face ID has been registered successfully!";
                     
@@ -1047,8 +1060,7 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
                     Intent successIntent = FaceIdSuccessActivity.createRegisterSuccessIntent(
                         requireContext(),
                         userId,
-                        AuthManager.getInstance(requireContext()).getCurrentUserName(),
-                        bitmapPath
+                        AuthManager.getInstance(requireContext()).getCurrentUserName()
                     );
                     startActivity(successIntent);
 
@@ -1209,29 +1221,6 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
         }
     }
 
-    /**
-     * Save bitmap to temp file for background sync
-     */
-    private String saveBitmapToTempFile(Bitmap bitmap) throws IOException {
-        // Check if fragment is still attached
-        if (!isAdded()) {
-            throw new IllegalStateException("Fragment not attached, cannot save bitmap");
-        }
-
-        File tempDir = new File(requireContext().getCacheDir(), "face_registration");
-        if (!tempDir.exists()) {
-            tempDir.mkdirs();
-        }
-
-        File tempFile = new File(tempDir, "face_" + System.currentTimeMillis() + ".jpg");
-
-        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, fos);
-        }
-
-        return tempFile.getAbsolutePath();
-    }
-
     /**
      * Back to setup screen
      */
@@ -1314,9 +1303,9 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
     /**
      * Update the frame processing to use FaceIdEnhancer when in LIVENESS_CHALLENGE state
      */
-    private void processFrameForLivenessChallenge(Bitmap bitmap, Rect faceRect) {
+    private void processFrameForLivenessChallenge(Bitmap bitmap, Rect faceRect, long timestampMs) {
         if (faceIdEnhancer != null && faceIdEnhancerInitialized) {
-            faceIdEnhancer.processFaceFrame(bitmap, faceRect);
+            faceIdEnhancer.processFaceFrame(bitmap, faceRect, timestampMs);
         } else {
             Log.w(TAG, "Attempted to process liveness frame but FaceIdEnhancer not initialized");
         }
@@ -1389,7 +1378,7 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
             if (currentFaceRect != null) {
                 stateManager.transitionTo(FaceRegistrationState.FACE_STABLE, "Perfect! Processing...");
                 // Start the 5-second analysis immediately
-                if (!isAnalyzing) {
+                if (!qualityAnalysis.isRunning()) {
                     startAnalysis();
                 }
             } else {
@@ -1551,8 +1540,7 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
         livenessVerified = false;
 
         // Đặt lại biến phân tích
-        isAnalyzing = false;
-        frameScores.clear();
+        qualityAnalysis.cancel();
 
         // Ẩn overlay phân tích nếu đang hiển thị
         if (analysisOverlay != null) {
@@ -1619,12 +1607,16 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
             faceIdEnhancerInitialized = false;
         }
 
-        // Close FaceIdService to properly release MediaPipeFaceLandmarkExtractor
+        // Release only what this screen acquired; the shared service and its models belong to
+        // FaceIdServiceManager, and idle models are unloaded under memory pressure
         if (faceIdService != null) {
-            faceIdService.close();
+            if (spoofDetectionManager != null) {
+                faceIdService.releaseModel(ModelRegistry.Model.SPOOF_DETECTOR);
+            }
             faceIdService = null;
         }
 
+        qualityAnalysis.cancel();
         mainHandler.removeCallbacksAndMessages(null);
 
         // Clear references
@@ -1640,7 +1632,7 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
     private View analysisOverlay;
 
     // Thêm biến theo dõi xem faceIdService đã khởi tạo thành công chưa
-    private boolean faceIdServiceInitialized = false;
+    private volatile boolean faceIdServiceInitialized = false;
 
     /**
      * Start a 5-second analysis of face quality before proceeding with registration
@@ -1648,14 +1640,11 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
      */
     private void startAnalysis() {
         // Kiểm tra nếu đã đang phân tích
-        if (isAnalyzing) {
+        if (qualityAnalysis.isRunning()) {
             Log.d(TAG, "Đã đang phân tích, bỏ qua yêu cầu mới");
             return;
         }
 
-        isAnalyzing = true;
-        frameScores.clear();
-
         // Kiểm tra fragment tồn tại
         if (!isAdded() || binding == null) return;
 
@@ -1673,12 +1662,13 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
         // Hiển thị và cập nhật progressBar
         if (analysisProgressBar != null) {
             analysisProgressBar.setVisibility(View.VISIBLE);
-            analysisProgressBar.setMax(ANALYSIS_DURATION_MS);
+            analysisProgressBar.setMax(FaceQualityAnalysis.DURATION_MS);
             analysisProgressBar.setProgress(0);
 
             // Animator để cập nhật progress một cách mượt mà
-            final ValueAnimator progressAnimator = ValueAnimator.ofInt(0, ANALYSIS_DURATION_MS);
-            progressAnimator.setDuration(ANALYSIS_DURATION_MS);
+            final ValueAnimator progressAnimator = ValueAnimator.ofInt(0, FaceQualityAnalysis.DURATION_MS);
+            analysisProgressAnimator = progressAnimator;
+            progressAnimator.setDuration(FaceQualityAnalysis.DURATION_MS);
             progressAnimator.setInterpolator(new LinearInterpolator());
             progressAnimator.addUpdateListener(animation -> {
                 if (analysisProgressBar != null && isAdded()) {
@@ -1689,7 +1679,7 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
         }
 
         // Start countdown feedback
-        final int[] secondsLeft = {ANALYSIS_DURATION_MS / 1000};
+        final int[] secondsLeft = {FaceQualityAnalysis.DURATION_MS / 1000};
         final int countdownInterval = 1000; // 1 second
 
         // Countdown handler to update UI every second
@@ -1697,7 +1687,7 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
         final Runnable countdownRunnable = new Runnable() {
             @Override
             public void run() {
-                if (!isAdded() || !isAnalyzing) return;
+                if (!isAdded() || !qualityAnalysis.isRunning()) return;
 
                 secondsLeft[0]--;
                 if (secondsLeft[0] > 0) {
@@ -1718,81 +1708,86 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
         // Start countdown updates
         countdownHandler.postDelayed(countdownRunnable, countdownInterval);
 
-        // Schedule analysis completion
-        mainHandler.postDelayed(() -> {
-            // Stop analyzing
-            isAnalyzing = false;
-            countdownHandler.removeCallbacks(countdownRunnable);
-
-            // Ẩn overlay phân tích
-            if (analysisOverlay != null && isAdded()) {
-                analysisOverlay.setVisibility(View.GONE);
+        // Live verdict tints the progress bar; the analysis finishes at the end of the window or earlier
+        // once the mean is confidently above the bar
+        qualityAnalysis.start(livenessVerified, new FaceQualityAnalysis.Listener() {
+            @Override
+            public void onTrend(FaceQualityAnalysis.Trend trend) {
+                if (isAdded()) {
+                    updateAnalysisVerdict(trend);
+                }
             }
 
-            // Check if fragment is still valid
-            if (!isAdded()) {
-                Log.w(TAG, "Fragment not attached during analysis completion");
-                return;
-            }
-            // Calculate statistics (robustness: trim top/bottom 10% outliers when liveness is verified)
-            float sum = 0;
-            float min = Float.MAX_VALUE;
-            float max = Float.MIN_VALUE;
-
-            java.util.List<Float> scores = new java.util.ArrayList<>(frameScores);
-            if (livenessVerified && scores.size() >= 10) {
-                java.util.Collections.sort(scores);
-                int trim = Math.max(1, Math.round(scores.size() * 0.1f));
-                scores = scores.subList(trim, scores.size() - trim);
-            }
-            for (float score : scores) {
-                sum += score;
-                min = Math.min(min, score);
-                max = Math.max(max, score);
-            }
+            @Override
+            public void onFinished(FaceQualityAnalysis.Result result) {
+                countdownHandler.removeCallbacksAndMessages(null);
+                if (result.finishedEarly) {
+                    Log.d(TAG, "Analysis decisive after " + result.frameCount + " frames, finishing early");
+                    if (analysisProgressAnimator != null) {
+                        analysisProgressAnimator.cancel();
+                    }
+                    if (analysisProgressBar != null) {
+                        analysisProgressBar.setProgress(FaceQualityAnalysis.DURATION_MS);
+                    }
+                }
 
-            float averageScore = sum / scores.size();
-            float variance = calculateVariance(scores, averageScore);
-            
-            // Quality assessment
-            // Relax variance threshold after liveness due to natural gaze recovery
-            boolean isConsistent = variance < (livenessVerified ? 0.06f : 0.03f);
-            // After liveness, relax thresholds slightly and require realness >= 0.5
-            float minAvg = MIN_AVERAGE_SCORE_FOR_REGISTRATION;
-            if (livenessVerified) {
-                minAvg = Math.max(0.6f, MIN_AVERAGE_SCORE_FOR_REGISTRATION - 0.1f);
-            }
-            boolean isHighQuality = averageScore >= minAvg;
-            boolean isAcceptableQuality = averageScore >= (minAvg - 0.05f);
-
-            // Log detailed quality information
-            String qualityLog = String.format(Locale.US,
-                    "Face Analysis Results - Frames: %d, Average Score: %.3f, Min: %.3f, Max: %.3f, Variance: %.5f, " +
-                            "isConsistent: %b, isHighQuality: %b, isAcceptableQuality: %b",
-                    frameScores.size(), averageScore, min, max, variance,
-                    isConsistent, isHighQuality, isAcceptableQuality);
-            Log.d(TAG, qualityLog);
-
-            // Different paths based on quality assessment
-            if (isHighQuality && isConsistent) {
-                // High quality and consistent - proceed with registration
-                stateManager.transitionTo(FaceRegistrationState.PROCESSING,
-                        "Kiểm tra chất lượng đạt. Đang đăng ký...");
-                captureAndRegisterFace();
-            } else if (isAcceptableQuality) {
-                // Acceptable but not ideal - warn user but proceed
-                stateManager.transitionTo(FaceRegistrationState.PROCESSING,
-                        "Chất lượng chấp nhận được. Đang tiến hành đăng ký...");
-                captureAndRegisterFace();
-            } else {
-                // Low quality - provide specific feedback based on issues
-                String feedbackMessage = generateQualityFeedback(averageScore, variance);
-                lastDetailedErrorMessage = qualityLog + "\n\nDetailed Analysis: " + feedbackMessage;
-                hasDetailedError = true;
-                Log.e(TAG, "❌ Analysis failed: " + lastDetailedErrorMessage);
-                stateManager.transitionTo(FaceRegistrationState.FAILED_OTHER, feedbackMessage);
+                // Ẩn overlay phân tích
+                if (analysisOverlay != null && isAdded()) {
+                    analysisOverlay.setVisibility(View.GONE);
+                }
+
+                // Check if fragment is still valid
+                if (!isAdded()) {
+                    Log.w(TAG, "Fragment not attached during analysis completion");
+                    return;
+                }
+                Log.d(TAG, result.toString());
+
+                // Different paths based on quality assessment
+                switch (result.verdict) {
+                    case PASS:
+                        // High quality and consistent - proceed with registration
+                        stateManager.transitionTo(FaceRegistrationState.PROCESSING,
+                                "Kiểm tra chất lượng đạt. Đang đăng ký...");
+                        captureAndRegisterFace();
+                        break;
+                    case ACCEPTABLE:
+                        // Acceptable but not ideal - warn user but proceed
+                        stateManager.transitionTo(FaceRegistrationState.PROCESSING,
+                                "Chất lượng chấp nhận được. Đang tiến hành đăng ký...");
+                        captureAndRegisterFace();
+                        break;
+                    default:
+                        // Low quality - provide specific feedback based on issues
+                        String feedbackMessage = generateQualityFeedback(result.stats.mean, result.stats.variance);
+                        lastDetailedErrorMessage = result + "\n\nDetailed Analysis: " + feedbackMessage;
+                        hasDetailedError = true;
+                        Log.e(TAG, "❌ Analysis failed: " + lastDetailedErrorMessage);
+                        stateManager.transitionTo(FaceRegistrationState.FAILED_OTHER, feedbackMessage);
+                        break;
+                }
             }
-        }, ANALYSIS_DURATION_MS);
+        });
+    }
+
+    /**
+     * Tint the analysis progress bar with the running verdict
+     */
+    private void updateAnalysisVerdict(FaceQualityAnalysis.Trend trend) {
+        if (analysisProgressBar == null) return;
+        int color;
+        switch (trend) {
+            case GOOD:
+                color = R.color.green_success;
+                break;
+            case BORDERLINE:
+                color = R.color.warning_orange;
+                break;
+            default:
+                color = R.color.red_error;
+                break;
+        }
+        analysisProgressBar.setProgressTintList(ColorStateList.valueOf(ContextCompat.getColor(requireContext(), color)));
     }
 
     /**
@@ -1835,18 +1830,6 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
         Log.d(TAG, "Analysis UI initialized and shown");
     }
 
-    /**
-     * Calculate variance of collected scores to assess consistency
-     */
-    private float calculateVariance(java.util.List<Float> scores, float mean) {
-        float sumSquaredDiff = 0;
-        for (float score : scores) {
-            float diff = score - mean;
-            sumSquaredDiff += diff * diff;
-        }
-        return sumSquaredDiff / scores.size();
-    }
-
     /**
      * Generate specific feedback based on detected quality issues
      */
@@ -1948,17 +1931,8 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
 
                 Log.d(TAG, "✅ Face embedding extracted: " + embedding.length + " dimensions");
 
-                // Convert embedding to file for upload
-                File embeddingFile = createEmbeddingFile(embedding);
-                
-                // Prepare multipart request
-                RequestBody requestFile = RequestBody.create(
-                        MediaType.parse("application/octet-stream"), 
-                        embeddingFile);
-                MultipartBody.Part embeddingPart = MultipartBody.Part.createFormData(
-                        "embedding", 
-                        embeddingFile.getName(), 
-                        requestFile);
+                // Prepare multipart request; the embedding is streamed, no temp file
+                MultipartBody.Part embeddingPart = EmbeddingRequestBody.part("embedding", embedding);
                 
                 RequestBody userIdBody = RequestBody.create(
                         MediaType.parse("text/plain"), 
@@ -2011,11 +1985,6 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
                             String errorMsg = "Lỗi kết nối API (Code: " + response + ")";
                             stateManager.transitionTo(FaceRegistrationState.FAILED_NETWORK, errorMsg);
                         }
-
-                        // Cleanup temp file
-                        if (embeddingFile.exists()) {
-                            embeddingFile.delete();
-                        }
                     }
 
                     @Override
@@ -2026,11 +1995,6 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
                         Log.e(TAG, "❌ API call failed", t);
                         stateManager.transitionTo(FaceRegistrationState.FAILED_NETWORK, 
                                 "Không thể kết nối tới server: " + t.getMessage());
-
-                        // Cleanup temp file
-                        if (embeddingFile.exists()) {
-                            embeddingFile.delete();
-                        }
                     }
                 });
 
@@ -2045,34 +2009,6 @@ public class StudentSettingRegisterFaceIdFragment extends Fragment
             }
         }).start();
     }
-
-    /**
-     * Create a temporary file containing the embedding data
-     */
-    private File createEmbeddingFile(float[] embedding) throws IOException {
-        // Create temp directory
-        File tempDir = new File(requireContext().getCacheDir(), "face_embeddings");
-        if (!tempDir.exists()) {
-            tempDir.mkdirs();
-        }
-
-        // Create temp file
-        File embeddingFile = new File(tempDir, "embedding_" + System.currentTimeMillis() + ".bin");
-
-        // Write embedding as binary data
-        try (FileOutputStream fos = new FileOutputStream(embeddingFile)) {
-            // Convert float[] to byte[]
-            ByteBuffer buffer = ByteBuffer.allocate(embedding.length * 4);
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
-            for (float value : embedding) {
-                buffer.putFloat(value);
-            }
-            fos.write(buffer.array());
-        }
-
-        Log.d(TAG, "💾 Embedding file created: " + embeddingFile.getAbsolutePath());
-        return embeddingFile;
-    }
 }
 
 
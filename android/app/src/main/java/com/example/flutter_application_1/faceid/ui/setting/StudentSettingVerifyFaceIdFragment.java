@@ -3,12 +3,14 @@ package com.example.flutter_application_1.faceid.ui.setting;
 import android.Manifest;
 import android.animation.ValueAnimator;
 import android.content.Intent;
+import android.content.res.ColorStateList;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.text.method.ScrollingMovementMethod;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -25,9 +27,6 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -42,6 +41,7 @@ import com.example.flutter_application_1.faceid.data.service.FaceIdService;
 import com.example.flutter_application_1.faceid.data.service.FaceIdServiceManager;
 import com.example.flutter_application_1.faceid.data.service.FaceProcessingState;
 import com.example.flutter_application_1.faceid.data.service.FaceTracker;
+import com.example.flutter_application_1.faceid.data.service.ModelRegistry;
 import com.example.flutter_application_1.faceid.ui.components.CameraView;
 import com.example.flutter_application_1.faceid.ui.components.OvalFaceOverlayView;
 import com.example.flutter_application_1.faceid.ui.setting.controller.FaceVerificationUIController;
@@ -49,6 +49,7 @@ import com.example.flutter_application_1.faceid.ui.setting.detection.SpoofDetect
 import com.example.flutter_application_1.faceid.ui.setting.state.FaceRegistrationState;
 import com.example.flutter_application_1.faceid.ui.setting.state.FaceRegistrationStateManager;
 import com.example.flutter_application_1.faceid.ui.setting.success.FaceIdSuccessActivity;
+import com.example.flutter_application_1.faceid.util.FaceQualityAnalysis;
 import com.example.flutter_application_1.faceid.data.service.FaceIdRequestManager;
 
 
@@ -83,14 +84,11 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
     private boolean isCameraStarted = false;
 
     // 💾 CURRENT DATA
-    private Bitmap currentFrameBitmap;
+    private volatile Bitmap currentFrameBitmap; // Written on the camera analysis thread
     private Rect currentFaceRect;
 
     // 5-Second Analysis
-    private final java.util.List<Float> frameScores = new java.util.ArrayList<>();
-    private boolean isAnalyzing = false;
-    private static final int ANALYSIS_DURATION_MS = 5000;
-    private static final float MIN_AVERAGE_SCORE_FOR_REGISTRATION = 0.75f;
+    private ValueAnimator analysisProgressAnimator;
     // After liveness is verified, we trust the face is live and should not filter out frames as spoof
     private boolean livenessVerified = false;
     // Analysis stability gating
@@ -100,6 +98,8 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
 
     // 🔄 HANDLERS
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 5-second analysis: scores, early pass and verdict; this screen owns the overlay
+    private final FaceQualityAnalysis qualityAnalysis = new FaceQualityAnalysis(mainHandler);
 
     // Verification window control
     private long verifyDeadlineMs = 0L;
@@ -439,7 +439,7 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
                 break;
 
             case FACE_STABLE:
-                if (!isAnalyzing) {
+                if (!qualityAnalysis.isRunning()) {
                     // Hiển thị UI thông báo
                     Log.d(TAG, "Face stabilized, starting analysis...");
                     stateManager.transitionTo(FaceRegistrationState.ANALYZING,
@@ -592,6 +592,15 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
         initializeFaceIdService();
     }
 
+    /**
+     * ⚡ Let the request manager wake embedding prefetch for the open request
+     */
+    private void attachEmbeddingPrefetcher() {
+        if (requestManager != null && faceIdService != null) {
+            requestManager.attachPrefetcher(faceIdService.getEmbeddingPrefetcher());
+        }
+    }
+
     /**
      * Initialize FaceIdService and related components
      */
@@ -603,6 +612,7 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
 
             // Đánh dấu đã khởi tạo thành công
             faceIdServiceInitialized = true;
+            attachEmbeddingPrefetcher();
 
             initializeSpoofDetection();
 
@@ -620,6 +630,7 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
 
                 faceIdService = service;
                 faceIdServiceInitialized = true;
+                attachEmbeddingPrefetcher();
 
                 // 🔧 NEW: Set registration scenario for more lenient validation
                 faceIdService.setScenario(FaceIdConfig.Scenario.REGISTRATION);
@@ -649,8 +660,10 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
      * Initialize spoof detection with FaceSpoofDetector
      */
     private void initializeSpoofDetection() {
-        if (faceIdService != null && faceIdService.getFaceSpoofDetector() != null) {
-            spoofDetectionManager = new SpoofDetectionManager(faceIdService.getFaceSpoofDetector(), requireContext());
+        if (faceIdService != null) {
+            spoofDetectionManager = new SpoofDetectionManager(faceIdService, requireContext());
+            // Hold the spoof model for the lifetime of this screen
+            faceIdService.acquireModel(ModelRegistry.Model.SPOOF_DETECTOR);
             // Set the oval boundary for enhanced security validation
             if (faceOverlayView != null) {
                 spoofDetectionManager.setOvalBoundary(faceOverlayView.getOvalRect());
@@ -703,6 +716,7 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
 
             try {
                 Log.d(TAG, "Starting camera after delay...");
+                cameraView.setFrameUiListener(this::onFrameQualityChanged);
                 cameraView.startCamera(getViewLifecycleOwner(), this::processFrame);
                 isCameraStarted = true;
 
@@ -732,15 +746,33 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
         }, 500); // Small delay to ensure previous camera is fully released
     }
 
+    /**
+     * 💡 Quality gate feedback; while frames are too dark or blurry none reach detection
+     */
+    private void onFrameQualityChanged(boolean acceptable) {
+        if (!isAdded() || binding == null || acceptable) {
+            return;
+        }
+        FaceRegistrationState state = stateManager.getCurrentState();
+        if (state.isFinalState() || state == FaceRegistrationState.LIVENESS_CHALLENGE) {
+            return;
+        }
+        // Cleared by the next detection result once frames pass again
+        binding.tvStatusMessage.setText("Improve lighting and hold the phone steady");
+    }
+
     /**
      * 🔍 Process camera frame with enhanced security logic
      */
-    private void processFrame(Bitmap bitmap) {
+    private void processFrame(Bitmap bitmap, long timestampMs) {
         if (!isVerificationWindowActive()) {
             Log.w(TAG, "Verification window expired; ignoring frames");
             return;
         }
         currentFrameBitmap = bitmap;
+        // Runs on the camera's analysis thread: read the overlay once, it may be gone by now
+        OvalFaceOverlayView overlay = faceOverlayView;
+        android.graphics.RectF ovalRect = overlay != null ? overlay.getOvalRect() : null;
 
         // Kiểm tra xem FaceIdService đã khởi tạo chưa
         if (faceIdService == null || !faceIdServiceInitialized) {
@@ -751,7 +783,7 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
         // Special handling for LIVENESS_CHALLENGE state
         if (stateManager.getCurrentState() == FaceRegistrationState.LIVENESS_CHALLENGE) {
             // Process frame using FaceIdService first to get face rect
-            faceIdService.processContinuousFrame(bitmap, faceOverlayView.getOvalRect(),
+            faceIdService.processContinuousFrame(bitmap, ovalRect,
                     new FaceIdService.ContinuousProcessingCallback() {
                         @Override
                         public void onFaceDetected(Rect boundingBox, boolean isSpoof, float spoofScore) {
@@ -811,7 +843,7 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
                             }
 
                             // Process the frame for liveness challenges
-                            processFrameForLivenessChallenge(bitmap, boundingBox);
+                            processFrameForLivenessChallenge(bitmap, boundingBox, timestampMs);
                         }
 
                         @Override
@@ -835,8 +867,8 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
             return; // Skip normal processing
         }
 
-        if (isAnalyzing) {
-            faceIdService.processContinuousFrame(bitmap, faceOverlayView.getOvalRect(), new FaceIdService.ContinuousProcessingCallback() {
+        if (qualityAnalysis.isRunning()) {
+            faceIdService.processContinuousFrame(bitmap, ovalRect, new FaceIdService.ContinuousProcessingCallback() {
                 @Override
                 public void onFaceDetected(Rect boundingBox, boolean isSpoof, float spoofScore) {
                     // During analysis, only accept frames that are sufficiently stable to avoid high variance
@@ -860,7 +892,7 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
                     // Normalize to realness probability for analysis
                     if (!isSpoof || livenessVerified) {
                         float realness = isSpoof ? Math.max(0f, 1f - spoofScore) : Math.min(1f, spoofScore);
-                        frameScores.add(realness);
+                        qualityAnalysis.addScore(realness);
                     }
                 }
 
@@ -887,7 +919,7 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
         }
 
         // Process frame with oval boundary validation
-        faceIdService.processContinuousFrame(bitmap, faceOverlayView.getOvalRect(),
+        faceIdService.processContinuousFrame(bitmap, ovalRect,
                 new FaceIdService.ContinuousProcessingCallback() {
                     @Override
                     public void onFaceDetected(Rect boundingBox, boolean isSpoof, float spoofScore) {
@@ -1216,6 +1248,7 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
                     finalUserId,
                     requestId,
                     null,
+                    verifyDeadlineMs,
                     new FaceIdService.FaceIdCallback() {
                         @Override
                         public void onSuccess(String message) {
@@ -1258,8 +1291,6 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
         try {
             stopCamera();
 
-            // Save bitmap for background sync
-            String bitmapPath = saveBitmapToTempFile(currentFrameBitmap);
             String userId = AuthManager.getInstance(requireContext()).getCurrentUserId();
             String successMessage = "Face ID verified successfully!";
 
@@ -1435,29 +1466,6 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
         }
     }
 
-    /**
-     * Save bitmap to temp file for background sync
-     */
-    private String saveBitmapToTempFile(Bitmap bitmap) throws IOException {
-        // Check if fragment is still attached
-        if (!isAdded()) {
-            throw new IllegalStateException("Fragment not attached, cannot save bitmap");
-        }
-
-        File tempDir = new File(requireContext().getCacheDir(), "face_registration");
-        if (!tempDir.exists()) {
-            tempDir.mkdirs();
-        }
-
-        File tempFile = new File(tempDir, "face_" + System.currentTimeMillis() + ".jpg");
-
-        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, fos);
-        }
-
-        return tempFile.getAbsolutePath();
-    }
-
     /**
      * Back to setup screen
      */
@@ -1538,9 +1546,9 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
     /**
      * Update the frame processing to use FaceIdEnhancer when in LIVENESS_CHALLENGE state
      */
-    private void processFrameForLivenessChallenge(Bitmap bitmap, Rect faceRect) {
+    private void processFrameForLivenessChallenge(Bitmap bitmap, Rect faceRect, long timestampMs) {
         if (faceIdEnhancer != null && faceIdEnhancerInitialized) {
-            faceIdEnhancer.processFaceFrame(bitmap, faceRect);
+            faceIdEnhancer.processFaceFrame(bitmap, faceRect, timestampMs);
         } else {
             Log.w(TAG, "Attempted to process liveness frame but FaceIdEnhancer not initialized");
         }
@@ -1613,7 +1621,7 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
             if (currentFaceRect != null) {
                 stateManager.transitionTo(FaceRegistrationState.FACE_STABLE, "Perfect! Processing...");
                 // Start the 5-second analysis immediately
-                if (!isAnalyzing) {
+                if (!qualityAnalysis.isRunning()) {
                     startAnalysis();
                 }
             } else {
@@ -1759,8 +1767,7 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
         livenessVerified = false;
 
         // Đặt lại biến phân tích
-        isAnalyzing = false;
-        frameScores.clear();
+        qualityAnalysis.cancel();
 
         // Ẩn overlay phân tích nếu đang hiển thị
         if (analysisOverlay != null) {
@@ -1832,12 +1839,16 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
             faceIdEnhancerInitialized = false;
         }
 
-        // Close FaceIdService to properly release MediaPipeFaceLandmarkExtractor
+        // Release only what this screen acquired; the shared service and its models belong to
+        // FaceIdServiceManager, and idle models are unloaded under memory pressure
         if (faceIdService != null) {
-            faceIdService.close();
+            if (spoofDetectionManager != null) {
+                faceIdService.releaseModel(ModelRegistry.Model.SPOOF_DETECTOR);
+            }
             faceIdService = null;
         }
 
+        qualityAnalysis.cancel();
         mainHandler.removeCallbacksAndMessages(null);
 
         // Clear references
@@ -1853,7 +1864,7 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
     private View analysisOverlay;
 
     // Thêm biến theo dõi xem faceIdService đã khởi tạo thành công chưa
-    private boolean faceIdServiceInitialized = false;
+    private volatile boolean faceIdServiceInitialized = false;
 
     /**
      * Start a 5-second analysis of face quality before proceeding with registration
@@ -1861,14 +1872,11 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
      */
     private void startAnalysis() {
         // Kiểm tra nếu đã đang phân tích
-        if (isAnalyzing) {
+        if (qualityAnalysis.isRunning()) {
             Log.d(TAG, "Already analyzing, ignoring new request");
             return;
         }
 
-        isAnalyzing = true;
-        frameScores.clear();
-
         // Kiểm tra fragment tồn tại
         if (!isAdded() || binding == null) return;
 
@@ -1886,12 +1894,13 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
         // Hiển thị và cập nhật progressBar
         if (analysisProgressBar != null) {
             analysisProgressBar.setVisibility(View.VISIBLE);
-            analysisProgressBar.setMax(ANALYSIS_DURATION_MS);
+            analysisProgressBar.setMax(FaceQualityAnalysis.DURATION_MS);
             analysisProgressBar.setProgress(0);
 
             // Animator để cập nhật progress một cách mượt mà
-            final ValueAnimator progressAnimator = ValueAnimator.ofInt(0, ANALYSIS_DURATION_MS);
-            progressAnimator.setDuration(ANALYSIS_DURATION_MS);
+            final ValueAnimator progressAnimator = ValueAnimator.ofInt(0, FaceQualityAnalysis.DURATION_MS);
+            analysisProgressAnimator = progressAnimator;
+            progressAnimator.setDuration(FaceQualityAnalysis.DURATION_MS);
             progressAnimator.setInterpolator(new LinearInterpolator());
             progressAnimator.addUpdateListener(animation -> {
                 if (analysisProgressBar != null && isAdded()) {
@@ -1902,7 +1911,7 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
         }
 
         // Start countdown feedback
-        final int[] secondsLeft = {ANALYSIS_DURATION_MS / 1000};
+        final int[] secondsLeft = {FaceQualityAnalysis.DURATION_MS / 1000};
         final int countdownInterval = 1000; // 1 second
 
         // Countdown handler to update UI every second
@@ -1910,7 +1919,7 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
         final Runnable countdownRunnable = new Runnable() {
             @Override
             public void run() {
-                if (!isAdded() || !isAnalyzing) return;
+                if (!isAdded() || !qualityAnalysis.isRunning()) return;
 
                 secondsLeft[0]--;
                 if (secondsLeft[0] > 0) {
@@ -1931,81 +1940,86 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
         // Start countdown updates
         countdownHandler.postDelayed(countdownRunnable, countdownInterval);
 
-        // Schedule analysis completion
-        mainHandler.postDelayed(() -> {
-            // Stop analyzing
-            isAnalyzing = false;
-            countdownHandler.removeCallbacks(countdownRunnable);
-
-            // Ẩn overlay phân tích
-            if (analysisOverlay != null && isAdded()) {
-                analysisOverlay.setVisibility(View.GONE);
+        // Live verdict tints the progress bar; the analysis finishes at the end of the window or earlier
+        // once the mean is confidently above the bar
+        qualityAnalysis.start(livenessVerified, new FaceQualityAnalysis.Listener() {
+            @Override
+            public void onTrend(FaceQualityAnalysis.Trend trend) {
+                if (isAdded()) {
+                    updateAnalysisVerdict(trend);
+                }
             }
 
-            // Check if fragment is still valid
-            if (!isAdded()) {
-                Log.w(TAG, "Fragment not attached during analysis completion");
-                return;
-            }
-            // Calculate statistics (robustness: trim top/bottom 10% outliers when liveness is verified)
-            float sum = 0;
-            float min = Float.MAX_VALUE;
-            float max = Float.MIN_VALUE;
-
-            java.util.List<Float> scores = new java.util.ArrayList<>(frameScores);
-            if (livenessVerified && scores.size() >= 10) {
-                java.util.Collections.sort(scores);
-                int trim = Math.max(1, Math.round(scores.size() * 0.1f));
-                scores = scores.subList(trim, scores.size() - trim);
-            }
-            for (float score : scores) {
-                sum += score;
-                min = Math.min(min, score);
-                max = Math.max(max, score);
-            }
+            @Override
+            public void onFinished(FaceQualityAnalysis.Result result) {
+                countdownHandler.removeCallbacksAndMessages(null);
+                if (result.finishedEarly) {
+                    Log.d(TAG, "Analysis decisive after " + result.frameCount + " frames, finishing early");
+                    if (analysisProgressAnimator != null) {
+                        analysisProgressAnimator.cancel();
+                    }
+                    if (analysisProgressBar != null) {
+                        analysisProgressBar.setProgress(FaceQualityAnalysis.DURATION_MS);
+                    }
+                }
 
-            float averageScore = sum / scores.size();
-            float variance = calculateVariance(scores, averageScore);
-            
-            // Quality assessment
-            // Relax variance threshold after liveness due to natural gaze recovery
-            boolean isConsistent = variance < (livenessVerified ? 0.06f : 0.03f);
-            // After liveness, relax thresholds slightly and require realness >= 0.5
-            float minAvg = MIN_AVERAGE_SCORE_FOR_REGISTRATION;
-            if (livenessVerified) {
-                minAvg = Math.max(0.6f, MIN_AVERAGE_SCORE_FOR_REGISTRATION - 0.1f);
-            }
-            boolean isHighQuality = averageScore >= minAvg;
-            boolean isAcceptableQuality = averageScore >= (minAvg - 0.05f);
-
-            // Log detailed quality information
-            String qualityLog = String.format(Locale.US,
-                    "Face Analysis Results - Frames: %d, Average Score: %.3f, Min: %.3f, Max: %.3f, Variance: %.5f, " +
-                            "isConsistent: %b, isHighQuality: %b, isAcceptableQuality: %b",
-                    frameScores.size(), averageScore, min, max, variance,
-                    isConsistent, isHighQuality, isAcceptableQuality);
-            Log.d(TAG, qualityLog);
-
-            // Different paths based on quality assessment
-            if (isHighQuality && isConsistent) {
-                // High quality and consistent - proceed with registration
-                stateManager.transitionTo(FaceRegistrationState.PROCESSING,
-                        "Quality check passed. Verifying...");
-                captureAndVerifyFace();
-            } else if (isAcceptableQuality) {
-                // Acceptable but not ideal - warn user but proceed
-                stateManager.transitionTo(FaceRegistrationState.PROCESSING,
-                        "Acceptable quality. Proceeding with verification...");
-                captureAndVerifyFace();
-            } else {
-                // Low quality - provide specific feedback based on issues
-                String feedbackMessage = generateQualityFeedback(averageScore, variance);
-                lastDetailedErrorMessage = qualityLog + "\n\nDetailed Analysis: " + feedbackMessage;
-                hasDetailedError = true;
-                Log.e(TAG, "❌ Analysis failed: " + lastDetailedErrorMessage);
-                stateManager.transitionTo(FaceRegistrationState.FAILED_OTHER, feedbackMessage);
+                // Ẩn overlay phân tích
+                if (analysisOverlay != null && isAdded()) {
+                    analysisOverlay.setVisibility(View.GONE);
+                }
+
+                // Check if fragment is still valid
+                if (!isAdded()) {
+                    Log.w(TAG, "Fragment not attached during analysis completion");
+                    return;
+                }
+                Log.d(TAG, result.toString());
+
+                // Different paths based on quality assessment
+                switch (result.verdict) {
+                    case PASS:
+                        // High quality and consistent - proceed with registration
+                        stateManager.transitionTo(FaceRegistrationState.PROCESSING,
+                                "Quality check passed. Verifying...");
+                        captureAndVerifyFace();
+                        break;
+                    case ACCEPTABLE:
+                        // Acceptable but not ideal - warn user but proceed
+                        stateManager.transitionTo(FaceRegistrationState.PROCESSING,
+                                "Acceptable quality. Proceeding with verification...");
+                        captureAndVerifyFace();
+                        break;
+                    default:
+                        // Low quality - provide specific feedback based on issues
+                        String feedbackMessage = generateQualityFeedback(result.stats.mean, result.stats.variance);
+                        lastDetailedErrorMessage = result + "\n\nDetailed Analysis: " + feedbackMessage;
+                        hasDetailedError = true;
+                        Log.e(TAG, "❌ Analysis failed: " + lastDetailedErrorMessage);
+                        stateManager.transitionTo(FaceRegistrationState.FAILED_OTHER, feedbackMessage);
+                        break;
+                }
             }
-        }, ANALYSIS_DURATION_MS);
+        });
+    }
+
+    /**
+     * Tint the analysis progress bar with the running verdict
+     */
+    private void updateAnalysisVerdict(FaceQualityAnalysis.Trend trend) {
+        if (analysisProgressBar == null) return;
+        int color;
+        switch (trend) {
+            case GOOD:
+                color = R.color.green_success;
+                break;
+            case BORDERLINE:
+                color = R.color.warning_orange;
+                break;
+            default:
+                color = R.color.red_error;
+                break;
+        }
+        analysisProgressBar.setProgressTintList(ColorStateList.valueOf(ContextCompat.getColor(requireContext(), color)));
     }
 
     /**
@@ -2048,18 +2062,6 @@ public class StudentSettingVerifyFaceIdFragment extends Fragment
         Log.d(TAG, "Analysis UI initialized and shown");
     }
 
-    /**
-     * Calculate variance of collected scores to assess consistency
-     */
-    private float calculateVariance(java.util.List<Float> scores, float mean) {
-        float sumSquaredDiff = 0;
-        for (float score : scores) {
-            float diff = score - mean;
-            sumSquaredDiff += diff * diff;
-        }
-        return sumSquaredDiff / scores.size();
-    }
-
     /**
      * Generate specific feedback based on detected quality issues
      */
@@ -7,12 +7,28 @@ import android.util.Log;
 
 import com.example.flutter_application_1.faceid.data.service.FaceSpoofDetector;
 import com.example.flutter_application_1.faceid.data.service.FaceIdConfig;
+import com.example.flutter_application_1.faceid.data.service.FaceIdService;
+import com.example.flutter_application_1.faceid.data.service.ModelRegistry;
+import com.example.flutter_application_1.faceid.util.SequentialLivenessReplay;
+import com.example.flutter_application_1.faceid.util.SequentialLivenessSprt;
 
 public class SpoofDetectionManager {
     private static final String TAG = "SpoofDetectionManager";
 
     private final FaceIdConfig.AntiSpoofConfig config;
-    private final FaceSpoofDetector detector;
+    // The detector is leased per frame, so it is never closed under a running inference
+    private final FaceIdService faceIdService;
+
+    // Sequential live/spoof decision; per-frame likelihoods of REAL / UNCERTAIN / SPOOF outcomes for a
+    // live face and for an attack. These are placeholders, not yet estimated from labelled traces with
+    // SequentialLivenessReplay.estimateLikelihoods; until they are, the test only runs in the shadow to
+    // log traces, and both accept and reject come from the streak and suspicion counters below
+    private static final float[] LIVE_LIKELIHOODS = {0.80f, 0.15f, 0.05f};
+    private static final float[] SPOOF_LIKELIHOODS = {0.15f, 0.35f, 0.50f};
+    private static final boolean LIKELIHOODS_CALIBRATED = false;
+    private final SequentialLivenessSprt livenessSprt;
+    // Frames of the current test, logged for offline replay when it decides
+    private final StringBuilder decisionTrace = new StringBuilder();
 
     // Counters
     private int realStreak = 0;
@@ -74,9 +90,11 @@ public class SpoofDetectionManager {
         void onResult(SpoofDetectionResult result);
     }
 
-    public SpoofDetectionManager(FaceSpoofDetector detector, Context context) {
-        this.detector = detector;
+    public SpoofDetectionManager(FaceIdService faceIdService, Context context) {
+        this.faceIdService = faceIdService;
         this.config = new FaceIdConfig(context).getConfig().antiSpoofConfig;
+        this.livenessSprt = new SequentialLivenessSprt(config.falseAcceptRate, config.falseRejectRate,
+                LIVE_LIKELIHOODS, SPOOF_LIKELIHOODS, config.maxDecisionFrames);
     }
 
     public void setOvalBoundary(android.graphics.RectF ovalRect) {
@@ -84,7 +102,15 @@ public class SpoofDetectionManager {
     }
 
     public void analyzeFrame(Bitmap bitmap, Rect faceRect, SpoofDetectionCallback callback) {
-        detector.detectSpoofAsync(bitmap, faceRect, ovalBoundary, rawResult -> {
+        ModelRegistry.Lease<FaceSpoofDetector> detector = faceIdService.tryLeaseModel(ModelRegistry.Model.SPOOF_DETECTOR);
+        if (detector == null) {
+            // Still loading (or reloading after a memory trim): no verdict for this frame
+            callback.onResult(new SpoofDetectionResult(false, 0f, ConfidenceLevel.VERY_LOW,
+                    FaceIdService.MODEL_LOADING_MESSAGE, false, false));
+            return;
+        }
+        detector.get().detectSpoofAsync(bitmap, faceRect, ovalBoundary, rawResult -> {
+            detector.close();
             if (livenessChallengeActive) {
                 framesSinceChallengeStarted++;
                 if (checkForBlink(rawResult)) {
@@ -136,6 +162,46 @@ public class SpoofDetectionManager {
 
         updateSuspicionScore(rawIsSpoof, rawConfidence);
 
+        // Runs on every frame so its decisions are logged for offline replay, calibrated or not
+        SequentialLivenessSprt.Decision decision = livenessSprt.update(
+                SequentialLivenessSprt.classify(rawIsSpoof, rawConfidence, config.highConfidenceThreshold));
+        SequentialLivenessReplay.appendFrame(decisionTrace, rawIsSpoof, rawConfidence);
+        if (decision != SequentialLivenessSprt.Decision.CONTINUE) {
+            logDecisionTrace(decision);
+        }
+
+        if (!LIKELIHOODS_CALIBRATED) {
+            if (livenessSprt.isExhausted()) {
+                // Undecided shadow test: drop its trace and start over
+                resetLivenessSprt();
+            }
+            return makeCounterDecision(rawIsSpoof, rawConfidence, level);
+        }
+
+        // Stop as soon as the evidence is decisive at the configured error rates
+        if (decision == SequentialLivenessSprt.Decision.REJECT) {
+            return new SpoofDetectionResult(true, rawConfidence, level, "High suspicion of spoofing.", false, false);
+        }
+
+        if (suspicionScore >= LIVENESS_CHALLENGE_SUSPICION_THRESHOLD || livenessSprt.isExhausted()) {
+            // Abnormal pattern, or no decision within maxDecisionFrames: let a blink settle it
+            resetLivenessSprt();
+            startLivenessChallenge();
+            return new SpoofDetectionResult(false, rawConfidence, level, "Suspicious activity detected. Please blink.", false, true);
+        }
+
+        if (decision == SequentialLivenessSprt.Decision.ACCEPT) {
+            return new SpoofDetectionResult(false, rawConfidence, level, "Real face detected.", true, false);
+        }
+
+        return new SpoofDetectionResult(false, rawConfidence, level, "Hold steady.", false, false);
+    }
+
+    /**
+     * Accept after minRealFaceFrames high-confidence frames in a row, reject at a fixed suspicion score.
+     * Used while the sequential test's likelihoods are uncalibrated.
+     */
+    private SpoofDetectionResult makeCounterDecision(boolean rawIsSpoof, float rawConfidence, ConfidenceLevel level) {
         if (suspicionScore >= SUSPICION_THRESHOLD) {
             return new SpoofDetectionResult(true, rawConfidence, level, "High suspicion of spoofing.", false, false);
         }
@@ -222,6 +288,7 @@ public class SpoofDetectionManager {
     }
 
     public void reset() {
+        resetLivenessSprt();
         realStreak = 0;
         suspicionScore = 0;
         livenessChallengeActive = false;
@@ -247,10 +314,26 @@ public class SpoofDetectionManager {
         framesSinceChallengeStarted = 0;
         blinkDetectedInChallenge = false;
         suspicionScore = 0;
+        // Decide on fresh evidence after the challenge
+        resetLivenessSprt();
         // Activate a short bonus window to stabilize real-face decisions
         livenessBonusFramesRemaining = LIVENESS_BONUS_FRAMES;
     }
 
+    /**
+     * Log the frames that led to a decision, in the format SequentialLivenessReplay reads.
+     * The next frame starts a new test, so its trace starts empty.
+     */
+    private void logDecisionTrace(SequentialLivenessSprt.Decision decision) {
+        Log.d(TAG, "SPRT " + decision + (LIKELIHOODS_CALIBRATED ? "" : " (shadow)") + " trace: " + decisionTrace);
+        decisionTrace.setLength(0);
+    }
+
+    private void resetLivenessSprt() {
+        livenessSprt.reset();
+        decisionTrace.setLength(0);
+    }
+
     private void startLivenessChallenge() {
         if (!livenessChallengeActive) {
             livenessChallengeActive = true;
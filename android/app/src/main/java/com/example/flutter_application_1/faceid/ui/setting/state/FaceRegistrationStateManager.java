@@ -24,6 +24,12 @@ public class FaceRegistrationStateManager {
     private int confirmationCounter = 0;
     private static final int CONFIRMATION_THRESHOLD = 2; // Giảm từ 3 xuống 2 để UI phản hồi nhanh hơn
 
+    // Thông báo "đang xác nhận": chỉ giữ bản mới nhất, tối đa một message chờ trên main thread
+    private final Object pendingNoticeLock = new Object();
+    private FaceRegistrationState pendingNoticeState;
+    private String pendingNoticeMessage;
+    private final Runnable pendingNoticeRunnable = this::deliverPendingNotice;
+
     // Timeouts
     private Runnable detectionTimeoutRunnable;
     private Runnable registrationTimeoutRunnable;
@@ -77,11 +83,48 @@ public class FaceRegistrationStateManager {
             // Ngay cả khi chưa đủ xác nhận, vẫn thông báo trạng thái đang chờ để UI có thể cập nhật
             if (listener != null) {
                 String pendingMessage = "Đang xác nhận: " + (customMessage != null ? customMessage : newState.getDefaultMessage());
-                mainHandler.post(() -> listener.onStateChanged(newState, pendingMessage));
+                postPendingNotice(newState, pendingMessage);
             }
         }
     }
 
+    /**
+     * Gộp các thông báo "đang xác nhận" của nhiều frame: nếu đã có một message chờ thì chỉ thay nội dung
+     */
+    private void postPendingNotice(FaceRegistrationState state, String message) {
+        boolean post;
+        synchronized (pendingNoticeLock) {
+            post = pendingNoticeState == null;
+            pendingNoticeState = state;
+            pendingNoticeMessage = message;
+        }
+        if (post) {
+            mainHandler.post(pendingNoticeRunnable);
+        }
+    }
+
+    private void dropPendingNotice() {
+        synchronized (pendingNoticeLock) {
+            mainHandler.removeCallbacks(pendingNoticeRunnable);
+            pendingNoticeState = null;
+            pendingNoticeMessage = null;
+        }
+    }
+
+    private void deliverPendingNotice() {
+        FaceRegistrationState state;
+        String message;
+        synchronized (pendingNoticeLock) {
+            state = pendingNoticeState;
+            message = pendingNoticeMessage;
+            pendingNoticeState = null;
+            pendingNoticeMessage = null;
+        }
+        if (state != null && listener != null) {
+            listener.onStateChanged(state, message);
+        }
+    }
+
     private boolean confirmTransition(FaceRegistrationState newState, String customMessage) {
         FaceRegistrationState oldState = currentState.get();
 
@@ -101,7 +144,8 @@ public class FaceRegistrationStateManager {
             // Set new timeouts if needed
             scheduleTimeouts(newState);
 
-            // Notify listener on main thread
+            // Notify listener on main thread; a queued "confirming" notice is now stale
+            dropPendingNotice();
             String message = customMessage != null ? customMessage : newState.getDefaultMessage();
             mainHandler.post(() -> {
                 if (listener != null) {
@@ -215,6 +259,7 @@ public class FaceRegistrationStateManager {
      */
     public void cleanup() {
         cancelTimeouts();
+        dropPendingNotice();
         listener = null;
         Log.d(TAG, "State manager cleaned up");
     }
@@ -10,18 +10,13 @@ import android.view.View;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.work.Data;
-import androidx.work.OneTimeWorkRequest;
-import androidx.work.WorkInfo;
-import androidx.work.WorkManager;
 
 import com.example.flutter_application_1.auth.AuthManager;
 import com.example.flutter_application_1.databinding.ActivityFaceIdSuccessBinding;
-import com.example.flutter_application_1.faceid.adapter.workers.FaceEmbeddingSyncWorker;
 
 /**
  * Success Activity cho Face ID Registration
- * Hiển thị thành công và handle background sync
+ * Hiển thị thành công; upload lỗi đã nằm trong EmbeddingOutbox và được sync bởi FaceEmbeddingSyncWorker
  * Hỗ trợ 2 trường hợp:
  * 1. Sau khi đăng ký thành công - không có button update
  * 2. Kiểm tra trạng thái thành công - có button update
@@ -31,27 +26,24 @@ public class FaceIdSuccessActivity extends AppCompatActivity {
     
     private static final String EXTRA_USER_ID = "user_id";
     private static final String EXTRA_SUCCESS_MESSAGE = "success_message";
-    private static final String EXTRA_BITMAP_PATH = "bitmap_path";
     private static final String EXTRA_ACTION = "action"; // "register" | "update" | "status_check"
     private static final String EXTRA_SHOW_UPDATE_BUTTON = "show_update_button"; // true để hiển thị button update
     private static final String EXTRA_USER_NAME = "user_name"; // Thêm biến mới để lấy tên người dùng
     
     private ActivityFaceIdSuccessBinding binding;
     private Handler handler = new Handler(Looper.getMainLooper());
-    private WorkManager workManager;
     
-    public static Intent createIntent(Context context, String userId, String successMessage, String bitmapPath) {
+    public static Intent createIntent(Context context, String userId, String successMessage) {
         Intent intent = new Intent(context, FaceIdSuccessActivity.class);
         intent.putExtra(EXTRA_USER_ID, userId);
         intent.putExtra(EXTRA_SUCCESS_MESSAGE, successMessage);
-        intent.putExtra(EXTRA_BITMAP_PATH, bitmapPath);
         intent.putExtra(EXTRA_ACTION, "register");
         intent.putExtra(EXTRA_SHOW_UPDATE_BUTTON, false); // Sau khi đăng ký thành công, không hiển thị button update
         return intent;
     }
 
-    public static Intent createIntent(Context context, String userId, String successMessage, String bitmapPath, String action) {
-        Intent intent = createIntent(context, userId, successMessage, bitmapPath);
+    public static Intent createIntent(Context context, String userId, String successMessage, String action) {
+        Intent intent = createIntent(context, userId, successMessage);
         intent.putExtra(EXTRA_ACTION, action);
         // ✅ FIX: Hiển thị button update khi update thành công, chỉ ẩn khi đăng ký thành công
         boolean showUpdateButton = !"register".equals(action); // Hiển thị button update cho update và verify, ẩn cho register
@@ -70,22 +62,20 @@ public class FaceIdSuccessActivity extends AppCompatActivity {
     }
     
     // ✅ NEW: Intent cho đăng ký thành công với userName
-    public static Intent createRegisterSuccessIntent(Context context, String userId, String userName, String bitmapPath) {
+    public static Intent createRegisterSuccessIntent(Context context, String userId, String userName) {
         Intent intent = new Intent(context, FaceIdSuccessActivity.class);
         intent.putExtra(EXTRA_USER_ID, userId);
         intent.putExtra(EXTRA_USER_NAME, userName);
-        intent.putExtra(EXTRA_BITMAP_PATH, bitmapPath);
         intent.putExtra(EXTRA_ACTION, "register");
         intent.putExtra(EXTRA_SHOW_UPDATE_BUTTON, false);
         return intent;
     }
     
     // ✅ NEW: Intent cho cập nhật thành công với userName
-    public static Intent createUpdateSuccessIntent(Context context, String userId, String userName, String bitmapPath) {
+    public static Intent createUpdateSuccessIntent(Context context, String userId, String userName) {
         Intent intent = new Intent(context, FaceIdSuccessActivity.class);
         intent.putExtra(EXTRA_USER_ID, userId);
         intent.putExtra(EXTRA_USER_NAME, userName);
-        intent.putExtra(EXTRA_BITMAP_PATH, bitmapPath);
         intent.putExtra(EXTRA_ACTION, "update");
         intent.putExtra(EXTRA_SHOW_UPDATE_BUTTON, false);
         return intent;
@@ -115,19 +105,11 @@ public class FaceIdSuccessActivity extends AppCompatActivity {
         binding = ActivityFaceIdSuccessBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
         
-        workManager = WorkManager.getInstance(this);
-        
         setupUI();
         
         // ✅ NEW: Gọi setupClickListeners sau khi setupUI
         setupClickListeners();
         
-        // Chỉ start background sync khi có bitmap path (trường hợp đăng ký/update)
-        String bitmapPath = getIntent().getStringExtra(EXTRA_BITMAP_PATH);
-        if (bitmapPath != null && !bitmapPath.isEmpty()) {
-            startBackgroundSync();
-        }
-        
         // ✅ NEW: Chỉ auto-finish khi đăng ký/update thành công, không áp dụng cho status check
         String action = getIntent().getStringExtra(EXTRA_ACTION);
         if ("register".equals(action) || "update".equals(action)) {
@@ -197,49 +179,6 @@ public class FaceIdSuccessActivity extends AppCompatActivity {
     
 
     
-    private void startBackgroundSync() {
-        String userId = getIntent().getStringExtra(EXTRA_USER_ID);
-        String bitmapPath = getIntent().getStringExtra(EXTRA_BITMAP_PATH);
-        
-        if (userId == null || bitmapPath == null) {
-            Log.w(TAG, "Missing data for background sync");
-            return;
-        }
-        // Guard: ensure file exists before enqueueing work
-        try {
-            java.io.File f = new java.io.File(bitmapPath);
-            if (!f.exists()) {
-                Log.w(TAG, "Bitmap file not found, skip background sync: " + bitmapPath);
-                return;
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "Error checking bitmap file, skip background sync", e);
-            return;
-        }
-
-        // Create work request
-        String action = getIntent().getStringExtra(EXTRA_ACTION);
-        Data inputData = new Data.Builder()
-                .putString(FaceEmbeddingSyncWorker.KEY_USER_ID, userId)
-                .putString(FaceEmbeddingSyncWorker.KEY_BITMAP_PATH, bitmapPath)
-                .putString(FaceEmbeddingSyncWorker.KEY_ACTION, action)
-                .build();
-        
-        OneTimeWorkRequest syncWork = new OneTimeWorkRequest.Builder(FaceEmbeddingSyncWorker.class)
-                .setInputData(inputData)
-                .build();
-        
-        // Observe work progress
-        workManager.getWorkInfoByIdLiveData(syncWork.getId())
-                .observe(this, workInfo -> {
-                });
-        
-        // Enqueue work
-        workManager.enqueue(syncWork);
-        
-        Log.d(TAG, "Background sync work enqueued");
-    }
-
     private void animateSuccessIcon() {
         // ✅ NEW: Animation đẹp mắt hơn cho success icon
         binding.ivSuccessIconContainer.setScaleX(0f);
@@ -0,0 +1,123 @@
+package com.example.flutter_application_1.faceid.util;
+
+/**
+ * Consecutive-failure circuit breaker with half-open probing.
+ *
+ * CLOSED lets every call through. After failureThreshold failures in a row it opens and rejects calls
+ * for openDurationMs; then it goes HALF_OPEN and lets probes through one at a time. A successful probe
+ * closes it, a failed one opens it again. Time is passed in by the caller, so the breaker runs the same
+ * under a fake clock. Thread-safe.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAtMs = 0;
+    private boolean probeInFlight = false;
+    private int timesOpened = 0;
+
+    /**
+     * @param failureThreshold Failures in a row that open the circuit
+     * @param openDurationMs   How long the circuit stays open before a probe is allowed
+     */
+    public CircuitBreaker(int failureThreshold, long openDurationMs) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openDurationMs = openDurationMs;
+    }
+
+    /**
+     * Whether a call may go out now. In HALF_OPEN only one probe is allowed until it reports back.
+     */
+    public synchronized boolean tryAcquire(long nowMs) {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (nowMs - openedAtMs < openDurationMs) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            case HALF_OPEN:
+            default:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Hand back a permit whose call ended without a verdict (e.g. cancelled), so a half-open
+     * circuit lets the next probe through instead of waiting forever
+     */
+    public synchronized void release() {
+        probeInFlight = false;
+    }
+
+    public synchronized void onFailure(long nowMs) {
+        probeInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                timesOpened++;
+            }
+            state = State.OPEN;
+            openedAtMs = nowMs;
+        }
+    }
+
+    /**
+     * State as of nowMs: an open circuit whose wait is over reports HALF_OPEN
+     */
+    public synchronized State getState(long nowMs) {
+        if (state == State.OPEN && nowMs - openedAtMs >= openDurationMs) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * Time left before an open circuit lets a probe through, 0 otherwise
+     */
+    public synchronized long getRemainingOpenMs(long nowMs) {
+        return state == State.OPEN ? Math.max(0, openDurationMs - (nowMs - openedAtMs)) : 0;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * How many times the circuit went from closed or half-open to open
+     */
+    public synchronized int getTimesOpened() {
+        return timesOpened;
+    }
+
+    public synchronized void reset() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+}
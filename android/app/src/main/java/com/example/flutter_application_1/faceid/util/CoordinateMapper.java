@@ -70,8 +70,17 @@ public final class CoordinateMapper {
      * Returns null if mapping not available.
      */
     public RectF mapViewRectToBitmap(RectF viewRect) {
+        RectF out = new RectF();
+        return mapViewRectToBitmap(viewRect, out) ? out : null;
+    }
+
+    /**
+     * Allocation-free variant of {@link #mapViewRectToBitmap(RectF)} writing into {@code out}.
+     * Returns false (leaving {@code out} untouched) if mapping not available.
+     */
+    public boolean mapViewRectToBitmap(RectF viewRect, RectF out) {
         Mapping m = current.get();
-        if (m == null || viewRect == null) return null;
+        if (m == null || viewRect == null) return false;
 
         float scale = Math.max((float) m.viewWidth / (float) m.bitmapWidth,
                                (float) m.viewHeight / (float) m.bitmapHeight);
@@ -111,7 +120,8 @@ public final class CoordinateMapper {
         t = Math.max(0f, Math.min(t, m.bitmapHeight));
         b = Math.max(0f, Math.min(b, m.bitmapHeight));
 
-        return new RectF(l, t, r, b);
+        out.set(l, t, r, b);
+        return true;
     }
 
     /**
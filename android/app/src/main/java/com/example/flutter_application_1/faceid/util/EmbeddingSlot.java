@@ -0,0 +1,88 @@
+package com.example.flutter_application_1.faceid.util;
+
+/**
+ * Holds the single best recent face embedding for a short time.
+ *
+ * A new embedding replaces the held one if the slot is empty or expired, or if it is at most
+ * qualitySlack worse: a slightly weaker but newer capture beats a stale one, a clearly worse one does
+ * not. An embedding is taken at most once and is gone after ttlMs. Timestamps are passed in; not
+ * thread-safe, the owner synchronizes.
+ */
+public final class EmbeddingSlot {
+    private final long ttlMs;
+    private final float qualitySlack;
+
+    private float[] embedding;
+    private float quality;
+    private long capturedAtMs;
+
+    /**
+     * @param ttlMs        How long an embedding stays usable after its frame was captured
+     * @param qualitySlack How much lower a newer embedding's quality may be and still replace the held one
+     */
+    public EmbeddingSlot(long ttlMs, float qualitySlack) {
+        this.ttlMs = ttlMs;
+        this.qualitySlack = qualitySlack;
+    }
+
+    /**
+     * Whether an embedding of this quality, captured now, would be kept. Lets the owner skip
+     * computing an embedding that would be thrown away.
+     */
+    public boolean wouldAccept(float quality, long nowMs) {
+        return embedding == null || isExpired(nowMs) || quality >= this.quality - qualitySlack;
+    }
+
+    /**
+     * Offer an embedding of a frame captured at capturedAtMs
+     *
+     * @return true if the slot now holds it
+     */
+    public boolean offer(float[] embedding, float quality, long capturedAtMs, long nowMs) {
+        if (nowMs - capturedAtMs >= ttlMs) {
+            return false;
+        }
+        if (this.embedding != null && !isExpired(nowMs)
+                && (capturedAtMs < this.capturedAtMs || quality < this.quality - qualitySlack)) {
+            return false;
+        }
+        this.embedding = embedding;
+        this.quality = quality;
+        this.capturedAtMs = capturedAtMs;
+        return true;
+    }
+
+    /**
+     * Remove and return the held embedding, or null if there is none or it expired
+     */
+    public float[] take(long nowMs) {
+        float[] result = isExpired(nowMs) ? null : embedding;
+        clear();
+        return result;
+    }
+
+    public boolean isEmpty(long nowMs) {
+        return embedding == null || isExpired(nowMs);
+    }
+
+    /**
+     * Age of the held embedding, -1 if empty
+     */
+    public long getAgeMs(long nowMs) {
+        return embedding != null ? nowMs - capturedAtMs : -1;
+    }
+
+    public float getQuality() {
+        return quality;
+    }
+
+    public void clear() {
+        embedding = null;
+        quality = 0f;
+        capturedAtMs = 0;
+    }
+
+    private boolean isExpired(long nowMs) {
+        return embedding == null || nowMs - capturedAtMs >= ttlMs;
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.flutter_application_1.faceid.util;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.Locale;
+
+/**
+ * Pre-capture face analysis shared by the register, update and verify screens.
+ *
+ * Collects per-frame realness scores for up to {@link #DURATION_MS}, reports the running trend every
+ * {@link #VERDICT_INTERVAL_MS} (the screens tint their progress bar with it) and finishes with a
+ * {@link Result}. It finishes early once the mean is confidently above the bar: after
+ * {@link #MIN_DURATION_MS} and {@link #MIN_FRAMES_FOR_EARLY_PASS} frames, with consistent scores and a
+ * 99% lower bound on the untrimmed mean at or above the bar. The bound uses the effective sample size
+ * of {@link StreamingScoreStats}, since consecutive frames of a still face are strongly correlated, so
+ * an early pass is at least as strict as the full-window check.
+ *
+ * Scores may be added from any thread. Start, cancel and the listener run on the timer's thread, the
+ * main thread for {@link #FaceQualityAnalysis(Handler)}.
+ */
+public final class FaceQualityAnalysis {
+    public static final int DURATION_MS = 5000;
+    public static final int MIN_DURATION_MS = 2000;
+    public static final int MIN_FRAMES_FOR_EARLY_PASS = 20;
+    public static final float EARLY_PASS_Z = 2.58f; // Two-sided 99% interval
+    public static final int VERDICT_INTERVAL_MS = 250;
+    private static final float MIN_AVERAGE_SCORE = 0.75f;
+    // Below the bar by less than this still proceeds, with a warning
+    private static final float ACCEPTABLE_MARGIN = 0.05f;
+
+    public interface Clock {
+        long nowMs();
+    }
+
+    /**
+     * Runs a task after a delay
+     */
+    public interface Timer {
+        void schedule(Runnable task, long delayMs);
+    }
+
+    /**
+     * Running mean against the bar
+     */
+    public enum Trend {
+        GOOD,       // At or above
+        BORDERLINE, // Within the acceptable margin
+        BAD
+    }
+
+    public enum Verdict {
+        PASS,       // High quality and consistent
+        ACCEPTABLE, // Within the acceptable margin of the bar
+        FAIL
+    }
+
+    public static final class Result {
+        public final Verdict verdict;
+        public final int frameCount;
+        public final StreamingScoreStats.Summary stats;
+        public final boolean consistent;
+        public final boolean finishedEarly;
+
+        Result(Verdict verdict, int frameCount, StreamingScoreStats.Summary stats, boolean consistent,
+               boolean finishedEarly) {
+            this.verdict = verdict;
+            this.frameCount = frameCount;
+            this.stats = stats;
+            this.consistent = consistent;
+            this.finishedEarly = finishedEarly;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "Face Analysis Results - Frames: %d, Average Score: %.3f, Min: %.3f, Max: %.3f, Variance: %.5f, " +
+                            "isConsistent: %b, verdict: %s, early: %b",
+                    frameCount, stats.mean, stats.min, stats.max, stats.variance, consistent, verdict, finishedEarly);
+        }
+    }
+
+    public interface Listener {
+        void onTrend(Trend trend);
+
+        void onFinished(Result result);
+    }
+
+    private final StreamingScoreStats scores = new StreamingScoreStats();
+    private final Timer timer;
+    private final Clock clock;
+
+    private volatile boolean running = false;
+    // Bumped on every start and cancel, so ticks of an earlier run stop
+    private int run = 0;
+    private boolean livenessVerified;
+    private long startMs;
+    private Listener listener;
+
+    public FaceQualityAnalysis(Handler handler) {
+        this(handler::postDelayed, SystemClock::elapsedRealtime);
+    }
+
+    public FaceQualityAnalysis(Timer timer, Clock clock) {
+        this.timer = timer;
+        this.clock = clock;
+    }
+
+    /**
+     * Start a new analysis window
+     *
+     * @param livenessVerified The liveness challenge passed: relaxed bar and variance, trimmed statistics
+     * @return false if an analysis is already running
+     */
+    public boolean start(boolean livenessVerified, Listener listener) {
+        if (running) {
+            return false;
+        }
+        scores.clear();
+        this.livenessVerified = livenessVerified;
+        this.listener = listener;
+        startMs = clock.nowMs();
+        running = true;
+        scheduleTick(++run);
+        return true;
+    }
+
+    /**
+     * Stop without a result; scores added afterwards are ignored
+     */
+    public void cancel() {
+        running = false;
+        run++;
+        scores.clear();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Add one frame's realness in [0, 1]; ignored unless an analysis is running
+     */
+    public void addScore(float realness) {
+        if (running) {
+            scores.add(realness);
+        }
+    }
+
+    public int getFrameCount() {
+        return scores.getCount();
+    }
+
+    /**
+     * Minimum average realness for the analysis to pass
+     */
+    public float minAverage() {
+        // After liveness, relax the bar slightly
+        return livenessVerified ? Math.max(0.6f, MIN_AVERAGE_SCORE - 0.1f) : MIN_AVERAGE_SCORE;
+    }
+
+    /**
+     * Maximum realness variance for the analysis to count as consistent
+     */
+    public float maxVariance() {
+        // Relax variance threshold after liveness due to natural gaze recovery
+        return livenessVerified ? 0.06f : 0.03f;
+    }
+
+    public Trend trend() {
+        float mean = scores.getMean();
+        float bar = minAverage();
+        if (mean >= bar) {
+            return Trend.GOOD;
+        }
+        return mean >= bar - ACCEPTABLE_MARGIN ? Trend.BORDERLINE : Trend.BAD;
+    }
+
+    /**
+     * True once the scores so far already guarantee a pass
+     */
+    public boolean isDecisive(long elapsedMs) {
+        return elapsedMs >= MIN_DURATION_MS
+                && scores.getCount() >= MIN_FRAMES_FOR_EARLY_PASS
+                && scores.getVariance() < maxVariance()
+                && scores.getMeanLowerBound(EARLY_PASS_Z) >= minAverage();
+    }
+
+    /**
+     * Verdict over the scores so far; with liveness verified the top and bottom 10% are trimmed
+     */
+    public Result evaluate(boolean finishedEarly) {
+        int frameCount = scores.getCount();
+        int trim = livenessVerified && frameCount >= 10 ? Math.max(1, Math.round(frameCount * 0.1f)) : 0;
+        StreamingScoreStats.Summary stats = scores.summarize(trim);
+        boolean consistent = stats.variance < maxVariance();
+        float bar = minAverage();
+        Verdict verdict;
+        if (stats.mean >= bar && consistent) {
+            verdict = Verdict.PASS;
+        } else if (stats.mean >= bar - ACCEPTABLE_MARGIN) {
+            verdict = Verdict.ACCEPTABLE;
+        } else {
+            verdict = Verdict.FAIL;
+        }
+        return new Result(verdict, frameCount, stats, consistent, finishedEarly);
+    }
+
+    private void scheduleTick(int tickRun) {
+        timer.schedule(() -> tick(tickRun), VERDICT_INTERVAL_MS);
+    }
+
+    private void tick(int tickRun) {
+        if (!running || tickRun != run) {
+            return;
+        }
+        long elapsedMs = clock.nowMs() - startMs;
+        if (elapsedMs >= DURATION_MS) {
+            finish(false);
+            return;
+        }
+        listener.onTrend(trend());
+        if (isDecisive(elapsedMs)) {
+            finish(true);
+            return;
+        }
+        scheduleTick(tickRun);
+    }
+
+    private void finish(boolean early) {
+        running = false;
+        listener.onFinished(evaluate(early));
+    }
+}
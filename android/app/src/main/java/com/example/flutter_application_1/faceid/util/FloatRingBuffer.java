@@ -0,0 +1,92 @@
+package com.example.flutter_application_1.faceid.util;
+
+/**
+ * Fixed-capacity ring buffer of primitive floats with a running sum.
+ * Replaces per-frame {@code List<Float>} histories: no boxing, no {@code remove(0)} shifting,
+ * and the moving average is O(1).
+ *
+ * Not thread-safe; callers own a buffer per processing thread.
+ */
+public final class FloatRingBuffer {
+    private final float[] values;
+    private int head = 0;   // Next write position
+    private int size = 0;
+    private double sum = 0.0;
+
+    public FloatRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0: " + capacity);
+        }
+        this.values = new float[capacity];
+    }
+
+    /**
+     * Append a value, evicting the oldest one when the buffer is full
+     */
+    public void add(float value) {
+        if (size == values.length) {
+            sum -= values[head];
+        } else {
+            size++;
+        }
+        values[head] = value;
+        sum += value;
+        head++;
+        if (head == values.length) {
+            head = 0;
+        }
+    }
+
+    /**
+     * Get the i-th value, oldest first (0 <= i < size)
+     */
+    public float get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+        }
+        int index = head - size + i;
+        if (index < 0) {
+            index += values.length;
+        }
+        return values[index];
+    }
+
+    /**
+     * Get the most recently added value, or {@code defaultValue} when empty
+     */
+    public float getLast(float defaultValue) {
+        if (size == 0) {
+            return defaultValue;
+        }
+        return values[head == 0 ? values.length - 1 : head - 1];
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Mean of the buffered values, or {@code defaultValue} when empty
+     */
+    public float getMean(float defaultValue) {
+        return size == 0 ? defaultValue : (float) (sum / size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public boolean isFull() {
+        return size == values.length;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+        sum = 0.0;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.flutter_application_1.faceid.util;
+
+/**
+ * Accepts a new state only after it has been observed continuously for a minimum time.
+ *
+ * Replaces "N consecutive frames" checks, which take three times longer at 10 fps than at 30 fps.
+ * States are small ints (enum ordinals, 0/1 for booleans) so updates do not allocate.
+ */
+public final class HoldTimeDebouncer {
+    private final long holdTimeMs;
+    private final int initialState;
+    private int stableState;
+    private int candidateState;
+    private long candidateSinceMs;
+    private boolean hasCandidate = false;
+
+    /**
+     * @param holdTimeMs   how long a state must persist before it becomes stable
+     * @param initialState stable state before any observation
+     */
+    public HoldTimeDebouncer(long holdTimeMs, int initialState) {
+        this.holdTimeMs = holdTimeMs;
+        this.initialState = initialState;
+        this.stableState = initialState;
+        this.candidateState = initialState;
+    }
+
+    /**
+     * Observe the raw state for a frame
+     *
+     * @return the stable state after this observation
+     */
+    public int update(int observedState, long timestampMs) {
+        if (!hasCandidate || observedState != candidateState) {
+            candidateState = observedState;
+            candidateSinceMs = timestampMs;
+            hasCandidate = true;
+        }
+        if (candidateState != stableState && timestampMs - candidateSinceMs >= holdTimeMs) {
+            stableState = candidateState;
+        }
+        return stableState;
+    }
+
+    public int getStableState() {
+        return stableState;
+    }
+
+    /**
+     * How long the current raw state has been observed, in ms
+     */
+    public long getCandidateDurationMs(long timestampMs) {
+        return hasCandidate ? timestampMs - candidateSinceMs : 0;
+    }
+
+    public void reset() {
+        stableState = initialState;
+        candidateState = initialState;
+        hasCandidate = false;
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.flutter_application_1.faceid.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.flutter_application_1.BuildConfig;
+import com.example.flutter_application_1.faceid.data.service.TFLiteDelegateManager;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * First-run autotuner for TFLite interpreter settings.
+ *
+ * Benchmarks a model under each candidate configuration (CPU with 1/2/4 threads and XNNPACK on/off,
+ * plus GPU and NNAPI when the device has them) on a fixed zero-filled input, and persists the fastest
+ * one per model and device fingerprint. Later loads read the stored choice and skip the benchmark.
+ * Candidates that fail to build or run are skipped, so devices without accelerators get the best CPU setup.
+ *
+ * Models load in parallel and may tune at the same time. Each candidate's timed runs hold a lock for
+ * its backend, so two models never time the same hardware at once and skew each other, while a GPU
+ * or NNAPI benchmark of one model still overlaps a CPU benchmark of another.
+ */
+public final class InterpreterAutotuner {
+    private static final String TAG = "InterpreterAutotuner";
+    private static final String PREFS_NAME = "faceid_interpreter_autotune";
+    private static final int WARMUP_RUNS = 2;
+    private static final int TIMED_RUNS = 5;
+    private static final int[] CPU_THREAD_COUNTS = {1, 2, 4};
+
+    // One lock per backend, see the class comment; one per model so a model is tuned once
+    private static final Map<Backend, Object> BACKEND_LOCKS = new EnumMap<>(Backend.class);
+    private static final Map<String, Object> MODEL_LOCKS = new ConcurrentHashMap<>();
+
+    static {
+        for (Backend backend : Backend.values()) {
+            BACKEND_LOCKS.put(backend, new Object());
+        }
+    }
+
+    public enum Backend {
+        CPU,
+        GPU,
+        NNAPI
+    }
+
+    /**
+     * One interpreter configuration; threads and XNNPACK also apply to ops an accelerator falls back on
+     */
+    public static final class Config {
+        public static final Config CPU_DEFAULT = new Config(Backend.CPU, 2, true);
+
+        public final Backend backend;
+        public final int numThreads;
+        public final boolean useXnnpack;
+
+        public Config(Backend backend, int numThreads, boolean useXnnpack) {
+            this.backend = backend;
+            this.numThreads = numThreads;
+            this.useXnnpack = useXnnpack;
+        }
+
+        String encode() {
+            return backend.name() + ":" + numThreads + ":" + useXnnpack;
+        }
+
+        static Config decode(String value) {
+            try {
+                String[] parts = value.split(":");
+                return new Config(Backend.valueOf(parts[0]), Integer.parseInt(parts[1]), Boolean.parseBoolean(parts[2]));
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return backend == Backend.CPU
+                    ? "CPU(" + numThreads + " threads, XNNPACK " + (useXnnpack ? "on" : "off") + ")"
+                    : backend.name();
+        }
+    }
+
+    private InterpreterAutotuner() {}
+
+    /**
+     * Create an interpreter with the tuned configuration for this model, benchmarking on first use.
+     * The returned handle owns the interpreter and its delegate; close it instead of the interpreter.
+     *
+     * @param modelName  Stable model identifier (e.g. the asset file name)
+     * @param model      Direct buffer holding the model
+     * @param inputShape Shape to resize input 0 to before running, or null to keep the model's shape
+     */
+    public static TFLiteDelegateManager.Handle createInterpreter(Context context, String modelName, ByteBuffer model,
+                                                                 int[] inputShape) {
+        Config config = tune(context, modelName, model, inputShape);
+        return TFLiteDelegateManager.getInstance().createInterpreter(modelName, model, config);
+    }
+
+    /**
+     * Fastest configuration for this model on this device, from storage or by benchmarking the candidates
+     */
+    public static Config tune(Context context, String modelName, ByteBuffer model, int[] inputShape) {
+        SharedPreferences prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String fingerprint = deviceFingerprint(model);
+
+        Config stored = readStored(prefs, modelName, fingerprint);
+        if (stored != null) {
+            Log.d(TAG, modelName + ": using stored config " + stored);
+            return stored;
+        }
+
+        synchronized (MODEL_LOCKS.computeIfAbsent(modelName, name -> new Object())) {
+            // Another loader may have tuned the same model while we waited
+            stored = readStored(prefs, modelName, fingerprint);
+            if (stored != null) {
+                return stored;
+            }
+
+            Config best = null;
+            long bestNs = Long.MAX_VALUE;
+            StringBuilder report = new StringBuilder(modelName).append(" autotune:");
+            for (Config candidate : candidates(context)) {
+                long medianNs;
+                synchronized (BACKEND_LOCKS.get(candidate.backend)) {
+                    medianNs = benchmark(modelName, model, candidate, inputShape);
+                }
+                report.append("\n  ").append(candidate).append(": ")
+                        .append(medianNs < 0 ? "failed" : String.format("%.2fms", medianNs / 1e6));
+                if (medianNs >= 0 && medianNs < bestNs) {
+                    bestNs = medianNs;
+                    best = candidate;
+                }
+            }
+            Log.i(TAG, report.toString());
+
+            if (best == null) {
+                // Nothing ran (e.g. broken model); do not persist so the next start tries again
+                Log.w(TAG, modelName + ": no candidate ran, using " + Config.CPU_DEFAULT);
+                return Config.CPU_DEFAULT;
+            }
+
+            prefs.edit().putString(modelName, fingerprint + "#" + best.encode()).apply();
+            Log.i(TAG, modelName + ": selected " + best);
+            return best;
+        }
+    }
+
+    private static Config readStored(SharedPreferences prefs, String modelName, String fingerprint) {
+        String value = prefs.getString(modelName, null);
+        if (value == null) {
+            return null;
+        }
+        int separator = value.indexOf('#');
+        if (separator < 0 || !value.substring(0, separator).equals(fingerprint)) {
+            // Different device image, app build or model file: tune again
+            return null;
+        }
+        return Config.decode(value.substring(separator + 1));
+    }
+
+    private static String deviceFingerprint(ByteBuffer model) {
+        String raw = Build.FINGERPRINT + "|" + Runtime.getRuntime().availableProcessors()
+                + "|" + BuildConfig.VERSION_CODE + "|" + model.capacity();
+        return Integer.toHexString(raw.hashCode());
+    }
+
+    private static List<Config> candidates(Context context) {
+        List<Config> candidates = new ArrayList<>();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads : CPU_THREAD_COUNTS) {
+            if (threads > 1 && threads > cores) {
+                continue;
+            }
+            candidates.add(new Config(Backend.CPU, threads, true));
+            candidates.add(new Config(Backend.CPU, threads, false));
+        }
+        if (InterpreterOptionsFactory.isGpuUsable(context)) {
+            candidates.add(new Config(Backend.GPU, Config.CPU_DEFAULT.numThreads, true));
+        }
+        if (InterpreterOptionsFactory.isNnapiUsable(context)) {
+            candidates.add(new Config(Backend.NNAPI, Config.CPU_DEFAULT.numThreads, true));
+        }
+        return candidates;
+    }
+
+    /**
+     * Median inference time in nanoseconds, or -1 if the configuration failed
+     */
+    private static long benchmark(String modelName, ByteBuffer model, Config config, int[] inputShape) {
+        TFLiteDelegateManager.Handle handle = null;
+        try {
+            handle = TFLiteDelegateManager.getInstance().createInterpreter(modelName, model, config);
+            if (handle.getBackend() != config.backend) {
+                // Accelerator rejected the model and the manager fell back to the CPU
+                return -1;
+            }
+            Interpreter interpreter = handle.getInterpreter();
+            if (inputShape != null) {
+                interpreter.resizeInput(0, inputShape);
+            }
+            interpreter.allocateTensors();
+
+            ByteBuffer[] inputs = new ByteBuffer[interpreter.getInputTensorCount()];
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = ByteBuffer.allocateDirect(interpreter.getInputTensor(i).numBytes()).order(ByteOrder.nativeOrder());
+            }
+            Map<Integer, Object> outputs = new HashMap<>();
+            for (int i = 0; i < interpreter.getOutputTensorCount(); i++) {
+                outputs.put(i, ByteBuffer.allocateDirect(interpreter.getOutputTensor(i).numBytes()).order(ByteOrder.nativeOrder()));
+            }
+
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                run(interpreter, inputs, outputs);
+            }
+            long[] timesNs = new long[TIMED_RUNS];
+            for (int i = 0; i < TIMED_RUNS; i++) {
+                long start = System.nanoTime();
+                run(interpreter, inputs, outputs);
+                timesNs[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(timesNs);
+            return timesNs[TIMED_RUNS / 2];
+        } catch (Throwable t) {
+            Log.d(TAG, config + " rejected: " + t.getMessage());
+            return -1;
+        } finally {
+            if (handle != null) {
+                handle.close();
+            }
+        }
+    }
+
+    private static void run(Interpreter interpreter, ByteBuffer[] inputs, Map<Integer, Object> outputs) {
+        for (ByteBuffer input : inputs) {
+            input.rewind();
+        }
+        for (Object output : outputs.values()) {
+            ((ByteBuffer) output).rewind();
+        }
+        interpreter.runForMultipleInputsOutputs(inputs, outputs);
+    }
+}
@@ -4,9 +4,10 @@ import android.content.Context;
 import android.os.Build;
 import android.util.Log;
 
+import com.example.flutter_application_1.faceid.data.service.TFLiteDelegateManager;
+
 import org.tensorflow.lite.Interpreter;
-import org.tensorflow.lite.nnapi.NnApiDelegate;
-import org.tensorflow.lite.gpu.GpuDelegate;
+import org.tensorflow.lite.gpu.CompatibilityList;
 
 public final class InterpreterOptionsFactory {
     private static final String TAG = "InterpreterOptionsFactory";
@@ -21,9 +22,9 @@ public final class InterpreterOptionsFactory {
         if (capabilityChecked) return;
         // GPU
         try {
-            GpuDelegate probe = new GpuDelegate();
-            probe.close();
-            gpuUsable = true;
+            CompatibilityList compatList = new CompatibilityList();
+            gpuUsable = compatList.isDelegateSupportedOnThisDevice();
+            compatList.close();
         } catch (Throwable t) {
             gpuUsable = false;
         }
@@ -37,35 +38,25 @@ public final class InterpreterOptionsFactory {
         Log.d(TAG, "Capabilities - GPU:" + gpuUsable + ", NNAPI:" + nnapiUsable);
     }
 
-    public static Interpreter.Options createCpuOptions() {
-        Interpreter.Options opts = new Interpreter.Options();
-        int threads = Math.min(2, Math.max(1, Runtime.getRuntime().availableProcessors()));
-        opts.setNumThreads(threads);
-        return opts;
+    public static boolean isGpuUsable(Context context) {
+        probe(context);
+        return gpuUsable;
     }
 
-    public static Interpreter.Options createBestOptions(Context context) {
+    public static boolean isNnapiUsable(Context context) {
         probe(context);
-        if (gpuUsable) {
-            try {
-                Interpreter.Options opts = new Interpreter.Options();
-                GpuDelegate gpu = new GpuDelegate();
-                opts.addDelegate(gpu);
-                return opts;
-            } catch (Throwable t) {
-                Log.w(TAG, "GPU delegate creation failed, falling back", t);
-            }
-        }
-        if (nnapiUsable) {
-            try {
-                Interpreter.Options opts = new Interpreter.Options();
-                NnApiDelegate nnapi = new NnApiDelegate();
-                opts.addDelegate(nnapi);
-                return opts;
-            } catch (Throwable t) {
-                Log.w(TAG, "NNAPI delegate creation failed, falling back to CPU", t);
-            }
-        }
-        return createCpuOptions();
+        return nnapiUsable;
+    }
+
+    /**
+     * CPU-side options for a configuration picked by {@link InterpreterAutotuner}. Accelerator delegates
+     * are attached by {@link TFLiteDelegateManager}, which owns their lifecycle.
+     */
+    public static Interpreter.Options createOptions(InterpreterAutotuner.Config config) {
+        Interpreter.Options opts = new Interpreter.Options();
+        // Threads and XNNPACK also cover ops an accelerator leaves on the CPU
+        opts.setNumThreads(config.numThreads);
+        opts.setUseXNNPACK(config.useXnnpack);
+        return opts;
     }
 }
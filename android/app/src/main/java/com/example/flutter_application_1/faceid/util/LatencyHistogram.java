@@ -0,0 +1,119 @@
+package com.example.flutter_application_1.faceid.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets.
+ *
+ * Values below 64 get a bucket each; above that every power of two is split into 32 buckets, so a
+ * recorded value is known to within about 3% across the whole range with a few hundred counters.
+ * {@link #record(long)} is wait-free apart from the max update and allocates nothing, so stages can
+ * call it on every frame from any thread. Readers see a consistent-enough view while writers run:
+ * a percentile may miss the few samples recorded during the scan. Units are the caller's; values
+ * above highestTrackableValue are clamped to it.
+ */
+public final class LatencyHistogram {
+    // 64 exact values, then 32 buckets per power of two
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+
+    private final long highestTrackableValue;
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    public LatencyHistogram(long highestTrackableValue) {
+        if (highestTrackableValue < 1) {
+            throw new IllegalArgumentException("highestTrackableValue must be >= 1");
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        this.counts = new AtomicLongArray(bucketIndex(highestTrackableValue) + 1);
+    }
+
+    /**
+     * Record one value; negative values count as 0
+     */
+    public void record(long value) {
+        long v = Math.max(0, Math.min(value, highestTrackableValue));
+        counts.incrementAndGet(bucketIndex(v));
+        totalValue.addAndGet(v);
+        long max;
+        while (v > (max = maxValue.get()) && !maxValue.compareAndSet(max, v)) {
+            // Lost the race to another writer; retry against its value
+        }
+        totalCount.incrementAndGet();
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    public double getMean() {
+        long count = totalCount.get();
+        return count > 0 ? (double) totalValue.get() / count : 0;
+    }
+
+    /**
+     * Smallest bucket bound at or below which the given share of values fall, capped at the max seen
+     *
+     * @param percentile 0..100
+     * @return 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        double share = Math.max(0, Math.min(percentile, 100)) / 100.0;
+        long target = Math.max(1, (long) Math.ceil(share * count));
+        long max = maxValue.get();
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Clear all counts. Values recorded while this runs may be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalValue.set(0);
+        maxValue.set(0);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // Shift so the value keeps its top SUB_BUCKET_BITS bits: value >> shift is in [32, 64)
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        return shift * HALF_SUB_BUCKET_COUNT + (int) (value >> shift);
+    }
+
+    /**
+     * Largest value that lands in the bucket
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / HALF_SUB_BUCKET_COUNT - 1;
+        long subBucket = index - (long) shift * HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
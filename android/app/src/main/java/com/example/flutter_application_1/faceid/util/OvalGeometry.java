@@ -0,0 +1,168 @@
+package com.example.flutter_application_1.faceid.util;
+
+/**
+ * Face-in-oval geometry shared by FaceIdService and OvalFaceOverlayView.
+ *
+ * The oval is stored in inverse-axis form (center plus 1/a and 1/b), so a fit is a few multiplies:
+ * ellipse value {@code (dx/a)^2 + (dy/b)^2} (≤ 1 inside), face/oval size ratios and
+ * normalized center offsets. No allocation; one instance per caller thread, not thread-safe.
+ */
+public final class OvalGeometry {
+
+    /**
+     * Positioning guidance, in priority order: position first, then size
+     */
+    public enum Guidance {
+        MOVE_RIGHT("Move face right"),
+        MOVE_LEFT("Move face left"),
+        MOVE_DOWN("Move face down"),
+        MOVE_UP("Move face up"),
+        CENTER_IN_OVAL("Position face within oval"),
+        MOVE_CLOSER("Move closer to camera"),
+        MOVE_AWAY("Move away from camera"),
+        ADJUST("Adjust face position"),
+        PERFECT("Perfect position");
+
+        private final String message;
+
+        Guidance(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    // Oval, inverse-axis form
+    private float centerX;
+    private float centerY;
+    private float semiAxisX;
+    private float semiAxisY;
+    private float invSemiAxisX;
+    private float invSemiAxisY;
+    private float width;
+    private float height;
+
+    // Last fit
+    private float faceCenterX;
+    private float faceCenterY;
+    private float ellipseValue;
+    private float widthRatio;
+    private float heightRatio;
+
+    /**
+     * Set the oval from its bounding box
+     */
+    public void setOval(float left, float top, float right, float bottom) {
+        setOval(left, top, right, bottom, 0f);
+    }
+
+    /**
+     * Set the oval from its bounding box, grown by a fraction of its size (half on each side)
+     *
+     * @param expandFraction e.g. 0.07 for a 7% larger oval; 0 for the box as given
+     */
+    public void setOval(float left, float top, float right, float bottom, float expandFraction) {
+        width = (right - left) * (1f + expandFraction);
+        height = (bottom - top) * (1f + expandFraction);
+        centerX = (left + right) * 0.5f;
+        centerY = (top + bottom) * 0.5f;
+        semiAxisX = width * 0.5f;
+        semiAxisY = height * 0.5f;
+        invSemiAxisX = 1f / semiAxisX;
+        invSemiAxisY = 1f / semiAxisY;
+    }
+
+    /**
+     * Fit a face box against the oval; read the results with the getters
+     */
+    public void fit(float faceLeft, float faceTop, float faceRight, float faceBottom) {
+        faceCenterX = (faceLeft + faceRight) * 0.5f;
+        faceCenterY = (faceTop + faceBottom) * 0.5f;
+        float nx = (faceCenterX - centerX) * invSemiAxisX;
+        float ny = (faceCenterY - centerY) * invSemiAxisY;
+        ellipseValue = nx * nx + ny * ny;
+        // Divide rather than multiply by the inverse: ratios are compared against thresholds like 0.4
+        // that integer face boxes hit exactly, and the division keeps those comparisons exact
+        widthRatio = (faceRight - faceLeft) / width;
+        heightRatio = (faceBottom - faceTop) / height;
+    }
+
+    /**
+     * {@code (dx/a)^2 + (dy/b)^2} of the face center; ≤ 1 inside the oval
+     */
+    public float getEllipseValue() {
+        return ellipseValue;
+    }
+
+    public float getWidthRatio() {
+        return widthRatio;
+    }
+
+    public float getHeightRatio() {
+        return heightRatio;
+    }
+
+    /**
+     * Horizontal face center offset in units of the semi-axis
+     */
+    public float getXOffset() {
+        return Math.abs(faceCenterX - centerX) * invSemiAxisX;
+    }
+
+    /**
+     * Vertical face center offset in units of the semi-axis
+     */
+    public float getYOffset() {
+        return Math.abs(faceCenterY - centerY) * invSemiAxisY;
+    }
+
+    public boolean isWithinEllipse(float tolerance) {
+        return ellipseValue <= tolerance;
+    }
+
+    /**
+     * Both face/oval size ratios within [minRatio, maxRatio]
+     */
+    public boolean isSizeWithin(float minRatio, float maxRatio) {
+        return widthRatio >= minRatio && widthRatio <= maxRatio
+                && heightRatio >= minRatio && heightRatio <= maxRatio;
+    }
+
+    /**
+     * Fit within the ellipse tolerance and with an acceptable size
+     */
+    public boolean isGoodFit(float ellipseTolerance, float minRatio, float maxRatio) {
+        return isWithinEllipse(ellipseTolerance) && isSizeWithin(minRatio, maxRatio);
+    }
+
+    /**
+     * Guidance for the last fit
+     *
+     * @param guidanceTolerance Dead zone around the center, as a fraction of the semi-axis
+     */
+    public Guidance guidance(float ellipseTolerance, float minRatio, float maxRatio, float guidanceTolerance) {
+        if (!isWithinEllipse(ellipseTolerance)) {
+            if (faceCenterX < centerX - semiAxisX * guidanceTolerance) {
+                return Guidance.MOVE_RIGHT;
+            } else if (faceCenterX > centerX + semiAxisX * guidanceTolerance) {
+                return Guidance.MOVE_LEFT;
+            } else if (faceCenterY < centerY - semiAxisY * guidanceTolerance) {
+                return Guidance.MOVE_DOWN;
+            } else if (faceCenterY > centerY + semiAxisY * guidanceTolerance) {
+                return Guidance.MOVE_UP;
+            }
+            return Guidance.CENTER_IN_OVAL;
+        }
+        if (!isSizeWithin(minRatio, maxRatio)) {
+            if (widthRatio < minRatio || heightRatio < minRatio) {
+                return Guidance.MOVE_CLOSER;
+            } else if (widthRatio > maxRatio || heightRatio > maxRatio) {
+                return Guidance.MOVE_AWAY;
+            }
+            return Guidance.ADJUST;
+        }
+        return Guidance.PERFECT;
+    }
+}
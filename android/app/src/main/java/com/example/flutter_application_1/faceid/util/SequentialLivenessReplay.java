@@ -0,0 +1,135 @@
+package com.example.flutter_application_1.faceid.util;
+
+import java.util.Locale;
+
+/**
+ * Offline replay of recorded anti-spoof score traces through a {@link SequentialLivenessSprt}.
+ *
+ * SpoofDetectionManager logs the frames of each fresh test up to its first decision
+ * ("SPRT ACCEPT trace: ..."), one token per frame: the confidence of the predicted class to two
+ * decimals, prefixed with 's' when the frame was classified as spoof (e.g. {@code "0.91 0.88 s0.62"}).
+ * Feeding collected traces back through a test with other error rates or likelihoods shows how many
+ * frames it needs to decide and how often it decides wrongly, before the new values ship.
+ *
+ * The per-frame likelihoods themselves come from {@link #estimateLikelihoods(String[], float)} over
+ * traces labelled by what was in front of the camera (live faces vs. photos, screens and masks), not by
+ * the logged decision.
+ */
+public final class SequentialLivenessReplay {
+
+    /**
+     * Outcome of replaying a set of traces
+     */
+    public static final class Report {
+        public final int traces;
+        public final int accepted;
+        public final int rejected;
+        public final int undecided;
+        public final float meanFramesToDecision; // Over decided traces only
+
+        Report(int traces, int accepted, int rejected, int undecided, float meanFramesToDecision) {
+            this.traces = traces;
+            this.accepted = accepted;
+            this.rejected = rejected;
+            this.undecided = undecided;
+            this.meanFramesToDecision = meanFramesToDecision;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "traces=%d accepted=%d rejected=%d undecided=%d meanFrames=%.2f",
+                    traces, accepted, rejected, undecided, meanFramesToDecision);
+        }
+    }
+
+    private SequentialLivenessReplay() {}
+
+    /**
+     * Run each trace from a fresh test until the first decision, exhaustion or the end of the trace
+     *
+     * @param traces Traces as logged, see {@link #appendFrame(StringBuilder, boolean, float)}
+     */
+    public static Report replay(SequentialLivenessSprt sprt, float highConfidenceThreshold, String[] traces) {
+        int accepted = 0;
+        int rejected = 0;
+        int undecided = 0;
+        long decisionFrames = 0;
+        for (String trace : traces) {
+            sprt.reset();
+            SequentialLivenessSprt.Decision decision = SequentialLivenessSprt.Decision.CONTINUE;
+            int frames = 0;
+            for (String token : trace.trim().split("\\s+")) {
+                if (token.isEmpty()) {
+                    continue;
+                }
+                boolean isSpoof = token.charAt(0) == 's';
+                float confidence = Float.parseFloat(isSpoof ? token.substring(1) : token);
+                frames++;
+                decision = sprt.update(SequentialLivenessSprt.classify(isSpoof, confidence, highConfidenceThreshold));
+                if (decision != SequentialLivenessSprt.Decision.CONTINUE || sprt.isExhausted()) {
+                    break;
+                }
+            }
+            if (decision == SequentialLivenessSprt.Decision.ACCEPT) {
+                accepted++;
+                decisionFrames += frames;
+            } else if (decision == SequentialLivenessSprt.Decision.REJECT) {
+                rejected++;
+                decisionFrames += frames;
+            } else {
+                undecided++;
+            }
+        }
+        int decided = accepted + rejected;
+        return new Report(traces.length, accepted, rejected, undecided,
+                decided == 0 ? 0f : (float) decisionFrames / decided);
+    }
+
+    /**
+     * Per-frame likelihoods of each {@link SequentialLivenessSprt.Observation}, indexed by its ordinal, over
+     * all frames of the traces. Each outcome starts from one pseudo-frame, so an outcome never seen in
+     * the traces keeps a small nonzero likelihood and a finite log-likelihood ratio.
+     *
+     * @param traces Traces of one class only: all live faces, or all attacks
+     */
+    public static float[] estimateLikelihoods(String[] traces, float highConfidenceThreshold) {
+        SequentialLivenessSprt.Observation[] observations = SequentialLivenessSprt.Observation.values();
+        int[] counts = new int[observations.length];
+        int frames = 0;
+        for (String trace : traces) {
+            for (String token : trace.trim().split("\\s+")) {
+                if (token.isEmpty()) {
+                    continue;
+                }
+                boolean isSpoof = token.charAt(0) == 's';
+                float confidence = Float.parseFloat(isSpoof ? token.substring(1) : token);
+                counts[SequentialLivenessSprt.classify(isSpoof, confidence, highConfidenceThreshold).ordinal()]++;
+                frames++;
+            }
+        }
+        float[] likelihoods = new float[observations.length];
+        for (int i = 0; i < likelihoods.length; i++) {
+            likelihoods[i] = (counts[i] + 1f) / (frames + observations.length);
+        }
+        return likelihoods;
+    }
+
+    /**
+     * Append one frame to a trace in the replay format
+     */
+    public static void appendFrame(StringBuilder trace, boolean isSpoof, float confidence) {
+        if (trace.length() > 0) {
+            trace.append(' ');
+        }
+        if (isSpoof) {
+            trace.append('s');
+        }
+        // Two decimals without String.format: this runs per frame
+        int hundredths = Math.round(Math.max(0f, Math.min(1f, confidence)) * 100f);
+        trace.append(hundredths / 100).append('.');
+        if (hundredths % 100 < 10) {
+            trace.append('0');
+        }
+        trace.append(hundredths % 100);
+    }
+}
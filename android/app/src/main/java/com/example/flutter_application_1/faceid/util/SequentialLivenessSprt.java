@@ -0,0 +1,115 @@
+package com.example.flutter_application_1.faceid.util;
+
+/**
+ * Wald sequential probability ratio test over per-frame anti-spoof outcomes.
+ *
+ * Each frame is classified as {@link Observation#REAL}, {@link Observation#UNCERTAIN} or
+ * {@link Observation#SPOOF} and adds its log-likelihood ratio (live face vs. presentation attack) to a
+ * running sum. The test accepts once the sum reaches ln((1 - β) / α) and rejects once it falls to
+ * ln(β / (1 - α)), where α is the false accept rate and β the false reject rate, so it stops as soon as
+ * the evidence is decisive instead of after a fixed number of frames.
+ *
+ * A decision ends the test: the frame after an accept or reject starts a new one from zero evidence,
+ * so every decision rests on a fresh, unbounded walk and keeps Wald's error rates. Not thread-safe;
+ * one instance per detection flow.
+ */
+public final class SequentialLivenessSprt {
+
+    public enum Observation {
+        REAL,       // Not spoof, confidence above the high threshold
+        UNCERTAIN,  // Not spoof, but low confidence
+        SPOOF       // Classified as spoof
+    }
+
+    public enum Decision {
+        CONTINUE,
+        ACCEPT,
+        REJECT
+    }
+
+    private final float[] llr = new float[Observation.values().length];
+    private final float acceptBound;
+    private final float rejectBound;
+    private final int maxFrames;
+
+    private float sum = 0f;
+    private int framesInTest = 0;
+    private Decision decision = Decision.CONTINUE;
+
+    /**
+     * @param falseAcceptRate  α: probability of accepting an attack
+     * @param falseRejectRate  β: probability of rejecting a live face
+     * @param liveLikelihoods  P(observation | live face), indexed by {@link Observation#ordinal()}
+     * @param spoofLikelihoods P(observation | attack), indexed by {@link Observation#ordinal()}
+     * @param maxFrames        Frames of one test without a decision after which {@link #isExhausted()} reports true
+     */
+    public SequentialLivenessSprt(float falseAcceptRate, float falseRejectRate,
+                                  float[] liveLikelihoods, float[] spoofLikelihoods, int maxFrames) {
+        if (falseAcceptRate <= 0f || falseAcceptRate >= 1f || falseRejectRate <= 0f || falseRejectRate >= 1f) {
+            throw new IllegalArgumentException("error rates must be in (0, 1)");
+        }
+        for (int i = 0; i < llr.length; i++) {
+            llr[i] = (float) Math.log(liveLikelihoods[i] / spoofLikelihoods[i]);
+        }
+        this.acceptBound = (float) Math.log((1.0 - falseRejectRate) / falseAcceptRate);
+        this.rejectBound = (float) Math.log(falseRejectRate / (1.0 - falseAcceptRate));
+        this.maxFrames = maxFrames;
+    }
+
+    /**
+     * Classify one anti-spoof result
+     *
+     * @param confidence Confidence of the predicted class
+     */
+    public static Observation classify(boolean isSpoof, float confidence, float highConfidenceThreshold) {
+        if (isSpoof) {
+            return Observation.SPOOF;
+        }
+        return confidence > highConfidenceThreshold ? Observation.REAL : Observation.UNCERTAIN;
+    }
+
+    /**
+     * Add one frame and return the decision of the test it belongs to.
+     * After an ACCEPT or REJECT the next frame starts a new test.
+     */
+    public Decision update(Observation observation) {
+        if (decision != Decision.CONTINUE) {
+            sum = 0f;
+            framesInTest = 0;
+        }
+        sum += llr[observation.ordinal()];
+        framesInTest++;
+        if (sum >= acceptBound) {
+            decision = Decision.ACCEPT;
+        } else if (sum <= rejectBound) {
+            decision = Decision.REJECT;
+        } else {
+            decision = Decision.CONTINUE;
+        }
+        return decision;
+    }
+
+    public Decision getDecision() {
+        return decision;
+    }
+
+    /**
+     * True when the current test has gone maxFrames frames without reaching either bound
+     */
+    public boolean isExhausted() {
+        return decision == Decision.CONTINUE && framesInTest >= maxFrames;
+    }
+
+    /**
+     * Log-likelihood ratio of the current test; at or past a bound on the frame that decided it
+     */
+    public float getLogLikelihoodRatio() {
+        return sum;
+    }
+
+    public void reset() {
+        sum = 0f;
+        framesInTest = 0;
+        decision = Decision.CONTINUE;
+    }
+}
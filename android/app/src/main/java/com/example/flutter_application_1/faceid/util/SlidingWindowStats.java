@@ -0,0 +1,102 @@
+package com.example.flutter_application_1.faceid.util;
+
+/**
+ * Mean and variance over the last N samples, updated in O(1) per sample.
+ *
+ * Keeps the window in a primitive ring and the statistics as a sliding Welford accumulator
+ * (running mean plus sum of squared deviations, in double). Adding a sample to a full window
+ * replaces the oldest one in a single update, so there is no re-scan and none of the
+ * catastrophic cancellation of {@code sumSq/n - mean^2} on values like pixel coordinates.
+ *
+ * Not thread-safe; callers own an instance per processing thread.
+ */
+public final class SlidingWindowStats {
+    private final float[] values;
+    private int head = 0;   // Next write position
+    private int size = 0;
+    private double mean = 0.0;
+    private double m2 = 0.0; // Sum of squared deviations from the mean
+
+    public SlidingWindowStats(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0: " + capacity);
+        }
+        this.values = new float[capacity];
+    }
+
+    /**
+     * Append a sample, evicting the oldest one when the window is full
+     */
+    public void add(float value) {
+        if (size == values.length) {
+            // Replace oldest: mean' = mean + (x - y) / n, M2' = M2 + (x - y) * (x - mean' + y - mean)
+            double oldest = values[head];
+            double oldMean = mean;
+            mean += (value - oldest) / size;
+            m2 += (value - oldest) * (value - mean + oldest - oldMean);
+            if (m2 < 0.0) {
+                m2 = 0.0; // Rounding on a constant window
+            }
+        } else {
+            size++;
+            double delta = value - mean;
+            mean += delta / size;
+            m2 += delta * (value - mean);
+        }
+        values[head] = value;
+        head++;
+        if (head == values.length) {
+            head = 0;
+        }
+    }
+
+    /**
+     * Get the i-th sample, oldest first (0 <= i < size)
+     */
+    public float get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+        }
+        int index = head - size + i;
+        if (index < 0) {
+            index += values.length;
+        }
+        return values[index];
+    }
+
+    /**
+     * Get the most recently added sample, or {@code defaultValue} when empty
+     */
+    public float getLast(float defaultValue) {
+        if (size == 0) {
+            return defaultValue;
+        }
+        return values[head == 0 ? values.length - 1 : head - 1];
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Population variance of the window (divides by n), 0 when empty
+     */
+    public double getVariance() {
+        return size == 0 ? 0.0 : m2 / size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+        mean = 0.0;
+        m2 = 0.0;
+    }
+}
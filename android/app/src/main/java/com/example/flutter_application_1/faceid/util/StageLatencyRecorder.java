@@ -0,0 +1,115 @@
+package com.example.flutter_application_1.faceid.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Per-stage latency histograms for the Face ID pipeline.
+ *
+ * Each stage times itself with {@link System#nanoTime()} and reports here; nothing wraps the stages
+ * from outside, so a number is the stage's own work and not queueing around it. Recording is
+ * allocation-free and lock-free ({@link LatencyHistogram}), safe from the camera, inference and
+ * OkHttp threads at once. Durations are kept in microseconds, up to one minute.
+ *
+ * The app shares {@link #getInstance()}; tests create their own.
+ */
+public final class StageLatencyRecorder {
+    public enum Stage {
+        CONVERT,        // Camera frame to upright, mirrored Bitmap
+        QUALITY_GATE,   // Brightness / contrast / blur check
+        DETECT,         // Face detection
+        LANDMARKS,      // MediaPipe face landmarks
+        SPOOF,          // Anti-spoof models
+        GAZE,           // Gaze estimate, model or landmark path
+        EMBED,          // Face embedding model
+        NETWORK         // Embedding upload until the response headers arrive
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final long MAX_TRACKABLE_MICROS = 60_000_000L;
+    // After the constants the constructor reads
+    private static final StageLatencyRecorder INSTANCE = new StageLatencyRecorder();
+
+    public static StageLatencyRecorder getInstance() { return INSTANCE; }
+
+    /**
+     * Latency of one stage, in milliseconds
+     */
+    public static final class StageSummary {
+        public final Stage stage;
+        public final long count;
+        public final float meanMs;
+        public final float p50Ms;
+        public final float p95Ms;
+        public final float p99Ms;
+        public final float maxMs;
+
+        StageSummary(Stage stage, long count, float meanMs, float p50Ms, float p95Ms, float p99Ms, float maxMs) {
+            this.stage = stage;
+            this.count = count;
+            this.meanMs = meanMs;
+            this.p50Ms = p50Ms;
+            this.p95Ms = p95Ms;
+            this.p99Ms = p99Ms;
+            this.maxMs = maxMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s n=%d mean=%.1fms p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                    stage, count, meanMs, p50Ms, p95Ms, p99Ms, maxMs);
+        }
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+
+    public StageLatencyRecorder() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram(MAX_TRACKABLE_MICROS);
+        }
+    }
+
+    /**
+     * Record one run of a stage from its own {@link System#nanoTime()} timestamps
+     */
+    public void record(Stage stage, long startNanos, long endNanos) {
+        recordNanos(stage, endNanos - startNanos);
+    }
+
+    /**
+     * Record one run of a stage whose work was split, from the summed duration
+     */
+    public void recordNanos(Stage stage, long durationNanos) {
+        histograms[stage.ordinal()].record(durationNanos / 1000);
+    }
+
+    public StageSummary getSummary(Stage stage) {
+        LatencyHistogram histogram = histograms[stage.ordinal()];
+        return new StageSummary(stage, histogram.getCount(),
+                (float) histogram.getMean() / 1000f,
+                histogram.getValueAtPercentile(50) / 1000f,
+                histogram.getValueAtPercentile(95) / 1000f,
+                histogram.getValueAtPercentile(99) / 1000f,
+                histogram.getMax() / 1000f);
+    }
+
+    /**
+     * Summaries of the stages that ran at least once, in pipeline order
+     */
+    public List<StageSummary> getSummaries() {
+        List<StageSummary> summaries = new ArrayList<>();
+        for (Stage stage : STAGES) {
+            if (histograms[stage.ordinal()].getCount() > 0) {
+                summaries.add(getSummary(stage));
+            }
+        }
+        return summaries;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.flutter_application_1.faceid.util;
+
+/**
+ * Streaming statistics for scores in [0, 1] (e.g. per-frame realness during the analysis window).
+ *
+ * Keeps count, Welford mean / M2, min and max, plus a fixed 100-bin histogram as a quantile sketch,
+ * so adding a score is O(1) and nothing is copied or sorted when the window ends. The histogram also
+ * gives trimmed statistics (drop the k lowest and k highest scores); samples inside a partially trimmed
+ * bin are taken at that bin's mean, so trimmed values are exact to within one bin width (0.01).
+ *
+ * Consecutive camera frames are not independent: a face held still yields nearly the same score frame
+ * after frame. The confidence bound on the mean therefore uses an effective sample size from the lag-1
+ * autocorrelation of the scores, in arrival order, instead of the raw count.
+ *
+ * Thread-safe: scores arrive from the frame processing thread while the UI thread reads the verdict.
+ */
+public final class StreamingScoreStats {
+    private static final int BINS = 100;
+
+    /**
+     * Snapshot of the statistics, optionally trimmed
+     */
+    public static final class Summary {
+        public final int count;
+        public final float mean;
+        public final float variance; // Population variance (divides by count)
+        public final float min;
+        public final float max;
+
+        Summary(int count, float mean, float variance, float min, float max) {
+            this.count = count;
+            this.mean = mean;
+            this.variance = variance;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    private int count = 0;
+    private double mean = 0.0;
+    private double m2 = 0.0;
+    private float min = Float.MAX_VALUE;
+    private float max = -Float.MAX_VALUE;
+    // Sum of x[t] * x[t-1] plus first and last score, for the lag-1 autocovariance
+    private double sum = 0.0;
+    private double lagProductSum = 0.0;
+    private float first = 0f;
+    private float last = 0f;
+    private final int[] binCounts = new int[BINS];
+    private final double[] binSums = new double[BINS];
+    private final double[] binSumSqs = new double[BINS];
+
+    public synchronized void add(float score) {
+        if (count == 0) {
+            first = score;
+        } else {
+            lagProductSum += (double) score * last;
+        }
+        last = score;
+        sum += score;
+        count++;
+        double delta = score - mean;
+        mean += delta / count;
+        m2 += delta * (score - mean);
+        min = Math.min(min, score);
+        max = Math.max(max, score);
+
+        int bin = binOf(score);
+        binCounts[bin]++;
+        binSums[bin] += score;
+        binSumSqs[bin] += (double) score * score;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Running mean, or 0 when empty
+     */
+    public synchronized float getMean() {
+        return (float) mean;
+    }
+
+    /**
+     * Population variance, or 0 when empty
+     */
+    public synchronized float getVariance() {
+        return count == 0 ? 0f : (float) (m2 / count);
+    }
+
+    /**
+     * Lag-1 autocorrelation of the scores in arrival order, in [-1, 1]; 0 with fewer than three scores
+     * or no variance
+     */
+    public synchronized float getLag1Autocorrelation() {
+        if (count < 3 || m2 <= 0.0) {
+            return 0f;
+        }
+        // sum over t >= 1 of (x[t] - mean)(x[t-1] - mean), expanded over the running sums
+        double lagCovariance = lagProductSum - mean * ((sum - first) + (sum - last)) + (count - 1) * mean * mean;
+        return (float) Math.max(-1.0, Math.min(1.0, lagCovariance / m2));
+    }
+
+    /**
+     * Number of independent scores carrying the same information about the mean, n (1 - r) / (1 + r)
+     * for lag-1 autocorrelation r (an AR(1) approximation). Negative r is taken as 0, so this never
+     * exceeds the count.
+     */
+    public synchronized float getEffectiveSampleSize() {
+        float r = Math.max(0f, getLag1Autocorrelation());
+        return count * (1f - r) / (1f + r);
+    }
+
+    /**
+     * Lower bound of the confidence interval on the mean: mean - z * s / sqrt(nEff), with s the sample
+     * standard deviation and nEff the {@link #getEffectiveSampleSize() effective sample size}.
+     * Returns -infinity while nEff is below two.
+     *
+     * @param z e.g. 2.58 for a two-sided 99% interval
+     */
+    public synchronized float getMeanLowerBound(float z) {
+        float effectiveCount = getEffectiveSampleSize();
+        if (count < 2 || effectiveCount < 2f) {
+            return Float.NEGATIVE_INFINITY;
+        }
+        double standardError = Math.sqrt(m2 / (count - 1) / effectiveCount);
+        return (float) (mean - z * standardError);
+    }
+
+    /**
+     * Approximate q-quantile from the histogram, interpolated within the bin; 0 when empty
+     */
+    public synchronized float getQuantile(float q) {
+        if (count == 0) {
+            return 0f;
+        }
+        float rank = Math.max(0f, Math.min(1f, q)) * count;
+        int seen = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            int inBin = binCounts[bin];
+            if (inBin > 0 && seen + inBin >= rank) {
+                float within = (rank - seen) / inBin;
+                return Math.max(min, Math.min(max, (bin + within) / BINS));
+            }
+            seen += inBin;
+        }
+        return max;
+    }
+
+    /**
+     * Statistics of all scores
+     */
+    public Summary summarize() {
+        return summarize(0);
+    }
+
+    /**
+     * Statistics after dropping the trimEachSide lowest and trimEachSide highest scores.
+     * Falls back to the untrimmed statistics when trimming would leave nothing.
+     */
+    public synchronized Summary summarize(int trimEachSide) {
+        if (count == 0) {
+            return new Summary(0, 0f, 0f, 0f, 0f);
+        }
+        if (trimEachSide <= 0 || 2 * trimEachSide >= count) {
+            return new Summary(count, (float) mean, (float) (m2 / count), min, max);
+        }
+
+        // Bins holding the trim boundaries and how many scores each loses to the trim; the two trims are
+        // disjoint because fewer than half of the scores are dropped on each side
+        int lowBin = 0;
+        int lowRemaining = trimEachSide;
+        while (binCounts[lowBin] <= lowRemaining) {
+            lowRemaining -= binCounts[lowBin];
+            lowBin++;
+        }
+        int highBin = BINS - 1;
+        int highRemaining = trimEachSide;
+        while (binCounts[highBin] <= highRemaining) {
+            highRemaining -= binCounts[highBin];
+            highBin--;
+        }
+
+        int keptCount = 0;
+        double keptSum = 0.0;
+        double keptSumSq = 0.0;
+        for (int bin = lowBin; bin <= highBin; bin++) {
+            int inBin = binCounts[bin];
+            int kept = inBin - (bin == lowBin ? lowRemaining : 0) - (bin == highBin ? highRemaining : 0);
+            if (kept <= 0) {
+                continue;
+            }
+            double fraction = (double) kept / inBin;
+            keptCount += kept;
+            keptSum += binSums[bin] * fraction;
+            keptSumSq += binSumSqs[bin] * fraction;
+        }
+        float keptMin = lowRemaining > 0 ? (float) (binSums[lowBin] / binCounts[lowBin]) : binMin(lowBin);
+        float keptMax = highRemaining > 0 ? (float) (binSums[highBin] / binCounts[highBin]) : binMax(highBin);
+
+        double keptMean = keptSum / keptCount;
+        double keptVariance = Math.max(0.0, keptSumSq / keptCount - keptMean * keptMean);
+        return new Summary(keptCount, (float) keptMean, (float) keptVariance, keptMin, keptMax);
+    }
+
+    public synchronized void clear() {
+        count = 0;
+        mean = 0.0;
+        m2 = 0.0;
+        min = Float.MAX_VALUE;
+        max = -Float.MAX_VALUE;
+        sum = 0.0;
+        lagProductSum = 0.0;
+        first = 0f;
+        last = 0f;
+        for (int bin = 0; bin < BINS; bin++) {
+            binCounts[bin] = 0;
+            binSums[bin] = 0.0;
+            binSumSqs[bin] = 0.0;
+        }
+    }
+
+    private float binMin(int bin) {
+        return Math.max(min, (float) bin / BINS);
+    }
+
+    private float binMax(int bin) {
+        return Math.min(max, (float) (bin + 1) / BINS);
+    }
+
+    private static int binOf(float score) {
+        int bin = (int) (score * BINS);
+        return Math.max(0, Math.min(BINS - 1, bin));
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.flutter_application_1.faceid.util;
+
+/**
+ * Exponential moving average driven by frame timestamps instead of frame count.
+ *
+ * The per-sample weight is {@code 1 - exp(-dt / tau)}, so the filter settles in the same wall-clock
+ * time at 10 fps and at 30 fps, and dropped frames do not change its behavior.
+ * A per-frame alpha tuned at a known frame rate converts with {@link #tauForAlpha(float, float)}.
+ */
+public final class TimeConstantEma {
+    private float timeConstantMs;
+    private float value;
+    private long lastTimestampMs;
+    private boolean initialized = false;
+
+    /**
+     * @param timeConstantMs time for the output to cover ~63% of a step change; 0 disables smoothing
+     */
+    public TimeConstantEma(float timeConstantMs) {
+        setTimeConstantMs(timeConstantMs);
+    }
+
+    /**
+     * Time constant equivalent to a per-frame EMA weight at a given frame rate
+     *
+     * @param alphaPerFrame weight of the new sample per frame (0..1)
+     * @param fps           frame rate the alpha was tuned at
+     */
+    public static float tauForAlpha(float alphaPerFrame, float fps) {
+        if (alphaPerFrame >= 1f) {
+            return 0f;
+        }
+        float dtMs = 1000f / fps;
+        return (float) (-dtMs / Math.log(1.0 - alphaPerFrame));
+    }
+
+    /**
+     * Add a sample and return the smoothed value. The first sample after construction or reset is taken as-is.
+     */
+    public float update(float sample, long timestampMs) {
+        if (!initialized) {
+            value = sample;
+            lastTimestampMs = timestampMs;
+            initialized = true;
+            return value;
+        }
+
+        long dtMs = timestampMs - lastTimestampMs;
+        if (dtMs <= 0) {
+            // Same or out-of-order timestamp: keep the current estimate
+            return value;
+        }
+        lastTimestampMs = timestampMs;
+
+        float alpha = timeConstantMs <= 0f ? 1f : (float) (1.0 - Math.exp(-dtMs / timeConstantMs));
+        value += alpha * (sample - value);
+        return value;
+    }
+
+    public float getValue() {
+        return value;
+    }
+
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    public float getTimeConstantMs() {
+        return timeConstantMs;
+    }
+
+    public void setTimeConstantMs(float timeConstantMs) {
+        this.timeConstantMs = Math.max(0f, timeConstantMs);
+    }
+
+    public void reset() {
+        initialized = false;
+        value = 0f;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.flutter_application_1.auth.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.example.flutter_application_1.faceid.util.CircuitBreaker;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Drives the breaker through its states against a MockWebServer. Latency is injected on the fake
+ * clock by an interceptor behind the breaker, so slow calls need no real waiting.
+ */
+public class CircuitBreakerInterceptorTest {
+    private static final long OPEN_MS = 30000;
+    private static final long SLOW_CALL_MS = 10000;
+
+    private final MockWebServer server = new MockWebServer();
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicLong latencyMs = new AtomicLong();
+    private final CircuitBreakerInterceptor breaker = new CircuitBreakerInterceptor(
+            new CircuitBreaker(3, OPEN_MS), now::get, SLOW_CALL_MS);
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+        client = new OkHttpClient.Builder()
+                .retryOnConnectionFailure(false)
+                .addInterceptor(breaker)
+                .addInterceptor(chain -> {
+                    now.addAndGet(latencyMs.get());
+                    return chain.proceed(chain.request());
+                })
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private int call(String path) throws IOException {
+        Request request = new Request.Builder().url(server.url(path)).build();
+        try (Response response = client.newCall(request).execute()) {
+            return response.code();
+        }
+    }
+
+    private void failThreeTimes() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+            assertEquals(503, call("/api"));
+        }
+    }
+
+    @Test
+    public void serverErrorsOpenTheCircuitAndCallsFailFast() throws Exception {
+        failThreeTimes();
+        CircuitBreakerInterceptor.Health health = breaker.getHealth();
+        assertEquals(CircuitBreaker.State.OPEN, health.state);
+        assertEquals(3, health.failures);
+        assertFalse(breaker.isAvailable());
+
+        now.addAndGet(10000);
+        try {
+            call("/api");
+            fail("expected a fast fail");
+        } catch (CircuitBreakerInterceptor.CircuitOpenException e) {
+            assertEquals(OPEN_MS - 10000, e.getRetryAfterMs());
+        }
+        assertEquals(3, server.getRequestCount());
+        assertEquals(1, breaker.getHealth().rejected);
+    }
+
+    @Test
+    public void successfulProbeClosesTheCircuit() throws Exception {
+        failThreeTimes();
+        now.addAndGet(OPEN_MS);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getHealth().state);
+
+        server.enqueue(new MockResponse().setBody("ok"));
+        assertEquals(200, call("/api"));
+        CircuitBreakerInterceptor.Health health = breaker.getHealth();
+        assertEquals(CircuitBreaker.State.CLOSED, health.state);
+        assertEquals(0, health.consecutiveFailures);
+        assertEquals(4, health.calls);
+    }
+
+    @Test
+    public void failedProbeReopens() throws Exception {
+        failThreeTimes();
+        now.addAndGet(OPEN_MS);
+        server.enqueue(new MockResponse().setResponseCode(500));
+        assertEquals(500, call("/api"));
+
+        CircuitBreakerInterceptor.Health health = breaker.getHealth();
+        assertEquals(CircuitBreaker.State.OPEN, health.state);
+        assertEquals(2, health.timesOpened);
+        assertEquals(OPEN_MS, health.retryAfterMs);
+    }
+
+    @Test
+    public void slowResponsesFailButHeldCallsDoNot() throws Exception {
+        latencyMs.set(SLOW_CALL_MS + 1);
+        for (int i = 0; i < 2; i++) {
+            server.enqueue(new MockResponse());
+            assertEquals(200, call("/api"));
+        }
+        assertEquals(2, breaker.getHealth().slowCalls);
+
+        // A long-poll held by the server is slow on purpose and resets the streak
+        server.enqueue(new MockResponse());
+        assertEquals(200, call("/api/status?waitSeconds=25"));
+        CircuitBreakerInterceptor.Health health = breaker.getHealth();
+        assertEquals(CircuitBreaker.State.CLOSED, health.state);
+        assertEquals(0, health.consecutiveFailures);
+        assertEquals(SLOW_CALL_MS + 1, health.meanLatencyMs, 0.5f);
+    }
+
+    @Test
+    public void throttlingAndDisconnectsCountClientErrorsDoNot() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429));
+        assertEquals(429, call("/api"));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        try {
+            call("/api");
+            fail("expected an I/O error");
+        } catch (IOException expected) {
+            assertFalse(expected instanceof CircuitBreakerInterceptor.CircuitOpenException);
+        }
+        assertEquals(2, breaker.getHealth().consecutiveFailures);
+
+        server.enqueue(new MockResponse().setResponseCode(404));
+        assertEquals(404, call("/api"));
+        assertEquals(0, breaker.getHealth().consecutiveFailures);
+        assertTrue(breaker.isAvailable());
+    }
+}
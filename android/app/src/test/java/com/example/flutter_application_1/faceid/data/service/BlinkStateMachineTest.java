@@ -0,0 +1,114 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Replays synthetic EAR traces at 30 fps through the blink state machine
+ */
+public class BlinkStateMachineTest {
+    private static final long FRAME_MS = 33;
+    private static final float OPEN = 0.32f;
+    private static final float CLOSED = 0.12f;
+
+    private long timestampMs = 0;
+
+    private int feed(BlinkStateMachine machine, float ear, int frames) {
+        int events = BlinkStateMachine.EVENT_NONE;
+        for (int i = 0; i < frames; i++) {
+            events |= machine.update(ear, ear, 1f, 1f, timestampMs);
+            timestampMs += FRAME_MS;
+        }
+        return events;
+    }
+
+    private BlinkStateMachine calibrated() {
+        BlinkStateMachine machine = new BlinkStateMachine();
+        feed(machine, OPEN, 15);
+        assertTrue(machine.isCalibrated());
+        return machine;
+    }
+
+    @Test
+    public void calibratesOnOpenEyesOnly() {
+        BlinkStateMachine machine = new BlinkStateMachine();
+        feed(machine, CLOSED, 20);
+        assertFalse(machine.isCalibrated());
+
+        feed(machine, OPEN, 15);
+        assertTrue(machine.isCalibrated());
+        assertEquals(OPEN, machine.getNormalEAR(), 1e-6f);
+    }
+
+    @Test
+    public void countsBlinkWhenEyesReopen() {
+        BlinkStateMachine machine = calibrated();
+
+        assertEquals(BlinkStateMachine.EVENT_NONE, feed(machine, CLOSED, 4));
+        assertTrue(machine.isBlinking());
+        assertEquals(BlinkStateMachine.EVENT_BLINK, feed(machine, OPEN, 1));
+        assertEquals(1, machine.getTotalBlinks());
+    }
+
+    @Test
+    public void ignoresClosuresLongerThanABlink() {
+        BlinkStateMachine machine = calibrated();
+
+        feed(machine, CLOSED, 30);
+        assertEquals(BlinkStateMachine.EVENT_NONE, feed(machine, OPEN, 1));
+        assertEquals(0, machine.getTotalBlinks());
+    }
+
+    @Test
+    public void twoQuickBlinksAreIntentional() {
+        BlinkStateMachine machine = calibrated();
+
+        feed(machine, CLOSED, 3);
+        feed(machine, OPEN, 5);
+        feed(machine, CLOSED, 3);
+        int events = feed(machine, OPEN, 1);
+
+        assertTrue((events & BlinkStateMachine.EVENT_INTENTIONAL_BLINK) != 0);
+        assertEquals(2, machine.getLastIntentionalBlinkCount());
+    }
+
+    @Test
+    public void slowBlinksAreNotIntentional() {
+        BlinkStateMachine machine = calibrated();
+
+        feed(machine, CLOSED, 3);
+        feed(machine, OPEN, 45);   // ~1.5 s apart
+        feed(machine, CLOSED, 3);
+        int events = feed(machine, OPEN, 1);
+
+        assertEquals(BlinkStateMachine.EVENT_BLINK, events);
+        assertEquals(2, machine.getTotalBlinks());
+    }
+
+    @Test
+    public void computeEarFromPackedLandmarks() {
+        // p1..p6 of an eye 4 wide and 1 tall: EAR = (1 + 1) / (2 * 4)
+        float[] eye = {0, 0, 1, -0.5f, 3, -0.5f, 4, 0, 3, 0.5f, 1, 0.5f};
+        assertEquals(0.25f, BlinkStateMachine.computeEAR(eye, 0), 1e-6f);
+
+        float[] degenerate = new float[BlinkStateMachine.EYE_COORDS_LENGTH];
+        assertEquals(1.0f, BlinkStateMachine.computeEAR(degenerate, 0), 0f);
+    }
+
+    @Test
+    public void resetKeepsCalibration() {
+        BlinkStateMachine machine = calibrated();
+        feed(machine, CLOSED, 3);
+        feed(machine, OPEN, 1);
+
+        machine.reset();
+        assertEquals(0, machine.getTotalBlinks());
+        assertTrue(machine.isCalibrated());
+
+        machine.resetCalibration();
+        assertFalse(machine.isCalibrated());
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Appends to an outbox in a temporary directory and checks which entries are handed out again,
+ * including after a crash left a damaged log and after the log was compacted.
+ */
+public class EmbeddingOutboxTest {
+    private static final float[] EMBEDDING = {0.1f, 0.2f, 0.3f};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EmbeddingOutbox outbox() {
+        return new EmbeddingOutbox(new File(folder.getRoot(), "face_outbox"));
+    }
+
+    private File logFile() {
+        return new File(new File(folder.getRoot(), "face_outbox"), "outbox.log");
+    }
+
+    private File ackFile() {
+        return new File(new File(folder.getRoot(), "face_outbox"), "outbox.ack");
+    }
+
+    /** Append same-size entries for distinct users in a fresh instance, so none is claimed or superseded */
+    private List<String> appendEnrollments(int count, float[] embedding) throws Exception {
+        EmbeddingOutbox outbox = outbox();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            keys.add(outbox.append(EmbeddingOutbox.Action.REGISTER, String.format("u%03d", i), null, null, 0L, embedding).key);
+        }
+        return keys;
+    }
+
+    private static List<String> keysOf(List<EmbeddingOutbox.Entry> entries) {
+        List<String> keys = new ArrayList<>();
+        for (EmbeddingOutbox.Entry entry : entries) {
+            keys.add(entry.key);
+        }
+        return keys;
+    }
+
+    @Test
+    public void verifyIsDroppedOnceItsRequestExpires() throws Exception {
+        EmbeddingOutbox outbox = outbox();
+        long now = System.currentTimeMillis();
+        EmbeddingOutbox.Entry expired = outbox.append(EmbeddingOutbox.Action.VERIFY, "u1", "req-old", null, now - 1, EMBEDDING);
+        EmbeddingOutbox.Entry open = outbox.append(EmbeddingOutbox.Action.VERIFY, "u1", "req-new", 0.6f, now + 60000, EMBEDDING);
+        outbox.release(expired.key);
+        outbox.release(open.key);
+
+        List<EmbeddingOutbox.Entry> batch = outbox.claimPending(10);
+        assertEquals(1, batch.size());
+        assertEquals("req-new", batch.get(0).requestId);
+        assertEquals(now + 60000, batch.get(0).expiresAtMs);
+        // The expired entry was acked, not just skipped
+        outbox.release(open.key);
+        assertEquals(1, outbox.pendingCount());
+    }
+
+    @Test
+    public void expiryIsReadBackFromTheLog() throws Exception {
+        long expiresAtMs = System.currentTimeMillis() + 60000;
+        EmbeddingOutbox.Entry entry = outbox().append(EmbeddingOutbox.Action.VERIFY, "u1", "req-1", null, expiresAtMs, EMBEDDING);
+
+        // A fresh instance has no claims and reads everything from disk
+        List<EmbeddingOutbox.Entry> batch = outbox().claimPending(10);
+        assertEquals(1, batch.size());
+        assertEquals(entry.key, batch.get(0).key);
+        assertEquals(expiresAtMs, batch.get(0).expiresAtMs);
+        assertEquals(EMBEDDING[2], batch.get(0).embedding[2], 0f);
+    }
+
+    @Test
+    public void enrollEntriesIgnoreTheRequestExpiry() throws Exception {
+        EmbeddingOutbox outbox = outbox();
+        EmbeddingOutbox.Entry entry = outbox.append(EmbeddingOutbox.Action.REGISTER, "u1", null, null, 0L, EMBEDDING);
+        outbox.release(entry.key);
+        assertEquals(1, outbox.claimPending(10).size());
+    }
+
+    @Test
+    public void tornTailIsCutOffOnReopen() throws Exception {
+        List<String> keys = appendEnrollments(2, EMBEDDING);
+        long intact = logFile().length();
+
+        // A crash mid-append: magic and length made it to disk, the payload and crc did not
+        try (FileOutputStream out = new FileOutputStream(logFile(), true)) {
+            out.write(new byte[]{0x46, 0x45, 0x4F, 0x31, 0, 0, 0, 80, 1, 2, 3});
+        }
+
+        EmbeddingOutbox reopened = outbox();
+        assertEquals(keys, keysOf(reopened.claimPending(10)));
+        assertEquals(intact, logFile().length());
+
+        // Appends after the cut are readable again
+        EmbeddingOutbox.Entry next = reopened.append(EmbeddingOutbox.Action.REGISTER, "u9", null, null, 0L, EMBEDDING);
+        List<String> all = keysOf(outbox().claimPending(10));
+        assertEquals(3, all.size());
+        assertEquals(next.key, all.get(2));
+    }
+
+    @Test
+    public void recordWithABadCrcIsCutOffWithEverythingAfterIt() throws Exception {
+        List<String> keys = appendEnrollments(3, EMBEDDING);
+        long recordBytes = logFile().length() / 3;
+
+        // Flip one payload byte of the last record; its stored crc no longer matches
+        try (RandomAccessFile raf = new RandomAccessFile(logFile(), "rw")) {
+            long position = logFile().length() - 5;
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0xFF);
+        }
+
+        assertEquals(keys.subList(0, 2), keysOf(outbox().claimPending(10)));
+        assertEquals(2 * recordBytes, logFile().length());
+    }
+
+    @Test
+    public void laterEnrollmentAndVerifySupersedeEarlierOnes() throws Exception {
+        EmbeddingOutbox outbox = outbox();
+        String register = outbox.append(EmbeddingOutbox.Action.REGISTER, "u1", null, null, 0L, EMBEDDING).key;
+        String update = outbox.append(EmbeddingOutbox.Action.UPDATE, "u1", null, null, 0L, EMBEDDING).key;
+        long expiresAtMs = System.currentTimeMillis() + 60000;
+        String firstVerify = outbox.append(EmbeddingOutbox.Action.VERIFY, "u1", "req-1", null, expiresAtMs, EMBEDDING).key;
+        String secondVerify = outbox.append(EmbeddingOutbox.Action.VERIFY, "u1", "req-1", null, expiresAtMs, EMBEDDING).key;
+        String otherRequest = outbox.append(EmbeddingOutbox.Action.VERIFY, "u1", "req-2", null, expiresAtMs, EMBEDDING).key;
+        for (String key : Arrays.asList(register, update, firstVerify, secondVerify, otherRequest)) {
+            outbox.release(key);
+        }
+
+        assertEquals(Arrays.asList(update, secondVerify, otherRequest), keysOf(outbox.claimPending(10)));
+
+        // The superseded entries were acked, so a restart does not bring them back
+        assertEquals(Arrays.asList(update, secondVerify, otherRequest), keysOf(outbox().claimPending(10)));
+    }
+
+    @Test
+    public void fullyAckedOutboxTruncatesBothFiles() throws Exception {
+        EmbeddingOutbox outbox = outbox();
+        EmbeddingOutbox.Entry first = outbox.append(EmbeddingOutbox.Action.REGISTER, "u1", null, null, 0L, EMBEDDING);
+        EmbeddingOutbox.Entry second = outbox.append(EmbeddingOutbox.Action.REGISTER, "u2", null, null, 0L, EMBEDDING);
+
+        outbox.ack(first.key);
+        assertTrue(logFile().length() > 0);
+        assertEquals(16, ackFile().length());
+
+        outbox.ack(second.key);
+        assertEquals(0, logFile().length());
+        assertEquals(0, ackFile().length());
+        assertEquals(0, outbox().pendingCount());
+    }
+
+    @Test
+    public void mostlyAckedLogIsRewrittenAndSurvivesReopen() throws Exception {
+        // 2 KB embeddings: 140 records are past the 256 KB compaction threshold
+        float[] large = new float[512];
+        Arrays.fill(large, 0.5f);
+        List<String> keys = appendEnrollments(140, large);
+        long before = logFile().length();
+
+        // Compaction runs on the ack that leaves no more than half the entries pending
+        EmbeddingOutbox outbox = outbox();
+        for (int i = 0; i < 70; i++) {
+            outbox.ack(keys.get(i * 2));
+        }
+        assertEquals(0, ackFile().length());
+        assertEquals(before / 2, logFile().length());
+
+        List<String> survivors = new ArrayList<>();
+        for (int i = 0; i < 70; i++) {
+            survivors.add(keys.get(i * 2 + 1));
+        }
+        List<EmbeddingOutbox.Entry> batch = outbox().claimPending(1000);
+        assertEquals(survivors, keysOf(batch));
+        assertEquals(0.5f, batch.get(69).embedding[511], 0f);
+    }
+
+    @Test
+    public void concurrentDrainsNeverClaimTheSameEntry() throws Exception {
+        List<String> keys = appendEnrollments(40, EMBEDDING);
+        EmbeddingOutbox outbox = outbox();
+        int drains = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(drains);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int d = 0; d < drains; d++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    List<String> mine = new ArrayList<>();
+                    List<EmbeddingOutbox.Entry> batch;
+                    while (!(batch = outbox.claimPending(3)).isEmpty()) {
+                        mine.addAll(keysOf(batch));
+                    }
+                    return mine;
+                }));
+            }
+            start.countDown();
+
+            List<String> claimed = new ArrayList<>();
+            for (Future<List<String>> result : results) {
+                claimed.addAll(result.get(10, TimeUnit.SECONDS));
+            }
+            Set<String> distinct = new HashSet<>(claimed);
+            assertEquals(claimed.size(), distinct.size());
+            assertEquals(new HashSet<>(keys), distinct);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // The live call's own claim keeps an entry out of every drain until it is released
+        EmbeddingOutbox.Entry live = outbox.append(EmbeddingOutbox.Action.REGISTER, "live", null, null, 0L, EMBEDDING);
+        assertTrue(outbox.claimPending(10).isEmpty());
+        outbox.release(live.key);
+        assertEquals(Collections.singletonList(live.key), keysOf(outbox.claimPending(10)));
+    }
+}
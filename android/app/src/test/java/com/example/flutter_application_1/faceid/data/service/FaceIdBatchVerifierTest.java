@@ -0,0 +1,239 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.flutter_application_1.faceid.data.api.FaceIdApiController;
+import com.example.flutter_application_1.faceid.data.model.response.FaceIdBatchVerifyResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * Sends kiosk batches to a MockWebServer that answers each batch in reverse order, and to one
+ * without a batch endpoint.
+ */
+public class FaceIdBatchVerifierTest {
+    private static final float[] EMBEDDING = {0.1f, 0.2f, 0.3f};
+    private static final Pattern MANIFEST_ITEM = Pattern.compile("\"ItemId\":\"([^\"]+)\",\"UserId\":\"([^\"]+)\"");
+
+    private final MockWebServer server = new MockWebServer();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicLong clockMs = new AtomicLong(0);
+    private final BlockingQueue<RecordedRequest> batchRequests = new LinkedBlockingQueue<>();
+    private final BlockingQueue<RecordedRequest> singleRequests = new LinkedBlockingQueue<>();
+    private final Map<String, FaceIdBatchVerifyResponse.Item> results = new ConcurrentHashMap<>();
+    private final Map<String, String> errors = new ConcurrentHashMap<>();
+    private final BlockingQueue<String> done = new LinkedBlockingQueue<>();
+    private FaceIdApiController controller;
+
+    // What the batch endpoint answers: 200 with results, or an error code
+    private volatile int batchCode = 200;
+    // Added to the clock while the server holds a batch
+    private volatile long batchServerMs = 0;
+
+    @Before
+    public void setUp() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                if (path.endsWith("/verify-batch")) {
+                    batchRequests.add(request);
+                    if (batchCode != 200) {
+                        return new MockResponse().setResponseCode(batchCode);
+                    }
+                    clockMs.addAndGet(batchServerMs);
+                    return json(batchResults(request));
+                }
+                if (path.endsWith("/verify")) {
+                    singleRequests.add(request);
+                    return json("{\"Success\":true,\"Message\":\"ok\",\"Similarity\":0.8}");
+                }
+                return new MockResponse().setResponseCode(500);
+            }
+        });
+        server.start();
+        controller = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(FaceIdApiController.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+        server.shutdown();
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+    }
+
+    /** One result per manifest item, last item first; users named "ghost" get no result */
+    private static String batchResults(RecordedRequest request) {
+        List<String> results = new ArrayList<>();
+        Matcher item = MANIFEST_ITEM.matcher(request.getBody().clone().readUtf8());
+        while (item.find()) {
+            if (!item.group(2).startsWith("ghost")) {
+                results.add("{\"ItemId\":\"" + item.group(1) + "\",\"UserId\":\"" + item.group(2)
+                        + "\",\"Success\":true,\"Similarity\":0.9}");
+            }
+        }
+        Collections.reverse(results);
+        return "{\"Success\":true,\"Results\":[" + String.join(",", results) + "]}";
+    }
+
+    private static int manifestItems(RecordedRequest request) {
+        Matcher item = MANIFEST_ITEM.matcher(request.getBody().clone().readUtf8());
+        int count = 0;
+        while (item.find()) {
+            count++;
+        }
+        return count;
+    }
+
+    private FaceIdBatchVerifier verifier(int maxBatchSize, long maxDelayMs) {
+        return new FaceIdBatchVerifier(controller, scheduler, "req-1", null, maxBatchSize, maxDelayMs, clockMs::get);
+    }
+
+    private String submit(FaceIdBatchVerifier verifier, String userId) {
+        return verifier.submit(userId, EMBEDDING, new FaceIdBatchVerifier.ItemCallback() {
+            @Override
+            public void onResult(FaceIdBatchVerifyResponse.Item result) {
+                results.put(userId, result);
+                done.add(userId);
+            }
+
+            @Override
+            public void onError(String error) {
+                errors.put(userId, error);
+                done.add(userId);
+            }
+        });
+    }
+
+    private void awaitDone(int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            assertNotNull("only " + i + " of " + count + " items finished", done.poll(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void fullBatchIsSentAtOnceAndResultsAreRoutedByItemId() throws Exception {
+        FaceIdBatchVerifier verifier = verifier(3, 60000);
+        List<String> itemIds = Arrays.asList(submit(verifier, "u1"), submit(verifier, "u2"), submit(verifier, "u3"));
+
+        RecordedRequest batch = batchRequests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals("/api/faceid/requests/req-1/verify-batch", batch.getPath());
+        assertEquals(3, manifestItems(batch));
+        awaitDone(3);
+
+        // The server answered last item first; each user still gets its own result
+        for (int i = 0; i < 3; i++) {
+            FaceIdBatchVerifyResponse.Item result = results.get("u" + (i + 1));
+            assertEquals(itemIds.get(i), result.getItemId());
+            assertEquals("u" + (i + 1), result.getUserId());
+        }
+        assertTrue(errors.isEmpty());
+        assertEquals(1, verifier.getStats().batches);
+        assertEquals(0, singleRequests.size());
+    }
+
+    @Test
+    public void partialBatchIsSentAfterMaxDelay() throws Exception {
+        FaceIdBatchVerifier verifier = verifier(8, 300);
+        submit(verifier, "u1");
+        submit(verifier, "u2");
+
+        assertNull(batchRequests.poll(100, TimeUnit.MILLISECONDS));
+        RecordedRequest batch = batchRequests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(2, manifestItems(batch));
+        awaitDone(2);
+        assertEquals(2, results.size());
+    }
+
+    @Test
+    public void itemMissingFromTheResponseFailsAlone() throws Exception {
+        FaceIdBatchVerifier verifier = verifier(2, 60000);
+        submit(verifier, "u1");
+        submit(verifier, "ghost");
+        awaitDone(2);
+
+        assertEquals("u1", results.get("u1").getUserId());
+        assertEquals("No result for user ghost", errors.get("ghost"));
+    }
+
+    @Test
+    public void missingBatchEndpointFallsBackToOneRequestPerItem() throws Exception {
+        for (int code : new int[]{404, 405, 501}) {
+            batchCode = code;
+            results.clear();
+            FaceIdBatchVerifier verifier = verifier(2, 60000);
+            String first = submit(verifier, "u1");
+            String second = submit(verifier, "u2");
+
+            assertNotNull(batchRequests.poll(5, TimeUnit.SECONDS));
+            awaitDone(2);
+            assertEquals("HTTP " + code, first, results.get("u1").getItemId());
+            assertEquals("HTTP " + code, second, results.get("u2").getItemId());
+            assertEquals(0.8f, results.get("u2").getSimilarity(), 0f);
+            List<String> keys = Arrays.asList(
+                    singleRequests.take().getHeader("Idempotency-Key"),
+                    singleRequests.take().getHeader("Idempotency-Key"));
+            assertTrue(keys.contains(first) && keys.contains(second));
+
+            // The rest of the session skips the batch endpoint
+            String third = submit(verifier, "u3");
+            awaitDone(1);
+            assertEquals(third, singleRequests.poll(5, TimeUnit.SECONDS).getHeader("Idempotency-Key"));
+            assertTrue(batchRequests.isEmpty());
+            assertEquals(1, verifier.getStats().batches);
+        }
+    }
+
+    @Test
+    public void statsReportStudentsPerMinute() throws Exception {
+        // Four students queued at once, answered by one batch after 20 s
+        batchServerMs = 20000;
+        FaceIdBatchVerifier verifier = verifier(4, 60000);
+        for (int i = 0; i < 4; i++) {
+            submit(verifier, "u" + i);
+        }
+        awaitDone(4);
+
+        FaceIdBatchVerifier.Stats stats = verifier.getStats();
+        assertEquals(4, stats.submitted);
+        assertEquals(4, stats.completed);
+        assertEquals(1, stats.batches);
+        assertEquals(20000f, stats.meanLatencyMs, 0f);
+        assertEquals(12f, stats.studentsPerMinute, 0f);
+    }
+}
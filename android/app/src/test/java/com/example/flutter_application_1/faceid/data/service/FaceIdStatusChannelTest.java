@@ -0,0 +1,323 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.flutter_application_1.faceid.data.api.FaceIdApiController;
+import com.example.flutter_application_1.faceid.data.model.response.FaceIdRequestStatusResponse;
+
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * Holds event streams open on a MockWebServer past the polling client's read timeout, and steps
+ * the polling fallback one timer at a time on a fake clock.
+ */
+public class FaceIdStatusChannelTest {
+    private static final String VERIFIED_EVENT = "data: {\"Success\":true,\"Data\":{\"Status\":\"VERIFIED\"}}\n\n";
+    private static final long START_MS = 1_000_000;
+
+    private final MockWebServer server = new MockWebServer();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService streamExecutor = Executors.newSingleThreadExecutor();
+    private final BlockingQueue<String> statuses = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> errors = new LinkedBlockingQueue<>();
+    private FaceIdStatusChannel channel;
+    private FaceIdApiController pollController;
+    private FaceIdApiController streamController;
+
+    /** Records each timer instead of running it; the test runs them in order */
+    private static class StepScheduler extends ScheduledThreadPoolExecutor {
+        final BlockingQueue<Step> steps = new LinkedBlockingQueue<>();
+
+        StepScheduler() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            steps.add(new Step(command, unit.toMillis(delay)));
+            // A future that never fires, so close() has something to cancel
+            return super.schedule(() -> { }, 1, TimeUnit.DAYS);
+        }
+
+        Step next() throws InterruptedException {
+            Step step = steps.poll(5, TimeUnit.SECONDS);
+            assertNotNull("no timer scheduled", step);
+            return step;
+        }
+    }
+
+    private static class Step {
+        final Runnable command;
+        final long delayMs;
+
+        Step(Runnable command, long delayMs) {
+            this.command = command;
+            this.delayMs = delayMs;
+        }
+    }
+
+    private static class FakeClock implements FaceIdStatusChannel.Clock {
+        volatile long nowMs = START_MS;
+        volatile long elapsedMs = START_MS;
+
+        @Override
+        public long currentTimeMs() {
+            return nowMs;
+        }
+
+        @Override
+        public long elapsedRealtimeMs() {
+            return elapsedMs;
+        }
+    }
+
+    private final StepScheduler timers = new StepScheduler();
+    private final FakeClock clock = new FakeClock();
+    // Equal jitter with a zero draw: every delay is exactly half the backoff step
+    private final Random noJitter = new Random() {
+        @Override
+        public double nextDouble() {
+            return 0;
+        }
+    };
+
+    private final FaceIdStatusChannel.Listener listener = new FaceIdStatusChannel.Listener() {
+        @Override
+        public void onStatus(FaceIdRequestStatusResponse response) {
+            statuses.add(response.getData().getStatus());
+        }
+
+        @Override
+        public void onError(String error) {
+            errors.add(error);
+        }
+    };
+
+    private FaceIdApiController controller(OkHttpClient client) {
+        return new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(GsonConverterFactory.create())
+                .client(client)
+                .build()
+                .create(FaceIdApiController.class);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+        // Short read timeout for polls, none for the stream, as in ApiClient
+        OkHttpClient pollClient = new OkHttpClient.Builder().readTimeout(1, TimeUnit.SECONDS).build();
+        OkHttpClient streamClient = pollClient.newBuilder().readTimeout(0, TimeUnit.SECONDS).build();
+        pollController = controller(pollClient);
+        streamController = controller(streamClient);
+        channel = new FaceIdStatusChannel(pollController, streamController, scheduler, streamExecutor);
+    }
+
+    private FaceIdStatusChannel steppedChannel() {
+        return new FaceIdStatusChannel(pollController, streamController, timers, streamExecutor, noJitter, clock);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        channel.close();
+        scheduler.shutdownNow();
+        timers.shutdownNow();
+        streamExecutor.shutdownNow();
+        server.shutdown();
+    }
+
+    private static MockResponse eventStream(String body, long bodyDelayMs) {
+        return new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setBody(body)
+                .setBodyDelay(bodyDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void open() {
+        channel.open("req-1", "session-1", System.currentTimeMillis() + 60000, listener);
+    }
+
+    @Test
+    public void quietStreamOutlivesThePollReadTimeout() throws Exception {
+        server.enqueue(eventStream(VERIFIED_EVENT, 2000));
+        open();
+
+        assertEquals("VERIFIED", statuses.poll(5, TimeUnit.SECONDS));
+        assertEquals("/api/faceid/requests/req-1/events", server.takeRequest().getPath());
+        assertEquals(1, channel.getStreamRequestCount());
+        assertEquals(0, channel.getPollRequestCount());
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void heldStreamLeavesTheSchedulerFree() throws Exception {
+        server.enqueue(eventStream(VERIFIED_EVENT, 2000));
+        open();
+        assertNotNull(server.takeRequest(2, TimeUnit.SECONDS));
+
+        // The only scheduler thread still runs timers while the stream is held
+        CountDownLatch ran = new CountDownLatch(1);
+        scheduler.execute(ran::countDown);
+        assertTrue(ran.await(500, TimeUnit.MILLISECONDS));
+        assertTrue(statuses.isEmpty());
+    }
+
+    @Test
+    public void closeReleasesTheStreamThread() throws Exception {
+        server.enqueue(eventStream(VERIFIED_EVENT, 2000));
+        open();
+        assertNotNull(server.takeRequest(2, TimeUnit.SECONDS));
+
+        channel.close();
+        CountDownLatch ran = new CountDownLatch(1);
+        streamExecutor.execute(ran::countDown);
+        // Well before the body would arrive
+        assertTrue(ran.await(500, TimeUnit.MILLISECONDS));
+        assertTrue(statuses.isEmpty());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    // ===== Polling fallback =====
+
+    private static MockResponse status(String status) {
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"Success\":true,\"Data\":{\"Status\":\"" + status + "\"}}");
+    }
+
+    /** Open with no stream endpoint on the server and return the first poll's timer */
+    private Step openPolling(long expiresInMs) throws Exception {
+        channel = steppedChannel();
+        server.enqueue(new MockResponse().setResponseCode(404));
+        channel.open("req-1", "session-1", START_MS + expiresInMs, listener);
+        Step first = timers.next();
+        assertEquals(0, first.delayMs);
+        return first;
+    }
+
+    /** Answer the poll behind a timer with the given status and return the timer for the next one */
+    private Step pollWith(Step step, String answer) throws Exception {
+        server.enqueue(status(answer));
+        step.command.run();
+        assertEquals(answer, statuses.poll(5, TimeUnit.SECONDS));
+        return timers.next();
+    }
+
+    @Test
+    public void missingStreamEndpointFallsBackToLongPolling() throws Exception {
+        Step first = openPolling(60000);
+        assertEquals("/api/faceid/requests/req-1/events", server.takeRequest().getPath());
+
+        Step next = pollWith(first, "PENDING");
+        String path = server.takeRequest().getPath();
+        assertTrue(path, path.startsWith("/api/faceid/requests/req-1/status?"));
+        assertTrue(path, path.contains("waitSeconds=25"));
+        assertEquals(1, channel.getStreamRequestCount());
+        assertEquals(1, channel.getPollRequestCount());
+        assertEquals("PENDING", channel.getLastStatus());
+
+        // The next poll tells the server which status the client already has
+        pollWith(next, "PENDING");
+        assertTrue(server.takeRequest().getPath().contains("knownStatus=PENDING"));
+    }
+
+    @Test
+    public void backoffGrowsBy1Point6UpTo15Seconds() throws Exception {
+        Step step = pollWith(openPolling(60000), "PENDING");
+
+        // Steps 1000, 1600, 2560, 4096, 6553, 10484, then capped at 15000; halved by the zero jitter draw
+        long[] expected = {500, 800, 1280, 2048, 3276, 5242, 7500, 7500};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("delay " + i, expected[i], step.delayMs);
+            step = pollWith(step, "PENDING");
+        }
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void backoffIsCappedByAQuarterOfTheTimeLeftAndResetsOnChange() throws Exception {
+        // 20 s left: no step longer than 5 s
+        Step step = pollWith(openPolling(20000), "PENDING");
+
+        long[] expected = {500, 800, 1280, 2048, 2500, 2500};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("delay " + i, expected[i], step.delayMs);
+            step = pollWith(step, "PENDING");
+        }
+
+        step = pollWith(step, "VERIFIED");
+        assertEquals(500, step.delayMs);
+    }
+
+    @Test
+    public void heldLongPollIsFollowedAtOnce() throws Exception {
+        Step step = pollWith(openPolling(60000), "PENDING");
+        assertEquals(500, step.delayMs);
+
+        // The server sits on the poll for more than half the wait hint before answering
+        server.enqueue(status("PENDING").setHeadersDelay(500, TimeUnit.MILLISECONDS));
+        step.command.run();
+        clock.elapsedMs += 13000;
+        assertEquals("PENDING", statuses.poll(5, TimeUnit.SECONDS));
+        assertEquals(0, timers.next().delayMs);
+    }
+
+    @Test
+    public void pollingStopsAtRequestExpiry() throws Exception {
+        Step step = pollWith(openPolling(60000), "PENDING");
+        int requests = server.getRequestCount();
+
+        clock.nowMs = START_MS + 60000;
+        step.command.run();
+        Thread.sleep(200);
+        assertEquals(requests, server.getRequestCount());
+        assertNull(timers.steps.poll(200, TimeUnit.MILLISECONDS));
+        assertTrue(statuses.isEmpty());
+    }
+
+    @Test
+    public void missingStreamEndpointIsRememberedPerChannelForALimitedTime() throws Exception {
+        pollWith(openPolling(60000), "PENDING");
+        assertTrue(channel.isStreamUnsupported());
+
+        // Same channel: the next session polls without asking for the stream
+        channel.open("req-2", "session-2", START_MS + 60000, listener);
+        assertEquals(1000, timers.next().delayMs);
+        assertEquals(0, channel.getStreamRequestCount());
+
+        // Another channel has not seen the 404
+        assertFalse(steppedChannel().isStreamUnsupported());
+
+        // Once the recheck period is over, the stream is tried again
+        clock.elapsedMs += FaceIdStatusChannel.STREAM_RECHECK_MS;
+        assertFalse(channel.isStreamUnsupported());
+        int before = server.getRequestCount();
+        server.enqueue(eventStream(VERIFIED_EVENT, 0));
+        channel.open("req-3", "session-3", START_MS + 60000, listener);
+        assertEquals("VERIFIED", statuses.poll(5, TimeUnit.SECONDS));
+        assertEquals(1, channel.getStreamRequestCount());
+        assertEquals(before + 1, server.getRequestCount());
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Supersede, late-drop and one-callback-per-vsync rules, with vsyncs fired by hand on a fake clock.
+ */
+public class FrameResultDispatcherTest {
+    private static final int CONTINUOUS = FrameResultDispatcher.CHANNEL_CONTINUOUS_FRAME;
+    private static final int DETECTION = FrameResultDispatcher.CHANNEL_FACE_DETECTION;
+
+    private final List<Runnable> vsyncs = new ArrayList<>();
+    private final List<String> shown = new ArrayList<>();
+    private long now = 0;
+    private final FrameResultDispatcher dispatcher = new FrameResultDispatcher(vsyncs::add, () -> now);
+
+    private void dispatch(int channel, long seq, long frameTimeMs) {
+        dispatcher.dispatch(channel, seq, frameTimeMs, () -> shown.add(channel + ":" + seq));
+    }
+
+    private void fireVsync() {
+        assertEquals("one vsync pending", 1, vsyncs.size());
+        vsyncs.remove(0).run();
+    }
+
+    @Test
+    public void newerFrameSupersedesOneStillWaiting() {
+        dispatch(CONTINUOUS, 1, 0);
+        dispatch(CONTINUOUS, 2, 0);
+        dispatch(CONTINUOUS, 3, 0);
+        fireVsync();
+        assertEquals(Arrays.asList("0:3"), shown);
+        FrameResultDispatcher.Stats stats = dispatcher.getStats();
+        assertEquals(1, stats.delivered);
+        assertEquals(2, stats.superseded);
+        assertEquals(0, stats.late);
+    }
+
+    @Test
+    public void olderFrameIsDroppedAsLate() {
+        dispatch(CONTINUOUS, 5, 0);
+        fireVsync();
+        // Arrives after frame 5 was shown
+        dispatch(CONTINUOUS, 4, 0);
+        // Arrives while a newer frame waits
+        dispatch(CONTINUOUS, 7, 0);
+        dispatch(CONTINUOUS, 6, 0);
+        fireVsync();
+        assertEquals(Arrays.asList("0:5", "0:7"), shown);
+        assertEquals(2, dispatcher.getStats().late);
+        assertEquals(0, dispatcher.getStats().superseded);
+    }
+
+    @Test
+    public void channelsShareOneCallbackPerVsync() {
+        dispatch(CONTINUOUS, 1, 0);
+        dispatch(DETECTION, 1, 0);
+        dispatch(CONTINUOUS, 2, 0);
+        fireVsync();
+        assertTrue(vsyncs.isEmpty());
+        assertEquals(Arrays.asList("0:2", "1:1"), shown);
+        assertEquals(1, dispatcher.getStats().vsyncs);
+
+        // Sequences are per channel
+        dispatch(DETECTION, 2, 0);
+        fireVsync();
+        assertEquals(2, dispatcher.getStats().vsyncs);
+        assertEquals(3, dispatcher.getStats().delivered);
+    }
+
+    @Test
+    public void updateDispatchedDuringAVsyncWaitsForTheNext() {
+        dispatcher.dispatch(CONTINUOUS, 1, 0, () -> {
+            shown.add("0:1");
+            dispatch(CONTINUOUS, 2, 0);
+        });
+        fireVsync();
+        assertEquals(Arrays.asList("0:1"), shown);
+        fireVsync();
+        assertEquals(Arrays.asList("0:1", "0:2"), shown);
+    }
+
+    @Test
+    public void measuresFrameToUiLatency() {
+        dispatch(CONTINUOUS, 1, 100);
+        dispatch(DETECTION, 1, 130);
+        now = 150;
+        fireVsync();
+        dispatch(CONTINUOUS, 2, 200);
+        now = 290;
+        fireVsync();
+        FrameResultDispatcher.Stats stats = dispatcher.getStats();
+        assertEquals(3, stats.delivered);
+        assertEquals((50 + 20 + 90) / 3f, stats.meanFrameToUiMs, 1e-4f);
+        assertEquals(90, stats.maxFrameToUiMs);
+    }
+
+    @Test
+    public void concurrentDispatchersScheduleOneVsyncAndDeliverTheNewest() throws InterruptedException {
+        List<Runnable> posted = new ArrayList<>();
+        FrameResultDispatcher shared = new FrameResultDispatcher(callback -> {
+            synchronized (posted) {
+                posted.add(callback);
+            }
+        }, () -> 0L);
+        long[] seen = {-1};
+        int threads = 4;
+        int perThread = 1000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    long seq = (long) i * threads + offset;
+                    shared.dispatch(CONTINUOUS, seq, 0, () -> seen[0] = seq);
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, posted.size());
+        posted.get(0).run();
+
+        FrameResultDispatcher.Stats stats = shared.getStats();
+        assertEquals(1, stats.delivered);
+        assertEquals((long) threads * perThread, stats.delivered + stats.superseded + stats.late);
+        // A newer frame always replaces the waiting one, so the newest of all is what is shown
+        assertEquals((long) perThread * threads - 1, seen[0]);
+    }
+}
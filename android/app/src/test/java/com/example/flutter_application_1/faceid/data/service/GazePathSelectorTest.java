@@ -0,0 +1,92 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Latency-driven switching between the iTracker CNN and the landmark gaze path, with probes and
+ * hysteresis.
+ */
+public class GazePathSelectorTest {
+    private final GazePathSelector selector = new GazePathSelector();
+
+    /** Run frames at the given CNN latency; returns how many of them ran the CNN */
+    private int runFrames(int frames, float latencyMs) {
+        int modelRuns = 0;
+        for (int i = 0; i < frames; i++) {
+            if (selector.shouldRunModel()) {
+                modelRuns++;
+                selector.recordModelLatency(latencyMs);
+            }
+        }
+        return modelRuns;
+    }
+
+    @Test
+    public void fastModelStaysOnTheCnn() {
+        assertEquals(100, runFrames(100, 15f));
+        assertFalse(selector.isUsingLandmarks());
+        assertEquals(15f, selector.getLatencyEmaMs(), 1e-4f);
+    }
+
+    @Test
+    public void slowModelSwitchesAfterMinimumSamples() {
+        for (int i = 1; i < GazePathSelector.MIN_SAMPLES; i++) {
+            assertFalse(selector.recordModelLatency(80f));
+        }
+        assertTrue(selector.recordModelLatency(80f));
+        assertTrue(selector.isUsingLandmarks());
+    }
+
+    @Test
+    public void probesTheCnnWhileOnLandmarks() {
+        runFrames(GazePathSelector.MIN_SAMPLES, 80f);
+        assertTrue(selector.isUsingLandmarks());
+        // Still slow: one probe per interval, and it stays on landmarks
+        int probes = runFrames(GazePathSelector.PROBE_INTERVAL_FRAMES * 4, 80f);
+        assertEquals(4, probes);
+        assertTrue(selector.isUsingLandmarks());
+    }
+
+    @Test
+    public void switchesBackOnceProbesAreWellUnderBudget() {
+        runFrames(GazePathSelector.MIN_SAMPLES, 80f);
+        // The device got faster (e.g. thermal throttling ended); probes pull the EMA down
+        int frames = 0;
+        while (selector.isUsingLandmarks() && frames < 100 * GazePathSelector.PROBE_INTERVAL_FRAMES) {
+            runFrames(1, 10f);
+            frames++;
+        }
+        assertFalse(selector.isUsingLandmarks());
+        assertTrue(selector.getLatencyEmaMs() < GazePathSelector.SWITCH_BACK_MS);
+        assertTrue(selector.shouldRunModel());
+    }
+
+    @Test
+    public void latencyBetweenThresholdsKeepsTheCurrentPath() {
+        // 35 ms: under the switch-over budget, over the switch-back one
+        runFrames(20, 35f);
+        assertFalse(selector.isUsingLandmarks());
+
+        runFrames(GazePathSelector.MIN_SAMPLES, 80f);
+        assertTrue(selector.isUsingLandmarks());
+        runFrames(GazePathSelector.PROBE_INTERVAL_FRAMES * 30, 35f);
+        assertTrue(selector.isUsingLandmarks());
+        assertEquals(35f, selector.getLatencyEmaMs(), 0.5f);
+    }
+
+    @Test
+    public void forcedLandmarksAreNotProbedAndReleaseRestartsMeasurement() {
+        selector.setForced(true);
+        assertEquals(0, runFrames(GazePathSelector.PROBE_INTERVAL_FRAMES * 3, 10f));
+        assertTrue(selector.isUsingLandmarks());
+
+        selector.setForced(false);
+        assertFalse(selector.isUsingLandmarks());
+        assertEquals(0f, selector.getLatencyEmaMs(), 0f);
+        assertTrue(selector.shouldRunModel());
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Microbenchmark for {@link HeadPoseSolver#solve}, on synthetic projections of 64 random poses.
+ *
+ * Not a JUnit test, so it stays out of the unit test run. Run the main method from the IDE, or after
+ * {@code ./gradlew compileDebugUnitTestJavaWithJavac} with the unit test classes directory on the
+ * classpath. Prints the median time per solve over several rounds, after a warm-up long enough for the
+ * JIT to compile the solver. Arguments: rounds (default 7) and solves per round (default 200000).
+ */
+public final class HeadPoseSolverBenchmark {
+    private static final int WIDTH = 480;
+    private static final int HEIGHT = 640;
+    private static final int LANDMARK_COUNT = 478;
+    private static final int POSES = 64;
+
+    private HeadPoseSolverBenchmark() {}
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+        int solvesPerRound = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        // Poses within what the liveness challenge sees; a different one each solve defeats constant folding
+        Random random = new Random(42);
+        float[][] frames = new float[POSES][LANDMARK_COUNT * 3];
+        for (float[] frame : frames) {
+            HeadPoseSolver.projectModel(random.nextDouble() * 30 - 15, random.nextDouble() * 50 - 25,
+                    random.nextDouble() * 20 - 10, 1800 + random.nextDouble() * 400, WIDTH, HEIGHT, frame);
+        }
+
+        HeadPoseSolver solver = new HeadPoseSolver();
+        double sink = 0;
+        // Warm-up: same work as two rounds
+        for (int i = 0; i < 2 * solvesPerRound; i++) {
+            solver.solve(frames[i & (POSES - 1)], LANDMARK_COUNT, WIDTH, HEIGHT);
+            sink += solver.getYaw();
+        }
+
+        double[] nsPerSolve = new double[rounds];
+        long iterations = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < solvesPerRound; i++) {
+                solver.solve(frames[i & (POSES - 1)], LANDMARK_COUNT, WIDTH, HEIGHT);
+                sink += solver.getYaw();
+                iterations += solver.getLastIterations();
+            }
+            nsPerSolve[round] = (double) (System.nanoTime() - start) / solvesPerRound;
+        }
+        Arrays.sort(nsPerSolve);
+        System.out.println(String.format(Locale.US,
+                "HeadPoseSolver.solve: median %.1f ns (min %.1f, max %.1f) over %d rounds of %d, %.2f iterations avg [%s]",
+                nsPerSolve[rounds / 2], nsPerSolve[0], nsPerSolve[rounds - 1], rounds, solvesPerRound,
+                (double) iterations / ((long) rounds * solvesPerRound), sink != 0 ? "ok" : "-"));
+    }
+}
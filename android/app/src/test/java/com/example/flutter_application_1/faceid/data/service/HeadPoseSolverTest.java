@@ -0,0 +1,66 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Round-trips known poses through {@link HeadPoseSolver#projectModel} and the solver
+ */
+public class HeadPoseSolverTest {
+    private static final int WIDTH = 480;
+    private static final int HEIGHT = 640;
+    private static final int LANDMARK_COUNT = 478;
+    private static final double DISTANCE = 2000.0;
+    private static final double TOLERANCE_DEG = 1.0;
+
+    private final HeadPoseSolver solver = new HeadPoseSolver();
+    private final float[] landmarks = new float[LANDMARK_COUNT * 3];
+
+    private void assertRoundTrip(double pitch, double yaw, double roll) {
+        HeadPoseSolver.projectModel(pitch, yaw, roll, DISTANCE, WIDTH, HEIGHT, landmarks);
+
+        assertTrue(solver.solve(landmarks, LANDMARK_COUNT, WIDTH, HEIGHT));
+        String pose = "pose " + pitch + "/" + yaw + "/" + roll;
+        assertEquals(pose, pitch, solver.getPitch(), TOLERANCE_DEG);
+        assertEquals(pose, yaw, solver.getYaw(), TOLERANCE_DEG);
+        assertEquals(pose, roll, solver.getRoll(), TOLERANCE_DEG);
+    }
+
+    @Test
+    public void frontalFaceIsZeroPose() {
+        assertRoundTrip(0, 0, 0);
+        assertEquals(DISTANCE, solver.getTranslationZ(), DISTANCE * 0.02);
+    }
+
+    @Test
+    public void recoversSingleAxisRotations() {
+        assertRoundTrip(15, 0, 0);
+        assertRoundTrip(-15, 0, 0);
+        assertRoundTrip(0, 25, 0);
+        assertRoundTrip(0, -25, 0);
+        assertRoundTrip(0, 0, 20);
+        assertRoundTrip(0, 0, -20);
+    }
+
+    @Test
+    public void recoversCombinedRotation() {
+        assertRoundTrip(10, -20, 8);
+        assertRoundTrip(-12, 30, -5);
+    }
+
+    @Test
+    public void convergesInFewIterations() {
+        assertRoundTrip(5, 15, 0);
+        assertTrue("iterations " + solver.getLastIterations(), solver.getLastIterations() <= 6);
+    }
+
+    @Test
+    public void rejectsMissingLandmarks() {
+        assertFalse(solver.solve(null, 0, WIDTH, HEIGHT));
+        assertFalse(solver.solve(new float[30], 10, WIDTH, HEIGHT));
+        assertFalse(solver.solve(landmarks, LANDMARK_COUNT, 0, HEIGHT));
+    }
+}
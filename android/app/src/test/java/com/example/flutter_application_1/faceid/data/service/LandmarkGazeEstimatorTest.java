@@ -0,0 +1,119 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Iris gaze on synthetic landmarks: two 60 px wide eyes, irises placed by hand.
+ */
+public class LandmarkGazeEstimatorTest {
+    private static final int COUNT = LandmarkGazeEstimator.REQUIRED_LANDMARKS;
+
+    private final LandmarkGazeEstimator estimator = new LandmarkGazeEstimator();
+
+    private static void set(float[] landmarks, int index, float x, float y) {
+        landmarks[index * 3] = x;
+        landmarks[index * 3 + 1] = y;
+    }
+
+    /**
+     * Both eyes level at y = 200; irises offset by (dx, dy) pixels from the eye centers
+     */
+    private static float[] face(float dx, float dy) {
+        float[] landmarks = new float[COUNT * 3];
+        // Eye on the image left: corners 33 / 133, lids 159 / 145, iris 468
+        set(landmarks, 33, 100, 200);
+        set(landmarks, 133, 160, 200);
+        set(landmarks, 159, 130, 190);
+        set(landmarks, 145, 130, 210);
+        set(landmarks, 468, 130 + dx, 200 + dy);
+        // Eye on the image right: corners 362 / 263, lids 386 / 374, iris 473
+        set(landmarks, 362, 240, 200);
+        set(landmarks, 263, 300, 200);
+        set(landmarks, 386, 270, 190);
+        set(landmarks, 374, 270, 210);
+        set(landmarks, 473, 270 + dx, 200 + dy);
+        return landmarks;
+    }
+
+    private static float[] rotated(float[] landmarks, double degrees) {
+        double cos = Math.cos(Math.toRadians(degrees)), sin = Math.sin(Math.toRadians(degrees));
+        float[] out = landmarks.clone();
+        for (int i = 0; i < COUNT; i++) {
+            double x = landmarks[i * 3] - 200, y = landmarks[i * 3 + 1] - 200;
+            out[i * 3] = (float) (200 + x * cos - y * sin);
+            out[i * 3 + 1] = (float) (200 + x * sin + y * cos);
+        }
+        return out;
+    }
+
+    @Test
+    public void centeredIrisesLookStraightAhead() {
+        assertTrue(estimator.estimate(face(0, 0), COUNT));
+        assertEquals(0f, estimator.getGazeX(), 1e-6f);
+        assertEquals(0f, estimator.getGazeY(), 1e-6f);
+    }
+
+    @Test
+    public void horizontalGazeFollowsTheIris() {
+        // 6 px is a tenth of the eye width: 0.1 * 2 * gain 3
+        assertTrue(estimator.estimate(face(6, 0), COUNT));
+        assertEquals(0.6f, estimator.getGazeX(), 1e-5f);
+        assertEquals(0f, estimator.getGazeY(), 1e-6f);
+
+        assertTrue(estimator.estimate(face(-6, 0), COUNT));
+        assertEquals(-0.6f, estimator.getGazeX(), 1e-5f);
+    }
+
+    @Test
+    public void verticalGazeFollowsTheIris() {
+        // 3 px below the lid midpoint over a 60 px eye, gain 4
+        assertTrue(estimator.estimate(face(0, 3), COUNT));
+        assertEquals(0.2f, estimator.getGazeY(), 1e-5f);
+        assertTrue(estimator.estimate(face(0, -3), COUNT));
+        assertEquals(-0.2f, estimator.getGazeY(), 1e-5f);
+    }
+
+    @Test
+    public void clampsToUnitRange() {
+        assertTrue(estimator.estimate(face(25, 20), COUNT));
+        assertEquals(1f, estimator.getGazeX(), 0f);
+        assertEquals(1f, estimator.getGazeY(), 0f);
+        assertTrue(estimator.estimate(face(-25, -20), COUNT));
+        assertEquals(-1f, estimator.getGazeX(), 0f);
+        assertEquals(-1f, estimator.getGazeY(), 0f);
+    }
+
+    @Test
+    public void horizontalGazeIgnoresHeadRoll() {
+        // Measured along the corner-to-corner axis, so tilting the whole face changes nothing
+        assertTrue(estimator.estimate(rotated(face(6, 0), 20), COUNT));
+        assertEquals(0.6f, estimator.getGazeX(), 1e-4f);
+    }
+
+    @Test
+    public void isDeterministic() {
+        float[] landmarks = face(4, -2);
+        assertTrue(estimator.estimate(landmarks, COUNT));
+        float x = estimator.getGazeX(), y = estimator.getGazeY();
+        estimator.estimate(face(0, 0), COUNT);
+        assertTrue(estimator.estimate(landmarks, COUNT));
+        assertEquals(x, estimator.getGazeX(), 0f);
+        assertEquals(y, estimator.getGazeY(), 0f);
+    }
+
+    @Test
+    public void needsIrisLandmarksAndOpenEyes() {
+        assertFalse(estimator.estimate(null, COUNT));
+        // Mesh without the 10 iris points
+        assertFalse(estimator.estimate(face(0, 0), 468));
+        assertFalse(estimator.estimate(new float[468 * 3], COUNT));
+        // Degenerate eye: both corners in one spot
+        float[] collapsed = face(0, 0);
+        set(collapsed, 133, 100, 200);
+        assertFalse(estimator.estimate(collapsed, COUNT));
+    }
+}
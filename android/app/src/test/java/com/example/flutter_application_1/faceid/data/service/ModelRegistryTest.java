@@ -0,0 +1,183 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lease and unload rules, with loads run inline and retries fired at once
+ */
+public class ModelRegistryTest {
+    private final List<Object> unloaded = new ArrayList<>();
+    private ModelRegistry registry;
+    private boolean failLoads;
+
+    @Before
+    public void setUp() {
+        RetryScheduler scheduler = new RetryScheduler(Runnable::run, (task, delayMs) -> task.run(),
+                () -> 0L, new Random(1));
+        registry = new ModelRegistry(scheduler);
+        for (ModelRegistry.Model model : ModelRegistry.Model.values()) {
+            registry.<Object>register(model, () -> {
+                if (failLoads) {
+                    throw new IllegalStateException("missing asset");
+                }
+                return new Object();
+            }, unloaded::add);
+        }
+    }
+
+    @Test
+    public void tryLeaseStartsLoadAndReturnsInstance() {
+        // Loads complete inline here, so the first call already sees the instance
+        ModelRegistry.Lease<Object> lease = registry.tryLease(ModelRegistry.Model.FACE_DETECTOR);
+        assertNull(lease);
+        lease = registry.tryLease(ModelRegistry.Model.FACE_DETECTOR);
+        assertNotNull(lease);
+        assertNotNull(lease.get());
+        lease.close();
+    }
+
+    @Test
+    public void unloadIdleSkipsLeasedModel() {
+        registry.preload(ModelRegistry.Model.FACE_EMBEDDING);
+        ModelRegistry.Lease<Object> lease = registry.tryLease(ModelRegistry.Model.FACE_EMBEDDING);
+
+        assertEquals(0, registry.unloadIdle(0));
+        assertTrue(unloaded.isEmpty());
+
+        lease.close();
+        assertEquals(1, registry.unloadIdle(0));
+        assertEquals(1, unloaded.size());
+    }
+
+    @Test
+    public void unloadIdleSkipsAcquiredModel() {
+        registry.acquire(ModelRegistry.Model.SPOOF_DETECTOR);
+        assertEquals(0, registry.unloadIdle(0));
+
+        registry.release(ModelRegistry.Model.SPOOF_DETECTOR);
+        assertEquals(1, registry.unloadIdle(0));
+    }
+
+    @Test
+    public void unloadAllDefersCloseUntilLastLease() {
+        registry.preload(ModelRegistry.Model.GAZE_ESTIMATOR);
+        ModelRegistry.Lease<Object> first = registry.tryLease(ModelRegistry.Model.GAZE_ESTIMATOR);
+        ModelRegistry.Lease<Object> second = registry.tryLease(ModelRegistry.Model.GAZE_ESTIMATOR);
+        Object instance = first.get();
+
+        registry.unloadAll();
+        assertFalse(registry.isLoaded(ModelRegistry.Model.GAZE_ESTIMATOR));
+        assertTrue(unloaded.isEmpty());
+
+        first.close();
+        first.close();   // Idempotent: must not count as the second lease
+        assertTrue(unloaded.isEmpty());
+
+        second.close();
+        assertEquals(Collections.singletonList(instance), unloaded);
+    }
+
+    @Test
+    public void newLeaseAfterUnloadGetsFreshInstance() {
+        registry.preload(ModelRegistry.Model.LANDMARK_EXTRACTOR);
+        ModelRegistry.Lease<Object> old = registry.tryLease(ModelRegistry.Model.LANDMARK_EXTRACTOR);
+        registry.unloadAll();
+
+        registry.preload(ModelRegistry.Model.LANDMARK_EXTRACTOR);
+        ModelRegistry.Lease<Object> fresh = registry.tryLease(ModelRegistry.Model.LANDMARK_EXTRACTOR);
+        assertNotNull(fresh);
+        assertFalse(old.get() == fresh.get());
+
+        old.close();
+        assertSame(old.get(), unloaded.get(0));
+        fresh.close();
+        assertEquals(1, unloaded.size());
+    }
+
+    @Test
+    public void failedModelIsNotLoadedAndIsReported() throws InterruptedException {
+        failLoads = true;
+        List<ModelRegistry.Model> models = Arrays.asList(ModelRegistry.Model.FACE_DETECTOR,
+                ModelRegistry.Model.FACE_EMBEDDING);
+
+        // awaitAll reports that loading finished, even though it failed
+        assertTrue(registry.awaitAll(models, 1000));
+        assertFalse(registry.isLoaded(models));
+        assertEquals(models, registry.getFailed(models));
+        assertNull(registry.lease(ModelRegistry.Model.FACE_DETECTOR, 1000));
+
+        failLoads = false;
+        registry.resetFailures();
+        assertTrue(registry.awaitAll(models, 1000));
+        assertTrue(registry.isLoaded(models));
+        assertTrue(registry.getFailed(models).isEmpty());
+    }
+
+    @Test
+    public void loadFinishingAfterUnloadAllIsUnloadedNotInstalled() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            RetryScheduler scheduler = new RetryScheduler(executor, (task, delayMs) -> task.run(),
+                    () -> 0L, new Random(1));
+            ModelRegistry blocking = new ModelRegistry(scheduler);
+            CountDownLatch loadStarted = new CountDownLatch(1);
+            CountDownLatch releaseLoad = new CountDownLatch(1);
+            CountDownLatch lateUnloaded = new CountDownLatch(1);
+            Object late = new Object();
+            List<Object> closed = Collections.synchronizedList(new ArrayList<>());
+            blocking.<Object>register(ModelRegistry.Model.FACE_DETECTOR, () -> {
+                // Only the first load blocks; the waiter's lease starts a fresh one after the shutdown
+                if (loadStarted.getCount() == 0) {
+                    return new Object();
+                }
+                loadStarted.countDown();
+                releaseLoad.await();
+                return late;
+            }, instance -> {
+                closed.add(instance);
+                lateUnloaded.countDown();
+            });
+
+            blocking.preload(ModelRegistry.Model.FACE_DETECTOR);
+            assertTrue(loadStarted.await(1, TimeUnit.SECONDS));
+            // A waiter from before the shutdown is woken instead of sitting out its timeout
+            Future<Long> waiter = executor.submit(() -> {
+                long start = System.nanoTime();
+                blocking.lease(ModelRegistry.Model.FACE_DETECTOR, 5000);
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            });
+            Thread.sleep(100);
+            blocking.unloadAll();
+            assertTrue(waiter.get(1, TimeUnit.SECONDS) < 1000);
+            assertTrue(closed.isEmpty());
+
+            releaseLoad.countDown();
+            assertTrue(lateUnloaded.await(1, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList(late), closed);
+            ModelRegistry.Lease<Object> lease = blocking.tryLease(ModelRegistry.Model.FACE_DETECTOR);
+            assertTrue(lease == null || lease.get() != late);
+            assertFalse(blocking.hasFailed(ModelRegistry.Model.FACE_DETECTOR));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * "All ready" bookkeeping: only successful records of the required models count.
+ */
+public class ModelStartupTimelineTest {
+
+    private static ModelStartupTimeline timeline() {
+        return new ModelStartupTimeline(1000, Arrays.asList("FaceDetector", "FaceSpoofDetector"));
+    }
+
+    @Test
+    public void readyOnceEveryRequiredModelIsReady() {
+        ModelStartupTimeline timeline = timeline();
+        assertFalse(timeline.recordModel("FaceDetector", 1000, 200, 50, 1250, true));
+        assertEquals(-1, timeline.getTimeToReadyMs());
+        assertTrue(timeline.recordModel("FaceSpoofDetector", 1000, 300, 80, 1400, true));
+        assertEquals(400, timeline.getTimeToReadyMs());
+        assertEquals("FaceSpoofDetector", timeline.getCriticalPath().getModelName());
+    }
+
+    @Test
+    public void modelsOutsideTheRequiredSetDoNotCount() {
+        ModelStartupTimeline timeline = timeline();
+        timeline.recordModel("FaceDetector", 1000, 200, 50, 1250, true);
+        // Loaded on first use, e.g. by the liveness challenge
+        assertFalse(timeline.recordModel("GazeEstimator", 1100, 100, 20, 1300, true));
+        assertEquals(-1, timeline.getTimeToReadyMs());
+        assertEquals(2, timeline.getEntries().size());
+    }
+
+    @Test
+    public void failedModelHoldsReadyBackUntilARetrySucceeds() {
+        ModelStartupTimeline timeline = timeline();
+        timeline.recordModel("FaceDetector", 1000, 200, 50, 1250, true);
+        assertFalse(timeline.recordModel("FaceSpoofDetector", 1000, 0, 0, 1300, false));
+        assertEquals(-1, timeline.getTimeToReadyMs());
+
+        assertTrue(timeline.recordModel("FaceSpoofDetector", 2300, 300, 80, 2700, true));
+        assertEquals(1700, timeline.getTimeToReadyMs());
+        assertEquals(2, timeline.getEntries().size());
+    }
+
+    @Test
+    public void readyIsReportedOnce() {
+        ModelStartupTimeline timeline = timeline();
+        timeline.recordModel("FaceDetector", 1000, 200, 50, 1250, true);
+        assertTrue(timeline.recordModel("FaceSpoofDetector", 1000, 300, 80, 1400, true));
+        assertFalse(timeline.recordModel("FaceDetector", 5000, 200, 50, 5250, true));
+        assertEquals(400, timeline.getTimeToReadyMs());
+    }
+
+    @Test
+    public void firstVerdictKeepsTheEarliest() {
+        ModelStartupTimeline timeline = timeline();
+        assertEquals(-1, timeline.getTimeToFirstVerdictMs());
+        timeline.markFirstVerdict(1600);
+        timeline.markFirstVerdict(1900);
+        assertEquals(600, timeline.getTimeToFirstVerdictMs());
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.flutter_application_1.faceid.util.CircuitBreaker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+/**
+ * Backoff schedules of the policies and how the scheduler applies them, on a fake clock and timer
+ * with attempts run inline.
+ */
+public class RetryPolicyTest {
+    private long now = 0;
+    private final List<Long> delays = new ArrayList<>();
+    private final List<Runnable> pending = new ArrayList<>();
+    private final RetryScheduler scheduler = new RetryScheduler(Runnable::run,
+            (task, delayMs) -> {
+                delays.add(delayMs);
+                pending.add(task);
+            },
+            () -> now, new Random(7));
+
+    /** Advance the clock by the first pending delay and fire it */
+    private void fireNext() {
+        Runnable task = pending.remove(0);
+        now += delays.get(delays.size() - pending.size() - 1);
+        task.run();
+    }
+
+    private static RetryScheduler.RetryException failure(CompletableFuture<?> future) {
+        assertTrue(future.isCompletedExceptionally());
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            return (RetryScheduler.RetryException) e.getCause();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        throw new AssertionError("not failed");
+    }
+
+    @Test
+    public void delaysGrowExponentiallyUpToTheCap() {
+        RetryPolicy policy = new RetryPolicy.Builder("test")
+                .initialDelayMs(100).backoffMultiplier(2).maxDelayMs(500).jitterFactor(0).build();
+        Random random = new Random(1);
+        assertEquals(100, policy.delayAfterAttempt(1, random));
+        assertEquals(200, policy.delayAfterAttempt(2, random));
+        assertEquals(400, policy.delayAfterAttempt(3, random));
+        assertEquals(500, policy.delayAfterAttempt(4, random));
+        assertEquals(500, policy.delayAfterAttempt(10, random));
+    }
+
+    @Test
+    public void jitterStaysWithinItsFraction() {
+        RetryPolicy policy = new RetryPolicy.Builder("test").initialDelayMs(1000).maxDelayMs(30000).jitterFactor(0.1).build();
+        Random random = new Random(3);
+        for (int attempt = 1; attempt <= 6; attempt++) {
+            double base = Math.min(1000 * Math.pow(2, attempt - 1), 30000);
+            for (int i = 0; i < 200; i++) {
+                long delay = policy.delayAfterAttempt(attempt, random);
+                assertTrue(delay + " at " + attempt, delay >= Math.floor(base * 0.9) && delay <= Math.ceil(base * 1.1));
+            }
+        }
+    }
+
+    @Test
+    public void builtInPredicates() {
+        assertTrue(RetryPolicy.INFERENCE.shouldRetry(new RuntimeException("delegate")));
+        assertFalse(RetryPolicy.INFERENCE.shouldRetry(
+                new ModelRegistry.ModelUnavailableException(ModelRegistry.Model.SPOOF_DETECTOR)));
+        assertFalse(RetryPolicy.MODEL_INIT.hasCircuitBreaker());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroAttempts() {
+        new RetryPolicy.Builder("test").maxAttempts(0).build();
+    }
+
+    @Test
+    public void retriesOnTheTimerUntilSuccess() throws Exception {
+        RetryPolicy policy = new RetryPolicy.Builder("flaky").maxAttempts(4).initialDelayMs(100).jitterFactor(0).build();
+        int[] calls = {0};
+        CompletableFuture<String> result = scheduler.submit(policy, () -> {
+            if (++calls[0] < 3) throw new IOException("try again");
+            return "ok";
+        });
+
+        assertFalse(result.isDone());
+        fireNext();
+        fireNext();
+        assertEquals("ok", result.get());
+        assertEquals(3, calls[0]);
+        assertEquals(Arrays.asList(100L, 200L), delays);
+        assertEquals(300, now);
+    }
+
+    @Test
+    public void stopsOnNonRetryableAndExhaustedFailures() {
+        RetryPolicy policy = new RetryPolicy.Builder("io").maxAttempts(2).jitterFactor(0)
+                .retryOn(error -> error instanceof IOException).build();
+
+        CompletableFuture<Object> notRetryable = scheduler.submit(policy, () -> {
+            throw new IllegalStateException("bug");
+        });
+        assertEquals(RetryScheduler.Reason.NOT_RETRYABLE, failure(notRetryable).getReason());
+        assertTrue(pending.isEmpty());
+
+        CompletableFuture<Object> exhausted = scheduler.submit(policy, () -> {
+            throw new IOException("down");
+        });
+        fireNext();
+        RetryScheduler.RetryException error = failure(exhausted);
+        assertEquals(RetryScheduler.Reason.EXHAUSTED, error.getReason());
+        assertEquals(2, error.getAttempts());
+    }
+
+    @Test
+    public void retryBudgetLimitsRetriesAcrossOperations() {
+        RetryPolicy policy = new RetryPolicy.Builder("budget").maxAttempts(5).jitterFactor(0).retryBudget(2, 0.5).build();
+        CompletableFuture<Object> result = scheduler.submit(policy, () -> {
+            throw new IOException("down");
+        });
+        fireNext();
+        fireNext();
+        RetryScheduler.RetryException error = failure(result);
+        assertEquals(RetryScheduler.Reason.BUDGET_EXHAUSTED, error.getReason());
+        assertEquals(3, error.getAttempts());
+    }
+
+    @Test
+    public void breakerFailsFastUntilTheProbeTime() throws Exception {
+        RetryPolicy policy = new RetryPolicy.Builder("breaker").maxAttempts(1).circuitBreaker(2, 1000).build();
+        for (int i = 0; i < 2; i++) {
+            scheduler.submit(policy, () -> {
+                throw new IOException("down");
+            });
+        }
+        assertEquals(CircuitBreaker.State.OPEN, scheduler.getCircuitState(policy));
+
+        int[] calls = {0};
+        CompletableFuture<Object> fastFail = scheduler.submit(policy, () -> ++calls[0]);
+        assertEquals(RetryScheduler.Reason.CIRCUIT_OPEN, failure(fastFail).getReason());
+        assertEquals(0, calls[0]);
+
+        now += 1000;
+        assertEquals(CircuitBreaker.State.HALF_OPEN, scheduler.getCircuitState(policy));
+        assertEquals(Integer.valueOf(1), scheduler.submit(policy, () -> ++calls[0]).get());
+        assertEquals(CircuitBreaker.State.CLOSED, scheduler.getCircuitState(policy));
+    }
+
+    @Test
+    public void shutdownFailsWaitingOperations() {
+        RetryPolicy policy = new RetryPolicy.Builder("shutdown").maxAttempts(3).build();
+        int[] calls = {0};
+        CompletableFuture<Object> waiting = scheduler.submit(policy, () -> {
+            calls[0]++;
+            throw new IOException("down");
+        });
+        scheduler.shutdown();
+        fireNext();
+        assertEquals(RetryScheduler.Reason.SHUT_DOWN, failure(waiting).getReason());
+        assertEquals(1, calls[0]);
+        assertEquals(RetryScheduler.Reason.SHUT_DOWN, failure(scheduler.submit(policy, () -> 1)).getReason());
+    }
+
+    @Test
+    public void shutdownStopsTheOwnTimerAndFailsItsRetries() throws Exception {
+        RetryScheduler owning = new RetryScheduler(Runnable::run);
+        RetryPolicy policy = new RetryPolicy.Builder("own").maxAttempts(3).initialDelayMs(60000).build();
+        CompletableFuture<Object> waiting = owning.submit(policy, () -> {
+            throw new IOException("down");
+        });
+        assertFalse(waiting.isDone());
+        owning.shutdown();
+        assertTrue(owning.isShutdown());
+        assertEquals(RetryScheduler.Reason.SHUT_DOWN, failure(waiting).getReason());
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.flutter_application_1.faceid.data.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.flutter_application_1.faceid.util.InterpreterAutotuner;
+
+import org.junit.Test;
+import org.tensorflow.lite.Delegate;
+import org.tensorflow.lite.InterpreterApi;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Delegate lifecycle on fake handles: live counts, interpreter-before-delegate close order and the
+ * per-model CPU fallback when an accelerator rejects a model. No native code runs.
+ */
+public class TFLiteDelegateManagerTest {
+    private static final ByteBuffer MODEL = ByteBuffer.allocate(0);
+    private static final InterpreterAutotuner.Config GPU =
+            new InterpreterAutotuner.Config(InterpreterAutotuner.Backend.GPU, 2, true);
+    private static final InterpreterAutotuner.Config CPU = InterpreterAutotuner.Config.CPU_DEFAULT;
+
+    /** Records creations and closes; models named in rejectedModels fail to build with a delegate */
+    private static final class FakeFactory implements TFLiteDelegateManager.Factory {
+        final List<String> events = new ArrayList<>();
+        final Set<String> rejectedModels = new HashSet<>();
+        boolean failDelegates;
+        int delegatesCreated;
+        private int nextId;
+        private String loadingModel;
+
+        @Override
+        public Delegate createDelegate(InterpreterAutotuner.Backend backend) {
+            if (failDelegates) {
+                throw new IllegalStateException("no " + backend + " on this device");
+            }
+            delegatesCreated++;
+            String name = "delegate" + (nextId++);
+            return new Delegate() {
+                @Override
+                public long getNativeHandle() {
+                    return 0;
+                }
+
+                @Override
+                public void close() {
+                    events.add("close " + name);
+                }
+
+                @Override
+                public String toString() {
+                    return name;
+                }
+            };
+        }
+
+        @Override
+        public InterpreterApi createInterpreter(ByteBuffer model, InterpreterAutotuner.Config config, Delegate delegate) {
+            if (delegate != null && rejectedModels.contains(loadingModel)) {
+                throw new IllegalArgumentException("unsupported op");
+            }
+            String name = "interpreter(" + loadingModel + (delegate != null ? ", " + delegate : "") + ")";
+            return (InterpreterApi) Proxy.newProxyInstance(InterpreterApi.class.getClassLoader(),
+                    new Class<?>[] {InterpreterApi.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("close")) {
+                            events.add("close " + name);
+                            return null;
+                        }
+                        if (method.getName().equals("toString")) {
+                            return name;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+    }
+
+    private final FakeFactory factory = new FakeFactory();
+    private final TFLiteDelegateManager manager = new TFLiteDelegateManager(factory);
+
+    private TFLiteDelegateManager.Handle create(String modelName, InterpreterAutotuner.Config config) {
+        factory.loadingModel = modelName;
+        return manager.createInterpreter(modelName, MODEL, config);
+    }
+
+    @Test
+    public void countsLiveDelegatesPerBackendAndHandles() {
+        TFLiteDelegateManager.Handle detector = create("detector", GPU);
+        TFLiteDelegateManager.Handle embedding = create("embedding", GPU);
+        TFLiteDelegateManager.Handle spoof = create("spoof", CPU);
+        assertEquals(2, manager.getLiveDelegateCount(InterpreterAutotuner.Backend.GPU));
+        assertEquals(0, manager.getLiveDelegateCount(InterpreterAutotuner.Backend.CPU));
+        assertEquals(3, manager.getOpenHandleCount());
+
+        detector.close();
+        detector.close();   // Idempotent: must not release the other model's delegate
+        assertEquals(1, manager.getLiveDelegateCount(InterpreterAutotuner.Backend.GPU));
+        assertEquals(2, manager.getOpenHandleCount());
+
+        embedding.close();
+        spoof.close();
+        assertEquals(0, manager.getLiveDelegateCount(InterpreterAutotuner.Backend.GPU));
+        assertEquals(0, manager.getOpenHandleCount());
+    }
+
+    @Test
+    public void closesTheInterpreterBeforeItsDelegate() {
+        create("detector", GPU).close();
+        assertEquals(Arrays.asList("close interpreter(detector, delegate0)", "close delegate0"), factory.events);
+    }
+
+    @Test
+    public void rejectionFallsBackToCpuForThatModelOnly() {
+        factory.rejectedModels.add("gaze");
+        TFLiteDelegateManager.Handle gaze = create("gaze", GPU);
+        assertEquals(InterpreterAutotuner.Backend.CPU, gaze.getBackend());
+        assertTrue(manager.isRejected("gaze", InterpreterAutotuner.Backend.GPU));
+        assertFalse(manager.isRejected("gaze", InterpreterAutotuner.Backend.NNAPI));
+        // The rejected delegate is closed at once and never counted
+        assertEquals(Arrays.asList("close delegate0"), factory.events);
+        assertEquals(0, manager.getLiveDelegateCount(InterpreterAutotuner.Backend.GPU));
+
+        // The next load of that model skips the accelerator without trying it again
+        TFLiteDelegateManager.Handle again = create("gaze", GPU);
+        assertEquals(InterpreterAutotuner.Backend.CPU, again.getBackend());
+        assertEquals(1, factory.delegatesCreated);
+
+        // Other models still get it
+        TFLiteDelegateManager.Handle detector = create("detector", GPU);
+        assertEquals(InterpreterAutotuner.Backend.GPU, detector.getBackend());
+        assertEquals(1, manager.getLiveDelegateCount(InterpreterAutotuner.Backend.GPU));
+
+        gaze.close();
+        again.close();
+        detector.close();
+        assertEquals(0, manager.getOpenHandleCount());
+    }
+
+    @Test
+    public void delegateCreationFailureFallsBackToCpu() {
+        factory.failDelegates = true;
+        TFLiteDelegateManager.Handle handle = create("embedding", GPU);
+        assertEquals(InterpreterAutotuner.Backend.CPU, handle.getBackend());
+        assertTrue(manager.isRejected("embedding", InterpreterAutotuner.Backend.GPU));
+        handle.close();
+        assertEquals(Arrays.asList("close interpreter(embedding)"), factory.events);
+    }
+}
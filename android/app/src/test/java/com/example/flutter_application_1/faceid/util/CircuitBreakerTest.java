@@ -0,0 +1,84 @@
+package com.example.flutter_application_1.faceid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Steps the breaker through closed, open and half-open with explicit timestamps.
+ */
+public class CircuitBreakerTest {
+    private final CircuitBreaker breaker = new CircuitBreaker(3, 1000);
+
+    private void fail(int times, long nowMs) {
+        for (int i = 0; i < times; i++) {
+            assertTrue(breaker.tryAcquire(nowMs));
+            breaker.onFailure(nowMs);
+        }
+    }
+
+    @Test
+    public void opensAfterThresholdFailuresInARow() {
+        fail(2, 0);
+        breaker.tryAcquire(0);
+        breaker.onSuccess();
+        fail(2, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(0));
+
+        fail(1, 100);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(100));
+        assertFalse(breaker.tryAcquire(500));
+        assertEquals(600, breaker.getRemainingOpenMs(500));
+        assertEquals(1, breaker.getTimesOpened());
+    }
+
+    @Test
+    public void halfOpenLetsOneProbeThrough() {
+        fail(3, 0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(1000));
+        assertTrue(breaker.tryAcquire(1000));
+        assertFalse(breaker.tryAcquire(1001));
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(1001));
+        assertTrue(breaker.tryAcquire(1001));
+        assertEquals(0, breaker.getConsecutiveFailures());
+    }
+
+    @Test
+    public void failedProbeReopensForAFullPeriod() {
+        fail(3, 0);
+        assertTrue(breaker.tryAcquire(1500));
+        breaker.onFailure(1500);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(2499));
+        assertFalse(breaker.tryAcquire(2499));
+        assertTrue(breaker.tryAcquire(2500));
+        assertEquals(2, breaker.getTimesOpened());
+    }
+
+    @Test
+    public void releasedProbeFreesTheSlot() {
+        fail(3, 0);
+        assertTrue(breaker.tryAcquire(1000));
+        // Cancelled without a verdict
+        breaker.release();
+        assertTrue(breaker.tryAcquire(1000));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(1000));
+    }
+
+    @Test
+    public void resetCloses() {
+        fail(3, 0);
+        breaker.reset();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(0));
+        assertTrue(breaker.tryAcquire(0));
+        assertEquals(0, breaker.getRemainingOpenMs(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroThreshold() {
+        new CircuitBreaker(0, 1000);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.flutter_application_1.faceid.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Walks the prefetch slot through replacement, expiry and single-use take with explicit timestamps.
+ */
+public class EmbeddingSlotTest {
+    private static final long TTL_MS = 3000;
+    private static final float SLACK = 0.05f;
+
+    @Test
+    public void emptySlotAcceptsAnything() {
+        EmbeddingSlot slot = new EmbeddingSlot(TTL_MS, SLACK);
+        assertTrue(slot.isEmpty(0));
+        assertEquals(-1, slot.getAgeMs(0));
+        assertTrue(slot.wouldAccept(0.1f, 0));
+        assertTrue(slot.offer(new float[] {1f}, 0.1f, 0, 10));
+        assertFalse(slot.isEmpty(10));
+        assertEquals(10, slot.getAgeMs(10));
+    }
+
+    @Test
+    public void slightlyWorseNewerCaptureReplaces() {
+        EmbeddingSlot slot = new EmbeddingSlot(TTL_MS, SLACK);
+        float[] first = {1f};
+        float[] second = {2f};
+        slot.offer(first, 0.95f, 0, 0);
+        assertTrue(slot.wouldAccept(0.91f, 100));
+        assertTrue(slot.offer(second, 0.91f, 100, 100));
+        assertSame(second, slot.take(200));
+    }
+
+    @Test
+    public void clearlyWorseCaptureIsRejected() {
+        EmbeddingSlot slot = new EmbeddingSlot(TTL_MS, SLACK);
+        float[] held = {1f};
+        slot.offer(held, 0.95f, 0, 0);
+        assertFalse(slot.wouldAccept(0.85f, 100));
+        assertFalse(slot.offer(new float[] {2f}, 0.85f, 100, 100));
+        assertEquals(0.95f, slot.getQuality(), 0f);
+        assertSame(held, slot.take(200));
+    }
+
+    @Test
+    public void olderCaptureNeverReplacesNewer() {
+        // An embed that finished late must not overwrite a newer frame, even at a higher quality
+        EmbeddingSlot slot = new EmbeddingSlot(TTL_MS, SLACK);
+        float[] newer = {1f};
+        slot.offer(newer, 0.9f, 500, 600);
+        assertFalse(slot.offer(new float[] {2f}, 0.99f, 400, 700));
+        assertSame(newer, slot.take(800));
+    }
+
+    @Test
+    public void expiresAfterTtl() {
+        EmbeddingSlot slot = new EmbeddingSlot(TTL_MS, SLACK);
+        slot.offer(new float[] {1f}, 0.95f, 0, 0);
+        assertFalse(slot.isEmpty(TTL_MS - 1));
+        assertTrue(slot.isEmpty(TTL_MS));
+        // A much worse capture is accepted once the held one expired
+        assertTrue(slot.wouldAccept(0.5f, TTL_MS));
+        assertNull(slot.take(TTL_MS));
+    }
+
+    @Test
+    public void captureAlreadyPastTtlIsRejected() {
+        EmbeddingSlot slot = new EmbeddingSlot(TTL_MS, SLACK);
+        assertFalse(slot.offer(new float[] {1f}, 0.95f, 0, TTL_MS));
+        assertTrue(slot.isEmpty(TTL_MS));
+    }
+
+    @Test
+    public void takeIsSingleUse() {
+        EmbeddingSlot slot = new EmbeddingSlot(TTL_MS, SLACK);
+        slot.offer(new float[] {1f, 2f}, 0.9f, 0, 0);
+        assertArrayEquals(new float[] {1f, 2f}, slot.take(10), 0f);
+        assertNull(slot.take(20));
+        assertTrue(slot.isEmpty(20));
+    }
+
+    @Test
+    public void clearEmptiesTheSlot() {
+        EmbeddingSlot slot = new EmbeddingSlot(TTL_MS, SLACK);
+        slot.offer(new float[] {1f}, 0.9f, 0, 0);
+        slot.clear();
+        assertTrue(slot.isEmpty(10));
+        assertEquals(0f, slot.getQuality(), 0f);
+        assertNull(slot.take(10));
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.flutter_application_1.faceid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Drives the analysis window with a fake timer and clock at about 30 frames per second.
+ */
+public class FaceQualityAnalysisTest {
+    private static final int FRAMES_PER_TICK = 8;
+
+    private long now = 0;
+    private final List<Runnable> pending = new ArrayList<>();
+    private final List<FaceQualityAnalysis.Trend> trends = new ArrayList<>();
+    private FaceQualityAnalysis.Result result;
+
+    private final FaceQualityAnalysis analysis = new FaceQualityAnalysis(
+            (task, delayMs) -> pending.add(task), () -> now);
+
+    private final FaceQualityAnalysis.Listener listener = new FaceQualityAnalysis.Listener() {
+        @Override
+        public void onTrend(FaceQualityAnalysis.Trend trend) {
+            trends.add(trend);
+        }
+
+        @Override
+        public void onFinished(FaceQualityAnalysis.Result finished) {
+            result = finished;
+        }
+    };
+
+    private interface Scores {
+        float next(int frame);
+    }
+
+    /** Add a tick's worth of frames, advance the clock and run the due tick, until the window ends */
+    private void run(Scores scores) {
+        int frame = 0;
+        while (!pending.isEmpty()) {
+            for (int i = 0; i < FRAMES_PER_TICK; i++) analysis.addScore(scores.next(frame++));
+            now += FaceQualityAnalysis.VERDICT_INTERVAL_MS;
+            List<Runnable> due = new ArrayList<>(pending);
+            pending.clear();
+            for (Runnable task : due) task.run();
+        }
+    }
+
+    @Test
+    public void independentHighScoresPassEarly() {
+        Random random = new Random(1);
+        assertTrue(analysis.start(false, listener));
+        run(frame -> (float) (0.9 + random.nextGaussian() * 0.03));
+
+        assertEquals(FaceQualityAnalysis.Verdict.PASS, result.verdict);
+        assertTrue(result.finishedEarly);
+        assertEquals(FaceQualityAnalysis.MIN_DURATION_MS, now);
+        assertFalse(analysis.isRunning());
+    }
+
+    @Test
+    public void driftingScoresWaitForTheFullWindow() {
+        // A slow drift is consistent and above the bar, but consecutive frames say little new
+        assertTrue(analysis.start(false, listener));
+        run(frame -> 0.95f - frame * 0.001f);
+
+        assertEquals(FaceQualityAnalysis.Verdict.PASS, result.verdict);
+        assertFalse(result.finishedEarly);
+        assertEquals(FaceQualityAnalysis.DURATION_MS, now);
+        assertEquals(FaceQualityAnalysis.DURATION_MS / FaceQualityAnalysis.VERDICT_INTERVAL_MS - 1, trends.size());
+    }
+
+    @Test
+    public void verdictsAgainstTheBar() {
+        analysis.start(false, listener);
+        for (int i = 0; i < 50; i++) analysis.addScore(i % 2 == 0 ? 0.70f : 0.76f);
+        assertEquals(FaceQualityAnalysis.Trend.BORDERLINE, analysis.trend());
+        assertEquals(FaceQualityAnalysis.Verdict.ACCEPTABLE, analysis.evaluate(false).verdict);
+
+        analysis.cancel();
+        analysis.start(false, listener);
+        for (int i = 0; i < 50; i++) analysis.addScore(0.5f);
+        assertEquals(FaceQualityAnalysis.Trend.BAD, analysis.trend());
+        assertEquals(FaceQualityAnalysis.Verdict.FAIL, analysis.evaluate(false).verdict);
+
+        analysis.cancel();
+        analysis.start(false, listener);
+        // High mean but inconsistent
+        for (int i = 0; i < 50; i++) analysis.addScore(i % 2 == 0 ? 0.55f : 1.0f);
+        FaceQualityAnalysis.Result inconsistent = analysis.evaluate(false);
+        assertFalse(inconsistent.consistent);
+        assertEquals(FaceQualityAnalysis.Verdict.ACCEPTABLE, inconsistent.verdict);
+    }
+
+    @Test
+    public void livenessRelaxesTheBarAndTrimsOutliers() {
+        analysis.start(true, listener);
+        assertEquals(0.65f, analysis.minAverage(), 1e-6f);
+        // Gaze recovery frames after the challenge: a few low outliers, 10% trimmed from each side
+        for (int i = 0; i < 100; i++) analysis.addScore(i < 5 ? 0.1f : 0.7f);
+        FaceQualityAnalysis.Result relaxed = analysis.evaluate(false);
+        assertEquals(80, relaxed.stats.count);
+        assertEquals(0.7f, relaxed.stats.mean, 0.01f);
+        assertEquals(FaceQualityAnalysis.Verdict.PASS, relaxed.verdict);
+    }
+
+    @Test
+    public void cancelStopsTicksAndIgnoresScores() {
+        analysis.addScore(0.9f);
+        assertEquals(0, analysis.getFrameCount());
+
+        analysis.start(false, listener);
+        assertFalse(analysis.start(false, listener));
+        analysis.addScore(0.9f);
+        analysis.cancel();
+        analysis.addScore(0.9f);
+        assertEquals(0, analysis.getFrameCount());
+
+        now += FaceQualityAnalysis.DURATION_MS;
+        for (Runnable task : new ArrayList<>(pending)) task.run();
+        assertNull(result);
+        assertTrue(trends.isEmpty());
+    }
+
+    @Test
+    public void restartAfterCancelIgnoresTheOldTick() {
+        analysis.start(false, listener);
+        Runnable stale = pending.remove(0);
+        analysis.cancel();
+        analysis.start(false, listener);
+        now += FaceQualityAnalysis.DURATION_MS;
+        stale.run();
+        assertNull(result);
+        assertTrue(analysis.isRunning());
+    }
+}
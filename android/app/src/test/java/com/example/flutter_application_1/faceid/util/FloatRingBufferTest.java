@@ -0,0 +1,60 @@
+package com.example.flutter_application_1.faceid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FloatRingBufferTest {
+
+    @Test
+    public void keepsOldestFirstOrderAcrossWrap() {
+        FloatRingBuffer buffer = new FloatRingBuffer(3);
+        for (int i = 1; i <= 5; i++) {
+            buffer.add(i);
+        }
+
+        assertTrue(buffer.isFull());
+        assertEquals(3, buffer.size());
+        assertEquals(3f, buffer.get(0), 0f);
+        assertEquals(4f, buffer.get(1), 0f);
+        assertEquals(5f, buffer.get(2), 0f);
+        assertEquals(5f, buffer.getLast(-1f), 0f);
+    }
+
+    @Test
+    public void runningSumTracksEvictions() {
+        FloatRingBuffer buffer = new FloatRingBuffer(4);
+        for (int i = 1; i <= 10; i++) {
+            buffer.add(i);
+        }
+
+        assertEquals(7 + 8 + 9 + 10, buffer.getSum(), 1e-9);
+        assertEquals(8.5f, buffer.getMean(0f), 1e-6f);
+    }
+
+    @Test
+    public void emptyBufferReturnsDefaults() {
+        FloatRingBuffer buffer = new FloatRingBuffer(2);
+        buffer.add(1f);
+        buffer.clear();
+
+        assertFalse(buffer.isFull());
+        assertEquals(0, buffer.size());
+        assertEquals(0.3f, buffer.getMean(0.3f), 0f);
+        assertEquals(-1f, buffer.getLast(-1f), 0f);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getBeyondSizeThrows() {
+        FloatRingBuffer buffer = new FloatRingBuffer(3);
+        buffer.add(1f);
+        buffer.get(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity() {
+        new FloatRingBuffer(0);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.flutter_application_1.faceid.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Replays raw state traces at different frame rates with capture timestamps
+ */
+public class HoldTimeDebouncerTest {
+    private static final long HOLD_MS = 300;
+
+    /** Observe state 1 from t=0 every frameMs and return the first timestamp at which it is stable */
+    private static long timeToAccept(long frameMs) {
+        HoldTimeDebouncer debouncer = new HoldTimeDebouncer(HOLD_MS, 0);
+        for (long t = 0; t <= 2000; t += frameMs) {
+            if (debouncer.update(1, t) == 1) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void acceptsAfterTheSameTimeAtAnyFrameRate() {
+        assertEquals(300, timeToAccept(100));   // 10 fps
+        assertEquals(300, timeToAccept(50));    // 20 fps
+        assertEquals(300, timeToAccept(20));    // 50 fps
+    }
+
+    @Test
+    public void flickerRestartsTheHold() {
+        HoldTimeDebouncer debouncer = new HoldTimeDebouncer(HOLD_MS, 0);
+        assertEquals(0, debouncer.update(1, 0));
+        assertEquals(0, debouncer.update(1, 200));
+        assertEquals(0, debouncer.update(0, 250));   // one frame back to the old state
+        assertEquals(0, debouncer.update(1, 300));
+        assertEquals(0, debouncer.update(1, 500));
+        assertEquals(1, debouncer.update(1, 600));
+        assertEquals(300, debouncer.getCandidateDurationMs(600));
+    }
+
+    @Test
+    public void stableStateNeedsTheHoldToChangeBack() {
+        HoldTimeDebouncer debouncer = new HoldTimeDebouncer(HOLD_MS, 0);
+        debouncer.update(1, 0);
+        debouncer.update(1, 300);
+        assertEquals(1, debouncer.getStableState());
+
+        assertEquals(1, debouncer.update(0, 400));
+        assertEquals(1, debouncer.update(0, 650));
+        assertEquals(0, debouncer.update(0, 700));
+    }
+
+    @Test
+    public void resetReturnsToInitialState() {
+        HoldTimeDebouncer debouncer = new HoldTimeDebouncer(HOLD_MS, 2);
+        debouncer.update(1, 0);
+        debouncer.update(1, 400);
+        debouncer.reset();
+        assertEquals(2, debouncer.getStableState());
+        assertEquals(0, debouncer.getCandidateDurationMs(1000));
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.flutter_application_1.faceid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Checks the log-linear buckets against exact percentiles of the same samples, and that concurrent
+ * writers lose no counts.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketBoundsAreConsistent() {
+        long previousHigh = -1;
+        for (int index = 0; index <= LatencyHistogram.bucketIndex(60_000_000L); index++) {
+            long high = LatencyHistogram.highestEquivalentValue(index);
+            assertEquals("start of " + index, index, LatencyHistogram.bucketIndex(previousHigh + 1));
+            assertEquals("end of " + index, index, LatencyHistogram.bucketIndex(high));
+            previousHigh = high;
+        }
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram(1000);
+        for (int v = 1; v <= 50; v++) {
+            histogram.record(v);
+        }
+        assertEquals(50, histogram.getCount());
+        assertEquals(25.5, histogram.getMean(), 1e-9);
+        assertEquals(25, histogram.getValueAtPercentile(50));
+        assertEquals(50, histogram.getValueAtPercentile(100));
+        assertEquals(50, histogram.getMax());
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        Random random = new Random(7);
+        long[] samples = new long[10_000];
+        LatencyHistogram histogram = new LatencyHistogram(60_000_000L);
+        for (int i = 0; i < samples.length; i++) {
+            // Log-normal around 20 ms in microseconds, with a long tail
+            samples[i] = Math.round(Math.exp(random.nextGaussian() * 0.8 + Math.log(20_000)));
+            histogram.record(samples[i]);
+        }
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        for (double percentile : new double[] {50, 90, 95, 99, 99.9}) {
+            long exact = sorted[(int) Math.ceil(percentile / 100 * sorted.length) - 1];
+            long reported = histogram.getValueAtPercentile(percentile);
+            assertTrue("p" + percentile + " at or above exact", reported >= exact);
+            assertTrue("p" + percentile + " within 3.2%", reported <= exact * 1.032);
+        }
+        assertEquals(sorted[sorted.length - 1], histogram.getMax());
+    }
+
+    @Test
+    public void valuesOutsideRangeAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram(1000);
+        histogram.record(-5);
+        histogram.record(5000);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+        assertEquals(1000, histogram.getMax());
+    }
+
+    @Test
+    public void emptyAndResetReportZero() {
+        LatencyHistogram histogram = new LatencyHistogram(1000);
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0.0, histogram.getMean(), 0.0);
+        histogram.record(300);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyRange() {
+        new LatencyHistogram(0);
+    }
+
+    @Test
+    public void concurrentWritersLoseNoCounts() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram(60_000_000L);
+        int threads = 4;
+        int perThread = 50_000;
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long offset = t;
+            writers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    histogram.record(1000 + offset);
+                }
+            });
+            writers[t].start();
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals((long) threads * perThread, histogram.getCount());
+        assertEquals(1000 + threads - 1, histogram.getMax());
+        assertEquals(1000 + (threads - 1) / 2.0, histogram.getMean(), 1e-9);
+    }
+}
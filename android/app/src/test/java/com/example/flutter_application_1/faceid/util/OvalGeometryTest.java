@@ -0,0 +1,108 @@
+package com.example.flutter_application_1.faceid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks the inverse-axis oval kernel against the direct ellipse equation it replaced, and the
+ * guidance order the overlay relies on.
+ */
+public class OvalGeometryTest {
+    // 200x300 oval centered at (200, 250)
+    private static final float LEFT = 100f, TOP = 100f, RIGHT = 300f, BOTTOM = 400f;
+
+    private static OvalGeometry oval() {
+        OvalGeometry geometry = new OvalGeometry();
+        geometry.setOval(LEFT, TOP, RIGHT, BOTTOM);
+        return geometry;
+    }
+
+    @Test
+    public void ellipseValueMatchesDirectEquation() {
+        OvalGeometry geometry = oval();
+        double a = (RIGHT - LEFT) / 2.0, b = (BOTTOM - TOP) / 2.0;
+        for (int cx = 50; cx <= 350; cx += 25) {
+            for (int cy = 50; cy <= 450; cy += 25) {
+                geometry.fit(cx - 40, cy - 50, cx + 40, cy + 50);
+                double expected = Math.pow(cx - 200.0, 2) / Math.pow(a, 2) + Math.pow(cy - 250.0, 2) / Math.pow(b, 2);
+                assertEquals("center " + cx + "," + cy, expected, geometry.getEllipseValue(), 1e-5);
+            }
+        }
+    }
+
+    @Test
+    public void sizeRatiosAreExactAtThresholds() {
+        OvalGeometry geometry = oval();
+        // 0.4 * 200 = 80 wide, 0.4 * 300 = 120 high: exactly on a 0.4 minimum
+        geometry.fit(160, 190, 240, 310);
+        assertEquals(0.4f, geometry.getWidthRatio(), 0f);
+        assertEquals(0.4f, geometry.getHeightRatio(), 0f);
+        assertTrue(geometry.isSizeWithin(0.4f, 0.9f));
+        geometry.fit(161, 190, 240, 310);
+        assertFalse(geometry.isSizeWithin(0.4f, 0.9f));
+    }
+
+    @Test
+    public void expansionGrowsTheOvalAroundItsCenter() {
+        OvalGeometry geometry = new OvalGeometry();
+        geometry.setOval(LEFT, TOP, RIGHT, BOTTOM, 0.5f);
+        // A face centered on the original oval's edge is inside the 50% larger one
+        geometry.fit(260, 210, 340, 290);
+        assertEquals(Math.pow(100.0 / 150.0, 2), geometry.getEllipseValue(), 1e-5);
+        assertEquals(80f / 300f, geometry.getWidthRatio(), 1e-6f);
+    }
+
+    @Test
+    public void goodFitNeedsPositionAndSize() {
+        OvalGeometry geometry = oval();
+        geometry.fit(140, 170, 260, 330);
+        assertTrue(geometry.isGoodFit(1.2f, 0.2f, 0.9f));
+        assertTrue(geometry.isGoodFit(1.0f, 0.2f, 0.9f));
+
+        // Centered but too small
+        geometry.fit(190, 240, 210, 260);
+        assertFalse(geometry.isGoodFit(1.2f, 0.2f, 0.9f));
+
+        // Right size, center outside the oval
+        geometry.fit(260, 170, 380, 330);
+        assertFalse(geometry.isGoodFit(1.2f, 0.2f, 0.9f));
+    }
+
+    @Test
+    public void guidancePutsPositionBeforeSize() {
+        OvalGeometry geometry = oval();
+
+        // Face left of the oval and too small: move right first
+        geometry.fit(0, 240, 20, 260);
+        assertEquals(OvalGeometry.Guidance.MOVE_RIGHT, geometry.guidance(1.2f, 0.2f, 0.9f, 0.1f));
+
+        geometry.fit(380, 170, 500, 330);
+        assertEquals(OvalGeometry.Guidance.MOVE_LEFT, geometry.guidance(1.2f, 0.2f, 0.9f, 0.1f));
+
+        geometry.fit(140, -100, 260, 60);
+        assertEquals(OvalGeometry.Guidance.MOVE_DOWN, geometry.guidance(1.2f, 0.2f, 0.9f, 0.1f));
+
+        geometry.fit(140, 440, 260, 600);
+        assertEquals(OvalGeometry.Guidance.MOVE_UP, geometry.guidance(1.2f, 0.2f, 0.9f, 0.1f));
+
+        geometry.fit(190, 240, 210, 260);
+        assertEquals(OvalGeometry.Guidance.MOVE_CLOSER, geometry.guidance(1.2f, 0.2f, 0.9f, 0.1f));
+
+        geometry.fit(100, 100, 300, 400);
+        assertEquals(OvalGeometry.Guidance.MOVE_AWAY, geometry.guidance(1.2f, 0.2f, 0.9f, 0.1f));
+
+        geometry.fit(140, 170, 260, 330);
+        assertEquals(OvalGeometry.Guidance.PERFECT, geometry.guidance(1.2f, 0.2f, 0.9f, 0.1f));
+    }
+
+    @Test
+    public void offsetsAreInSemiAxisUnits() {
+        OvalGeometry geometry = oval();
+        geometry.fit(210, 280, 290, 340);
+        assertEquals(0.5f, geometry.getXOffset(), 1e-6f);
+        assertEquals(0.4f, geometry.getYOffset(), 1e-6f);
+    }
+}
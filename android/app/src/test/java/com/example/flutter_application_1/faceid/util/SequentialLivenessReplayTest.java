@@ -0,0 +1,82 @@
+package com.example.flutter_application_1.faceid.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Replays synthetic traces in the logged format: likelihoods estimated from one half of the traces
+ * are checked on the other half against the placeholder likelihoods SpoofDetectionManager ships.
+ */
+public class SequentialLivenessReplayTest {
+    private static final float HIGH = 0.85f;
+    private static final float[] PLACEHOLDER_LIVE = {0.80f, 0.15f, 0.05f};
+    private static final float[] PLACEHOLDER_SPOOF = {0.15f, 0.35f, 0.50f};
+
+    /** Traces whose frames are REAL / UNCERTAIN / SPOOF with the given probabilities */
+    private static String[] traces(Random random, int count, float real, float uncertain) {
+        String[] traces = new String[count];
+        for (int t = 0; t < count; t++) {
+            StringBuilder trace = new StringBuilder();
+            for (int i = 0; i < 60; i++) {
+                float u = random.nextFloat();
+                if (u < real) {
+                    SequentialLivenessReplay.appendFrame(trace, false, 0.86f + random.nextFloat() * 0.14f);
+                } else if (u < real + uncertain) {
+                    SequentialLivenessReplay.appendFrame(trace, false, 0.5f + random.nextFloat() * 0.35f);
+                } else {
+                    SequentialLivenessReplay.appendFrame(trace, true, 0.5f + random.nextFloat() * 0.5f);
+                }
+            }
+            traces[t] = trace.toString();
+        }
+        return traces;
+    }
+
+    @Test
+    public void appendFrameWritesTwoDecimals() {
+        StringBuilder trace = new StringBuilder();
+        SequentialLivenessReplay.appendFrame(trace, false, 0.905f);
+        SequentialLivenessReplay.appendFrame(trace, true, 0.07f);
+        SequentialLivenessReplay.appendFrame(trace, false, 1.2f);
+        assertEquals("0.91 s0.07 1.00", trace.toString());
+    }
+
+    @Test
+    public void estimatedLikelihoodsAreSmoothedFrequencies() {
+        // 2 real, 1 uncertain, 0 spoof: (2+1)/(3+3), (1+1)/6, (0+1)/6
+        float[] likelihoods = SequentialLivenessReplay.estimateLikelihoods(new String[] {"0.90 0.95", " 0.60 "}, HIGH);
+        assertArrayEquals(new float[] {0.5f, 1f / 3, 1f / 6}, likelihoods, 1e-6f);
+    }
+
+    @Test
+    public void calibratedLikelihoodsRejectFewerLiveFaces() {
+        Random random = new Random(2024);
+        // Live faces flicker to spoof more often than the placeholders assume; attacks often look uncertain
+        String[] liveTraining = traces(random, 200, 0.70f, 0.15f);
+        String[] spoofTraining = traces(random, 200, 0.10f, 0.30f);
+        String[] live = traces(random, 200, 0.70f, 0.15f);
+        String[] spoof = traces(random, 200, 0.10f, 0.30f);
+
+        SequentialLivenessSprt placeholder = new SequentialLivenessSprt(0.01f, 0.05f,
+                PLACEHOLDER_LIVE, PLACEHOLDER_SPOOF, 60);
+        SequentialLivenessSprt calibrated = new SequentialLivenessSprt(0.01f, 0.05f,
+                SequentialLivenessReplay.estimateLikelihoods(liveTraining, HIGH),
+                SequentialLivenessReplay.estimateLikelihoods(spoofTraining, HIGH), 60);
+
+        SequentialLivenessReplay.Report placeholderLive = SequentialLivenessReplay.replay(placeholder, HIGH, live);
+        SequentialLivenessReplay.Report calibratedLive = SequentialLivenessReplay.replay(calibrated, HIGH, live);
+        SequentialLivenessReplay.Report calibratedSpoof = SequentialLivenessReplay.replay(calibrated, HIGH, spoof);
+
+        assertEquals(200, calibratedLive.traces);
+        assertTrue(placeholderLive.toString(), placeholderLive.rejected > 2 * calibratedLive.rejected);
+        // Within the configured error rates: β = 5% of live faces rejected, α = 1% of attacks accepted
+        assertTrue(calibratedLive.toString(), calibratedLive.rejected <= 10);
+        assertTrue(calibratedSpoof.toString(), calibratedSpoof.accepted <= 2);
+        assertTrue(calibratedSpoof.toString(), calibratedSpoof.rejected >= 190);
+    }
+}
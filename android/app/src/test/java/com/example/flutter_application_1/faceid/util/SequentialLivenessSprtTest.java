@@ -0,0 +1,92 @@
+package com.example.flutter_application_1.faceid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.flutter_application_1.faceid.util.SequentialLivenessSprt.Decision;
+import com.example.flutter_application_1.faceid.util.SequentialLivenessSprt.Observation;
+
+import org.junit.Test;
+
+/**
+ * Walks the log-likelihood ratio against Wald's bounds for α = 0.01, β = 0.05
+ * (accept at ln 95 ≈ 4.55, reject at ln(0.05 / 0.99) ≈ -2.99).
+ */
+public class SequentialLivenessSprtTest {
+    private static final float[] LIVE = {0.80f, 0.15f, 0.05f};
+    private static final float[] SPOOF = {0.15f, 0.35f, 0.50f};
+
+    private static SequentialLivenessSprt sprt(int maxFrames) {
+        return new SequentialLivenessSprt(0.01f, 0.05f, LIVE, SPOOF, maxFrames);
+    }
+
+    @Test
+    public void acceptsAfterEnoughRealFrames() {
+        SequentialLivenessSprt sprt = sprt(60);
+        // ln(0.80 / 0.15) ≈ 1.67 per frame
+        assertEquals(Decision.CONTINUE, sprt.update(Observation.REAL));
+        assertEquals(Decision.CONTINUE, sprt.update(Observation.REAL));
+        assertEquals(Decision.ACCEPT, sprt.update(Observation.REAL));
+        // Not clamped: the deciding frame's overshoot stays in the sum
+        assertEquals(3 * Math.log(0.80 / 0.15), sprt.getLogLikelihoodRatio(), 1e-5);
+    }
+
+    @Test
+    public void rejectsAfterTwoSpoofFrames() {
+        SequentialLivenessSprt sprt = sprt(60);
+        assertEquals(Decision.CONTINUE, sprt.update(Observation.SPOOF));
+        assertEquals(Decision.REJECT, sprt.update(Observation.SPOOF));
+        assertEquals(2 * Math.log(0.05 / 0.50), sprt.getLogLikelihoodRatio(), 1e-5);
+    }
+
+    @Test
+    public void decisionStartsANewTestFromZero() {
+        SequentialLivenessSprt sprt = sprt(60);
+        for (int i = 0; i < 3; i++) sprt.update(Observation.REAL);
+        assertEquals(Decision.ACCEPT, sprt.getDecision());
+
+        // The accept banks no credit: the next frame is the first of a new test
+        assertEquals(Decision.CONTINUE, sprt.update(Observation.UNCERTAIN));
+        assertEquals(Math.log(0.15 / 0.35), sprt.getLogLikelihoodRatio(), 1e-5);
+        // -0.85 + 3 × 1.67 = 4.17 is still short of ln 95; the fourth real frame accepts
+        for (int i = 0; i < 3; i++) assertEquals(Decision.CONTINUE, sprt.update(Observation.REAL));
+        assertEquals(Decision.ACCEPT, sprt.update(Observation.REAL));
+    }
+
+    @Test
+    public void longRunOfRealFramesDoesNotDelayAReject() {
+        SequentialLivenessSprt sprt = sprt(60);
+        for (int i = 0; i < 21; i++) sprt.update(Observation.REAL);
+        assertEquals(Decision.ACCEPT, sprt.getDecision());
+        // Each test is judged on its own frames, so two spoof frames reject as they would from the start
+        assertEquals(Decision.CONTINUE, sprt.update(Observation.SPOOF));
+        assertEquals(Decision.REJECT, sprt.update(Observation.SPOOF));
+    }
+
+    @Test
+    public void exhaustsWithoutEvidence() {
+        float[] flat = {1f / 3, 1f / 3, 1f / 3};
+        SequentialLivenessSprt sprt = new SequentialLivenessSprt(0.01f, 0.05f, flat, flat, 5);
+        for (int i = 0; i < 4; i++) sprt.update(Observation.REAL);
+        assertFalse(sprt.isExhausted());
+        sprt.update(Observation.SPOOF);
+        assertTrue(sprt.isExhausted());
+        sprt.reset();
+        assertFalse(sprt.isExhausted());
+        assertEquals(Decision.CONTINUE, sprt.getDecision());
+        assertEquals(0f, sprt.getLogLikelihoodRatio(), 0f);
+    }
+
+    @Test
+    public void classifiesByThreshold() {
+        assertEquals(Observation.SPOOF, SequentialLivenessSprt.classify(true, 0.99f, 0.85f));
+        assertEquals(Observation.REAL, SequentialLivenessSprt.classify(false, 0.90f, 0.85f));
+        assertEquals(Observation.UNCERTAIN, SequentialLivenessSprt.classify(false, 0.85f, 0.85f));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidErrorRates() {
+        new SequentialLivenessSprt(0f, 0.05f, LIVE, SPOOF, 60);
+    }
+}
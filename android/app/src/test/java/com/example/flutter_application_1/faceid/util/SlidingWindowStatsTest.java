@@ -0,0 +1,95 @@
+package com.example.flutter_application_1.faceid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the sliding Welford window against a two-pass recomputation over the same samples.
+ */
+public class SlidingWindowStatsTest {
+
+    private static double[] twoPass(float[] samples, int end, int window) {
+        int start = Math.max(0, end - window);
+        int n = end - start;
+        double mean = 0;
+        for (int i = start; i < end; i++) mean += samples[i];
+        mean /= n;
+        double var = 0;
+        for (int i = start; i < end; i++) var += (samples[i] - mean) * (samples[i] - mean);
+        return new double[] {mean, var / n};
+    }
+
+    @Test
+    public void matchesTwoPassWhileFillingAndSliding() {
+        Random random = new Random(42);
+        float[] samples = new float[500];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (float) (random.nextGaussian() * 3 + 10);
+        }
+        SlidingWindowStats stats = new SlidingWindowStats(15);
+        for (int i = 0; i < samples.length; i++) {
+            stats.add(samples[i]);
+            double[] expected = twoPass(samples, i + 1, 15);
+            assertEquals("mean at " + i, expected[0], stats.getMean(), 1e-9);
+            assertEquals("variance at " + i, expected[1], stats.getVariance(), 1e-9);
+        }
+    }
+
+    @Test
+    public void noCancellationOnLargeOffsets() {
+        // Pixel coordinates around 1000 with sub-pixel jitter: sumSq/n - mean^2 in float loses it all
+        SlidingWindowStats stats = new SlidingWindowStats(10);
+        float[] samples = new float[200];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = 1000f + ((i % 4) - 1.5f) * 0.25f;
+            stats.add(samples[i]);
+        }
+        double[] expected = twoPass(samples, samples.length, 10);
+        assertEquals(expected[1], stats.getVariance(), 1e-9);
+        assertTrue(stats.getVariance() > 0);
+    }
+
+    @Test
+    public void constantWindowHasZeroVariance() {
+        SlidingWindowStats stats = new SlidingWindowStats(8);
+        for (int i = 0; i < 8; i++) stats.add(i * 7.3f);
+        for (int i = 0; i < 8; i++) stats.add(0.1f);
+        assertEquals(0.1, stats.getMean(), 1e-7);
+        assertTrue(stats.getVariance() >= 0);
+        assertEquals(0.0, stats.getVariance(), 1e-12);
+    }
+
+    @Test
+    public void getIsOldestFirstAcrossWrap() {
+        SlidingWindowStats stats = new SlidingWindowStats(4);
+        for (int i = 1; i <= 6; i++) stats.add(i);
+        assertEquals(4, stats.size());
+        assertEquals(3f, stats.get(0), 0f);
+        assertEquals(6f, stats.get(3), 0f);
+        assertEquals(6f, stats.getLast(-1f), 0f);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getOutsideWindowThrows() {
+        SlidingWindowStats stats = new SlidingWindowStats(4);
+        stats.add(1f);
+        stats.get(1);
+    }
+
+    @Test
+    public void clearStartsOver() {
+        SlidingWindowStats stats = new SlidingWindowStats(3);
+        stats.add(5f);
+        stats.add(9f);
+        stats.clear();
+        assertEquals(0, stats.size());
+        assertEquals(-1f, stats.getLast(-1f), 0f);
+        assertEquals(0.0, stats.getVariance(), 0.0);
+        stats.add(2f);
+        assertEquals(2.0, stats.getMean(), 0.0);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.flutter_application_1.faceid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks that stage durations are kept per stage and summarized in milliseconds.
+ */
+public class StageLatencyRecorderTest {
+
+    @Test
+    public void summarizesInMilliseconds() {
+        StageLatencyRecorder recorder = new StageLatencyRecorder();
+        for (int i = 1; i <= 100; i++) {
+            recorder.recordNanos(StageLatencyRecorder.Stage.DETECT, i * 1_000_000L);
+        }
+        StageLatencyRecorder.StageSummary summary = recorder.getSummary(StageLatencyRecorder.Stage.DETECT);
+        assertEquals(100, summary.count);
+        assertEquals(50.5f, summary.meanMs, 1e-3f);
+        assertEquals(100f, summary.maxMs, 0f);
+        // Bucket precision is about 3%
+        assertEquals(50f, summary.p50Ms, 50f * 0.032f);
+        assertEquals(95f, summary.p95Ms, 95f * 0.032f);
+        assertTrue(summary.p50Ms <= summary.p95Ms && summary.p95Ms <= summary.p99Ms && summary.p99Ms <= summary.maxMs);
+    }
+
+    @Test
+    public void recordUsesTheTimestampDifference() {
+        StageLatencyRecorder recorder = new StageLatencyRecorder();
+        recorder.record(StageLatencyRecorder.Stage.EMBED, 5_000_000L, 5_040_000L);
+        assertEquals(0.04f, recorder.getSummary(StageLatencyRecorder.Stage.EMBED).maxMs, 1e-6f);
+    }
+
+    @Test
+    public void summariesListOnlyStagesThatRanInPipelineOrder() {
+        StageLatencyRecorder recorder = new StageLatencyRecorder();
+        recorder.recordNanos(StageLatencyRecorder.Stage.NETWORK, 120_000_000L);
+        recorder.recordNanos(StageLatencyRecorder.Stage.CONVERT, 3_000_000L);
+        List<StageLatencyRecorder.StageSummary> summaries = recorder.getSummaries();
+        assertEquals(2, summaries.size());
+        assertEquals(StageLatencyRecorder.Stage.CONVERT, summaries.get(0).stage);
+        assertEquals(StageLatencyRecorder.Stage.NETWORK, summaries.get(1).stage);
+        assertEquals(0, recorder.getSummary(StageLatencyRecorder.Stage.SPOOF).count);
+    }
+
+    @Test
+    public void resetClearsEveryStage() {
+        StageLatencyRecorder recorder = new StageLatencyRecorder();
+        recorder.recordNanos(StageLatencyRecorder.Stage.DETECT, 1_000_000L);
+        recorder.recordNanos(StageLatencyRecorder.Stage.SPOOF, 2_000_000L);
+        recorder.reset();
+        assertTrue(recorder.getSummaries().isEmpty());
+    }
+}
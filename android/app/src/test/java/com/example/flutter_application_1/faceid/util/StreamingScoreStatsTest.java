@@ -0,0 +1,149 @@
+package com.example.flutter_application_1.faceid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the streaming statistics against direct recomputation over the same scores, and checks that
+ * correlated scores widen the confidence bound on the mean.
+ */
+public class StreamingScoreStatsTest {
+
+    private static StreamingScoreStats of(float[] scores) {
+        StreamingScoreStats stats = new StreamingScoreStats();
+        for (float score : scores) stats.add(score);
+        return stats;
+    }
+
+    private static float[] noisy(Random random, int n, double center, double spread) {
+        float[] scores = new float[n];
+        for (int i = 0; i < n; i++) {
+            scores[i] = (float) Math.max(0, Math.min(1, center + random.nextGaussian() * spread));
+        }
+        return scores;
+    }
+
+    @Test
+    public void meanAndVarianceMatchTwoPass() {
+        float[] scores = noisy(new Random(7), 300, 0.8, 0.1);
+        StreamingScoreStats stats = of(scores);
+        double mean = 0;
+        for (float score : scores) mean += score;
+        mean /= scores.length;
+        double variance = 0;
+        for (float score : scores) variance += (score - mean) * (score - mean);
+        variance /= scores.length;
+
+        assertEquals(scores.length, stats.getCount());
+        assertEquals(mean, stats.getMean(), 1e-6);
+        assertEquals(variance, stats.getVariance(), 1e-6);
+        StreamingScoreStats.Summary summary = stats.summarize();
+        float[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        assertEquals(sorted[0], summary.min, 0f);
+        assertEquals(sorted[sorted.length - 1], summary.max, 0f);
+    }
+
+    @Test
+    public void quantileIsWithinOneBin() {
+        float[] scores = noisy(new Random(11), 1000, 0.6, 0.15);
+        StreamingScoreStats stats = of(scores);
+        float[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        for (float q : new float[] {0.1f, 0.5f, 0.9f}) {
+            assertEquals("q=" + q, sorted[(int) (q * sorted.length)], stats.getQuantile(q), 0.011f);
+        }
+    }
+
+    @Test
+    public void trimmedSummaryMatchesSortedTrim() {
+        float[] scores = noisy(new Random(3), 200, 0.7, 0.2);
+        StreamingScoreStats stats = of(scores);
+        int trim = 20;
+        float[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        double mean = 0;
+        for (int i = trim; i < sorted.length - trim; i++) mean += sorted[i];
+        mean /= sorted.length - 2 * trim;
+
+        StreamingScoreStats.Summary summary = stats.summarize(trim);
+        assertEquals(sorted.length - 2 * trim, summary.count);
+        assertEquals(mean, summary.mean, 0.01);
+        assertEquals(sorted[trim], summary.min, 0.01f);
+        assertEquals(sorted[sorted.length - trim - 1], summary.max, 0.01f);
+    }
+
+    @Test
+    public void lag1AutocorrelationMatchesDirectComputation() {
+        // AR(1) around 0.8 with coefficient 0.9
+        Random random = new Random(5);
+        float[] scores = new float[400];
+        double x = 0;
+        for (int i = 0; i < scores.length; i++) {
+            x = 0.9 * x + random.nextGaussian() * 0.02;
+            scores[i] = (float) (0.8 + x);
+        }
+        StreamingScoreStats stats = of(scores);
+        double mean = 0;
+        for (float score : scores) mean += score;
+        mean /= scores.length;
+        double lag = 0, var = 0;
+        for (int i = 0; i < scores.length; i++) {
+            var += (scores[i] - mean) * (scores[i] - mean);
+            if (i > 0) lag += (scores[i] - mean) * (scores[i - 1] - mean);
+        }
+
+        assertEquals(lag / var, stats.getLag1Autocorrelation(), 1e-4);
+        assertTrue(stats.getLag1Autocorrelation() > 0.7f);
+        assertTrue(stats.getEffectiveSampleSize() < scores.length / 5f);
+    }
+
+    @Test
+    public void effectiveSampleSizeNeverExceedsCount() {
+        // Alternating scores are negatively correlated
+        StreamingScoreStats stats = new StreamingScoreStats();
+        for (int i = 0; i < 50; i++) stats.add(i % 2 == 0 ? 0.7f : 0.9f);
+        assertTrue(stats.getLag1Autocorrelation() < -0.9f);
+        assertEquals(50f, stats.getEffectiveSampleSize(), 1e-4f);
+    }
+
+    @Test
+    public void correlatedOrderWidensTheLowerBound() {
+        // Same scores, so same mean and variance: sorted (a slow drift) against shuffled
+        float[] scores = noisy(new Random(13), 100, 0.8, 0.05);
+        float[] drifting = scores.clone();
+        Arrays.sort(drifting);
+        StreamingScoreStats shuffled = of(scores);
+        StreamingScoreStats sorted = of(drifting);
+
+        assertEquals(shuffled.getMean(), sorted.getMean(), 1e-5f);
+        assertEquals(shuffled.getVariance(), sorted.getVariance(), 1e-5f);
+        assertTrue(sorted.getMeanLowerBound(2.58f) < shuffled.getMeanLowerBound(2.58f));
+        assertTrue(shuffled.getMeanLowerBound(2.58f) > 0.77f);
+    }
+
+    @Test
+    public void lowerBoundNeedsTwoEffectiveScores() {
+        StreamingScoreStats stats = new StreamingScoreStats();
+        stats.add(0.9f);
+        assertEquals(Float.NEGATIVE_INFINITY, stats.getMeanLowerBound(2.58f), 0f);
+        stats.add(0.9f);
+        assertEquals(0.9f, stats.getMeanLowerBound(2.58f), 1e-6f);
+    }
+
+    @Test
+    public void clearStartsOver() {
+        StreamingScoreStats stats = of(new float[] {0.1f, 0.2f, 0.9f});
+        stats.clear();
+        assertEquals(0, stats.getCount());
+        assertEquals(0f, stats.getLag1Autocorrelation(), 0f);
+        stats.add(0.5f);
+        assertEquals(0.5f, stats.getMean(), 0f);
+        assertEquals(0.5f, stats.summarize().min, 0f);
+    }
+}
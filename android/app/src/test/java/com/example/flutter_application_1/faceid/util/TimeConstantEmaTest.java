@@ -0,0 +1,90 @@
+package com.example.flutter_application_1.faceid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Replays step inputs at different frame rates with capture timestamps
+ */
+public class TimeConstantEmaTest {
+    private static final float TAU_MS = 200f;
+
+    /** Feed 0 once, then 1 every frameMs until durationMs, and return the output */
+    private static float replayStep(long frameMs, long durationMs) {
+        TimeConstantEma ema = new TimeConstantEma(TAU_MS);
+        ema.update(0f, 0);
+        float value = 0f;
+        for (long t = frameMs; t <= durationMs; t += frameMs) {
+            value = ema.update(1f, t);
+        }
+        return value;
+    }
+
+    @Test
+    public void stepResponseDoesNotDependOnFrameRate() {
+        float expected = (float) (1.0 - Math.exp(-1.0));   // one time constant
+        assertEquals(expected, replayStep(100, 200), 1e-4f);   // 10 fps
+        assertEquals(expected, replayStep(40, 200), 1e-4f);    // 25 fps
+        assertEquals(expected, replayStep(20, 200), 1e-4f);    // 50 fps
+    }
+
+    @Test
+    public void droppedFramesDoNotChangeTheResult() {
+        TimeConstantEma steady = new TimeConstantEma(TAU_MS);
+        TimeConstantEma dropping = new TimeConstantEma(TAU_MS);
+        steady.update(0f, 0);
+        dropping.update(0f, 0);
+        for (long t = 33; t <= 660; t += 33) {
+            steady.update(1f, t);
+            if ((t / 33) % 3 != 0) {   // drop every third frame
+                dropping.update(1f, t);
+            }
+        }
+        dropping.update(1f, 660);
+        assertEquals(steady.getValue(), dropping.getValue(), 1e-4f);
+    }
+
+    @Test
+    public void repeatedOrOutOfOrderTimestampsKeepTheEstimate() {
+        TimeConstantEma ema = new TimeConstantEma(TAU_MS);
+        ema.update(0f, 1000);
+        float value = ema.update(1f, 1100);
+        assertEquals(value, ema.update(5f, 1100), 0f);
+        assertEquals(value, ema.update(5f, 1050), 0f);
+    }
+
+    @Test
+    public void tauForAlphaMatchesPerFrameEma() {
+        float alpha = 0.3f;
+        float tau = TimeConstantEma.tauForAlpha(alpha, 30f);
+        TimeConstantEma ema = new TimeConstantEma(tau);
+        ema.update(0f, 0);
+        float perFrame = 0f;
+        for (int i = 1; i <= 10; i++) {
+            perFrame += alpha * (1f - perFrame);
+            ema.update(1f, Math.round(i * 1000f / 30f));
+        }
+        assertEquals(perFrame, ema.getValue(), 0.01f);
+        assertEquals(0f, TimeConstantEma.tauForAlpha(1f, 30f), 0f);
+    }
+
+    @Test
+    public void zeroTimeConstantPassesSamplesThrough() {
+        TimeConstantEma ema = new TimeConstantEma(0f);
+        ema.update(0f, 0);
+        assertEquals(7f, ema.update(7f, 10), 0f);
+    }
+
+    @Test
+    public void resetTakesNextSampleAsIs() {
+        TimeConstantEma ema = new TimeConstantEma(TAU_MS);
+        ema.update(3f, 0);
+        ema.reset();
+        assertFalse(ema.isInitialized());
+        assertEquals(9f, ema.update(9f, 5), 0f);
+        assertTrue(ema.isInitialized());
+    }
+}